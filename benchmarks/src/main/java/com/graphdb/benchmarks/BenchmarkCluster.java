@@ -0,0 +1,84 @@
+package com.graphdb.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import io.atomix.cluster.Member;
+import io.atomix.cluster.Node;
+import io.atomix.cluster.discovery.BootstrapDiscoveryProvider;
+import io.atomix.core.Atomix;
+import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.utils.net.Address;
+
+/*
+ * In-process Atomix cluster on loopback ports, partitioned like ClusterAgent:
+ * a one partition management group and 10 Raft partitions of 2 members each.
+ * The Raft data lives in a temporary directory removed by stop.
+ */
+public class BenchmarkCluster {
+
+	private final static String MANAGEMENT_PARTITION_NAME = "system";
+	private final static String PARTITION_GROUP_NAME = "raft";
+	private final static String HOST = "127.0.0.1";
+	private final static int PORT = 9800;
+
+	private final List<Atomix> members = new ArrayList<>();
+	private final Path dataDir;
+
+	private BenchmarkCluster(Path dataDir) {
+		this.dataDir = dataDir;
+	}
+
+	public static BenchmarkCluster start(int size) throws IOException {
+		BenchmarkCluster cluster = new BenchmarkCluster(Files.createTempDirectory("graphdb-benchmark"));
+
+		String[] memberNames = new String[size];
+		Node[] nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			memberNames[i] = "member" + (i + 1);
+			nodes[i] = Member.builder().withId(memberNames[i]).withAddress(new Address(HOST, PORT + i)).build();
+		}
+
+		List<CompletableFuture<Void>> started = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			File memberDir = cluster.dataDir.resolve(memberNames[i]).toFile();
+			Atomix atomix = Atomix.builder().withMemberId(memberNames[i]).withAddress(new Address(HOST, PORT + i))
+					.withMembershipProvider(BootstrapDiscoveryProvider.builder().withNodes(nodes).build())
+					.withManagementGroup(RaftPartitionGroup.builder(MANAGEMENT_PARTITION_NAME)
+							.withDataDirectory(new File(memberDir, MANAGEMENT_PARTITION_NAME)).withNumPartitions(1)
+							.withMembers(memberNames).build())
+					.withPartitionGroups(RaftPartitionGroup.builder(PARTITION_GROUP_NAME)
+							.withDataDirectory(new File(memberDir, PARTITION_GROUP_NAME)).withPartitionSize(2)
+							.withNumPartitions(10).withMembers(memberNames).build())
+					.build();
+			cluster.members.add(atomix);
+			// The members wait for each other, so they are started together
+			started.add(atomix.start());
+		}
+		CompletableFuture.allOf(started.toArray(new CompletableFuture[0])).join();
+		return cluster;
+	}
+
+	public Atomix member(int index) {
+		return members.get(index);
+	}
+
+	public void stop() throws IOException {
+		List<CompletableFuture<Void>> stopped = new ArrayList<>();
+		for (Atomix atomix : members) {
+			stopped.add(atomix.stop());
+		}
+		CompletableFuture.allOf(stopped.toArray(new CompletableFuture[0])).join();
+
+		try (Stream<Path> files = Files.walk(dataDir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.graphdb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Optional;
+import com.graphdb.model.Path;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+import com.graphdb.model.RelationPage;
+import com.graphdb.model.WeightedPath;
+
+/*
+ * Benchmarks of the Graph reads, writes, listings and searches. Reads pick
+ * random vertices and relations of the loaded graph. Writes add new vertices
+ * and relations, so the graph grows slowly over a trial, and removals delete
+ * what a per invocation setup has just added.
+ *
+ * Run with: java -jar target/benchmarks.jar [regexp] [-p graphSize=1000 ...]
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GraphBenchmark {
+
+	private final static int BATCH = 100;
+	private final static String PENDING_TYPE = "pending";
+	// Smaller than the larger degree, so that a listing takes several pages
+	private final static int PAGE_SIZE = 8;
+	// Relation values are strings, the costs of shortestPath come from the ids
+	private final static ToDoubleFunction<Relation> WEIGHT = relation -> 1 + relation.getId() % 4;
+
+	/*
+	 * Names of the vertices created by the write benchmarks, unique per thread
+	 */
+	@State(Scope.Thread)
+	public static class Writes {
+
+		private static int threads;
+		private final String prefix;
+		private long count;
+
+		public Writes() {
+			synchronized (Writes.class) {
+				prefix = "new" + threads++ + "_";
+			}
+		}
+
+		String nextVertex() {
+			return prefix + count++;
+		}
+	}
+
+	/*
+	 * Vertex and relation added before each invocation of the removal benchmarks
+	 */
+	@State(Scope.Thread)
+	public static class Pending {
+
+		String vertex;
+		String from;
+		String to;
+		long relationId;
+
+		@Setup(Level.Invocation)
+		public void setUp(GraphState state, Writes writes) {
+			vertex = writes.nextVertex();
+			state.graph.addNode(vertex, "value");
+			List<Relation<String, String>> relations = new ArrayList<>(state.degree);
+			for (int j = 0; j < state.degree; j++) {
+				relations.add(new Relation<>(vertex, state.randomVertex(), "relation", GraphState.TYPES[0],
+						state.biDirectional));
+			}
+			state.graph.addRelations(relations);
+
+			from = state.randomVertex();
+			to = state.randomVertex();
+			relationId = state.graph.addRelation(from, to, PENDING_TYPE, "relation", state.biDirectional);
+		}
+	}
+
+	@Benchmark
+	public boolean addNode(GraphState state, Writes writes) {
+		return state.graph.addNode(writes.nextVertex(), "value");
+	}
+
+	@Benchmark
+	public boolean addNodes(GraphState state, Writes writes) {
+		Map<String, String> nodes = new HashMap<>();
+		for (int i = 0; i < BATCH; i++) {
+			nodes.put(writes.nextVertex(), "value");
+		}
+		return state.graph.addNodes(nodes);
+	}
+
+	@Benchmark
+	public boolean removeNode(GraphState state, Pending pending) {
+		return state.graph.removeNode(pending.vertex);
+	}
+
+	@Benchmark
+	public Optional<String> getNode(GraphState state) {
+		return state.graph.getNode(state.randomVertex());
+	}
+
+	@Benchmark
+	public Long addRelation(GraphState state) {
+		return state.graph.addRelation(state.randomVertex(), state.randomVertex(), GraphState.TYPES[0], "relation",
+				state.biDirectional);
+	}
+
+	@Benchmark
+	public List<Long> addRelations(GraphState state) {
+		List<Relation<String, String>> relations = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			relations.add(new Relation<>(state.randomVertex(), state.randomVertex(), "relation", GraphState.TYPES[0],
+					state.biDirectional));
+		}
+		return state.graph.addRelations(relations);
+	}
+
+	@Benchmark
+	public boolean removeRelationById(GraphState state, Pending pending) {
+		return state.graph.removeRelation(pending.relationId);
+	}
+
+	@Benchmark
+	public boolean removeRelationByType(GraphState state, Pending pending) {
+		return state.graph.removeRelation(pending.from, pending.to, PENDING_TYPE);
+	}
+
+	@Benchmark
+	public Relation getRelationById(GraphState state) {
+		return state.graph.getRelations(state.randomRelationId());
+	}
+
+	@Benchmark
+	public List<Relation> getRelations(GraphState state) {
+		int i = state.randomIndex();
+		return state.graph.getRelations(GraphState.vertex(i), state.neighbour(i, 1));
+	}
+
+	@Benchmark
+	public List<String> getRelationType(GraphState state) {
+		int i = state.randomIndex();
+		return state.graph.getRelationType(GraphState.vertex(i), state.neighbour(i, 1));
+	}
+
+	@Benchmark
+	public long getNodeOutDegree(GraphState state) {
+		return state.graph.getNodeOutDegree(state.randomVertex());
+	}
+
+	@Benchmark
+	public List<Relation> getOutgoingRelations(GraphState state) {
+		return state.graph.getOutgoingRelations(state.randomVertex());
+	}
+
+	@Benchmark
+	public List<Relation> getOutgoingRelationsByType(GraphState state) {
+		return state.graph.getOutgoingRelations(state.randomVertex(), GraphState.TYPES[1]);
+	}
+
+	@Benchmark
+	public List<Relation> getIncomingRelations(GraphState state) {
+		return state.graph.getIncomingRelations(state.randomVertex());
+	}
+
+	@Benchmark
+	public List<Relation> getIncomingRelationsByType(GraphState state) {
+		return state.graph.getIncomingRelations(state.randomVertex(), GraphState.TYPES[1]);
+	}
+
+	@Benchmark
+	public RelationPage getOutgoingRelationsPage(GraphState state) {
+		return state.graph.getOutgoingRelations(state.randomVertex(), null, null, PAGE_SIZE);
+	}
+
+	@Benchmark
+	public long streamOutgoingRelations(GraphState state) {
+		return state.graph.streamOutgoingRelations(state.randomVertex(), null, PAGE_SIZE).count();
+	}
+
+	@Benchmark
+	public boolean areRelated(GraphState state) {
+		return state.graph.areRelated(state.randomVertex(), state.randomVertex());
+	}
+
+	@Benchmark
+	public List<String> search(GraphState state) {
+		return state.graph.search(state.randomVertex(), state.randomVertex());
+	}
+
+	@Benchmark
+	public Path<String> searchBounded(GraphState state) {
+		return state.graph.search(state.randomVertex(), state.randomVertex(), 4, 10000);
+	}
+
+	@Benchmark
+	public WeightedPath<String> shortestPath(GraphState state) {
+		return state.graph.shortestPath(new PathQuery<>(state.randomVertex(), state.randomVertex()).withWeight(WEIGHT)
+				.withMaxDepth(4).withMaxVisited(10000));
+	}
+
+	@Benchmark
+	public WeightedPath<String> shortestPathBidirectional(GraphState state) {
+		return state.graph.shortestPath(new PathQuery<>(state.randomVertex(), state.randomVertex()).withWeight(WEIGHT)
+				.bidirectional().withMaxDepth(4).withMaxVisited(10000));
+	}
+}
@@ -0,0 +1,100 @@
+package com.graphdb.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.graphdb.model.GraphModelImpl;
+import com.graphdb.model.Relation;
+
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+
+/*
+ * A graph of graphSize vertices, each with degree outgoing relations spread
+ * over TYPES types, loaded into a fresh three member cluster for every trial.
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+
+	final static int MEMBERS = 3;
+	final static String[] TYPES = { "knows", "likes", "follows", "blocks" };
+
+	@Param({ "1000", "10000" })
+	public int graphSize;
+
+	@Param({ "4", "32" })
+	public int degree;
+
+	@Param({ "false", "true" })
+	public boolean biDirectional;
+
+	@Param({ "LINEARIZABLE", "LINEARIZABLE_LEASE", "SEQUENTIAL" })
+	public ReadConsistency readConsistency;
+
+	BenchmarkCluster cluster;
+	GraphModelImpl<String, String> graph;
+	List<Long> relationIds;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		cluster = BenchmarkCluster.start(MEMBERS);
+		graph = new GraphModelImpl<>(cluster.member(0), "benchmark");
+		graph.withProtocol(MultiRaftProtocol.builder().withReadConsistency(readConsistency).build());
+		graph.buildAtomicMultiMap();
+
+		Map<String, String> nodes = new HashMap<>();
+		for (int i = 0; i < graphSize; i++) {
+			nodes.put(vertex(i), "value" + i);
+		}
+		graph.addNodes(nodes);
+
+		List<Relation<String, String>> relations = new ArrayList<>(graphSize * degree);
+		for (int i = 0; i < graphSize; i++) {
+			for (int j = 1; j <= degree; j++) {
+				relations.add(new Relation<>(vertex(i), neighbour(i, j), "relation", TYPES[j % TYPES.length],
+						biDirectional));
+			}
+		}
+		relationIds = graph.addRelations(relations);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		cluster.stop();
+	}
+
+	static String vertex(int i) {
+		return "vertex" + i;
+	}
+
+	/*
+	 * j-th neighbour of vertex i, the neighbours of a vertex are spread over the
+	 * whole graph so that searches do not stay local
+	 */
+	String neighbour(int i, int j) {
+		return vertex((int) ((i + (long) j * graphSize / (degree + 1)) % graphSize));
+	}
+
+	int randomIndex() {
+		return ThreadLocalRandom.current().nextInt(graphSize);
+	}
+
+	String randomVertex() {
+		return vertex(randomIndex());
+	}
+
+	long randomRelationId() {
+		return relationIds.get(ThreadLocalRandom.current().nextInt(relationIds.size()));
+	}
+}
@@ -1,12 +1,19 @@
 package com.graphdb;
 
 import java.util.Objects;
+import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
 import com.graphdb.agent.ClusterAgent;
+import com.graphdb.compute.ComputeWorker;
+import com.graphdb.model.GraphModelImpl;
+import com.graphdb.properties.GraphDBProperties;
+import com.graphdb.server.QueryServer;
 
 import io.atomix.core.Atomix;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
 
 public class GraphDBApplication {
 
@@ -28,5 +35,15 @@ public class GraphDBApplication {
 
 		clusterAgent.start().join();
 
+		// Takes part in the GraphCompute jobs with the vertices of the local partitions
+		new ComputeWorker(clusterAgent).start();
+
+		// Serves the graph to the QueryClients, which do not join the cluster
+		Properties props = GraphDBProperties.getGraphDBProperties();
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(clusterAgent, props.getProperty("graphName"));
+		graph.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		graph.buildAtomicMultiMap();
+		int queryPort = Integer.parseInt(memberPort) + Integer.parseInt(props.getProperty("queryPortOffset"));
+		new QueryServer<>(graph.async(), queryPort).start();
 	}
 }
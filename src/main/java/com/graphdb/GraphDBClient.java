@@ -51,10 +51,15 @@ public class GraphDBClient {
 
 		logger.info("Client started....");
 
-		Graph<String, String> graph = new GraphModelImpl<>(atomixAgent, "multimap");
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomixAgent, "multimap");
 		ProxyProtocol protocol = MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build();
 		graph.withProtocol(protocol);
+		// Consistency of the queries below, -DreadConsistency=SEQUENTIAL reads from the followers
+		ReadConsistency readConsistency = ReadConsistency
+				.valueOf(System.getProperty("readConsistency", ReadConsistency.LINEARIZABLE.name()));
+		graph.withReadProtocol(readConsistency, GraphModelImpl.readProtocol(readConsistency));
 		graph.buildAtomicMultiMap();
+		Graph<String, String> reads = graph.reads(readConsistency);
 
 		JsonAgent<Map<String, Collection<String>>> jsonAgent = new JsonAgent<>();
 
@@ -88,21 +93,21 @@ public class GraphDBClient {
 		graph.addRelation("node1", "node2", "normal", "yo", true);
 		System.out.println();
 		System.out.println("All Relations");
-		for(Map.Entry<Long, Versioned<Relation>> entry: ((GraphModelImpl<String, String>)graph).relationsMap.entrySet()){
+		for(Map.Entry<Long, Versioned<Relation>> entry: graph.relationsMap.entrySet()){
 			System.out.println(entry.getValue().value());
 		}
 		System.out.println();
 		System.out.println("graph.getRelations(\"node2\", \"node1\").size()");
-		System.out.println(graph.getRelations("node2", "node1").size());
+		System.out.println(reads.getRelations("node2", "node1").size());
 		System.out.println();
 		System.out.println("graph.getOutgoingRelations(\"node2\").size()");
-		System.out.println(graph.getOutgoingRelations("node2").size());
+		System.out.println(reads.getOutgoingRelations("node2").size());
 		System.out.println();
 		System.out.println("graph.getIncomingRelations(\"node2\").size()");
-		System.out.println(graph.getIncomingRelations("node2").size());
+		System.out.println(reads.getIncomingRelations("node2").size());
 		System.out.println();
 		System.out.println("graph.areRelated(\"node1\", \"node2\")");
-		System.out.println(graph.areRelated("node1", "node2"));
+		System.out.println(reads.areRelated("node1", "node2"));
 
 	}
 }
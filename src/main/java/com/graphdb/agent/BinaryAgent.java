@@ -0,0 +1,24 @@
+package com.graphdb.agent;
+
+import com.graphdb.model.GraphSerializers;
+
+import io.atomix.utils.serializer.Serializer;
+
+/*
+ * Binary alternative to JsonAgent for node values. The bytes are the compact
+ * Kryo encoding of GraphSerializers, much smaller than pretty printed json and
+ * stored as is by a Graph<K, byte[]>.
+ */
+public class BinaryAgent<T> {
+
+	private static Serializer serializer = GraphSerializers.SERIALIZER;
+
+	public byte[] toBinary(Object value) {
+		return serializer.encode(value);
+	}
+
+	public T fromBinary(byte[] bytes, Class<T> classOfT) {
+		return classOfT.cast(serializer.decode(bytes));
+	}
+
+}
@@ -1,18 +1,24 @@
 package com.graphdb.agent;
 
-import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Properties;
 
 import io.atomix.core.AtomixBuilder;
 import org.apache.log4j.Logger;
 
 import com.graphdb.properties.GraphDBProperties;
+import com.graphdb.properties.StorageProfile;
 
 import io.atomix.cluster.Member;
 import io.atomix.cluster.Node;
 import io.atomix.cluster.discovery.BootstrapDiscoveryProvider;
 import io.atomix.core.Atomix;
+import io.atomix.protocols.raft.partition.RaftCompactionConfig;
 import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.protocols.raft.partition.RaftPartitionGroupConfig;
+import io.atomix.protocols.raft.partition.RaftStorageConfig;
+import io.atomix.utils.memory.MemorySize;
 import io.atomix.utils.net.Address;
 
 public class ClusterAgent {
@@ -20,33 +26,56 @@ public class ClusterAgent {
 	private final static Logger logger = Logger.getLogger(ClusterAgent.class);
 	private final static String MANAGEMENT_PARTITION_NAME = "system";
 	private final static String PARTITION_GROUP_NAME = "raft";
-	private final static String HOST = "localhost";
-	private final static int PORT = 8800;
 
+	/*
+	 * Member of the cluster described by the GraphDBProperties, its partition
+	 * groups configured by their StorageProfile
+	 * 
+	 * @throws IllegalArgumentException: If the storage profile is invalid
+	 */
 	public static Atomix getDefaultAgent(String member, String portID) {
 
 		logger.info("Creating Atomix configuration");
 
 		Properties clusterProps = GraphDBProperties.getGraphDBProperties();
 		String[] members = clusterProps.getProperty("memberNames").split(",");
+		StorageProfile profile = StorageProfile.load(clusterProps);
 
 		Node[] nodes = new Node[members.length];
 		for (int i = 0; i < members.length; i++) {
-			nodes[i] = Member.builder().withId(members[i]).withAddress(new Address(HOST, PORT + i)).build();
+			nodes[i] = Member.builder().withId(members[i])
+					.withAddress(new Address(profile.getHost(), profile.getBasePort() + i)).build();
 		}
 
 		AtomixBuilder atomixBuilder = Atomix.builder().withMemberId(member)
-				.withAddress(new Address(HOST, Integer.parseInt(portID)))
+				.withAddress(new Address(profile.getHost(), Integer.parseInt(portID)))
 				.withMembershipProvider(BootstrapDiscoveryProvider.builder().withNodes(nodes).build());
 
 		atomixBuilder
-				.withManagementGroup(RaftPartitionGroup.builder(MANAGEMENT_PARTITION_NAME)
-						.withDataDirectory(new File(clusterProps.getProperty("managementData") + member))
-						.withNumPartitions(1).withMembers(members).build())
-				.withPartitionGroups(RaftPartitionGroup.builder(PARTITION_GROUP_NAME)
-						.withDataDirectory(new File(clusterProps.getProperty("propertyData") + member))
-						.withPartitionSize(2).withNumPartitions(10).withMembers(members).build());
+				.withManagementGroup(new RaftPartitionGroup(partitionGroupConfig(profile, MANAGEMENT_PARTITION_NAME,
+						clusterProps.getProperty("managementData") + member, members).setPartitions(1)))
+				.withPartitionGroups(new RaftPartitionGroup(partitionGroupConfig(profile, PARTITION_GROUP_NAME,
+						clusterProps.getProperty("propertyData") + member, members)
+								.setPartitions(profile.getNumPartitions())
+								.setPartitionSize(profile.getPartitionSize())));
 
 		return atomixBuilder.build();
 	}
+
+	/*
+	 * Raft partition group on all the members with the storage and compaction
+	 * settings of the profile, the builder of RaftPartitionGroup does not expose
+	 * the compaction ones
+	 */
+	private static RaftPartitionGroupConfig partitionGroupConfig(StorageProfile profile, String name,
+			String dataDirectory, String[] members) {
+		RaftStorageConfig storage = new RaftStorageConfig().setLevel(profile.getStorageLevel())
+				.setSegmentSize(MemorySize.from(profile.getSegmentSize()))
+				.setMaxEntrySize(MemorySize.from(profile.getMaxEntrySize()))
+				.setFlushOnCommit(profile.isFlushOnCommit()).setDirectory(dataDirectory);
+		RaftCompactionConfig compaction = new RaftCompactionConfig().setDynamic(profile.isDynamicCompaction())
+				.setFreeDiskBuffer(profile.getFreeDiskBuffer()).setFreeMemoryBuffer(profile.getFreeMemoryBuffer());
+		return new RaftPartitionGroupConfig().setName(name).setMembers(new HashSet<>(Arrays.asList(members)))
+				.setStorageConfig(storage).setCompactionConfig(compaction);
+	}
 }
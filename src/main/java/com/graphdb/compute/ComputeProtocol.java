@@ -0,0 +1,72 @@
+package com.graphdb.compute;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.graphdb.model.AdjacencyLayout;
+import com.graphdb.model.GraphSerializers;
+
+import io.atomix.utils.serializer.Serializer;
+
+/*
+ * Messages between GraphCompute and the ComputeWorkers of the members, all of
+ * them request and reply through the cluster communication service:
+ *
+ * LOAD: a worker reads its shards of the graph, replies its number of vertices
+ * STEP: a worker runs one superstep, replies once the messages it sent are
+ * delivered, with a StepReport
+ * MESSAGES: a Batch of messages from the worker of another member
+ * FINISH: a worker writes the states of its vertices and drops the job
+ */
+final class ComputeProtocol {
+
+	final static String LOAD = "graphdb-compute-load";
+	final static String STEP = "graphdb-compute-step";
+	final static String MESSAGES = "graphdb-compute-messages";
+	final static String FINISH = "graphdb-compute-finish";
+
+	// Set of the members running a ComputeWorker
+	final static String WORKERS = "graphdb-compute-workers";
+
+	final static Serializer SERIALIZER = GraphSerializers.SERIALIZER;
+
+	private ComputeProtocol() {
+	}
+
+	static class Load {
+		String jobId;
+		String graph;
+		AdjacencyLayout layout;
+		int shards;
+		// Member id of the worker of each shard
+		String[] owners;
+		VertexProgram<?, ?, ?> program;
+	}
+
+	static class Step {
+		String jobId;
+		int superstep;
+		long vertexCount;
+		HashMap<String, Double> aggregates;
+	}
+
+	static class StepReport {
+		// Vertices that did not vote to halt and messages sent, by one worker
+		long active;
+		long sent;
+		HashMap<String, Double> aggregates;
+	}
+
+	static class Batch {
+		String jobId;
+		int superstep;
+		// Destination vertex and message pairs
+		ArrayList<Object> messages;
+	}
+
+	static class Finish {
+		String jobId;
+		// Where to write the states, null to drop them
+		String resultMap;
+	}
+}
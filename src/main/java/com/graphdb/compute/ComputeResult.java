@@ -0,0 +1,72 @@
+package com.graphdb.compute;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Outcome of a GraphCompute run: the number of supersteps and of vertices, the
+ * aggregates of the last superstep, and the final states of the vertices,
+ * written by the members to a map sharded like the graph.
+ */
+public class ComputeResult<K, S> {
+
+	private final int supersteps;
+	private final long vertexCount;
+	private final Map<String, Double> aggregates;
+	private final List<AtomicMap<K, S>> states;
+	private final ToIntFunction<K> shardOf;
+
+	ComputeResult(int supersteps, long vertexCount, Map<String, Double> aggregates, List<AtomicMap<K, S>> states,
+			ToIntFunction<K> shardOf) {
+		this.supersteps = supersteps;
+		this.vertexCount = vertexCount;
+		this.aggregates = Collections.unmodifiableMap(aggregates);
+		this.states = states;
+		this.shardOf = shardOf;
+	}
+
+	public int supersteps() {
+		return supersteps;
+	}
+
+	public long vertexCount() {
+		return vertexCount;
+	}
+
+	public Map<String, Double> aggregates() {
+		return aggregates;
+	}
+
+	/*
+	 * @return: The final state of the vertex, null if it has none or the
+	 * states were not kept
+	 */
+	public S state(K vertex) {
+		if (states == null) {
+			return null;
+		}
+		Versioned<S> state = states.get(shardOf.applyAsInt(vertex)).get(vertex);
+		return state == null ? null : state.value();
+	}
+
+	/*
+	 * Reads the final states shard by shard
+	 */
+	public void forEachState(BiConsumer<K, S> consumer) {
+		if (states == null) {
+			return;
+		}
+		for (AtomicMap<K, S> shard : states) {
+			for (Entry<K, Versioned<S>> entry : shard.entrySet()) {
+				consumer.accept(entry.getKey(), entry.getValue().value());
+			}
+		}
+	}
+}
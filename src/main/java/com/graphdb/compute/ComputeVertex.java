@@ -0,0 +1,62 @@
+package com.graphdb.compute;
+
+import java.util.List;
+
+/*
+ * The vertex a VertexProgram is computing, with its state, its neighbours and
+ * the messages and aggregates it can send. Only valid during the call of
+ * compute it is given to.
+ */
+public interface ComputeVertex<K, S, M> {
+
+	K key();
+
+	S state();
+
+	void setState(S state);
+
+	int superstep();
+
+	/*
+	 * Number of vertices of the graph when the run started
+	 */
+	long vertexCount();
+
+	/*
+	 * Destination of each outgoing relation of the vertex, a bi-directional
+	 * relation counting in both directions
+	 */
+	List<K> outgoing();
+
+	/*
+	 * Source of each incoming relation of the vertex
+	 */
+	List<K> incoming();
+
+	/*
+	 * Sends a message for the next superstep. Messages to a vertex that is not
+	 * a node of the graph are dropped.
+	 */
+	void send(K to, M message);
+
+	void sendToOutgoing(M message);
+
+	/*
+	 * Sends the message along every relation of the vertex, in both directions
+	 */
+	void sendToNeighbours(M message);
+
+	/*
+	 * Adds the value to the named sum of this superstep, read by every vertex
+	 * in the next superstep with aggregated and returned by the run after the
+	 * last superstep
+	 */
+	void aggregate(String name, double value);
+
+	/*
+	 * Named sum of the previous superstep, 0 if nothing was added to it
+	 */
+	double aggregated(String name);
+
+	void voteToHalt();
+}
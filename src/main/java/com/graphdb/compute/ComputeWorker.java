@@ -0,0 +1,163 @@
+package com.graphdb.compute;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.graphdb.compute.ComputeProtocol.Batch;
+import com.graphdb.compute.ComputeProtocol.Finish;
+import com.graphdb.compute.ComputeProtocol.Load;
+import com.graphdb.compute.ComputeProtocol.Step;
+import com.graphdb.compute.ComputeProtocol.StepReport;
+import com.graphdb.model.GraphModelImpl;
+
+import io.atomix.cluster.MemberId;
+import io.atomix.cluster.messaging.ClusterCommunicationService;
+import io.atomix.core.Atomix;
+import io.atomix.primitive.protocol.ProxyProtocol;
+
+/*
+ * Runs the part of the GraphCompute jobs of one member: loads the shards of
+ * the graph it is given, computes their vertices superstep by superstep and
+ * exchanges messages with the workers of the other members. Every member
+ * that should take part in the analytics starts one worker after starting
+ * Atomix, see GraphDBApplication.
+ *
+ * The worker opens the graphs of the jobs by name, with the protocol set by
+ * withProtocol, which must place the maps as the protocol of the graphs does.
+ */
+public class ComputeWorker {
+
+	private final static Logger logger = Logger.getLogger(ComputeWorker.class);
+
+	private final Atomix atomix;
+	private final ClusterCommunicationService messaging;
+	private ProxyProtocol protocol;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Duration timeout = Duration.ofMinutes(1);
+	private final Map<String, GraphModelImpl<?, ?>> graphs = new ConcurrentHashMap<>();
+	private final Map<String, WorkerJob<?, ?, ?>> jobs = new ConcurrentHashMap<>();
+	// Loads, supersteps and finishes run one at a time on control, batches of messages on delivery
+	private ExecutorService control;
+	private ExecutorService compute;
+	private ExecutorService delivery;
+
+	public ComputeWorker(Atomix atomix) {
+		this.atomix = atomix;
+		this.messaging = atomix.getCommunicationService();
+	}
+
+	public ComputeWorker withProtocol(ProxyProtocol protocol) {
+		this.protocol = protocol;
+		return this;
+	}
+
+	/*
+	 * Number of shards computed in parallel, the number of processors by default
+	 */
+	public ComputeWorker withThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/*
+	 * Timeout of the delivery of a batch of messages to another member
+	 */
+	public ComputeWorker withTimeout(Duration timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	public synchronized void start() {
+		control = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-compute-control").build());
+		compute = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-compute-%d").build());
+		delivery = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-compute-delivery-%d").build());
+
+		messaging.<Load, Long>subscribe(ComputeProtocol.LOAD, ComputeProtocol.SERIALIZER::decode, this::load,
+				ComputeProtocol.SERIALIZER::encode, control).join();
+		messaging.<Step, StepReport>subscribe(ComputeProtocol.STEP, ComputeProtocol.SERIALIZER::decode,
+				step -> job(step.jobId).step(step), ComputeProtocol.SERIALIZER::encode, control).join();
+		messaging.<Batch, Boolean>subscribe(ComputeProtocol.MESSAGES, ComputeProtocol.SERIALIZER::decode, batch -> {
+			job(batch.jobId).receive(batch);
+			return true;
+		}, ComputeProtocol.SERIALIZER::encode, delivery).join();
+		messaging.<Finish, Long>subscribe(ComputeProtocol.FINISH, ComputeProtocol.SERIALIZER::decode, this::finish,
+				ComputeProtocol.SERIALIZER::encode, control).join();
+
+		atomix.<String>getSet(ComputeProtocol.WORKERS).add(localMember().id());
+		logger.info("Compute worker started on " + localMember());
+	}
+
+	public synchronized void stop() {
+		atomix.<String>getSet(ComputeProtocol.WORKERS).remove(localMember().id());
+		messaging.unsubscribe(ComputeProtocol.LOAD);
+		messaging.unsubscribe(ComputeProtocol.STEP);
+		messaging.unsubscribe(ComputeProtocol.MESSAGES);
+		messaging.unsubscribe(ComputeProtocol.FINISH);
+		control.shutdown();
+		compute.shutdown();
+		delivery.shutdown();
+		jobs.clear();
+		logger.info("Compute worker stopped on " + localMember());
+	}
+
+	private MemberId localMember() {
+		return atomix.getMembershipService().getLocalMember().id();
+	}
+
+	private WorkerJob<?, ?, ?> job(String jobId) {
+		WorkerJob<?, ?, ?> job = jobs.get(jobId);
+		if (job == null) {
+			throw new IllegalStateException(String.format("No compute job %s on %s", jobId, localMember()));
+		}
+		return job;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Long load(Load load) {
+		long start = System.currentTimeMillis();
+		MemberId[] owners = new MemberId[load.owners.length];
+		for (int shard = 0; shard < owners.length; shard++) {
+			owners[shard] = MemberId.from(load.owners[shard]);
+		}
+		WorkerJob<?, ?, ?> job = new WorkerJob(load.jobId, graph(load), load.program, localMember(), owners,
+				messaging, compute, timeout);
+		jobs.put(load.jobId, job);
+		long vertices = job.load();
+		logger.info(String.format("Loaded %s vertices of %s for job %s in %s ms", vertices, load.graph, load.jobId,
+				System.currentTimeMillis() - start));
+		return vertices;
+	}
+
+	/*
+	 * Graph of the job, opened on first use without near caches since the
+	 * vertices are read once per job
+	 */
+	private GraphModelImpl<?, ?> graph(Load load) {
+		return graphs.computeIfAbsent(load.graph + "/" + load.layout + "/" + load.shards, key -> {
+			GraphModelImpl<?, ?> graph = new GraphModelImpl<>(atomix, load.graph, load.layout, load.shards);
+			if (protocol != null) {
+				graph.withProtocol(protocol);
+			}
+			graph.withCacheSize(0);
+			graph.buildAtomicMultiMap();
+			return graph;
+		});
+	}
+
+	private Long finish(Finish finish) {
+		WorkerJob<?, ?, ?> job = jobs.remove(finish.jobId);
+		if (job == null || finish.resultMap == null) {
+			return 0L;
+		}
+		return job.finish(finish.resultMap);
+	}
+}
@@ -0,0 +1,39 @@
+package com.graphdb.compute;
+
+/*
+ * Weakly connected components by label propagation, the relations taken in
+ * both directions. The state of a vertex ends as the smallest vertex of its
+ * component, which identifies the component.
+ */
+public class ConnectedComponents<K extends Comparable<K>> implements VertexProgram<K, K, K> {
+
+	@Override
+	public K initialState(K vertex) {
+		return vertex;
+	}
+
+	@Override
+	public void compute(ComputeVertex<K, K, K> vertex, Iterable<K> messages) {
+		K component = vertex.state();
+		for (K message : messages) {
+			if (message.compareTo(component) < 0) {
+				component = message;
+			}
+		}
+		if (vertex.superstep() == 0 || !component.equals(vertex.state())) {
+			vertex.setState(component);
+			vertex.sendToNeighbours(component);
+		}
+		vertex.voteToHalt();
+	}
+
+	@Override
+	public boolean combines() {
+		return true;
+	}
+
+	@Override
+	public K combine(K first, K second) {
+		return first.compareTo(second) <= 0 ? first : second;
+	}
+}
@@ -0,0 +1,59 @@
+package com.graphdb.compute;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+ * Number of vertices of each degree, counted in one superstep as aggregates
+ * named DEGREE followed by the degree. The state of a vertex is its degree.
+ */
+public class DegreeDistribution<K> implements VertexProgram<K, Integer, Void> {
+
+	public final static String DEGREE = "degree.";
+
+	private boolean outgoing;
+
+	/*
+	 * Distribution of the out degrees
+	 */
+	public DegreeDistribution() {
+		this(true);
+	}
+
+	public DegreeDistribution(boolean outgoing) {
+		this.outgoing = outgoing;
+	}
+
+	@Override
+	public Integer initialState(K vertex) {
+		return null;
+	}
+
+	@Override
+	public void compute(ComputeVertex<K, Integer, Void> vertex, Iterable<Void> messages) {
+		int degree = outgoing ? vertex.outgoing().size() : vertex.incoming().size();
+		vertex.setState(degree);
+		vertex.aggregate(DEGREE + degree, 1);
+		vertex.voteToHalt();
+	}
+
+	@Override
+	public int maxSupersteps() {
+		return 1;
+	}
+
+	/*
+	 * @return: The number of vertices by degree, from the aggregates of a run
+	 */
+	public static SortedMap<Integer, Long> distribution(ComputeResult<?, Integer> result) {
+		SortedMap<Integer, Long> distribution = new TreeMap<>();
+		for (Map.Entry<String, Double> aggregate : result.aggregates().entrySet()) {
+			if (aggregate.getKey().startsWith(DEGREE)) {
+				distribution.put(Integer.parseInt(aggregate.getKey().substring(DEGREE.length())),
+						Math.round(aggregate.getValue()));
+			}
+		}
+		return distribution;
+	}
+}
@@ -0,0 +1,197 @@
+package com.graphdb.compute;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.log4j.Logger;
+
+import com.graphdb.compute.ComputeProtocol.Finish;
+import com.graphdb.compute.ComputeProtocol.Load;
+import com.graphdb.compute.ComputeProtocol.Step;
+import com.graphdb.compute.ComputeProtocol.StepReport;
+import com.graphdb.model.GraphModelImpl;
+
+import io.atomix.cluster.Member;
+import io.atomix.cluster.MemberId;
+import io.atomix.cluster.messaging.ClusterCommunicationService;
+import io.atomix.core.Atomix;
+import io.atomix.core.map.AtomicMap;
+
+/*
+ * Runs VertexPrograms over a graph in bulk synchronous supersteps on the
+ * ComputeWorkers of the cluster, instead of reading the whole graph into one
+ * JVM. Each shard of the graph is given to one worker, the worker of the
+ * member leading the partition of the shard if it runs one, so the vertices,
+ * their state and their messages are spread over the members and a worker
+ * reads its shards from its own partitions. The messages between vertices of
+ * different members go through Atomix messaging in batches.
+ *
+ * The coordinator only sends the supersteps and sums what the workers report,
+ * it can run on any member, with or without a worker of its own.
+ */
+public class GraphCompute {
+
+	private final static Logger logger = Logger.getLogger(GraphCompute.class);
+
+	private final Atomix atomix;
+	private final ClusterCommunicationService messaging;
+	private Duration timeout = Duration.ofMinutes(10);
+
+	public GraphCompute(Atomix atomix) {
+		this.atomix = atomix;
+		this.messaging = atomix.getCommunicationService();
+	}
+
+	/*
+	 * Timeout of the load, of each superstep and of the writing of the states
+	 * on a worker
+	 */
+	public GraphCompute withTimeout(Duration timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	/*
+	 * Runs the program and keeps the final states of the vertices in the
+	 * sharded map <graph>_<program class>, see run(graph, program, resultMap)
+	 */
+	public <K, S, M> ComputeResult<K, S> run(GraphModelImpl<K, ?> graph, VertexProgram<K, S, M> program) {
+		return run(graph, program, graph.name() + "_" + program.getClass().getSimpleName());
+	}
+
+	/*
+	 * Runs the program on the vertices of the graph, the nodes, and its
+	 * relations as read when the run starts.
+	 *
+	 * resultMap: Name of the map the final states are written to, split like
+	 * the maps of the graph with GraphModelImpl.shardedMap and cleared first.
+	 * null to keep only the aggregates.
+	 */
+	public <K, S, M> ComputeResult<K, S> run(GraphModelImpl<K, ?> graph, VertexProgram<K, S, M> program,
+			String resultMap) {
+		long start = System.currentTimeMillis();
+		List<MemberId> workers = workers();
+		if (workers.isEmpty()) {
+			throw new IllegalStateException("No member runs a ComputeWorker");
+		}
+		String jobId = UUID.randomUUID().toString();
+		List<AtomicMap<K, S>> states = null;
+		if (resultMap != null) {
+			states = graph.shardedMap(resultMap);
+			states.forEach(AtomicMap::clear);
+		}
+
+		Load load = new Load();
+		load.jobId = jobId;
+		load.graph = graph.name();
+		load.layout = graph.layout();
+		load.shards = graph.shardCount();
+		load.owners = owners(graph, workers);
+		load.program = program;
+		boolean finished = false;
+		try {
+			long vertexCount = 0;
+			for (Long vertices : this.<Load, Long>sendAll(ComputeProtocol.LOAD, load, workers)) {
+				vertexCount += vertices;
+			}
+
+			HashMap<String, Double> aggregates = new HashMap<>();
+			int superstep = 0;
+			while (superstep < program.maxSupersteps()) {
+				Step step = new Step();
+				step.jobId = jobId;
+				step.superstep = superstep;
+				step.vertexCount = vertexCount;
+				step.aggregates = aggregates;
+				long active = 0;
+				long sent = 0;
+				HashMap<String, Double> sums = new HashMap<>();
+				for (StepReport report : this.<Step, StepReport>sendAll(ComputeProtocol.STEP, step, workers)) {
+					active += report.active;
+					sent += report.sent;
+					report.aggregates.forEach((name, value) -> sums.merge(name, value, Double::sum));
+				}
+				aggregates = sums;
+				superstep++;
+				logger.debug(String.format("Superstep %s of job %s: %s active vertices, %s messages", superstep,
+						jobId, active, sent));
+				if (active == 0 && sent == 0) {
+					break;
+				}
+			}
+
+			Finish finish = new Finish();
+			finish.jobId = jobId;
+			finish.resultMap = resultMap;
+			sendAll(ComputeProtocol.FINISH, finish, workers);
+			finished = true;
+			logger.info(String.format("Ran %s on %s in %s supersteps on %s members in %s ms",
+					program.getClass().getSimpleName(), graph.name(), superstep, workers.size(),
+					System.currentTimeMillis() - start));
+			return new ComputeResult<>(superstep, vertexCount, aggregates, states, graph::shardOf);
+		} finally {
+			if (!finished) {
+				Finish abort = new Finish();
+				abort.jobId = jobId;
+				workers.forEach(worker -> messaging.send(ComputeProtocol.FINISH, abort,
+						ComputeProtocol.SERIALIZER::encode, ComputeProtocol.SERIALIZER::decode, worker, timeout));
+			}
+		}
+	}
+
+	/*
+	 * Reachable members that started a ComputeWorker, in a stable order
+	 */
+	private List<MemberId> workers() {
+		List<MemberId> workers = new ArrayList<>();
+		for (String id : new TreeSet<>(atomix.<String>getSet(ComputeProtocol.WORKERS))) {
+			Member member = atomix.getMembershipService().getMember(id);
+			if (member != null && member.isReachable()) {
+				workers.add(member.id());
+			}
+		}
+		return workers;
+	}
+
+	/*
+	 * Worker of each shard, the leader of the partition of the shard when it is
+	 * a worker, the workers in turn otherwise
+	 */
+	private String[] owners(GraphModelImpl<?, ?> graph, List<MemberId> workers) {
+		String[] owners = new String[graph.shardCount()];
+		int next = 0;
+		for (int shard = 0; shard < owners.length; shard++) {
+			MemberId leader = graph.shardLeader(shard);
+			MemberId owner = leader != null && workers.contains(leader) ? leader
+					: workers.get(next++ % workers.size());
+			owners[shard] = owner.id();
+		}
+		return owners;
+	}
+
+	/*
+	 * Sends the request to every worker and waits for all the replies
+	 */
+	private <T, R> List<R> sendAll(String subject, T request, List<MemberId> workers) {
+		List<CompletableFuture<R>> replies = new ArrayList<>();
+		for (MemberId worker : workers) {
+			replies.add(messaging.send(subject, request, ComputeProtocol.SERIALIZER::encode,
+					ComputeProtocol.SERIALIZER::decode, worker, timeout));
+		}
+		try {
+			CompletableFuture.allOf(replies.toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			throw new IllegalStateException(String.format("Compute request %s failed", subject), e.getCause());
+		}
+		List<R> results = new ArrayList<>(replies.size());
+		replies.forEach(reply -> results.add(reply.join()));
+		return results;
+	}
+}
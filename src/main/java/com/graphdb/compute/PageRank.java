@@ -0,0 +1,73 @@
+package com.graphdb.compute;
+
+import java.util.List;
+
+/*
+ * PageRank by power iteration, the state of a vertex is its rank and the
+ * ranks sum to 1. A vertex shares its rank among its outgoing relations, the
+ * rank of the vertices without outgoing relations is summed in the DANGLING
+ * aggregate and spread over all the vertices in the next superstep.
+ */
+public class PageRank<K> implements VertexProgram<K, Double, Double> {
+
+	public final static String DANGLING = "pagerank.dangling";
+
+	private int iterations;
+	private double damping;
+
+	public PageRank() {
+		this(20, 0.85);
+	}
+
+	public PageRank(int iterations, double damping) {
+		this.iterations = iterations;
+		this.damping = damping;
+	}
+
+	@Override
+	public Double initialState(K vertex) {
+		return null;
+	}
+
+	@Override
+	public void compute(ComputeVertex<K, Double, Double> vertex, Iterable<Double> messages) {
+		double vertices = vertex.vertexCount();
+		double rank;
+		if (vertex.superstep() == 0) {
+			rank = 1 / vertices;
+		} else {
+			double received = 0;
+			for (double message : messages) {
+				received += message;
+			}
+			rank = (1 - damping) / vertices + damping * (received + vertex.aggregated(DANGLING) / vertices);
+		}
+		vertex.setState(rank);
+
+		if (vertex.superstep() < iterations) {
+			List<K> outgoing = vertex.outgoing();
+			if (outgoing.isEmpty()) {
+				vertex.aggregate(DANGLING, rank);
+			} else {
+				vertex.sendToOutgoing(rank / outgoing.size());
+			}
+		} else {
+			vertex.voteToHalt();
+		}
+	}
+
+	@Override
+	public boolean combines() {
+		return true;
+	}
+
+	@Override
+	public Double combine(Double first, Double second) {
+		return first + second;
+	}
+
+	@Override
+	public int maxSupersteps() {
+		return iterations + 1;
+	}
+}
@@ -0,0 +1,40 @@
+package com.graphdb.compute;
+
+/*
+ * A vertex centric algorithm run by GraphCompute in supersteps. In every
+ * superstep compute is called on each active vertex and on each vertex that
+ * received messages, with the messages sent to it in the previous superstep. A
+ * vertex stays active until it votes to halt and is woken up by the next
+ * message sent to it. The run ends once every vertex has halted with no
+ * message in flight, or after maxSupersteps.
+ *
+ * The program is sent to the members encoded with GraphSerializers.SERIALIZER,
+ * so it must be a plain object holding its parameters, without lambdas.
+ *
+ * K: The type of the vertices, S: the state of a vertex, M: the messages
+ */
+public interface VertexProgram<K, S, M> {
+
+	/*
+	 * State of a vertex before the first superstep
+	 */
+	S initialState(K vertex);
+
+	void compute(ComputeVertex<K, S, M> vertex, Iterable<M> messages);
+
+	/*
+	 * true if the messages to a vertex can be merged with combine, then a
+	 * vertex is sent at most one message per member and superstep
+	 */
+	default boolean combines() {
+		return false;
+	}
+
+	default M combine(M first, M second) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not combine messages");
+	}
+
+	default int maxSupersteps() {
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,380 @@
+package com.graphdb.compute;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.graphdb.compute.ComputeProtocol.Batch;
+import com.graphdb.compute.ComputeProtocol.Step;
+import com.graphdb.compute.ComputeProtocol.StepReport;
+import com.graphdb.model.GraphModelImpl;
+
+import io.atomix.cluster.MemberId;
+import io.atomix.cluster.messaging.ClusterCommunicationService;
+import io.atomix.core.map.AsyncAtomicMap;
+import io.atomix.core.map.AtomicMap;
+
+/*
+ * The part of a GraphCompute run done by one member: the vertices of the
+ * shards it was given, with their state, their neighbours and the messages
+ * sent to them. The shards are computed in parallel, one task per shard.
+ *
+ * Messages sent in a superstep are kept by the parity of the superstep, so the
+ * messages of the next superstep can arrive while the current one is read.
+ */
+class WorkerJob<K, S, M> {
+
+	// Vertices read together from an adjacency index
+	private final static int SCAN_BATCH = 256;
+	// Messages sent to another member in one Batch
+	private final static int BATCH_MESSAGES = 4096;
+	// Puts of the states in flight per shard
+	private final static int WRITE_WINDOW = 1000;
+
+	private static class Vertex<K, S> {
+		private final K key;
+		private S state;
+		private List<K> outgoing = Collections.emptyList();
+		private List<K> incoming = Collections.emptyList();
+		private boolean halted;
+		// Messages by parity of the superstep they are for, combined or in an ArrayList
+		private final Object[] inbox = new Object[2];
+
+		Vertex(K key, S state) {
+			this.key = key;
+			this.state = state;
+		}
+	}
+
+	private final String id;
+	private final GraphModelImpl<K, ?> graph;
+	private final VertexProgram<K, S, M> program;
+	private final MemberId localMember;
+	private final MemberId[] owners;
+	private final ClusterCommunicationService messaging;
+	private final Executor executor;
+	private final Duration timeout;
+	// Vertices of the shards of this member, a shard is published once loaded
+	private final Map<Integer, Map<K, Vertex<K, S>>> vertices = new ConcurrentHashMap<>();
+
+	private volatile int superstep;
+	private volatile long vertexCount;
+	private volatile Map<String, Double> aggregated = Collections.emptyMap();
+
+	WorkerJob(String id, GraphModelImpl<K, ?> graph, VertexProgram<K, S, M> program, MemberId localMember,
+			MemberId[] owners, ClusterCommunicationService messaging, Executor executor, Duration timeout) {
+		this.id = id;
+		this.graph = graph;
+		this.program = program;
+		this.localMember = localMember;
+		this.owners = owners;
+		this.messaging = messaging;
+		this.executor = executor;
+		this.timeout = timeout;
+	}
+
+	/*
+	 * @return: Number of vertices of the shards of this member
+	 */
+	long load() {
+		List<CompletableFuture<Void>> loads = new ArrayList<>();
+		for (int shard = 0; shard < owners.length; shard++) {
+			if (owners[shard].equals(localMember)) {
+				int loaded = shard;
+				loads.add(CompletableFuture.runAsync(() -> loadShard(loaded), executor));
+			}
+		}
+		CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+		long count = 0;
+		for (Map<K, Vertex<K, S>> shardVertices : vertices.values()) {
+			count += shardVertices.size();
+		}
+		return count;
+	}
+
+	private void loadShard(int shard) {
+		Map<K, Vertex<K, S>> shardVertices = new HashMap<>();
+		graph.scanVertices(shard, key -> shardVertices.put(key, new Vertex<>(key, program.initialState(key))));
+		graph.scanNeighbours(shard, true, SCAN_BATCH, (key, neighbours) -> {
+			Vertex<K, S> vertex = shardVertices.get(key);
+			if (vertex != null) {
+				vertex.outgoing = neighbours;
+			}
+		});
+		graph.scanNeighbours(shard, false, SCAN_BATCH, (key, neighbours) -> {
+			Vertex<K, S> vertex = shardVertices.get(key);
+			if (vertex != null) {
+				vertex.incoming = neighbours;
+			}
+		});
+		vertices.put(shard, shardVertices);
+	}
+
+	/*
+	 * Computes the superstep on every shard, then waits for the other members
+	 * to acknowledge the messages sent to them
+	 */
+	StepReport step(Step step) {
+		superstep = step.superstep;
+		vertexCount = step.vertexCount;
+		aggregated = step.aggregates;
+
+		Map<String, Double> aggregates = new ConcurrentHashMap<>();
+		Queue<CompletableFuture<Void>> sends = new ConcurrentLinkedQueue<>();
+		LongAdder active = new LongAdder();
+		LongAdder sent = new LongAdder();
+		List<CompletableFuture<Void>> computes = new ArrayList<>();
+		for (Map<K, Vertex<K, S>> shardVertices : vertices.values()) {
+			computes.add(CompletableFuture.runAsync(
+					() -> new Context(aggregates, sends, active, sent).compute(shardVertices), executor));
+		}
+		CompletableFuture.allOf(computes.toArray(new CompletableFuture[0])).join();
+		CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+
+		StepReport report = new StepReport();
+		report.active = active.sum();
+		report.sent = sent.sum();
+		report.aggregates = new HashMap<>(aggregates);
+		return report;
+	}
+
+	@SuppressWarnings("unchecked")
+	void receive(Batch batch) {
+		List<Object> messages = batch.messages;
+		for (int i = 0; i < messages.size(); i += 2) {
+			deliver(batch.superstep, (K) messages.get(i), (M) messages.get(i + 1));
+		}
+	}
+
+	/*
+	 * Adds a message sent in the given superstep to the inbox of its vertex,
+	 * dropped if the vertex is not a node of the graph
+	 */
+	@SuppressWarnings("unchecked")
+	private void deliver(int sentIn, K to, M message) {
+		Map<K, Vertex<K, S>> shardVertices = vertices.get(graph.shardOf(to));
+		Vertex<K, S> vertex = shardVertices == null ? null : shardVertices.get(to);
+		if (vertex == null) {
+			return;
+		}
+		int slot = sentIn + 1 & 1;
+		synchronized (vertex) {
+			Object messages = vertex.inbox[slot];
+			if (program.combines()) {
+				vertex.inbox[slot] = messages == null ? message : program.combine((M) messages, message);
+			} else {
+				if (messages == null) {
+					messages = new ArrayList<M>();
+					vertex.inbox[slot] = messages;
+				}
+				((List<M>) messages).add(message);
+			}
+		}
+	}
+
+	/*
+	 * Writes the state of every vertex of this member to the sharded result
+	 * map, vertices without a state are left out
+	 *
+	 * @return: Number of states written
+	 */
+	long finish(String resultMap) {
+		List<AtomicMap<K, S>> maps = graph.shardedMap(resultMap);
+		long written = 0;
+		for (Map.Entry<Integer, Map<K, Vertex<K, S>>> shard : vertices.entrySet()) {
+			AsyncAtomicMap<K, S> map = maps.get(shard.getKey()).async();
+			List<CompletableFuture<?>> writes = new ArrayList<>(WRITE_WINDOW);
+			for (Vertex<K, S> vertex : shard.getValue().values()) {
+				if (vertex.state == null) {
+					continue;
+				}
+				writes.add(map.put(vertex.key, vertex.state));
+				written++;
+				if (writes.size() == WRITE_WINDOW) {
+					CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+					writes.clear();
+				}
+			}
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+		}
+		return written;
+	}
+
+	/*
+	 * Computes the vertices of one shard, the vertex given to the program is
+	 * this context pointed at each vertex in turn. Messages to other members
+	 * are buffered by member and sent in batches.
+	 */
+	private class Context implements ComputeVertex<K, S, M> {
+
+		private final Map<String, Double> aggregates;
+		private final Queue<CompletableFuture<Void>> sends;
+		private final LongAdder active;
+		private final LongAdder sent;
+		private final Map<String, Double> localAggregates = new HashMap<>();
+		private final Map<MemberId, ArrayList<Object>> outboxes = new HashMap<>();
+		private final Map<MemberId, Map<K, M>> combinedOutboxes = new HashMap<>();
+		private Vertex<K, S> vertex;
+
+		Context(Map<String, Double> aggregates, Queue<CompletableFuture<Void>> sends, LongAdder active,
+				LongAdder sent) {
+			this.aggregates = aggregates;
+			this.sends = sends;
+			this.active = active;
+			this.sent = sent;
+		}
+
+		@SuppressWarnings("unchecked")
+		void compute(Map<K, Vertex<K, S>> shardVertices) {
+			int slot = superstep & 1;
+			for (Vertex<K, S> next : shardVertices.values()) {
+				Object messages;
+				synchronized (next) {
+					messages = next.inbox[slot];
+					next.inbox[slot] = null;
+				}
+				if (next.halted && messages == null) {
+					continue;
+				}
+				next.halted = false;
+				vertex = next;
+				Iterable<M> received;
+				if (messages == null) {
+					received = Collections.emptyList();
+				} else if (program.combines()) {
+					received = Collections.singletonList((M) messages);
+				} else {
+					received = (List<M>) messages;
+				}
+				program.compute(this, received);
+				if (!next.halted) {
+					active.increment();
+				}
+			}
+			vertex = null;
+			outboxes.forEach((member, messages) -> flush(member, messages));
+			combinedOutboxes.forEach((member, messages) -> flush(member, pairs(messages)));
+			localAggregates.forEach((name, value) -> aggregates.merge(name, value, Double::sum));
+		}
+
+		private ArrayList<Object> pairs(Map<K, M> messages) {
+			ArrayList<Object> pairs = new ArrayList<>(messages.size() * 2);
+			messages.forEach((to, message) -> {
+				pairs.add(to);
+				pairs.add(message);
+			});
+			return pairs;
+		}
+
+		private void flush(MemberId member, ArrayList<Object> messages) {
+			if (messages.isEmpty()) {
+				return;
+			}
+			Batch batch = new Batch();
+			batch.jobId = id;
+			batch.superstep = superstep;
+			batch.messages = new ArrayList<>(messages);
+			messages.clear();
+			sends.add(messaging.<Batch, Boolean>send(ComputeProtocol.MESSAGES, batch,
+					ComputeProtocol.SERIALIZER::encode, ComputeProtocol.SERIALIZER::decode, member, timeout)
+					.thenApply(delivered -> null));
+		}
+
+		@Override
+		public K key() {
+			return vertex.key;
+		}
+
+		@Override
+		public S state() {
+			return vertex.state;
+		}
+
+		@Override
+		public void setState(S state) {
+			vertex.state = state;
+		}
+
+		@Override
+		public int superstep() {
+			return superstep;
+		}
+
+		@Override
+		public long vertexCount() {
+			return vertexCount;
+		}
+
+		@Override
+		public List<K> outgoing() {
+			return Collections.unmodifiableList(vertex.outgoing);
+		}
+
+		@Override
+		public List<K> incoming() {
+			return Collections.unmodifiableList(vertex.incoming);
+		}
+
+		@Override
+		public void send(K to, M message) {
+			sent.increment();
+			MemberId owner = owners[graph.shardOf(to)];
+			if (owner.equals(localMember)) {
+				deliver(superstep, to, message);
+			} else if (program.combines()) {
+				Map<K, M> messages = combinedOutboxes.computeIfAbsent(owner, member -> new HashMap<>());
+				messages.merge(to, message, program::combine);
+				if (messages.size() == BATCH_MESSAGES) {
+					flush(owner, pairs(messages));
+					messages.clear();
+				}
+			} else {
+				ArrayList<Object> messages = outboxes.computeIfAbsent(owner, member -> new ArrayList<>());
+				messages.add(to);
+				messages.add(message);
+				if (messages.size() == BATCH_MESSAGES * 2) {
+					flush(owner, messages);
+				}
+			}
+		}
+
+		@Override
+		public void sendToOutgoing(M message) {
+			for (K to : vertex.outgoing) {
+				send(to, message);
+			}
+		}
+
+		@Override
+		public void sendToNeighbours(M message) {
+			sendToOutgoing(message);
+			for (K to : vertex.incoming) {
+				send(to, message);
+			}
+		}
+
+		@Override
+		public void aggregate(String name, double value) {
+			localAggregates.merge(name, value, Double::sum);
+		}
+
+		@Override
+		public double aggregated(String name) {
+			return aggregated.getOrDefault(name, 0.0);
+		}
+
+		@Override
+		public void voteToHalt() {
+			vertex.halted = true;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.graphdb.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Attempt and conflict counters of the compare-and-set updates of one
+ * adjacency index, see GraphMetrics.contention. The conflicts are also counted
+ * per vertex, for the first MAX_VERTICES vertices that conflict.
+ */
+public class ContentionStats implements ContentionStatsMXBean {
+
+	final static int MAX_VERTICES = 1024;
+	private final static int HOT_VERTICES = 10;
+
+	private final LongAdder attempts = new LongAdder();
+	private final LongAdder conflicts = new LongAdder();
+	private final LongAdder combined = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+	private final Map<String, LongAdder> vertexConflicts = new ConcurrentHashMap<>();
+
+	ContentionStats() {
+	}
+
+	public void recordAttempt() {
+		attempts.increment();
+	}
+
+	public void recordConflict(Object vertex) {
+		conflicts.increment();
+		String key = String.valueOf(vertex);
+		LongAdder counter = vertexConflicts.get(key);
+		if (counter == null && vertexConflicts.size() < MAX_VERTICES) {
+			counter = vertexConflicts.computeIfAbsent(key, k -> new LongAdder());
+		}
+		if (counter != null) {
+			counter.increment();
+		}
+	}
+
+	public void recordCombined(int count) {
+		combined.add(count);
+	}
+
+	public void recordExhausted() {
+		exhausted.increment();
+	}
+
+	void reset() {
+		attempts.reset();
+		conflicts.reset();
+		combined.reset();
+		exhausted.reset();
+		vertexConflicts.clear();
+	}
+
+	@Override
+	public long getAttempts() {
+		return attempts.sum();
+	}
+
+	@Override
+	public long getConflicts() {
+		return conflicts.sum();
+	}
+
+	@Override
+	public double getConflictRate() {
+		long attempted = getAttempts();
+		return attempted == 0 ? 0 : (double) getConflicts() / attempted;
+	}
+
+	@Override
+	public long getCombined() {
+		return combined.sum();
+	}
+
+	@Override
+	public long getExhausted() {
+		return exhausted.sum();
+	}
+
+	@Override
+	public Map<String, Long> getHotVertices() {
+		return hottest(HOT_VERTICES);
+	}
+
+	/*
+	 * The count vertices with the most conflicts, most first
+	 */
+	public Map<String, Long> hottest(int count) {
+		Map<String, Long> hottest = new LinkedHashMap<>();
+		vertexConflicts.entrySet().stream()
+				.sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum())).limit(count)
+				.forEach(entry -> hottest.put(entry.getKey(), entry.getValue().sum()));
+		return hottest;
+	}
+}
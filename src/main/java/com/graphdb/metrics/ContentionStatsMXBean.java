@@ -0,0 +1,36 @@
+package com.graphdb.metrics;
+
+import java.util.Map;
+
+/*
+ * JMX view of the compare-and-set updates of one adjacency index of a graph
+ */
+public interface ContentionStatsMXBean {
+
+	/*
+	 * Conditional writes sent, successful or not
+	 */
+	public long getAttempts();
+
+	/*
+	 * Writes rejected because another client wrote the vertex since it was read
+	 */
+	public long getConflicts();
+
+	public double getConflictRate();
+
+	/*
+	 * Changes written together with an earlier change of the same vertex
+	 */
+	public long getCombined();
+
+	/*
+	 * Changes failed after the last attempt
+	 */
+	public long getExhausted();
+
+	/*
+	 * The vertices with the most conflicts and their number of conflicts
+	 */
+	public Map<String, Long> getHotVertices();
+}
@@ -0,0 +1,266 @@
+package com.graphdb.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.atomix.utils.serializer.Serializer;
+
+/*
+ * Latency, throughput, round trip and byte metrics of the operations of one
+ * graph, the bytes all its maps read and write together, the statistics of its
+ * near caches and the contention of its adjacency indexes. The metrics can be published through
+ * JMX with register and logged periodically with startReporting. Disabled
+ * metrics cost a volatile read per call.
+ */
+public class GraphMetrics implements GraphMetricsMXBean {
+
+	private final static Logger logger = Logger.getLogger(GraphMetrics.class);
+	private final static String DOMAIN = "com.graphdb";
+
+	private final String graphName;
+	private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+	private final Map<String, NearCacheStats> caches = new ConcurrentHashMap<>();
+	private final Map<String, ContentionStats> contentions = new ConcurrentHashMap<>();
+	private final LongAdder graphBytesRead = new LongAdder();
+	private final LongAdder graphBytesWritten = new LongAdder();
+	private volatile boolean enabled = true;
+	private ScheduledExecutorService reporter;
+
+	public GraphMetrics(String graphName) {
+		this.graphName = graphName;
+		for (Operation operation : Operation.values()) {
+			stats.put(operation, new OperationStats());
+		}
+	}
+
+	public OperationTimer start(Operation operation) {
+		return enabled ? new OperationTimer(stats.get(operation)) : OperationTimer.NOOP;
+	}
+
+	public OperationStats getStats(Operation operation) {
+		return stats.get(operation);
+	}
+
+	/*
+	 * Statistics of the near cache in front of the given map, created on first
+	 * use with the supplier of the number of cached entries
+	 */
+	public NearCacheStats cache(String mapName, LongSupplier size) {
+		return caches.computeIfAbsent(mapName, name -> new NearCacheStats(size));
+	}
+
+	public NearCacheStats getCacheStats(String mapName) {
+		return caches.get(mapName);
+	}
+
+	/*
+	 * Statistics of the compare-and-set updates of the given adjacency index,
+	 * created on first use
+	 */
+	public ContentionStats contention(String indexName) {
+		return contentions.computeIfAbsent(indexName, name -> new ContentionStats());
+	}
+
+	public ContentionStats getContentionStats(String indexName) {
+		return contentions.get(indexName);
+	}
+
+	/*
+	 * Wraps the serializer of the maps of the graph to count the bytes they read
+	 * and write for the whole graph. The serializer is shared by every operation
+	 * and by the events of the maps, the bytes encoded while an operation sends
+	 * requests are also counted for it, see OperationTimer.sending.
+	 */
+	public Serializer meter(Serializer serializer) {
+		return new Serializer() {
+			@Override
+			public <T> byte[] encode(T object) {
+				byte[] bytes = serializer.encode(object);
+				if (enabled && bytes != null) {
+					graphBytesWritten.add(bytes.length);
+					OperationTimer.encoded(bytes.length);
+				}
+				return bytes;
+			}
+
+			@Override
+			public <T> T decode(byte[] bytes) {
+				if (enabled && bytes != null) {
+					graphBytesRead.add(bytes.length);
+				}
+				return serializer.decode(bytes);
+			}
+		};
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public long getGraphBytesRead() {
+		return graphBytesRead.sum();
+	}
+
+	@Override
+	public long getGraphBytesWritten() {
+		return graphBytesWritten.sum();
+	}
+
+	@Override
+	public void reset() {
+		stats.values().forEach(OperationStats::reset);
+		caches.values().forEach(NearCacheStats::reset);
+		contentions.values().forEach(ContentionStats::reset);
+		graphBytesRead.reset();
+		graphBytesWritten.reset();
+	}
+
+	/*
+	 * Registers the graph, its operations, its near caches and its adjacency
+	 * indexes with the platform MBeanServer, under
+	 * com.graphdb:type=Graph,name=<graph>,
+	 * com.graphdb:type=Operation,graph=<graph>,name=<operation>,
+	 * com.graphdb:type=NearCache,graph=<graph>,name=<map> and
+	 * com.graphdb:type=Contention,graph=<graph>,name=<index>
+	 */
+	public void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, graphObjectName());
+			for (Operation operation : Operation.values()) {
+				server.registerMBean(stats.get(operation), operationObjectName(operation));
+			}
+			for (Map.Entry<String, NearCacheStats> cache : caches.entrySet()) {
+				server.registerMBean(cache.getValue(), cacheObjectName(cache.getKey()));
+			}
+			for (Map.Entry<String, ContentionStats> contention : contentions.entrySet()) {
+				server.registerMBean(contention.getValue(), contentionObjectName(contention.getKey()));
+			}
+		} catch (JMException e) {
+			logger.error(String.format("Could not register the metrics of graph %s", graphName), e);
+		}
+	}
+
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(graphObjectName())) {
+				server.unregisterMBean(graphObjectName());
+			}
+			for (Operation operation : Operation.values()) {
+				if (server.isRegistered(operationObjectName(operation))) {
+					server.unregisterMBean(operationObjectName(operation));
+				}
+			}
+			for (String mapName : caches.keySet()) {
+				if (server.isRegistered(cacheObjectName(mapName))) {
+					server.unregisterMBean(cacheObjectName(mapName));
+				}
+			}
+			for (String indexName : contentions.keySet()) {
+				if (server.isRegistered(contentionObjectName(indexName))) {
+					server.unregisterMBean(contentionObjectName(indexName));
+				}
+			}
+		} catch (JMException e) {
+			logger.error(String.format("Could not unregister the metrics of graph %s", graphName), e);
+		}
+	}
+
+	private ObjectName graphObjectName() throws JMException {
+		return new ObjectName(String.format("%s:type=Graph,name=%s", DOMAIN, ObjectName.quote(graphName)));
+	}
+
+	private ObjectName operationObjectName(Operation operation) throws JMException {
+		return new ObjectName(String.format("%s:type=Operation,graph=%s,name=%s", DOMAIN,
+				ObjectName.quote(graphName), operation));
+	}
+
+	private ObjectName cacheObjectName(String mapName) throws JMException {
+		return new ObjectName(String.format("%s:type=NearCache,graph=%s,name=%s", DOMAIN,
+				ObjectName.quote(graphName), ObjectName.quote(mapName)));
+	}
+
+	private ObjectName contentionObjectName(String indexName) throws JMException {
+		return new ObjectName(String.format("%s:type=Contention,graph=%s,name=%s", DOMAIN,
+				ObjectName.quote(graphName), ObjectName.quote(indexName)));
+	}
+
+	/*
+	 * Logs dump every period
+	 */
+	public synchronized void startReporting(long period, TimeUnit unit) {
+		stopReporting();
+		reporter = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-metrics-%d").build());
+		reporter.scheduleAtFixedRate(() -> logger.info(dump()), period, period, unit);
+	}
+
+	public synchronized void stopReporting() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+
+	/*
+	 * Text table of the operations called so far, latencies in microseconds
+	 */
+	@Override
+	public String dump() {
+		StringBuilder builder = new StringBuilder(String.format(
+				"Metrics of graph %s, %s bytes read and %s written by all its maps%n", graphName, getGraphBytesRead(),
+				getGraphBytesWritten()));
+		builder.append(String.format("%-31s %10s %7s %10s %10s %10s %10s %10s %10s %8s %10s%n", "operation",
+				"count", "errors", "ops/s", "mean", "p50", "p99", "p999", "max", "rt/call", "B/call"));
+		for (Operation operation : Operation.values()) {
+			OperationStats operationStats = stats.get(operation);
+			if (operationStats.getCount() == 0) {
+				continue;
+			}
+			builder.append(String.format("%-31s %10d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8.2f %10.1f%n",
+					operation, operationStats.getCount(), operationStats.getErrors(), operationStats.getThroughput(),
+					operationStats.getMeanMicros(), operationStats.getP50Micros(), operationStats.getP99Micros(),
+					operationStats.getP999Micros(), operationStats.getMaxMicros(),
+					operationStats.getRoundTripsPerCall(), operationStats.getBytesWrittenPerCall()));
+		}
+		if (!caches.isEmpty()) {
+			builder.append(String.format("%-31s %10s %10s %8s %10s %10s %10s%n", "near cache", "hits", "misses",
+					"hit rate", "evictions", "invalid.", "size"));
+			caches.forEach((mapName, cache) -> builder.append(String.format("%-31s %10d %10d %8.3f %10d %10d %10d%n",
+					mapName, cache.getHits(), cache.getMisses(), cache.getHitRate(), cache.getEvictions(),
+					cache.getInvalidations(), cache.getSize())));
+		}
+		if (!contentions.isEmpty()) {
+			builder.append(String.format("%-31s %10s %10s %8s %10s %10s%n", "adjacency index", "attempts",
+					"conflicts", "rate", "combined", "exhausted"));
+			contentions.forEach((indexName, contention) -> builder.append(String.format(
+					"%-31s %10d %10d %8.3f %10d %10d%n", indexName, contention.getAttempts(),
+					contention.getConflicts(), contention.getConflictRate(), contention.getCombined(),
+					contention.getExhausted())));
+		}
+		return builder.toString();
+	}
+}
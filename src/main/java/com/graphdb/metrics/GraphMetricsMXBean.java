@@ -0,0 +1,25 @@
+package com.graphdb.metrics;
+
+/*
+ * JMX view of the metrics of a graph, the operations are published as
+ * separate OperationStatsMXBeans
+ */
+public interface GraphMetricsMXBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	/*
+	 * Bytes decoded and encoded by the maps of the graph, for all the
+	 * operations and events together. The bytes encoded for the requests of
+	 * each operation are in OperationStatsMXBean.getBytesWrittenPerCall.
+	 */
+	public long getGraphBytesRead();
+
+	public long getGraphBytesWritten();
+
+	public void reset();
+
+	public String dump();
+}
@@ -0,0 +1,99 @@
+package com.graphdb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Lock free log-linear histogram of latencies in nanoseconds, in the style of
+ * HdrHistogram. Values are counted in buckets of 32 sub-buckets per power of
+ * two, so a percentile is off by at most 1/32 (about 3%) of its value.
+ * Recording is a single atomic increment.
+ */
+public class LatencyHistogram {
+
+	private final static int SUB_BUCKET_BITS = 5;
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values below 2 * SUB_BUCKETS are counted exactly, then one row per power
+	private final static int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/*
+	 * @return: The value below which the given percent of the recorded values
+	 * fall, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percent) {
+		long[] snapshot = snapshot();
+		long total = 0;
+		for (long count : snapshot) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return highestValue(i);
+			}
+		}
+		return highestValue(BUCKETS - 1);
+	}
+
+	public long getMax() {
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			if (counts.get(i) > 0) {
+				return highestValue(i);
+			}
+		}
+		return 0;
+	}
+
+	private long[] snapshot() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+
+	static int bucket(long value) {
+		int power = 63 - Long.numberOfLeadingZeros(value);
+		if (power <= SUB_BUCKET_BITS) {
+			return (int) value;
+		}
+		return (power - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+				+ (int) ((value >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/*
+	 * Highest value counted in the bucket
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
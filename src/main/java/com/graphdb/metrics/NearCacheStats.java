@@ -0,0 +1,74 @@
+package com.graphdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * Hit, miss and eviction counters of one near cache, see GraphMetrics.cache
+ */
+public class NearCacheStats implements NearCacheStatsMXBean {
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongSupplier size;
+
+	NearCacheStats(LongSupplier size) {
+		this.size = size;
+	}
+
+	public void recordHits(int count) {
+		hits.add(count);
+	}
+
+	public void recordMisses(int count) {
+		misses.add(count);
+	}
+
+	public void recordEviction() {
+		evictions.increment();
+	}
+
+	public void recordInvalidation() {
+		invalidations.increment();
+	}
+
+	void reset() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+		invalidations.reset();
+	}
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public double getHitRate() {
+		long lookups = getHits() + getMisses();
+		return lookups == 0 ? 0 : (double) getHits() / lookups;
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	@Override
+	public long getSize() {
+		return size.getAsLong();
+	}
+}
@@ -0,0 +1,25 @@
+package com.graphdb.metrics;
+
+/*
+ * JMX view of the near cache in front of one map of a graph
+ */
+public interface NearCacheStatsMXBean {
+
+	public long getHits();
+
+	public long getMisses();
+
+	public double getHitRate();
+
+	/*
+	 * Entries dropped to stay within the configured size or memory
+	 */
+	public long getEvictions();
+
+	/*
+	 * Entries dropped because the map changed
+	 */
+	public long getInvalidations();
+
+	public long getSize();
+}
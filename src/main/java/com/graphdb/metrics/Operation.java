@@ -0,0 +1,31 @@
+package com.graphdb.metrics;
+
+/*
+ * The Graph operations measured by GraphMetrics
+ */
+public enum Operation {
+	ADD_NODE,
+	ADD_NODES,
+	REMOVE_NODE,
+	GET_NODE,
+	GET_NODES,
+	ADD_RELATION,
+	ADD_RELATIONS,
+	REMOVE_RELATION,
+	REMOVE_RELATION_BY_TYPE,
+	GET_RELATION,
+	GET_RELATIONS_BY_ID,
+	GET_RELATIONS,
+	GET_RELATION_TYPE,
+	GET_NODE_OUT_DEGREE,
+	GET_OUTGOING_RELATIONS,
+	GET_OUTGOING_RELATIONS_BY_TYPE,
+	GET_INCOMING_RELATIONS,
+	GET_INCOMING_RELATIONS_BY_TYPE,
+	GET_OUTGOING_RELATIONS_PAGE,
+	GET_INCOMING_RELATIONS_PAGE,
+	GET_RELATIONS_PAGE,
+	ARE_RELATED,
+	SEARCH,
+	SHORTEST_PATH
+}
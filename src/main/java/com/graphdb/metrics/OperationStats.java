@@ -0,0 +1,102 @@
+package com.graphdb.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Latency histogram and counters of one Graph operation
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAdder roundTrips = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private volatile long startNanos = System.nanoTime();
+
+	void record(long nanos, boolean failed) {
+		latencies.record(nanos);
+		totalNanos.add(nanos);
+		count.increment();
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	void addRoundTrips(int requests) {
+		roundTrips.add(requests);
+	}
+
+	void addBytesWritten(int bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	void reset() {
+		latencies.reset();
+		count.reset();
+		errors.reset();
+		totalNanos.reset();
+		roundTrips.reset();
+		bytesWritten.reset();
+		startNanos = System.nanoTime();
+	}
+
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getThroughput() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return seconds > 0 ? getCount() / seconds : 0;
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long calls = getCount();
+		return calls == 0 ? 0 : totalNanos.sum() / 1e3 / calls;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return latencies.getPercentile(50) / 1e3;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return latencies.getPercentile(99) / 1e3;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return latencies.getPercentile(99.9) / 1e3;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return latencies.getMax() / 1e3;
+	}
+
+	@Override
+	public double getRoundTripsPerCall() {
+		long calls = getCount();
+		return calls == 0 ? 0 : (double) roundTrips.sum() / calls;
+	}
+
+	@Override
+	public double getBytesWrittenPerCall() {
+		long calls = getCount();
+		return calls == 0 ? 0 : (double) bytesWritten.sum() / calls;
+	}
+}
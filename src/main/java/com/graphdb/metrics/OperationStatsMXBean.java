@@ -0,0 +1,40 @@
+package com.graphdb.metrics;
+
+/*
+ * JMX view of the metrics of one Graph operation, latencies in microseconds
+ */
+public interface OperationStatsMXBean {
+
+	public long getCount();
+
+	public long getErrors();
+
+	/*
+	 * Calls per second since the metrics were created or reset
+	 */
+	public double getThroughput();
+
+	public double getMeanMicros();
+
+	public double getP50Micros();
+
+	public double getP99Micros();
+
+	public double getP999Micros();
+
+	public double getMaxMicros();
+
+	/*
+	 * Requests sent to the Atomix primitives per call. Reads served by a near
+	 * cache are not, see NearCacheStatsMXBean for the hits.
+	 */
+	public double getRoundTripsPerCall();
+
+	/*
+	 * Bytes the maps of the graph encoded per call into the keys and values of
+	 * the requests it sent, see OperationTimer.sending. The responses are
+	 * decoded on the Atomix threads and only count in
+	 * GraphMetricsMXBean.getGraphBytesRead.
+	 */
+	public double getBytesWrittenPerCall();
+}
@@ -0,0 +1,82 @@
+package com.graphdb.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+ * Measures one call of a Graph operation, from GraphMetrics.start until the
+ * future it tracks completes. When the metrics are disabled every call gets
+ * NOOP, which records nothing.
+ */
+public class OperationTimer {
+
+	public final static OperationTimer NOOP = new OperationTimer(null);
+
+	// Call sending requests on the current thread, see sending
+	private final static ThreadLocal<OperationTimer> SENDING = new ThreadLocal<>();
+
+	private final OperationStats stats;
+	private final long startNanos;
+
+	OperationTimer(OperationStats stats) {
+		this.stats = stats;
+		this.startNanos = stats == null ? 0 : System.nanoTime();
+	}
+
+	/*
+	 * Counts requests sent to the Atomix primitives on behalf of this call
+	 */
+	public void roundTrips(int requests) {
+		if (stats != null) {
+			stats.addRoundTrips(requests);
+		}
+	}
+
+	/*
+	 * Sends requests on behalf of this call. The maps of the graph encode the
+	 * keys and values of a request on the thread that sends it, and the bytes
+	 * GraphMetrics.meter counts meanwhile are counted for this call as well.
+	 * Requests sent later from callbacks are only counted if they are sent
+	 * through here again.
+	 */
+	public <T> T sending(Supplier<T> requests) {
+		if (stats == null) {
+			return requests.get();
+		}
+		OperationTimer previous = SENDING.get();
+		SENDING.set(this);
+		try {
+			return requests.get();
+		} finally {
+			if (previous == null) {
+				SENDING.remove();
+			} else {
+				SENDING.set(previous);
+			}
+		}
+	}
+
+	static void encoded(int bytes) {
+		OperationTimer timer = SENDING.get();
+		if (timer != null) {
+			timer.stats.addBytesWritten(bytes);
+		}
+	}
+
+	public void stop(boolean failed) {
+		if (stats != null) {
+			stats.record(System.nanoTime() - startNanos, failed);
+		}
+	}
+
+	/*
+	 * Stops the timer when the future completes, failed if it completes
+	 * exceptionally
+	 */
+	public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+		if (stats == null) {
+			return future;
+		}
+		return future.whenComplete((result, error) -> stop(error != null));
+	}
+}
@@ -0,0 +1,55 @@
+package com.graphdb.model;
+
+import java.util.Objects;
+
+/*
+ * A single relation seen from one of its end points: the vertex on the other
+ * side, the relation type and the relation id.
+ */
+public class AdjacencyEntry<K> {
+
+	private K neighbour;
+	private String type;
+	private long relationId;
+
+	public AdjacencyEntry(K neighbour, String type, long relationId) {
+		this.neighbour = neighbour;
+		this.type = type;
+		this.relationId = relationId;
+	}
+
+	public K getNeighbour() {
+		return neighbour;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public long getRelationId() {
+		return relationId;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof AdjacencyEntry)) {
+			return false;
+		}
+		AdjacencyEntry<?> other = (AdjacencyEntry<?>) o;
+		return relationId == other.relationId && Objects.equals(neighbour, other.neighbour)
+				&& Objects.equals(type, other.type);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(neighbour, type, relationId);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + neighbour + " , Type:" + type + " , ID:" + relationId + ")";
+	}
+}
@@ -0,0 +1,124 @@
+package com.graphdb.model;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import io.atomix.core.transaction.Transaction;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+
+/*
+ * Relation ids of a vertex indexed by neighbour and by type. A GraphModelImpl
+ * keeps one index for outgoing and one for incoming relations. All operations
+ * are asynchronous so that the updates of different vertices can be in flight
+ * together.
+ */
+interface AdjacencyIndex<K> {
+
+	/*
+	 * Protocol of all the maps of the index, including the maps of the
+	 * transactions of addAll. Must be set before build.
+	 */
+	public void withProtocol(ProxyProtocol protocol);
+
+	/*
+	 * Degree past which the entries of a vertex are split into the given number
+	 * of buckets, 0 never splits. Ignored by an index whose values do not grow
+	 * with the degree. Must be set before build.
+	 */
+	public void withSupernodes(int threshold, int buckets);
+
+	/*
+	 * Builds the maps of the index and the near caches in front of them
+	 */
+	public void build(NearCache.Settings caches);
+
+	/*
+	 * Index over the same maps, opened as separate primitives with the given
+	 * protocol and seeing the near caches of this index as NearCache.forReads
+	 * does for the consistency of the protocol. Used for reads at another read
+	 * consistency, available once this index is built.
+	 */
+	public AdjacencyIndex<K> readView(ProxyProtocol protocol, ReadConsistency consistency);
+
+	/*
+	 * Adds the entries of one vertex, all of them in a single update of the vertex
+	 */
+	public CompletableFuture<Void> add(K vertex, Collection<AdjacencyEntry<K>> entries);
+
+	public CompletableFuture<Void> remove(K vertex, Collection<AdjacencyEntry<K>> entries);
+
+	public CompletableFuture<Void> removeVertex(K vertex);
+
+	/*
+	 * @return: Relation ids of the vertex grouped by neighbour, null if the vertex
+	 * has no entries
+	 */
+	public CompletableFuture<Map<K, Collection<Long>>> getByNeighbour(K vertex);
+
+	/*
+	 * @return: Relation ids from the vertex to one neighbour, empty if there are
+	 * none, null if the vertex has no entries
+	 */
+	public CompletableFuture<Collection<Long>> getNeighbour(K vertex, K neighbour);
+
+	/*
+	 * @return: Number of relation ids of the vertex, 0 if it has no entries
+	 */
+	public CompletableFuture<Long> getDegree(K vertex);
+
+	/*
+	 * Batched getByNeighbour, vertices without entries are left out of the result
+	 */
+	public CompletableFuture<Map<K, Map<K, Collection<Long>>>> getAllByNeighbour(Collection<K> vertices);
+
+	/*
+	 * @return: Relation ids of the vertex of the given type, null if it has none
+	 */
+	public CompletableFuture<Collection<Long>> getByType(K vertex, String type);
+
+	/*
+	 * Drops the cached entries of the vertices, called once a transaction that
+	 * wrote them through addAll is committed
+	 */
+	public void invalidateAll(Collection<K> vertices);
+
+	public boolean isTransactional();
+
+	/*
+	 * Requests sent to Atomix by an add or remove of one vertex, by removeVertex,
+	 * by a read of the neighbours of the given vertices and by a getByType of a
+	 * vertex. A read only counts the vertices missing from the near cache, a
+	 * full hit is no request. Used by GraphMetrics.
+	 */
+	public int updateRoundTrips();
+
+	public int removeVertexRoundTrips();
+
+	public int readRoundTrips(Collection<K> vertices);
+
+	public int readByTypeRoundTrips(K vertex);
+
+	/*
+	 * Adds the entries of many vertices at once. A transactional index stages the
+	 * writes in the given transaction, otherwise the transaction is ignored and
+	 * the entries are written directly.
+	 */
+	public CompletableFuture<Void> addAll(Map<K, Collection<AdjacencyEntry<K>>> entries, Transaction transaction);
+
+	/*
+	 * Reads every vertex of one shard of the index and hands the entries to the
+	 * consumer in batches of at most batchSize vertices. Used by GraphExporter
+	 * and GraphCompute, the index is not locked and writes made during the scan
+	 * may or may not be seen.
+	 */
+	public void scan(int shard, int batchSize, Consumer<Map<K, Collection<AdjacencyEntry<K>>>> consumer);
+
+	/*
+	 * Writes the entries as the whole content of their vertices, without reading
+	 * what the vertices held before. Used by GraphImporter to fill an empty index.
+	 */
+	public CompletableFuture<Void> load(Map<K, Collection<AdjacencyEntry<K>>> entries);
+}
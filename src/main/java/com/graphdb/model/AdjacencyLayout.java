@@ -0,0 +1,32 @@
+package com.graphdb.model;
+
+/*
+ * Storage layout of the adjacency indexes of a GraphModelImpl.
+ */
+public enum AdjacencyLayout {
+
+	/*
+	 * One AtomicMap value per vertex holding all of its relation ids. Reads of a
+	 * vertex are a single lookup, but every insert rewrites the whole value. Batch
+	 * ingestion updates the indexes in the same transaction as the relations.
+	 */
+	VERTEX_MAP,
+
+	/*
+	 * One AtomicMultimap entry per relation end point. Inserts and removes only
+	 * send the affected entry, so their cost does not depend on the degree of the
+	 * vertex. The multimap is not transactional, so batch ingestion writes the
+	 * entries once the relations are committed.
+	 */
+	EDGE_MULTIMAP,
+
+	/*
+	 * One GraphPrimitive holding both directions as primitive arrays of edges.
+	 * Writes send only the affected edges and are idempotent on the relation id,
+	 * and reads by type, degrees and batched reads are answered on the partitions
+	 * without moving the rest of the adjacency. There is no near cache in front
+	 * of it and batch ingestion writes the edges once the relations are
+	 * committed. Every member must have GraphPrimitiveType on its classpath.
+	 */
+	PRIMITIVE
+}
@@ -0,0 +1,80 @@
+package com.graphdb.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.base.Optional;
+
+/*
+ * Asynchronous counterpart of Graph. Every method returns as soon as its
+ * requests are sent, independent requests of one operation are issued in
+ * parallel, and many operations can be in flight from a single thread.
+ * Obtained from GraphModelImpl.async() once the graph is built.
+ */
+public interface AsyncGraph<K, V> {
+
+	public CompletableFuture<Boolean> addNode(K key, V value);
+
+	public CompletableFuture<Boolean> removeNode(K key);
+
+	public CompletableFuture<Optional<V>> getNode(K key);
+
+	/*
+	 * Reads several nodes with one read per shard
+	 *
+	 * @return: The values of the nodes present
+	 */
+	public CompletableFuture<Map<K, V>> getNodes(Collection<K> keys);
+
+	public CompletableFuture<Long> addRelation(K from, K to, String type, V value, boolean biDirectional);
+
+	public CompletableFuture<Boolean> removeRelation(long id);
+
+	public CompletableFuture<Boolean> removeRelation(K from, K to, String type);
+
+	public CompletableFuture<Relation> getRelations(long relationId);
+
+	/*
+	 * Reads several relations with one read per shard and batch of ids
+	 *
+	 * @return: The relations present, by id
+	 */
+	public CompletableFuture<Map<Long, Relation>> getRelations(Collection<Long> relationIds);
+
+	public CompletableFuture<List<Relation>> getRelations(K from, K to);
+
+	public CompletableFuture<List<String>> getRelationType(K from, K to);
+
+	public CompletableFuture<Long> getNodeOutDegree(K from);
+
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from);
+
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from, String type);
+
+	public CompletableFuture<List<Relation>> getIncomingRelations(K from);
+
+	public CompletableFuture<List<Relation>> getIncomingRelations(K from, String type);
+
+	/*
+	 * Pages of getOutgoingRelations, getIncomingRelations and getRelations(from,
+	 * to), see RelationPage. A null type matches every type, a null cursor reads
+	 * the first page. Only the relations of the page are read.
+	 */
+	public CompletableFuture<RelationPage> getOutgoingRelations(K from, String type, String cursor, int pageSize);
+
+	public CompletableFuture<RelationPage> getIncomingRelations(K to, String type, String cursor, int pageSize);
+
+	public CompletableFuture<RelationPage> getRelations(K from, K to, String cursor, int pageSize);
+
+	public CompletableFuture<Boolean> areRelated(K from, K to);
+
+	public CompletableFuture<Path<K>> search(K from, K to, int maxDepth, int maxVisited);
+
+	/*
+	 * Cheapest path by the costs of the relations, see PathQuery. Completes with
+	 * null when there is no path within the cutoffs of the query.
+	 */
+	public CompletableFuture<WeightedPath<K>> shortestPath(PathQuery<K> query);
+}
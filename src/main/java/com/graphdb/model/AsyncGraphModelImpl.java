@@ -0,0 +1,669 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.graphdb.metrics.GraphMetrics;
+import com.graphdb.metrics.Operation;
+import com.graphdb.metrics.OperationTimer;
+
+import io.atomix.core.map.AsyncAtomicMap;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * AsyncGraph over the AsyncAtomicMap views of the maps of a GraphModelImpl.
+ * Work done on the results of the maps, including each level of a breadth
+ * first search, runs on the given executor rather than on the Atomix threads.
+ * The weighted searches wait on their reads, so they run on a separate search
+ * executor and never hold the threads that complete those reads. Nodes are read
+ * and written in the shard of their key and relations in the shard of their id,
+ * see VertexShards. Reads go through the near caches of the maps, and writes
+ * drop the keys they wrote from them.
+ */
+class AsyncGraphModelImpl<K, V> implements AsyncGraph<K, V> {
+
+	private final static Logger logger = Logger.getLogger(AsyncGraphModelImpl.class);
+	private final static int BATCH_SIZE = 1000;
+
+	private final List<AsyncAtomicMap<K, V>> nodesShards;
+	private final List<AsyncAtomicMap<Long, Relation>> relationsShards;
+	private final VertexShards shards;
+	private final NearCache<K, V> nodesCache;
+	private final NearCache<Long, Relation> relationsCache;
+	private final AdjacencyIndex<K> outgoing;
+	private final AdjacencyIndex<K> incoming;
+	private final RelationIdGenerator relationsIdGenerator;
+	private final Executor executor;
+	private final Executor searchExecutor;
+	private final GraphMetrics metrics;
+	// GraphAggregates of the graph once started, see GraphModelImpl.aggregates
+	private final AtomicReference<GraphAggregates<K>> aggregates;
+
+	AsyncGraphModelImpl(List<AsyncAtomicMap<K, V>> nodesShards, List<AsyncAtomicMap<Long, Relation>> relationsShards,
+			VertexShards shards, NearCache<K, V> nodesCache, NearCache<Long, Relation> relationsCache,
+			AdjacencyIndex<K> outgoing, AdjacencyIndex<K> incoming, RelationIdGenerator relationsIdGenerator,
+			Executor executor, Executor searchExecutor, GraphMetrics metrics,
+			AtomicReference<GraphAggregates<K>> aggregates) {
+		this.nodesShards = nodesShards;
+		this.relationsShards = relationsShards;
+		this.shards = shards;
+		this.nodesCache = nodesCache;
+		this.relationsCache = relationsCache;
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.relationsIdGenerator = relationsIdGenerator;
+		this.executor = executor;
+		this.searchExecutor = searchExecutor;
+		this.metrics = metrics;
+		this.aggregates = aggregates;
+	}
+
+	private AsyncAtomicMap<K, V> nodes(K key) {
+		return nodesShards.get(shards.ofVertex(key));
+	}
+
+	private AsyncAtomicMap<Long, Relation> relations(long relationId) {
+		return relationsShards.get(shards.ofRelation(relationId));
+	}
+
+	/*
+	 * The reads of the maps are counted when the near cache misses, a hit is
+	 * not a round trip
+	 */
+	private CompletableFuture<Versioned<V>> getNodeVersioned(K key, OperationTimer timer) {
+		return nodesCache.get(key, k -> {
+			timer.roundTrips(1);
+			return timer.sending(() -> nodes(k).get(k));
+		});
+	}
+
+	private CompletableFuture<Versioned<Relation>> getRelation(long relationId, OperationTimer timer) {
+		return relationsCache.get(relationId, id -> {
+			timer.roundTrips(1);
+			return timer.sending(() -> relations(id).get(id));
+		});
+	}
+
+	/*
+	 * Completes once the write is done and the key is dropped from the cache
+	 */
+	private static <T, C> CompletableFuture<T> invalidating(NearCache<C, ?> cache, C key,
+			CompletableFuture<T> write) {
+		return write.whenComplete((v, error) -> cache.invalidate(key));
+	}
+
+	/*
+	 * Once the GraphAggregates of the graph are started, counts the write of a
+	 * relation as soon as it completes, or when its event is received if that
+	 * comes first, so that this client reads its own writes. The write is
+	 * registered before it is sent.
+	 */
+	private <T> CompletableFuture<T> counting(Relation<K, V> relation, boolean added,
+			Supplier<CompletableFuture<T>> write) {
+		GraphAggregates<K> degrees = aggregates.get();
+		if (degrees == null) {
+			return write.get();
+		}
+		degrees.writing(relation.getId(), added);
+		return write.get().whenComplete(
+				(result, error) -> degrees.written(relation, added, error == null && (added || result != null)));
+	}
+
+	/*
+	 * Groups the index entries of a relation by vertex, for the outgoing index of
+	 * its source and the incoming index of its destination. A biDirectional
+	 * relation is indexed in both directions.
+	 */
+	static <K> void stageRelation(Relation<K, ?> relation, Map<K, Collection<AdjacencyEntry<K>>> outgoingDelta,
+			Map<K, Collection<AdjacencyEntry<K>>> incomingDelta) {
+		K from = relation.getFrom();
+		K to = relation.getTo();
+		outgoingDelta.computeIfAbsent(from, k -> new ArrayList<>())
+				.add(new AdjacencyEntry<>(to, relation.getType(), relation.getId()));
+		incomingDelta.computeIfAbsent(to, k -> new ArrayList<>())
+				.add(new AdjacencyEntry<>(from, relation.getType(), relation.getId()));
+
+		if (relation.isBiDirectional()) {
+			outgoingDelta.computeIfAbsent(to, k -> new ArrayList<>())
+					.add(new AdjacencyEntry<>(from, relation.getType(), relation.getId()));
+			incomingDelta.computeIfAbsent(from, k -> new ArrayList<>())
+					.add(new AdjacencyEntry<>(to, relation.getType(), relation.getId()));
+		}
+	}
+
+	/*
+	 * Updates the indexes of both end points in parallel, one update per vertex
+	 * and index.
+	 */
+	private CompletableFuture<Void> updateIndexes(Relation<K, V> relation, boolean add, OperationTimer timer) {
+		Map<K, Collection<AdjacencyEntry<K>>> outgoingDelta = new HashMap<>();
+		Map<K, Collection<AdjacencyEntry<K>>> incomingDelta = new HashMap<>();
+		stageRelation(relation, outgoingDelta, incomingDelta);
+
+		List<CompletableFuture<Void>> updates = new ArrayList<>();
+		outgoingDelta.forEach((vertex, entries) -> updates.add(
+				timer.sending(() -> add ? outgoing.add(vertex, entries) : outgoing.remove(vertex, entries))));
+		incomingDelta.forEach((vertex, entries) -> updates.add(
+				timer.sending(() -> add ? incoming.add(vertex, entries) : incoming.remove(vertex, entries))));
+		timer.roundTrips(outgoingDelta.size() * outgoing.updateRoundTrips()
+				+ incomingDelta.size() * incoming.updateRoundTrips());
+		return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]));
+	}
+
+	/*
+	 * Reads the relations missing from the cache with one getAllPresent per
+	 * shard and batch of ids instead of one get per id. An AtomicMap lives in a
+	 * single partition, so each batch is a single round trip. The batches are
+	 * issued together.
+	 */
+	private CompletableFuture<Map<Long, Versioned<Relation>>> getAllPresent(Collection<Long> ids,
+			OperationTimer timer) {
+		return relationsCache.getAllPresent(ids, missing -> loadAllPresent(missing, timer));
+	}
+
+	private CompletableFuture<Map<Long, Versioned<Relation>>> loadAllPresent(Collection<Long> ids,
+			OperationTimer timer) {
+		List<CompletableFuture<Map<Long, Versioned<Relation>>>> reads = new ArrayList<>();
+		shards.group(ids, shards::ofRelation).forEach((shard, shardIds) -> {
+			for (List<Long> batch : Lists.partition(shardIds, BATCH_SIZE)) {
+				reads.add(timer.sending(() -> relationsShards.get(shard).getAllPresent(batch)));
+			}
+		});
+		timer.roundTrips(reads.size());
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<Long, Versioned<Relation>> present = new HashMap<>();
+			reads.forEach(read -> present.putAll(read.join()));
+			return present;
+		});
+	}
+
+	/*
+	 * Reads the relations in the order of the ids. Relations removed since the
+	 * ids were read are skipped.
+	 */
+	private CompletableFuture<List<Relation>> getRelations(Collection<Long> relIds, OperationTimer timer) {
+		List<Long> ids = new ArrayList<>(relIds);
+		return getAllPresent(ids, timer).thenApplyAsync(present -> {
+			List<Relation> relations = Lists.newArrayListWithCapacity(present.size());
+			for (Long relId : ids) {
+				Versioned<Relation> versioned = present.get(relId);
+				if (versioned != null) {
+					relations.add(versioned.value());
+				}
+			}
+			return relations;
+		}, executor);
+	}
+
+	private static <T> Collection<Long> flatten(Map<T, Collection<Long>> idMap) {
+		List<Long> relIds = new ArrayList<>();
+		idMap.values().forEach(relIds::addAll);
+		return relIds;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> addNode(K key, V value) {
+		OperationTimer timer = metrics.start(Operation.ADD_NODE);
+		timer.roundTrips(1);
+		return timer.track(invalidating(nodesCache, key, timer.sending(() -> nodes(key).put(key, value)))
+				.thenApply(v -> true));
+	}
+
+	/*
+	 * Cascading delete driven by the indexes of the node, so that only its own
+	 * relations are read. The node is removed first, then its relations are
+	 * removed in batches along with their entries in the indexes of the other
+	 * end points. A relation added to the node meanwhile is either in the
+	 * indexes read here or undone by addRelation, see there.
+	 */
+	@Override
+	public CompletableFuture<Boolean> removeNode(K key) {
+		OperationTimer timer = metrics.start(Operation.REMOVE_NODE);
+		timer.roundTrips(1 + outgoing.readRoundTrips(Collections.singleton(key))
+				+ incoming.readRoundTrips(Collections.singleton(key)));
+		CompletableFuture<Versioned<V>> removed = timer.sending(() -> nodes(key).remove(key));
+		return timer.track(invalidating(nodesCache, key, removed).thenCompose(versioned -> {
+			if (versioned == null) {
+				logger.error(String.format("Node with key %s not found", key));
+			}
+			CompletableFuture<Map<K, Collection<Long>>> fromRead = timer.sending(() -> outgoing.getByNeighbour(key));
+			CompletableFuture<Map<K, Collection<Long>>> toRead = timer.sending(() -> incoming.getByNeighbour(key));
+			return fromRead.thenCombine(toRead, (fromMap, toMap) -> {
+				// A biDirectional relation is in both indexes of the node
+				Set<Long> relIds = new LinkedHashSet<>();
+				if (fromMap != null) {
+					relIds.addAll(flatten(fromMap));
+				}
+				if (toMap != null) {
+					relIds.addAll(flatten(toMap));
+				}
+				return Lists.partition(new ArrayList<>(relIds), BATCH_SIZE);
+			}).thenCompose(batches -> removeRelations(key, batches, 0, timer)).thenCompose(v -> {
+				timer.roundTrips(outgoing.removeVertexRoundTrips() + incoming.removeVertexRoundTrips());
+				return timer.sending(
+						() -> CompletableFuture.allOf(outgoing.removeVertex(key), incoming.removeVertex(key)));
+			}).thenApply(v -> versioned != null);
+		}));
+	}
+
+	/*
+	 * Removes the relations of a node one batch after the other, with one index
+	 * update per other end point and batch. The indexes of the node itself are
+	 * left to removeVertex.
+	 */
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Void> removeRelations(K key, List<List<Long>> batches, int batch,
+			OperationTimer timer) {
+		if (batch == batches.size()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return getAllPresent(batches.get(batch), timer).thenCompose(present -> {
+			Map<K, Collection<AdjacencyEntry<K>>> outgoingDelta = new HashMap<>();
+			Map<K, Collection<AdjacencyEntry<K>>> incomingDelta = new HashMap<>();
+			List<CompletableFuture<?>> removals = new ArrayList<>();
+			for (Versioned<Relation> versioned : present.values()) {
+				Relation<K, V> relation = versioned.value();
+				stageRelation(relation, outgoingDelta, incomingDelta);
+				removals.add(invalidating(relationsCache, relation.getId(), counting(relation, false,
+						() -> timer.sending(() -> relations(relation.getId()).remove(relation.getId())))));
+			}
+			outgoingDelta.remove(key);
+			incomingDelta.remove(key);
+			outgoingDelta.forEach(
+					(vertex, entries) -> removals.add(timer.sending(() -> outgoing.remove(vertex, entries))));
+			incomingDelta.forEach(
+					(vertex, entries) -> removals.add(timer.sending(() -> incoming.remove(vertex, entries))));
+			timer.roundTrips(present.size() + outgoingDelta.size() * outgoing.updateRoundTrips()
+					+ incomingDelta.size() * incoming.updateRoundTrips());
+			return CompletableFuture.allOf(removals.toArray(new CompletableFuture[0]));
+		}).thenCompose(v -> removeRelations(key, batches, batch + 1, timer));
+	}
+
+	@Override
+	public CompletableFuture<Optional<V>> getNode(K key) {
+		OperationTimer timer = metrics.start(Operation.GET_NODE);
+		return timer.track(getNodeVersioned(key, timer)
+				.thenApply(versioned -> Optional.fromNullable(Versioned.valueOrNull(versioned))));
+	}
+
+	@Override
+	public CompletableFuture<Map<K, V>> getNodes(Collection<K> keys) {
+		OperationTimer timer = metrics.start(Operation.GET_NODES);
+		CompletableFuture<Map<K, Versioned<V>>> read = nodesCache.getAllPresent(keys,
+				missing -> loadAllNodes(missing, timer));
+		return timer.track(read.thenApply(present -> {
+			Map<K, V> values = new HashMap<>();
+			present.forEach((key, versioned) -> values.put(key, versioned.value()));
+			return values;
+		}));
+	}
+
+	private CompletableFuture<Map<K, Versioned<V>>> loadAllNodes(Collection<K> keys, OperationTimer timer) {
+		List<CompletableFuture<Map<K, Versioned<V>>>> reads = new ArrayList<>();
+		shards.group(keys, shards::ofVertex)
+				.forEach((shard, shardKeys) -> reads
+						.add(timer.sending(() -> nodesShards.get(shard).getAllPresent(shardKeys))));
+		timer.roundTrips(reads.size());
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<K, Versioned<V>> present = new HashMap<>();
+			reads.forEach(read -> present.putAll(read.join()));
+			return present;
+		});
+	}
+
+	/*
+	 * The end points are checked before the relation is written, without a
+	 * transaction, and read again from the maps once it and its index entries
+	 * are written. If a concurrent removeNode took an end point away in between
+	 * the relation is removed again and null returned. Otherwise that removeNode
+	 * removed the node after the relation was indexed and removes it itself.
+	 */
+	@Override
+	public CompletableFuture<Long> addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		OperationTimer timer = metrics.start(Operation.ADD_RELATION);
+		return timer.track(getNodeVersioned(from, timer)
+				.thenCombine(getNodeVersioned(to, timer), (fromNode, toNode) -> fromNode != null && toNode != null)
+				.thenCompose(present -> {
+					if (!present) {
+						return CompletableFuture.completedFuture(null);
+					}
+					timer.roundTrips(1);
+					return relationsIdGenerator.nextId(timer).thenCompose(sequence -> {
+						long id = shards.relationId(sequence, from);
+						Relation<K, V> relation = new Relation<>(id, from, to, value, type, biDirectional);
+						return CompletableFuture
+								.allOf(invalidating(relationsCache, id,
+										counting(relation, true,
+												() -> timer.sending(() -> relations(id).put(id, relation)))),
+										updateIndexes(relation, true, timer))
+								.thenCompose(v -> endPointsRemain(relation, timer))
+								.thenCompose(remain -> {
+									if (remain) {
+										return CompletableFuture.completedFuture(id);
+									}
+									logger.warn(String.format("End point of relation id:%s removed while adding it",
+											id));
+									return removeRelation(id, timer).thenApply(removed -> (Long) null);
+								});
+					});
+				}));
+	}
+
+	/*
+	 * Reads the end points from the maps, a write does not trust the cache
+	 */
+	private CompletableFuture<Boolean> endPointsRemain(Relation<K, V> relation, OperationTimer timer) {
+		timer.roundTrips(2);
+		return timer.sending(() -> nodes(relation.getFrom()).containsKey(relation.getFrom())).thenCombine(
+				timer.sending(() -> nodes(relation.getTo()).containsKey(relation.getTo())),
+				(fromRemains, toRemains) -> fromRemains && toRemains);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeRelation(long id) {
+		OperationTimer timer = metrics.start(Operation.REMOVE_RELATION);
+		return timer.track(removeRelation(id, timer));
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Boolean> removeRelation(long id, OperationTimer timer) {
+		timer.roundTrips(1);
+		// Read from the map, a write does not trust the cache
+		return timer.sending(() -> relations(id).get(id)).thenCompose(versioned -> {
+			if (versioned == null) {
+				logger.error(String.format("Relation id:%s not found", id));
+				return CompletableFuture.completedFuture(false);
+			}
+			timer.roundTrips(1);
+			return CompletableFuture.allOf(updateIndexes(versioned.value(), false, timer), invalidating(
+					relationsCache, id,
+					counting(versioned.value(), false, () -> timer.sending(() -> relations(id).remove(id)))))
+					.thenApply(v -> true);
+		});
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeRelation(K from, K to, String type) {
+		OperationTimer timer = metrics.start(Operation.REMOVE_RELATION_BY_TYPE);
+		return timer.track(getRelations(from, to, timer).thenCompose(relations -> {
+			List<CompletableFuture<Boolean>> removals = new ArrayList<>();
+			for (Relation relation : relations) {
+				if (relation.getType().equals(type)) {
+					removals.add(removeRelation(relation.getId(), timer));
+				}
+			}
+			// Indicates if all the relations were deleted or not.
+			return CompletableFuture.allOf(removals.toArray(new CompletableFuture[0]))
+					.thenApply(v -> removals.stream().allMatch(CompletableFuture::join));
+		}));
+	}
+
+	@Override
+	public CompletableFuture<Relation> getRelations(long relationId) {
+		OperationTimer timer = metrics.start(Operation.GET_RELATION);
+		return timer.track(getRelation(relationId, timer).thenApply(versioned -> {
+			if (versioned == null) {
+				logger.error(String.format("Relation with id:%s does not exist", relationId));
+				return null;
+			}
+			return versioned.value();
+		}));
+	}
+
+	@Override
+	public CompletableFuture<Map<Long, Relation>> getRelations(Collection<Long> relationIds) {
+		OperationTimer timer = metrics.start(Operation.GET_RELATIONS_BY_ID);
+		return timer.track(getAllPresent(relationIds, timer).thenApply(present -> {
+			Map<Long, Relation> relations = new HashMap<>();
+			present.forEach((id, versioned) -> relations.put(id, versioned.value()));
+			return relations;
+		}));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getRelations(K from, K to) {
+		OperationTimer timer = metrics.start(Operation.GET_RELATIONS);
+		return timer.track(getRelations(from, to, timer));
+	}
+
+	private CompletableFuture<List<Relation>> getRelations(K from, K to, OperationTimer timer) {
+		timer.roundTrips(outgoing.readRoundTrips(Collections.singleton(from)));
+		return timer.sending(() -> outgoing.getNeighbour(from, to)).thenCompose(relIds -> {
+			if (relIds != null && !relIds.isEmpty()) {
+				return getRelations(relIds, timer);
+			}
+			return CompletableFuture.completedFuture(Lists.newArrayList());
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getRelationType(K from, K to) {
+		OperationTimer timer = metrics.start(Operation.GET_RELATION_TYPE);
+		return timer.track(getRelations(from, to, timer).thenApply(relations -> {
+			List<String> relationTypes = Lists.newArrayList();
+			for (Relation relation : relations) {
+				relationTypes.add(relation.getType());
+			}
+			return relationTypes;
+		}));
+	}
+
+	/*
+	 * calculate outdegree given a node, from the GraphAggregates of the graph
+	 * once they are started, without reading the index
+	 */
+	@Override
+	public CompletableFuture<Long> getNodeOutDegree(K key) {
+		OperationTimer timer = metrics.start(Operation.GET_NODE_OUT_DEGREE);
+		GraphAggregates<K> degrees = aggregates.get();
+		if (degrees != null) {
+			long outDegree = degrees.outDegree(key);
+			return timer.track(CompletableFuture.completedFuture(outDegree == 0 ? -1L : outDegree));
+		}
+		timer.roundTrips(outgoing.readRoundTrips(Collections.singleton(key)));
+		return timer.track(timer.sending(() -> outgoing.getDegree(key))
+				.thenApply(outDegree -> outDegree == 0 ? -1L : outDegree));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from) {
+		OperationTimer timer = metrics.start(Operation.GET_OUTGOING_RELATIONS);
+		timer.roundTrips(outgoing.readRoundTrips(Collections.singleton(from)));
+		return timer.track(timer.sending(() -> outgoing.getByNeighbour(from)).thenCompose(fromMap -> {
+			if (fromMap == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return getRelations(flatten(fromMap), timer);
+		}));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from, String type) {
+		OperationTimer timer = metrics.start(Operation.GET_OUTGOING_RELATIONS_BY_TYPE);
+		timer.roundTrips(outgoing.readByTypeRoundTrips(from));
+		return timer.track(timer.sending(() -> outgoing.getByType(from, type)).thenCompose(relIds -> {
+			if (relIds == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return getRelations(relIds, timer);
+		}));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getIncomingRelations(K to) {
+		OperationTimer timer = metrics.start(Operation.GET_INCOMING_RELATIONS);
+		timer.roundTrips(incoming.readRoundTrips(Collections.singleton(to)));
+		return timer.track(timer.sending(() -> incoming.getByNeighbour(to)).thenCompose(toMap -> {
+			if (toMap == null) {
+				return CompletableFuture.completedFuture(Lists.newArrayList());
+			}
+			return getRelations(flatten(toMap), timer);
+		}));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getIncomingRelations(K to, String type) {
+		OperationTimer timer = metrics.start(Operation.GET_INCOMING_RELATIONS_BY_TYPE);
+		timer.roundTrips(incoming.readByTypeRoundTrips(to));
+		return timer.track(timer.sending(() -> incoming.getByType(to, type)).thenCompose(relIds -> {
+			if (relIds == null) {
+				return CompletableFuture.completedFuture(Lists.newArrayList());
+			}
+			return getRelations(relIds, timer);
+		}));
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		OperationTimer timer = metrics.start(Operation.GET_OUTGOING_RELATIONS_PAGE);
+		timer.roundTrips(relationIdsRoundTrips(outgoing, from, type));
+		return timer.track(
+				page(timer.sending(() -> relationIds(outgoing, from, type)), cursor, pageSize, timer));
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		OperationTimer timer = metrics.start(Operation.GET_INCOMING_RELATIONS_PAGE);
+		timer.roundTrips(relationIdsRoundTrips(incoming, to, type));
+		return timer.track(page(timer.sending(() -> relationIds(incoming, to, type)), cursor, pageSize, timer));
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getRelations(K from, K to, String cursor, int pageSize) {
+		OperationTimer timer = metrics.start(Operation.GET_RELATIONS_PAGE);
+		timer.roundTrips(outgoing.readRoundTrips(Collections.singleton(from)));
+		return timer.track(page(timer.sending(() -> relationIds(from, to)), cursor, pageSize, timer));
+	}
+
+	/*
+	 * Streams of the same listings for GraphModelImpl and GraphReadView, see
+	 * RelationPage.stream. The ids are read from the index once per stream and
+	 * each page only reads its relations.
+	 */
+	Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize) {
+		return stream(Operation.GET_OUTGOING_RELATIONS_PAGE, () -> relationIdsRoundTrips(outgoing, from, type),
+				() -> relationIds(outgoing, from, type), pageSize);
+	}
+
+	Stream<Relation> streamIncomingRelations(K to, String type, int pageSize) {
+		return stream(Operation.GET_INCOMING_RELATIONS_PAGE, () -> relationIdsRoundTrips(incoming, to, type),
+				() -> relationIds(incoming, to, type), pageSize);
+	}
+
+	Stream<Relation> streamRelations(K from, K to, int pageSize) {
+		return stream(Operation.GET_RELATIONS_PAGE, () -> outgoing.readRoundTrips(Collections.singleton(from)),
+				() -> relationIds(from, to), pageSize);
+	}
+
+	private Stream<Relation> stream(Operation operation, IntSupplier roundTrips,
+			Supplier<CompletableFuture<Iterator<Long>>> relIds, int pageSize) {
+		return RelationPage.stream(() -> {
+			OperationTimer timer = metrics.start(operation);
+			timer.roundTrips(roundTrips.getAsInt());
+			return timer.track(timer.sending(relIds).thenApply(ids -> Lists.newArrayList(ids))).join();
+		}, ids -> {
+			OperationTimer timer = metrics.start(operation);
+			return timer.track(getRelations(ids, timer)).join();
+		}, pageSize);
+	}
+
+	/*
+	 * Relation ids from one vertex to another
+	 */
+	private CompletableFuture<Iterator<Long>> relationIds(K from, K to) {
+		return outgoing.getNeighbour(from, to)
+				.thenApply(relIds -> relIds == null ? Collections.<Long>emptyIterator() : relIds.iterator());
+	}
+
+	private int relationIdsRoundTrips(AdjacencyIndex<K> index, K vertex, String type) {
+		return type == null ? index.readRoundTrips(Collections.singleton(vertex)) : index.readByTypeRoundTrips(vertex);
+	}
+
+	/*
+	 * Relation ids of a vertex in the index, of the given type or of all types
+	 * for null, iterated without being copied
+	 */
+	private CompletableFuture<Iterator<Long>> relationIds(AdjacencyIndex<K> index, K vertex, String type) {
+		if (type == null) {
+			return index.getByNeighbour(vertex).thenApply(neighbourMap -> neighbourMap == null
+					? Collections.<Long>emptyIterator() : Iterables.concat(neighbourMap.values()).iterator());
+		}
+		return index.getByType(vertex, type)
+				.thenApply(relIds -> relIds == null ? Collections.<Long>emptyIterator() : relIds.iterator());
+	}
+
+	/*
+	 * Reads the relations of the next pageSize ids only, the ids of the vertex
+	 * are those already held by the near cache of the index
+	 */
+	private CompletableFuture<RelationPage> page(CompletableFuture<Iterator<Long>> relIds, String cursor,
+			int pageSize, OperationTimer timer) {
+		return relIds.thenCompose(ids -> {
+			List<Long> pageIds = RelationPage.nextIds(ids, cursor, pageSize);
+			if (pageIds.size() <= pageSize) {
+				return getRelations(pageIds, timer).thenApply(relations -> new RelationPage(relations, null));
+			}
+			String next = RelationPage.cursorOf(pageIds.get(pageSize - 1));
+			return getRelations(pageIds.subList(0, pageSize), timer)
+					.thenApply(relations -> new RelationPage(relations, next));
+		});
+	}
+
+	@Override
+	public CompletableFuture<Boolean> areRelated(K from, K to) {
+		OperationTimer timer = metrics.start(Operation.ARE_RELATED);
+		timer.roundTrips(outgoing.readRoundTrips(Collections.singleton(from)));
+		return timer.track(timer.sending(() -> outgoing.getNeighbour(from, to)).thenApply(relIds -> {
+			if (relIds == null) {
+				logger.error("Node " + from + " not present in the Graph");
+				return false;
+			}
+			return !relIds.isEmpty();
+		}));
+	}
+
+	@Override
+	public CompletableFuture<Path<K>> search(K from, K to, int maxDepth, int maxVisited) {
+		OperationTimer timer = metrics.start(Operation.SEARCH);
+		return timer.track(
+				new BreadthFirstSearch<>(outgoing, incoming, maxDepth, maxVisited, timer, executor).search(from, to));
+	}
+
+	@Override
+	public CompletableFuture<WeightedPath<K>> shortestPath(PathQuery<K> query) {
+		OperationTimer timer = metrics.start(Operation.SHORTEST_PATH);
+		return timer.track(CompletableFuture.supplyAsync(() -> new DijkstraSearch<>(query,
+				vertices -> adjacency(outgoing, vertices, timer), vertices -> adjacency(incoming, vertices, timer),
+				ids -> relations(ids, timer)).search(), searchExecutor));
+	}
+
+	private Map<K, Map<K, Collection<Long>>> adjacency(AdjacencyIndex<K> index, Collection<K> vertices,
+			OperationTimer timer) {
+		timer.roundTrips(index.readRoundTrips(vertices));
+		return timer.sending(() -> index.getAllByNeighbour(vertices)).join();
+	}
+
+	private Map<Long, Relation> relations(Collection<Long> ids, OperationTimer timer) {
+		Map<Long, Relation> relations = new HashMap<>();
+		getAllPresent(ids, timer).join().forEach((id, versioned) -> relations.put(id, versioned.value()));
+		return relations;
+	}
+}
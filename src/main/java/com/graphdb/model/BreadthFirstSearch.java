@@ -0,0 +1,167 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.graphdb.metrics.OperationTimer;
+
+/*
+ * Bidirectional breadth first search between two vertices. The search grows a
+ * forward tree over the outgoing index and a backward tree over the incoming
+ * index, always expanding the smaller frontier one level at a time, until the
+ * trees meet. Each level fetches the adjacency of the whole frontier with one
+ * batched index read, and is expanded on the executor once the read completes.
+ */
+class BreadthFirstSearch<K> {
+
+	private final AdjacencyIndex<K> outgoing;
+	private final AdjacencyIndex<K> incoming;
+	private final int maxDepth;
+	private final int maxVisited;
+	private final OperationTimer timer;
+	private final Executor executor;
+
+	// Trees and frontiers of the search, one level is expanded at a time
+	private final Map<K, Step<K>> forward = new HashMap<>();
+	private final Map<K, Step<K>> backward = new HashMap<>();
+	private List<K> forwardFrontier;
+	private List<K> backwardFrontier;
+	private int levels;
+
+	// Vertex reached by a tree, the vertex it was reached from and the relation
+	private static class Step<K> {
+		final K previous;
+		final long relationId;
+		final int depth;
+
+		Step(K previous, long relationId, int depth) {
+			this.previous = previous;
+			this.relationId = relationId;
+			this.depth = depth;
+		}
+	}
+
+	BreadthFirstSearch(AdjacencyIndex<K> outgoing, AdjacencyIndex<K> incoming, int maxDepth, int maxVisited,
+			OperationTimer timer, Executor executor) {
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.maxDepth = maxDepth;
+		this.maxVisited = maxVisited;
+		this.timer = timer;
+		this.executor = executor;
+	}
+
+	/*
+	 * @return: The shortest path, null if there is none within maxDepth hops or
+	 * the search visited more than maxVisited vertices
+	 */
+	CompletableFuture<Path<K>> search(K from, K to) {
+		if (from.equals(to)) {
+			return CompletableFuture.completedFuture(
+					new Path<>(Collections.singletonList(from), Collections.emptyList()));
+		}
+		forward.put(from, new Step<>(null, 0, 0));
+		backward.put(to, new Step<>(null, 0, 0));
+		forwardFrontier = Collections.singletonList(from);
+		backwardFrontier = Collections.singletonList(to);
+		return nextLevel();
+	}
+
+	/*
+	 * Reads the adjacency of the smaller frontier and expands it once the read
+	 * completes, no thread waits on the read
+	 */
+	private CompletableFuture<Path<K>> nextLevel() {
+		if (levels++ >= maxDepth || forwardFrontier.isEmpty() || backwardFrontier.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		boolean expandForward = forwardFrontier.size() <= backwardFrontier.size();
+		AdjacencyIndex<K> index = expandForward ? outgoing : incoming;
+		List<K> frontier = expandForward ? forwardFrontier : backwardFrontier;
+		timer.roundTrips(index.readRoundTrips(frontier));
+		return timer.sending(() -> index.getAllByNeighbour(frontier)).thenComposeAsync(adjacency -> {
+			List<K> next = new ArrayList<>();
+			K meeting = expandForward ? expand(adjacency, frontier, forward, backward, next)
+					: expand(adjacency, frontier, backward, forward, next);
+			if (meeting != null) {
+				return CompletableFuture.completedFuture(buildPath(meeting, forward, backward));
+			}
+			if (forward.size() + backward.size() > maxVisited) {
+				return CompletableFuture.completedFuture(null);
+			}
+			if (expandForward) {
+				forwardFrontier = next;
+			} else {
+				backwardFrontier = next;
+			}
+			return nextLevel();
+		}, executor);
+	}
+
+	/*
+	 * Expands one level of a tree with the adjacency of its frontier. Returns
+	 * the vertex where it met the other tree with the smallest depth on the
+	 * other side, null if they did not meet.
+	 */
+	private K expand(Map<K, Map<K, Collection<Long>>> adjacency, List<K> frontier, Map<K, Step<K>> tree,
+			Map<K, Step<K>> other, List<K> next) {
+		K meeting = null;
+		for (K vertex : frontier) {
+			Map<K, Collection<Long>> neighbours = adjacency.get(vertex);
+			if (neighbours == null) {
+				continue;
+			}
+			int depth = tree.get(vertex).depth + 1;
+			for (Entry<K, Collection<Long>> entry : neighbours.entrySet()) {
+				K neighbour = entry.getKey();
+				if (tree.containsKey(neighbour) || entry.getValue().isEmpty()) {
+					continue;
+				}
+				tree.put(neighbour, new Step<>(vertex, entry.getValue().iterator().next(), depth));
+				next.add(neighbour);
+
+				Step<K> otherStep = other.get(neighbour);
+				if (otherStep != null && (meeting == null || otherStep.depth < other.get(meeting).depth)) {
+					meeting = neighbour;
+				}
+			}
+		}
+		return meeting;
+	}
+
+	private Path<K> buildPath(K meeting, Map<K, Step<K>> forward, Map<K, Step<K>> backward) {
+		List<K> nodes = new ArrayList<>();
+		List<Long> relationIds = new ArrayList<>();
+
+		// Source to meeting, walked backwards then reversed
+		K vertex = meeting;
+		Step<K> step = forward.get(vertex);
+		while (step.previous != null) {
+			nodes.add(vertex);
+			relationIds.add(step.relationId);
+			vertex = step.previous;
+			step = forward.get(vertex);
+		}
+		nodes.add(vertex);
+		Collections.reverse(nodes);
+		Collections.reverse(relationIds);
+
+		// Meeting to destination
+		vertex = meeting;
+		step = backward.get(vertex);
+		while (step.previous != null) {
+			relationIds.add(step.relationId);
+			vertex = step.previous;
+			nodes.add(vertex);
+			step = backward.get(vertex);
+		}
+		return new Path<>(nodes, relationIds);
+	}
+}
@@ -0,0 +1,61 @@
+package com.graphdb.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Position of a consumer in the changes to a graph that outlives the process
+ * and the GraphChangeFeed it was taken from: the version of the last change
+ * handed over from each map shard and Raft partition, see
+ * GraphChange.getPartition. The entries of a map shard are spread over the
+ * partitions by key, and the versions of the entries of one partition are its
+ * Raft indexes, which grow with its changes. A consumer stores getVersions()
+ * and resumes with GraphChangeFeed.subscribe(ChangeCursor, Consumer).
+ */
+public class ChangeCursor {
+
+	/*
+	 * Before every change, a consumer resuming from it gets the whole graph
+	 */
+	public final static ChangeCursor START = new ChangeCursor(Collections.emptyMap());
+
+	private final Map<String, Long> versions;
+
+	public ChangeCursor(Map<String, Long> versions) {
+		this.versions = Collections.unmodifiableMap(new HashMap<>(versions));
+	}
+
+	/*
+	 * Version of the last change handed over by map shard and partition, a
+	 * partition without one is at its start
+	 */
+	public Map<String, Long> getVersions() {
+		return versions;
+	}
+
+	public long version(String partition) {
+		return versions.getOrDefault(partition, 0L);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ChangeCursor)) {
+			return false;
+		}
+		return versions.equals(((ChangeCursor) o).versions);
+	}
+
+	@Override
+	public int hashCode() {
+		return versions.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return versions.toString();
+	}
+}
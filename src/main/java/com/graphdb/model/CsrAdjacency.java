@@ -0,0 +1,91 @@
+package com.graphdb.model;
+
+import java.util.Arrays;
+
+/*
+ * Compressed sparse row adjacency of one relation type. The edges of vertex v
+ * are the positions start(v) to end(v) - 1 of the targets and relationIds
+ * arrays, so iterating the neighbours of a vertex is a plain array scan:
+ *
+ * for (int i = csr.start(v); i < csr.end(v); i++) { csr.target(i); }
+ */
+public class CsrAdjacency {
+
+	private final int[] offsets;
+	private final int[] targets;
+	private final long[] relationIds;
+
+	private CsrAdjacency(int[] offsets, int[] targets, long[] relationIds) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.relationIds = relationIds;
+	}
+
+	public int start(int vertex) {
+		return offsets[vertex];
+	}
+
+	public int end(int vertex) {
+		return offsets[vertex + 1];
+	}
+
+	public int degree(int vertex) {
+		return offsets[vertex + 1] - offsets[vertex];
+	}
+
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	public long relationId(int edge) {
+		return relationIds[edge];
+	}
+
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	/*
+	 * Collects (source, target, relation id) triples in any order and sorts them
+	 * into rows with a counting pass over the sources.
+	 */
+	static class Builder {
+
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private long[] relationIds = new long[16];
+		private int size;
+
+		void add(int source, int target, long relationId) {
+			if (size == sources.length) {
+				sources = Arrays.copyOf(sources, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+				relationIds = Arrays.copyOf(relationIds, size * 2);
+			}
+			sources[size] = source;
+			targets[size] = target;
+			relationIds[size] = relationId;
+			size++;
+		}
+
+		CsrAdjacency build(int vertexCount) {
+			int[] offsets = new int[vertexCount + 1];
+			for (int i = 0; i < size; i++) {
+				offsets[sources[i] + 1]++;
+			}
+			for (int v = 0; v < vertexCount; v++) {
+				offsets[v + 1] += offsets[v];
+			}
+
+			int[] position = Arrays.copyOf(offsets, vertexCount);
+			int[] rowTargets = new int[size];
+			long[] rowRelationIds = new long[size];
+			for (int i = 0; i < size; i++) {
+				int edge = position[sources[i]]++;
+				rowTargets[edge] = targets[i];
+				rowRelationIds[edge] = relationIds[i];
+			}
+			return new CsrAdjacency(offsets, rowTargets, rowRelationIds);
+		}
+	}
+}
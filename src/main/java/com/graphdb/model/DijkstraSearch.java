@@ -0,0 +1,247 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+ * Weighted shortest path search of a PathQuery: Dijkstra's algorithm from the
+ * source or from both ends, or A* with the heuristic of the query. Vertices get
+ * dense int ids as they are reached, their distances and parents are kept in
+ * primitive arrays and ordered by a DoubleKeyedHeap. The adjacency of a vertex
+ * is read when it is settled, together with that of the vertices at the top of
+ * its heap, and the relations of all of them with one batched read, so the
+ * graph is read a frontier at a time.
+ */
+class DijkstraSearch<K> {
+
+	final static int FRONTIER_BATCH = 64;
+
+	private final PathQuery<K> query;
+	private final Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> outgoing;
+	private final Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> incoming;
+	private final Function<Collection<Long>, Map<Long, Relation>> relations;
+
+	private final Map<K, Integer> vertexIds = new HashMap<>();
+	private final List<K> vertices = new ArrayList<>();
+	// Cost of every relation read, NaN for the types the query does not follow
+	private final Map<Long, Double> costs = new HashMap<>();
+	private int visited;
+	// Cheapest path found by a bidirectional search, through the meeting vertex
+	private double best = Double.POSITIVE_INFINITY;
+	private int meeting = -1;
+
+	/*
+	 * The adjacency functions read the relation ids of vertices by neighbour,
+	 * leaving out the vertices without any, the relations function reads
+	 * relations by id
+	 */
+	DijkstraSearch(PathQuery<K> query, Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> outgoing,
+			Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> incoming,
+			Function<Collection<Long>, Map<Long, Relation>> relations) {
+		this.query = query;
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.relations = relations;
+	}
+
+	// Tree of one end of the search
+	private class Side {
+
+		final Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> adjacency;
+		final DoubleKeyedHeap heap = new DoubleKeyedHeap();
+		double[] distances = new double[0];
+		int[] parents = new int[0];
+		long[] parentRelations = new long[0];
+		int[] depths = new int[0];
+		// Adjacency read ahead for the vertices of the frontier
+		final Map<Integer, Map<K, Collection<Long>>> loaded = new HashMap<>();
+
+		Side(Function<Collection<K>, Map<K, Map<K, Collection<Long>>>> adjacency) {
+			this.adjacency = adjacency;
+		}
+
+		double distance(int vertex) {
+			return vertex < distances.length ? distances[vertex] : Double.POSITIVE_INFINITY;
+		}
+
+		void reach(int vertex, int parent, long relationId, double distance, int depth) {
+			if (vertex >= distances.length) {
+				int length = distances.length;
+				int capacity = Math.max(16, Math.max(vertex + 1, length * 2));
+				distances = Arrays.copyOf(distances, capacity);
+				Arrays.fill(distances, length, capacity, Double.POSITIVE_INFINITY);
+				parents = Arrays.copyOf(parents, capacity);
+				parentRelations = Arrays.copyOf(parentRelations, capacity);
+				depths = Arrays.copyOf(depths, capacity);
+			}
+			distances[vertex] = distance;
+			parents[vertex] = parent;
+			parentRelations[vertex] = relationId;
+			depths[vertex] = depth;
+			heap.push(vertex, distance + heuristic(vertices.get(vertex)));
+		}
+
+		/*
+		 * Neighbours of a vertex being settled, read along with the vertices at
+		 * the top of the heap that are not read yet
+		 */
+		Map<K, Collection<Long>> neighbours(int vertex) {
+			if (!loaded.containsKey(vertex)) {
+				List<K> batch = new ArrayList<>();
+				batch.add(vertices.get(vertex));
+				for (int i = 0; i < heap.size() && batch.size() < FRONTIER_BATCH; i++) {
+					if (!loaded.containsKey(heap.item(i))) {
+						batch.add(vertices.get(heap.item(i)));
+					}
+				}
+				Map<K, Map<K, Collection<Long>>> read = adjacency.apply(batch);
+				Set<Long> unknown = new LinkedHashSet<>();
+				for (K key : batch) {
+					Map<K, Collection<Long>> neighbours = read.get(key);
+					loaded.put(vertexIds.get(key), neighbours);
+					if (neighbours != null) {
+						neighbours.values().forEach(relIds -> relIds.forEach(relId -> {
+							if (!costs.containsKey(relId)) {
+								unknown.add(relId);
+							}
+						}));
+					}
+				}
+				if (!unknown.isEmpty()) {
+					relations.apply(unknown).forEach((relId, relation) -> costs.put(relId, query.cost(relation)));
+				}
+			}
+			return loaded.remove(vertex);
+		}
+	}
+
+	/*
+	 * @return: The cheapest path, null if there is none within the cutoffs of
+	 * the query or the search settled more than maxVisited vertices
+	 */
+	WeightedPath<K> search() {
+		query.check();
+		K from = query.getFrom();
+		K to = query.getTo();
+		if (from.equals(to)) {
+			return new WeightedPath<>(Collections.singletonList(from), Collections.emptyList(), 0);
+		}
+		int source = id(from);
+		int target = id(to);
+		Side forward = new Side(outgoing);
+		forward.reach(source, -1, 0, 0, 0);
+
+		if (!query.isBidirectional()) {
+			while (!forward.heap.isEmpty()) {
+				int vertex = forward.heap.pop();
+				if (vertex == target) {
+					return path(forward, null, target, forward.distance(target));
+				}
+				if (++visited > query.getMaxVisited()) {
+					return null;
+				}
+				relax(forward, null, vertex);
+			}
+			return null;
+		}
+
+		Side backward = new Side(incoming);
+		backward.reach(target, -1, 0, 0, 0);
+		// Stops once no path through the frontiers can beat the best one found
+		while (!forward.heap.isEmpty() && !backward.heap.isEmpty()
+				&& forward.heap.peekKey() + backward.heap.peekKey() < best) {
+			boolean expandForward = forward.heap.peekKey() <= backward.heap.peekKey();
+			Side side = expandForward ? forward : backward;
+			int vertex = side.heap.pop();
+			if (++visited > query.getMaxVisited()) {
+				return null;
+			}
+			relax(side, expandForward ? backward : forward, vertex);
+		}
+		return meeting < 0 ? null : path(forward, backward, meeting, best);
+	}
+
+	/*
+	 * Follows the cheapest relation from the vertex to each of its neighbours
+	 */
+	private void relax(Side side, Side other, int vertex) {
+		Map<K, Collection<Long>> neighbours = side.neighbours(vertex);
+		int depth = side.depths[vertex] + 1;
+		if (neighbours == null || depth > query.getMaxDepth()) {
+			return;
+		}
+		double distance = side.distances[vertex];
+		for (Entry<K, Collection<Long>> entry : neighbours.entrySet()) {
+			long relationId = 0;
+			double cost = Double.POSITIVE_INFINITY;
+			for (Long relId : entry.getValue()) {
+				// Relations removed since their ids were read have no cost
+				Double relationCost = costs.get(relId);
+				if (relationCost != null && relationCost < cost) {
+					cost = relationCost;
+					relationId = relId;
+				}
+			}
+			double next = distance + cost;
+			if (cost == Double.POSITIVE_INFINITY || next > query.getMaxCost()) {
+				continue;
+			}
+			int neighbour = id(entry.getKey());
+			if (next < side.distance(neighbour)) {
+				side.reach(neighbour, vertex, relationId, next, depth);
+				double through = next + (other == null ? 0 : other.distance(neighbour));
+				if (other != null && through < best && through <= query.getMaxCost()
+						&& depth + other.depths[neighbour] <= query.getMaxDepth()) {
+					best = through;
+					meeting = neighbour;
+				}
+			}
+		}
+	}
+
+	private double heuristic(K vertex) {
+		return query.getHeuristic() == null ? 0 : query.getHeuristic().applyAsDouble(vertex);
+	}
+
+	private int id(K vertex) {
+		Integer id = vertexIds.get(vertex);
+		if (id == null) {
+			id = vertices.size();
+			vertexIds.put(vertex, id);
+			vertices.add(vertex);
+		}
+		return id;
+	}
+
+	private WeightedPath<K> path(Side forward, Side backward, int meeting, double cost) {
+		List<K> nodes = new ArrayList<>();
+		List<Long> relationIds = new ArrayList<>();
+
+		// Source to meeting, walked backwards then reversed
+		int vertex = meeting;
+		for (; forward.parents[vertex] >= 0; vertex = forward.parents[vertex]) {
+			nodes.add(vertices.get(vertex));
+			relationIds.add(forward.parentRelations[vertex]);
+		}
+		nodes.add(vertices.get(vertex));
+		Collections.reverse(nodes);
+		Collections.reverse(relationIds);
+
+		// Meeting to destination
+		for (vertex = meeting; backward != null && backward.parents[vertex] >= 0;) {
+			relationIds.add(backward.parentRelations[vertex]);
+			vertex = backward.parents[vertex];
+			nodes.add(vertices.get(vertex));
+		}
+		return new WeightedPath<>(nodes, relationIds, cost);
+	}
+}
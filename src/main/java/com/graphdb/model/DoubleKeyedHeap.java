@@ -0,0 +1,130 @@
+package com.graphdb.model;
+
+import java.util.Arrays;
+
+/*
+ * Binary min heap of int items, the dense ids of a search, keyed by double.
+ * The position of every item in the heap is kept in an array indexed by the
+ * item, so that a key is lowered in place instead of pushing the item again.
+ * Nothing is boxed.
+ */
+class DoubleKeyedHeap {
+
+	private int[] items = new int[16];
+	private double[] keys = new double[16];
+	// Position of each item in the heap, -1 when it is not in the heap
+	private int[] positions = new int[16];
+	private int size;
+
+	DoubleKeyedHeap() {
+		Arrays.fill(positions, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean contains(int item) {
+		return item < positions.length && positions[item] >= 0;
+	}
+
+	/*
+	 * Item at a position of the heap array, the first positions hold the items
+	 * with the smallest keys, though not in order
+	 */
+	int item(int position) {
+		return items[position];
+	}
+
+	int peek() {
+		return items[0];
+	}
+
+	double peekKey() {
+		return keys[0];
+	}
+
+	/*
+	 * Inserts the item, or lowers its key if it is in the heap with a greater one
+	 */
+	void push(int item, double key) {
+		if (item >= positions.length) {
+			int length = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(item + 1, length * 2));
+			Arrays.fill(positions, length, positions.length, -1);
+		}
+		int position = positions[item];
+		if (position >= 0) {
+			if (key < keys[position]) {
+				keys[position] = key;
+				siftUp(position);
+			}
+			return;
+		}
+		if (size == items.length) {
+			items = Arrays.copyOf(items, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		items[size] = item;
+		keys[size] = key;
+		positions[item] = size;
+		siftUp(size++);
+	}
+
+	int pop() {
+		int top = items[0];
+		positions[top] = -1;
+		size--;
+		if (size > 0) {
+			move(size, 0);
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int position) {
+		int item = items[position];
+		double key = keys[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			move(parent, position);
+			position = parent;
+		}
+		place(item, key, position);
+	}
+
+	private void siftDown(int position) {
+		int item = items[position];
+		double key = keys[position];
+		int half = size >>> 1;
+		while (position < half) {
+			int child = 2 * position + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (key <= keys[child]) {
+				break;
+			}
+			move(child, position);
+			position = child;
+		}
+		place(item, key, position);
+	}
+
+	private void move(int from, int to) {
+		place(items[from], keys[from], to);
+	}
+
+	private void place(int item, double key, int position) {
+		items[position] = item;
+		keys[position] = key;
+		positions[item] = position;
+	}
+}
@@ -0,0 +1,274 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import io.atomix.core.Atomix;
+import io.atomix.core.multimap.AsyncAtomicMultimap;
+import io.atomix.core.multimap.AtomicMultimap;
+import io.atomix.core.multimap.AtomicMultimapBuilder;
+import io.atomix.core.transaction.Transaction;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+import io.atomix.utils.serializer.Serializer;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * AdjacencyLayout.EDGE_MULTIMAP index. Each relation end point is a separate
+ * multimap entry under the vertex key, so an insert or remove only sends that
+ * entry and a read of the vertex returns all of its entries at once.
+ */
+class EdgeMultimapAdjacencyIndex<K> implements AdjacencyIndex<K> {
+
+	private final Atomix atomix;
+	private final String edgesMapName;
+	private final Serializer serializer;
+	private final VertexShards shards;
+	private List<AtomicMultimapBuilder<K, AdjacencyEntry<K>>> edgesBuilders;
+	private List<AtomicMultimap<K, AdjacencyEntry<K>>> edgesShards;
+	private NearCache<K, Collection<AdjacencyEntry<K>>> edgesCache;
+
+	EdgeMultimapAdjacencyIndex(Atomix atomix, String edgesMapName, Serializer serializer, VertexShards shards) {
+		this.atomix = atomix;
+		this.edgesMapName = edgesMapName;
+		this.serializer = serializer;
+		this.shards = shards;
+		// Without the Atomix multimap cache, it is not invalidated by a local
+		// putAll and serves stale entries right after a batch
+		edgesBuilders = shards.create(shard -> atomix
+				.<K, AdjacencyEntry<K>>atomicMultimapBuilder(shards.name(edgesMapName, shard))
+				.withSerializer(serializer));
+	}
+
+	/*
+	 * Read view of the given index, see readView
+	 */
+	private EdgeMultimapAdjacencyIndex(EdgeMultimapAdjacencyIndex<K> index, ProxyProtocol protocol,
+			ReadConsistency consistency) {
+		this(index.atomix, index.edgesMapName, index.serializer, index.shards);
+		withProtocol(protocol);
+		// build creates new primitives where get would return those of the index
+		edgesShards = shards.create(shard -> edgesBuilders.get(shard).build());
+		edgesCache = index.edgesCache.forReads(consistency);
+	}
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+		edgesBuilders.forEach(builder -> builder.withProtocol(protocol));
+	}
+
+	/*
+	 * Every entry is a value of the multimap, nothing grows with the degree but
+	 * the number of values of the vertex
+	 */
+	@Override
+	public void withSupernodes(int threshold, int buckets) {
+	}
+
+	@Override
+	public AdjacencyIndex<K> readView(ProxyProtocol protocol, ReadConsistency consistency) {
+		return new EdgeMultimapAdjacencyIndex<>(this, protocol, consistency);
+	}
+
+	@Override
+	public void build(NearCache.Settings caches) {
+		edgesShards = shards.create(shard -> edgesBuilders.get(shard).get());
+		edgesCache = caches.create(edgesMapName);
+		// Multimap events are per entry, the whole vertex is dropped
+		edgesShards.forEach(edges -> edges.addListener(event -> edgesCache.invalidate(event.key())));
+	}
+
+	/*
+	 * The entries of the vertex, from the cache if present
+	 */
+	private CompletableFuture<Versioned<Collection<AdjacencyEntry<K>>>> getEntries(K vertex) {
+		return edgesCache.get(vertex, key -> edges(key).get(key));
+	}
+
+	private <T> CompletableFuture<Void> invalidateOnComplete(K vertex, CompletableFuture<T> write) {
+		return write.handle((v, error) -> {
+			edgesCache.invalidate(vertex);
+			if (error != null) {
+				throw new CompletionException(error);
+			}
+			return null;
+		});
+	}
+
+	private AsyncAtomicMultimap<K, AdjacencyEntry<K>> edges(K vertex) {
+		return edgesShards.get(shards.ofVertex(vertex)).async();
+	}
+
+	@Override
+	public CompletableFuture<Void> add(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		return invalidateOnComplete(vertex, edges(vertex).putAll(vertex, entries));
+	}
+
+	@Override
+	public CompletableFuture<Void> remove(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		return invalidateOnComplete(vertex, edges(vertex).removeAll(vertex, entries));
+	}
+
+	@Override
+	public CompletableFuture<Void> removeVertex(K vertex) {
+		return invalidateOnComplete(vertex, edges(vertex).removeAll(vertex));
+	}
+
+	@Override
+	public CompletableFuture<Map<K, Collection<Long>>> getByNeighbour(K vertex) {
+		return getEntries(vertex).thenApply(versioned -> group(versioned, AdjacencyEntry::getNeighbour));
+	}
+
+	@Override
+	public CompletableFuture<Collection<Long>> getNeighbour(K vertex, K neighbour) {
+		return getByNeighbour(vertex).thenApply(byNeighbour -> byNeighbour == null ? null
+				: byNeighbour.getOrDefault(neighbour, Collections.emptyList()));
+	}
+
+	@Override
+	public CompletableFuture<Long> getDegree(K vertex) {
+		return getEntries(vertex).thenApply(
+				versioned -> versioned == null || versioned.value() == null ? 0L : (long) versioned.value().size());
+	}
+
+	/*
+	 * The multimap has no multi-key read, so the gets of all the vertices are
+	 * issued together.
+	 */
+	@Override
+	public CompletableFuture<Map<K, Map<K, Collection<Long>>>> getAllByNeighbour(Collection<K> vertices) {
+		Map<K, CompletableFuture<Versioned<Collection<AdjacencyEntry<K>>>>> reads = new HashMap<>();
+		for (K vertex : vertices) {
+			reads.put(vertex, getEntries(vertex));
+		}
+		return CompletableFuture.allOf(reads.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<K, Map<K, Collection<Long>>> result = new HashMap<>();
+			reads.forEach((vertex, read) -> {
+				Map<K, Collection<Long>> grouped = group(read.join(), AdjacencyEntry::getNeighbour);
+				if (grouped != null) {
+					result.put(vertex, grouped);
+				}
+			});
+			return result;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Long>> getByType(K vertex, String type) {
+		return getEntries(vertex).thenApply(versioned -> {
+			Map<String, Collection<Long>> typeMap = group(versioned, AdjacencyEntry::getType);
+			return typeMap == null ? null : typeMap.get(type);
+		});
+	}
+
+	@Override
+	public void invalidateAll(Collection<K> vertices) {
+		edgesCache.invalidateAll(vertices);
+	}
+
+	@Override
+	public boolean isTransactional() {
+		return false;
+	}
+
+	@Override
+	public int updateRoundTrips() {
+		return 1;
+	}
+
+	@Override
+	public int removeVertexRoundTrips() {
+		return 1;
+	}
+
+	/*
+	 * One get per vertex missing from the cache
+	 */
+	@Override
+	public int readRoundTrips(Collection<K> vertices) {
+		int missing = 0;
+		for (K vertex : vertices) {
+			if (!edgesCache.contains(vertex)) {
+				missing++;
+			}
+		}
+		return missing;
+	}
+
+	@Override
+	public int readByTypeRoundTrips(K vertex) {
+		return readRoundTrips(Collections.singleton(vertex));
+	}
+
+	@Override
+	public CompletableFuture<Void> addAll(Map<K, Collection<AdjacencyEntry<K>>> entries, Transaction transaction) {
+		List<CompletableFuture<Void>> writes = new ArrayList<>(entries.size());
+		entries.forEach((vertex, vertexEntries) -> writes
+				.add(invalidateOnComplete(vertex, edges(vertex).putAll(vertex, vertexEntries))));
+		return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+	}
+
+	/*
+	 * The keys of the shard are iterated and the vertices of a batch read
+	 * together
+	 */
+	@Override
+	public void scan(int shard, int batchSize, Consumer<Map<K, Collection<AdjacencyEntry<K>>>> consumer) {
+		AtomicMultimap<K, AdjacencyEntry<K>> edges = edgesShards.get(shard);
+		List<K> batch = new ArrayList<>(batchSize);
+		for (K vertex : edges.keySet()) {
+			batch.add(vertex);
+			if (batch.size() == batchSize) {
+				consumer.accept(getAll(edges.async(), batch));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			consumer.accept(getAll(edges.async(), batch));
+		}
+	}
+
+	private Map<K, Collection<AdjacencyEntry<K>>> getAll(AsyncAtomicMultimap<K, AdjacencyEntry<K>> edges,
+			List<K> vertices) {
+		Map<K, CompletableFuture<Versioned<Collection<AdjacencyEntry<K>>>>> reads = new HashMap<>();
+		for (K vertex : vertices) {
+			reads.put(vertex, edges.get(vertex));
+		}
+		Map<K, Collection<AdjacencyEntry<K>>> entries = new HashMap<>();
+		reads.forEach((vertex, read) -> {
+			Versioned<Collection<AdjacencyEntry<K>>> versioned = read.join();
+			if (versioned != null && versioned.value() != null && !versioned.value().isEmpty()) {
+				entries.put(vertex, new ArrayList<>(versioned.value()));
+			}
+		});
+		return entries;
+	}
+
+	@Override
+	public CompletableFuture<Void> load(Map<K, Collection<AdjacencyEntry<K>>> entries) {
+		List<CompletableFuture<Void>> writes = new ArrayList<>(entries.size());
+		entries.forEach((vertex, vertexEntries) -> writes
+				.add(invalidateOnComplete(vertex, edges(vertex).replaceValues(vertex, vertexEntries))));
+		return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+	}
+
+	private <S> Map<S, Collection<Long>> group(Versioned<Collection<AdjacencyEntry<K>>> versioned,
+			Function<AdjacencyEntry<K>, S> groupBy) {
+		if (versioned == null || versioned.value() == null || versioned.value().isEmpty()) {
+			return null;
+		}
+		Map<S, Collection<Long>> grouped = new HashMap<>();
+		for (AdjacencyEntry<K> entry : versioned.value()) {
+			grouped.computeIfAbsent(groupBy.apply(entry), k -> new ArrayList<>()).add(entry.getRelationId());
+		}
+		return grouped;
+	}
+}
@@ -0,0 +1,765 @@
+package com.graphdb.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Optional;
+import com.google.common.primitives.Longs;
+
+import io.atomix.primitive.protocol.ProxyProtocol;
+
+/*
+ * Graph held in the JVM, for tests, ETL staging and single process deployments
+ * that do not need a cluster. Vertex keys are dictionary encoded to dense ints
+ * as they are first seen, and every vertex keeps its outgoing and incoming
+ * edges as int neighbour and long relation id arrays. Relations are found by
+ * id in chunked arrays, without boxing on any read or write path.
+ *
+ * Writers lock the stripes of the vertices they change, those of both end
+ * points for a relation, always in stripe order; readers take the read lock of
+ * the vertex they list. A relation is only added while both of its nodes are
+ * present, as in GraphModelImpl, whose return values this class mirrors.
+ *
+ * Opened on a file, every write is appended to a MappedGraphLog under the same
+ * locks before it is applied, and the log is replayed when the graph is opened
+ * again. The log
+ * is never compacted: removed nodes and relations keep their records.
+ */
+public class EmbeddedGraph<K, V> implements Graph<K, V>, AutoCloseable {
+
+	private final static Logger logger = Logger.getLogger(EmbeddedGraph.class);
+
+	public final static int DEFAULT_STRIPES = 64;
+
+	// Records of the log, an Object[] of the op followed by its arguments
+	private final static byte ADD_NODE = 0;
+	private final static byte REMOVE_NODE = 1;
+	private final static byte ADD_RELATION = 2;
+	private final static byte REMOVE_RELATION = 3;
+
+	private final static int[] NO_NEIGHBOURS = new int[0];
+	private final static long[] NO_RELATIONS = new long[0];
+
+	private final ConcurrentMap<K, Vertex<K, V>> vertices = new ConcurrentHashMap<>();
+	private final Chunks<Vertex<K, V>> vertexById = new Chunks<>();
+	private final AtomicInteger vertexCount = new AtomicInteger();
+	private final Chunks<Relation<K, V>> relations = new Chunks<>();
+	private final AtomicLong relationIds = new AtomicLong();
+	private final ReentrantReadWriteLock[] stripes;
+	private MappedGraphLog log;
+	private volatile boolean readOnly;
+
+	public EmbeddedGraph() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/*
+	 * @param stripes: Number of locks shared by the vertices, a power of two
+	 */
+	public EmbeddedGraph(int stripes) {
+		if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("Stripes must be a power of two, got " + stripes);
+		}
+		this.stripes = new ReentrantReadWriteLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	/*
+	 * Graph persisted to the given file, created if it does not exist
+	 */
+	public EmbeddedGraph(java.nio.file.Path file) throws IOException {
+		this(file, MappedGraphLog.DEFAULT_SEGMENT_SIZE, DEFAULT_STRIPES);
+	}
+
+	/*
+	 * @param segmentSize: Bytes of the file mapped at a time, also the largest
+	 * record, a write of a node or relation, that can be logged
+	 */
+	public EmbeddedGraph(java.nio.file.Path file, int segmentSize, int stripes) throws IOException {
+		this(stripes);
+		MappedGraphLog opened = new MappedGraphLog(file, segmentSize);
+		try {
+			opened.replay(this::apply);
+		} catch (IOException | RuntimeException e) {
+			opened.close();
+			throw e;
+		}
+		log = opened;
+		logger.info(String.format("Opened %s with %s vertices and %s relation ids", file, vertexCount.get(),
+				relationIds.get()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void apply(Object[] record) {
+		switch ((Byte) record[0]) {
+		case ADD_NODE:
+			putNode((K) record[1], (V) record[2]);
+			break;
+		case REMOVE_NODE:
+			deleteNode((K) record[1]);
+			break;
+		case ADD_RELATION:
+			long id = (Long) record[1];
+			relationIds.accumulateAndGet(id, Math::max);
+			insertRelation(id, (K) record[2], (K) record[3], (String) record[4], (V) record[5], (Boolean) record[6]);
+			break;
+		case REMOVE_RELATION:
+			deleteRelation((Long) record[1], true);
+			break;
+		default:
+			throw new IllegalStateException("Unknown log record " + record[0]);
+		}
+	}
+
+	private void append(Object... record) {
+		if (log != null) {
+			log.append(record);
+		}
+	}
+
+	/*
+	 * Forces the writes logged so far to the file, a no-op for a graph held
+	 * only in memory
+	 */
+	public void flush() {
+		if (log != null) {
+			log.force();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (log != null) {
+			log.close();
+		}
+	}
+
+	public int vertexCount() {
+		return vertexCount.get();
+	}
+
+	private Vertex<K, V> vertex(K key) {
+		return vertices.computeIfAbsent(key, k -> {
+			Vertex<K, V> vertex = new Vertex<>(k, vertexCount.getAndIncrement());
+			vertexById.set(vertex.id, vertex);
+			return vertex;
+		});
+	}
+
+	private ReentrantReadWriteLock stripe(Vertex<K, V> vertex) {
+		return stripes[vertex.id & (stripes.length - 1)];
+	}
+
+	private void lock(Vertex<K, V> first, Vertex<K, V> second) {
+		int a = first.id & (stripes.length - 1);
+		int b = second.id & (stripes.length - 1);
+		stripes[Math.min(a, b)].writeLock().lock();
+		if (a != b) {
+			stripes[Math.max(a, b)].writeLock().lock();
+		}
+	}
+
+	private void unlock(Vertex<K, V> first, Vertex<K, V> second) {
+		int a = first.id & (stripes.length - 1);
+		int b = second.id & (stripes.length - 1);
+		if (a != b) {
+			stripes[Math.max(a, b)].writeLock().unlock();
+		}
+		stripes[Math.min(a, b)].writeLock().unlock();
+	}
+
+	private void checkWritable() {
+		if (readOnly) {
+			throw new UnsupportedOperationException("EmbeddedGraph is read-only");
+		}
+	}
+
+	// Nothing to configure or build in process
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+	}
+
+	@Override
+	public void withCacheSize(int size) {
+	}
+
+	@Override
+	public void setReadOnly() {
+		readOnly = true;
+	}
+
+	@Override
+	public void buildAtomicMultiMap() {
+	}
+
+	@Override
+	public boolean addNode(K key, V value) {
+		checkWritable();
+		putNode(key, value);
+		return true;
+	}
+
+	private void putNode(K key, V value) {
+		Vertex<K, V> vertex = vertex(key);
+		Lock lock = stripe(vertex).writeLock();
+		lock.lock();
+		try {
+			append(ADD_NODE, key, value);
+			vertex.value = value;
+			vertex.present = true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Nodes are added one at a time, there is no transaction to share
+	 */
+	@Override
+	public boolean addNodes(Map<K, V> nodes) {
+		checkWritable();
+		nodes.forEach(this::putNode);
+		return true;
+	}
+
+	@Override
+	public boolean removeNode(K key) {
+		checkWritable();
+		if (!deleteNode(key)) {
+			logger.error(String.format("Node with key %s not found", key));
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * The removal is logged and the node marked absent first so that no relation
+	 * can be added to it meanwhile, then its relations are removed along with their entries at the
+	 * other end points. Replaying the record of the node removes them again, so
+	 * they are not logged.
+	 */
+	private boolean deleteNode(K key) {
+		Vertex<K, V> vertex = vertices.get(key);
+		if (vertex == null) {
+			return false;
+		}
+		long[] relIds;
+		Lock lock = stripe(vertex).writeLock();
+		lock.lock();
+		try {
+			if (!vertex.present) {
+				return false;
+			}
+			append(REMOVE_NODE, key);
+			vertex.present = false;
+			vertex.value = null;
+			relIds = Longs.concat(vertex.out.relationIds(), vertex.in.relationIds());
+		} finally {
+			lock.unlock();
+		}
+		for (long relId : relIds) {
+			deleteRelation(relId, false);
+		}
+		return true;
+	}
+
+	@Override
+	public Optional<V> getNode(K key) {
+		Vertex<K, V> vertex = vertices.get(key);
+		if (vertex == null) {
+			return Optional.absent();
+		}
+		Lock lock = stripe(vertex).readLock();
+		lock.lock();
+		try {
+			return vertex.present ? Optional.fromNullable(vertex.value) : Optional.absent();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Long addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		checkWritable();
+		if (!vertices.containsKey(from) || !vertices.containsKey(to)) {
+			return null;
+		}
+		long id = relationIds.incrementAndGet();
+		return insertRelation(id, from, to, type, value, biDirectional) ? id : null;
+	}
+
+	/*
+	 * A biDirectional relation is an edge in both directions, as in the indexes
+	 * of GraphModelImpl
+	 */
+	private boolean insertRelation(long id, K from, K to, String type, V value, boolean biDirectional) {
+		Vertex<K, V> source = vertex(from);
+		Vertex<K, V> target = vertex(to);
+		lock(source, target);
+		try {
+			if (!source.present || !target.present) {
+				return false;
+			}
+			append(ADD_RELATION, id, from, to, type, value, biDirectional);
+			relations.set(id, new Relation<>(id, from, to, value, type, biDirectional));
+			source.out.add(target.id, id);
+			target.in.add(source.id, id);
+			if (biDirectional) {
+				target.out.add(source.id, id);
+				source.in.add(target.id, id);
+			}
+			return true;
+		} finally {
+			unlock(source, target);
+		}
+	}
+
+	@Override
+	public List<Long> addRelations(Collection<Relation<K, V>> relations) {
+		checkWritable();
+		List<Long> ids = new ArrayList<>(relations.size());
+		for (Relation<K, V> relation : relations) {
+			ids.add(addRelation(relation.getFrom(), relation.getTo(), relation.getType(), relation.getValue(),
+					relation.isBiDirectional()));
+		}
+		return ids;
+	}
+
+	@Override
+	public boolean removeRelation(long id) {
+		checkWritable();
+		if (!deleteRelation(id, true)) {
+			logger.error(String.format("Relation id:%s not found", id));
+			return false;
+		}
+		return true;
+	}
+
+	private boolean deleteRelation(long id, boolean logged) {
+		Relation<K, V> relation = relations.get(id);
+		if (relation == null) {
+			return false;
+		}
+		Vertex<K, V> source = vertices.get(relation.getFrom());
+		Vertex<K, V> target = vertices.get(relation.getTo());
+		lock(source, target);
+		try {
+			// Removed by another writer before the locks were taken
+			if (relations.get(id) != relation) {
+				return false;
+			}
+			relations.set(id, null);
+			source.out.remove(id);
+			target.in.remove(id);
+			if (relation.isBiDirectional()) {
+				target.out.remove(id);
+				source.in.remove(id);
+			}
+			if (logged) {
+				append(REMOVE_RELATION, id);
+			}
+			return true;
+		} finally {
+			unlock(source, target);
+		}
+	}
+
+	@Override
+	public boolean removeRelation(K from, K to, String type) {
+		checkWritable();
+		boolean removed = true;
+		for (Relation relation : getRelations(from, to)) {
+			if (relation.getType().equals(type)) {
+				removed &= removeRelation(relation.getId());
+			}
+		}
+		// Indicates if all the relations were deleted or not.
+		return removed;
+	}
+
+	@Override
+	public Relation getRelations(long relationId) {
+		Relation relation = relations.get(relationId);
+		if (relation == null) {
+			logger.error(String.format("Relation with id:%s does not exist", relationId));
+		}
+		return relation;
+	}
+
+	/*
+	 * Ids of the relations in one direction of a vertex, of the given type and
+	 * to the given neighbour unless they are null and -1
+	 */
+	private long[] relationIds(K key, boolean outgoing, String type, int neighbour) {
+		Vertex<K, V> vertex = vertices.get(key);
+		if (vertex == null) {
+			return NO_RELATIONS;
+		}
+		Lock lock = stripe(vertex).readLock();
+		lock.lock();
+		try {
+			Adjacency adjacency = outgoing ? vertex.out : vertex.in;
+			long[] result = new long[adjacency.size];
+			int count = 0;
+			for (int i = 0; i < adjacency.size; i++) {
+				long relId = adjacency.relationIds[i];
+				if ((neighbour < 0 || adjacency.neighbours[i] == neighbour)
+						&& (type == null || type.equals(relations.get(relId).getType()))) {
+					result[count++] = relId;
+				}
+			}
+			return count == result.length ? result : Arrays.copyOf(result, count);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long[] relationIds(K from, K to) {
+		Vertex<K, V> target = vertices.get(to);
+		return target == null ? NO_RELATIONS : relationIds(from, true, null, target.id);
+	}
+
+	// Relations removed since their ids were read are left out
+	private List<Relation> relations(long[] relIds) {
+		List<Relation> result = new ArrayList<>(relIds.length);
+		for (long relId : relIds) {
+			Relation relation = relations.get(relId);
+			if (relation != null) {
+				result.add(relation);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Relation> getRelations(K from, K to) {
+		return relations(relationIds(from, to));
+	}
+
+	@Override
+	public List<String> getRelationType(K from, K to) {
+		List<String> result = new ArrayList<>();
+		for (Relation relation : getRelations(from, to)) {
+			result.add(relation.getType());
+		}
+		return result;
+	}
+
+	@Override
+	public long getNodeOutDegree(K from) {
+		Vertex<K, V> vertex = vertices.get(from);
+		if (vertex == null) {
+			return -1;
+		}
+		Lock lock = stripe(vertex).readLock();
+		lock.lock();
+		try {
+			return vertex.out.size == 0 ? -1 : vertex.out.size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from) {
+		return getOutgoingRelations(from, null);
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from, String type) {
+		List<Relation> result = relations(relationIds(from, true, type, -1));
+		return result.isEmpty() ? null : result;
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to) {
+		return getIncomingRelations(to, null);
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to, String type) {
+		return relations(relationIds(to, false, type, -1));
+	}
+
+	@Override
+	public RelationPage getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		return page(relationIds(from, true, type, -1), cursor, pageSize);
+	}
+
+	@Override
+	public RelationPage getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		return page(relationIds(to, false, type, -1), cursor, pageSize);
+	}
+
+	@Override
+	public RelationPage getRelations(K from, K to, String cursor, int pageSize) {
+		return page(relationIds(from, to), cursor, pageSize);
+	}
+
+	private RelationPage page(long[] relIds, String cursor, int pageSize) {
+		List<Long> next = RelationPage.nextIds(Longs.asList(relIds).iterator(), cursor, pageSize);
+		List<Relation> page = relations(Longs.toArray(next.subList(0, Math.min(next.size(), pageSize))));
+		return new RelationPage(page,
+				next.size() > pageSize ? RelationPage.cursorOf(next.get(pageSize - 1)) : null);
+	}
+
+	@Override
+	public Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize) {
+		return stream(() -> relationIds(from, true, type, -1), pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamIncomingRelations(K to, String type, int pageSize) {
+		return stream(() -> relationIds(to, false, type, -1), pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamRelations(K from, K to, int pageSize) {
+		return stream(() -> relationIds(from, to), pageSize);
+	}
+
+	private Stream<Relation> stream(Supplier<long[]> relIds, int pageSize) {
+		return RelationPage.stream(() -> Longs.asList(relIds.get()), ids -> relations(Longs.toArray(ids)), pageSize);
+	}
+
+	@Override
+	public boolean areRelated(K from, K to) {
+		return relationIds(from, to).length > 0;
+	}
+
+	@Override
+	public List<K> search(K from, K to) {
+		Path<K> path = search(from, to, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return path == null ? null : path.getNodes();
+	}
+
+	/*
+	 * Breadth first search over the int ids, with the parent of every visited
+	 * vertex kept in int and long arrays. Vertices first seen after the search
+	 * started are not visited.
+	 */
+	@Override
+	public Path<K> search(K from, K to, int maxDepth, int maxVisited) {
+		Vertex<K, V> sourceVertex = vertices.get(from);
+		Vertex<K, V> targetVertex = vertices.get(to);
+		if (sourceVertex == null || targetVertex == null) {
+			return null;
+		}
+		int source = sourceVertex.id;
+		int target = targetVertex.id;
+		int count = vertexCount.get();
+
+		int[] parent = new int[count];
+		long[] parentRelation = new long[count];
+		Arrays.fill(parent, -1);
+		parent[source] = source;
+		int[] queue = new int[count];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+
+		for (int depth = 0; depth < maxDepth && head < tail && parent[target] < 0; depth++) {
+			int levelEnd = tail;
+			while (head < levelEnd && parent[target] < 0) {
+				int vertex = queue[head++];
+				Vertex<K, V> current = vertexById.get(vertex);
+				Lock lock = stripe(current).readLock();
+				lock.lock();
+				try {
+					Adjacency out = current.out;
+					for (int i = 0; i < out.size; i++) {
+						int next = out.neighbours[i];
+						if (next < count && parent[next] < 0) {
+							parent[next] = vertex;
+							parentRelation[next] = out.relationIds[i];
+							queue[tail++] = next;
+						}
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+			if (tail > maxVisited) {
+				return null;
+			}
+		}
+
+		if (parent[target] < 0) {
+			return null;
+		}
+		List<K> nodes = new ArrayList<>();
+		List<Long> relIds = new ArrayList<>();
+		for (int vertex = target; vertex != source; vertex = parent[vertex]) {
+			nodes.add(vertexById.get(vertex).key);
+			relIds.add(parentRelation[vertex]);
+		}
+		nodes.add(from);
+		Collections.reverse(nodes);
+		Collections.reverse(relIds);
+		return new Path<>(nodes, relIds);
+	}
+
+	@Override
+	public WeightedPath<K> shortestPath(PathQuery<K> query) {
+		return new DijkstraSearch<>(query, keys -> adjacency(keys, true), keys -> adjacency(keys, false), ids -> {
+			Map<Long, Relation> result = new HashMap<>();
+			for (Long id : ids) {
+				Relation relation = relations.get(id);
+				if (relation != null) {
+					result.put(id, relation);
+				}
+			}
+			return result;
+		}).search();
+	}
+
+	private Map<K, Map<K, Collection<Long>>> adjacency(Collection<K> keys, boolean outgoing) {
+		Map<K, Map<K, Collection<Long>>> result = new HashMap<>();
+		for (K key : keys) {
+			Vertex<K, V> vertex = vertices.get(key);
+			if (vertex == null) {
+				continue;
+			}
+			Map<K, Collection<Long>> neighbours = new HashMap<>();
+			Lock lock = stripe(vertex).readLock();
+			lock.lock();
+			try {
+				Adjacency adjacency = outgoing ? vertex.out : vertex.in;
+				for (int i = 0; i < adjacency.size; i++) {
+					neighbours.computeIfAbsent(vertexById.get(adjacency.neighbours[i]).key, k -> new ArrayList<>())
+							.add(adjacency.relationIds[i]);
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (!neighbours.isEmpty()) {
+				result.put(key, neighbours);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Entry of the dictionary, kept once a key is seen so that its int id never
+	 * changes; value, presence and adjacency are guarded by its stripe
+	 */
+	private static class Vertex<K, V> {
+
+		final K key;
+		final int id;
+		V value;
+		boolean present;
+		final Adjacency out = new Adjacency();
+		final Adjacency in = new Adjacency();
+
+		Vertex(K key, int id) {
+			this.key = key;
+			this.id = id;
+		}
+	}
+
+	/*
+	 * Edges of one direction of a vertex in insertion order, the neighbour int
+	 * ids and the relation ids in parallel arrays
+	 */
+	private static class Adjacency {
+
+		int[] neighbours = NO_NEIGHBOURS;
+		long[] relationIds = NO_RELATIONS;
+		int size;
+
+		void add(int neighbour, long relationId) {
+			if (size == neighbours.length) {
+				int capacity = Math.max(4, size * 2);
+				neighbours = Arrays.copyOf(neighbours, capacity);
+				relationIds = Arrays.copyOf(relationIds, capacity);
+			}
+			neighbours[size] = neighbour;
+			relationIds[size] = relationId;
+			size++;
+		}
+
+		void remove(long relationId) {
+			for (int i = 0; i < size; i++) {
+				if (relationIds[i] == relationId) {
+					System.arraycopy(neighbours, i + 1, neighbours, i, size - i - 1);
+					System.arraycopy(relationIds, i + 1, relationIds, i, size - i - 1);
+					size--;
+					return;
+				}
+			}
+		}
+
+		long[] relationIds() {
+			return Arrays.copyOf(relationIds, size);
+		}
+	}
+
+	/*
+	 * Array indexed by long that grows a chunk at a time, read without locks.
+	 * The directory of chunks is copied on write, which only happens once every
+	 * CHUNK_SIZE indexes.
+	 */
+	private static class Chunks<T> {
+
+		private final static int CHUNK_BITS = 12;
+		private final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+		private volatile AtomicReferenceArray<T>[] chunks = newDirectory(16);
+
+		@SuppressWarnings("unchecked")
+		private static <T> AtomicReferenceArray<T>[] newDirectory(int length) {
+			return new AtomicReferenceArray[length];
+		}
+
+		T get(long index) {
+			long chunk = index >>> CHUNK_BITS;
+			AtomicReferenceArray<T>[] current = chunks;
+			if (chunk >= current.length || current[(int) chunk] == null) {
+				return null;
+			}
+			return current[(int) chunk].get((int) (index & (CHUNK_SIZE - 1)));
+		}
+
+		void set(long index, T value) {
+			int chunk = (int) (index >>> CHUNK_BITS);
+			AtomicReferenceArray<T>[] current = chunks;
+			AtomicReferenceArray<T> array = chunk < current.length ? current[chunk] : null;
+			if (array == null) {
+				array = chunk(chunk);
+			}
+			array.set((int) (index & (CHUNK_SIZE - 1)), value);
+		}
+
+		private synchronized AtomicReferenceArray<T> chunk(int chunk) {
+			AtomicReferenceArray<T>[] current = chunks;
+			if (chunk < current.length && current[chunk] != null) {
+				return current[chunk];
+			}
+			AtomicReferenceArray<T>[] directory = Arrays.copyOf(current, Math.max(current.length, chunk + 1) * 2);
+			directory[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+			chunks = directory;
+			return directory[chunk];
+		}
+	}
+}
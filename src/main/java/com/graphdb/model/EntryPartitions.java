@@ -0,0 +1,46 @@
+package com.graphdb.model;
+
+import com.google.common.io.BaseEncoding;
+
+import io.atomix.core.Atomix;
+import io.atomix.core.map.AtomicMapType;
+import io.atomix.core.map.impl.AtomicMapService;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.primitive.proxy.ProxyClient;
+import io.atomix.primitive.service.ServiceConfig;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.utils.serializer.Serializer;
+
+/*
+ * The Raft partition each entry of the maps of a graph is kept in. An AtomicMap
+ * sends the operations on a key to the partition the partitioner of its
+ * protocol picks for the key as the map encodes it, so the entries of one map
+ * shard are spread over all the partitions of the group. The versions of the
+ * entries are Raft indexes of their partition and only compare within it,
+ * versions are kept by map shard and partition, see ChangeCursor.
+ */
+class EntryPartitions {
+
+	private final static String PARTITION_SEPARATOR = "#partition";
+
+	private final Serializer serializer;
+	// Built as the proxy of a map but never connected, only asked where keys go
+	private final ProxyClient<AtomicMapService> router;
+
+	EntryPartitions(Atomix atomix, ProxyProtocol protocol, Serializer serializer) {
+		this.serializer = serializer;
+		ProxyProtocol routing = protocol != null ? protocol
+				: atomix.getPartitionService().getPartitionGroup(MultiRaftProtocol.TYPE).newProtocol();
+		router = routing.newProxy(EntryPartitions.class.getSimpleName(), AtomicMapType.instance(),
+				AtomicMapService.class, new ServiceConfig(), atomix.getPartitionService());
+	}
+
+	/*
+	 * Name of the map shard and partition of a key, the map encodes its keys to
+	 * the base16 string of their serialized form
+	 */
+	String of(String mapName, Object key) {
+		String encoded = BaseEncoding.base16().encode(serializer.encode(key));
+		return mapName + PARTITION_SEPARATOR + router.getPartitionId(encoded).id();
+	}
+}
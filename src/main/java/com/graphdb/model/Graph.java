@@ -1,6 +1,9 @@
 package com.graphdb.model;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import com.google.common.base.Optional;
 
@@ -18,12 +21,23 @@ public interface Graph<K, V> {
 
 	public boolean addNode(K key, V value);
 
+	public boolean addNodes(Map<K, V> nodes);
+
 	public boolean removeNode(K key);
 
 	public Optional<V> getNode(K key);
 
 	public Long addRelation(K from, K to, String type, V value, boolean biDirectional);
 
+	/*
+	 * Adds the relations in batches, each batch together with its index entries
+	 * in a single transaction. Ids of the given relations are ignored.
+	 *
+	 * @return: The generated ids in the order of the given relations, null for a
+	 * relation that was not added
+	 */
+	public List<Long> addRelations(Collection<Relation<K, V>> relations);
+
 	public boolean removeRelation(long id);
 
 	public boolean removeRelation(K from, K to, String type);
@@ -44,7 +58,42 @@ public interface Graph<K, V> {
 
 	public List<Relation> getIncomingRelations(K from, String type);
 
+	/*
+	 * Pages of getOutgoingRelations, getIncomingRelations and getRelations(from,
+	 * to), see RelationPage. A null type matches every type, a null cursor reads
+	 * the first page.
+	 */
+	public RelationPage getOutgoingRelations(K from, String type, String cursor, int pageSize);
+
+	public RelationPage getIncomingRelations(K to, String type, String cursor, int pageSize);
+
+	public RelationPage getRelations(K from, K to, String cursor, int pageSize);
+
+	/*
+	 * All the relations of the same listings in increasing id order. The ids are
+	 * read once when the stream is first consumed and the relations a page at a
+	 * time, so that only one page of relations is held
+	 */
+	public Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize);
+
+	public Stream<Relation> streamIncomingRelations(K to, String type, int pageSize);
+
+	public Stream<Relation> streamRelations(K from, K to, int pageSize);
+
 	public boolean areRelated(K from, K to);
 
 	public List<K> search(K from, K to);
+
+	/*
+	 * Shortest path by number of hops, along with the relation ids of each hop.
+	 * Returns null when there is no path of at most maxDepth hops, or when more
+	 * than maxVisited vertices had to be visited to decide.
+	 */
+	public Path<K> search(K from, K to, int maxDepth, int maxVisited);
+
+	/*
+	 * Cheapest path by the costs of the relations, see PathQuery. Returns null
+	 * when there is no path within the cutoffs of the query.
+	 */
+	public WeightedPath<K> shortestPath(PathQuery<K> query);
 }
@@ -0,0 +1,219 @@
+package com.graphdb.model;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Degrees of the vertices, in total and by relation type, and the number of
+ * relations of each type, kept up to date from the GraphChangeFeed of a graph
+ * instead of iterating the index on every call, see GraphModelImpl.aggregates.
+ * Degrees count relations as the indexes do: a bi-directional relation is
+ * outgoing and incoming at both of its end points.
+ *
+ * The aggregates start from a scan of the relations, then follow the changes.
+ * The relations added and removed through this graph are counted by whichever
+ * comes first of the completed write and its event, so that this client reads
+ * its own writes, and the changes made by other clients once their events are
+ * received. Only the ids of the writes of this graph waiting for their write
+ * or their event are kept, not a state per relation.
+ *
+ * While the scan runs the ids it counted are kept, and the last change of the
+ * relations it has not reached yet, which is counted after the scan if the
+ * scan did not see the relation. The events of a map are received in order
+ * with its responses, so the events of the relations the scan saw are all
+ * received by the time it ends.
+ */
+public class GraphAggregates<K> {
+
+	private final static Logger logger = Logger.getLogger(GraphAggregates.class);
+
+	private final static int OUT = 0;
+	private final static int IN = 1;
+
+	private static class Degrees {
+		private final long[] total = new long[2];
+		private final Map<String, long[]> byType = new HashMap<>(4);
+	}
+
+	private final GraphChangeFeed<K, ?>.Subscription subscription;
+	private final Map<K, Degrees> degrees = new HashMap<>();
+	private final Map<String, Long> relationCounts = new HashMap<>();
+	private long relations;
+	// Relations being added and removed through this graph, true once counted
+	// by their write, until their event comes
+	private final Map<Long, Boolean> adding = new HashMap<>();
+	private final Map<Long, Boolean> removing = new HashMap<>();
+	// Only while the relations are scanned, null after
+	private Set<Long> known = new HashSet<>();
+	private Map<Long, GraphChange<K, ?>> unscanned = new HashMap<>();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	<V> GraphAggregates(GraphChangeFeed<K, V> feed, List<AtomicMap<Long, Relation>> relationsShards) {
+		long start = System.currentTimeMillis();
+		subscription = feed.subscribe(this::onChange);
+		for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+			for (Entry<Long, Versioned<Relation>> entry : relationsMap.entrySet()) {
+				synchronized (this) {
+					unscanned.remove(entry.getKey());
+					if (known.add(entry.getKey())) {
+						count(entry.getValue().value(), 1);
+					}
+				}
+			}
+		}
+		synchronized (this) {
+			for (GraphChange<K, ?> change : unscanned.values()) {
+				if (change.getType() != GraphChange.Type.RELATION_REMOVED) {
+					count(change.getRelation(), 1);
+				}
+			}
+			known = null;
+			unscanned = null;
+		}
+		logger.info(String.format("Aggregated %s relations in %s ms", relationCount(),
+				System.currentTimeMillis() - start));
+	}
+
+	public synchronized long outDegree(K vertex) {
+		Degrees vertexDegrees = degrees.get(vertex);
+		return vertexDegrees == null ? 0 : vertexDegrees.total[OUT];
+	}
+
+	public synchronized long inDegree(K vertex) {
+		Degrees vertexDegrees = degrees.get(vertex);
+		return vertexDegrees == null ? 0 : vertexDegrees.total[IN];
+	}
+
+	public synchronized long outDegree(K vertex, String type) {
+		return degree(vertex, type, OUT);
+	}
+
+	public synchronized long inDegree(K vertex, String type) {
+		return degree(vertex, type, IN);
+	}
+
+	private long degree(K vertex, String type, int direction) {
+		Degrees vertexDegrees = degrees.get(vertex);
+		long[] typeDegrees = vertexDegrees == null ? null : vertexDegrees.byType.get(type);
+		return typeDegrees == null ? 0 : typeDegrees[direction];
+	}
+
+	public synchronized long relationCount() {
+		return relations;
+	}
+
+	public synchronized long relationCount(String type) {
+		return relationCounts.getOrDefault(type, 0L);
+	}
+
+	/*
+	 * @return: A copy of the number of relations by type
+	 */
+	public synchronized Map<String, Long> relationCounts() {
+		return new HashMap<>(relationCounts);
+	}
+
+	/*
+	 * Stops following the changes, the aggregates keep their last values
+	 */
+	public void close() {
+		subscription.close();
+	}
+
+	/*
+	 * Registers a relation about to be added or removed through this graph,
+	 * before its write is sent, see written
+	 */
+	synchronized void writing(long id, boolean added) {
+		(added ? adding : removing).put(id, false);
+	}
+
+	/*
+	 * Counts a relation added or removed through this graph once its write
+	 * completed, if it changed the relations map and its event has not come
+	 */
+	synchronized void written(Relation<K, ?> relation, boolean added, boolean applied) {
+		long id = relation.getId();
+		Map<Long, Boolean> writes = added ? adding : removing;
+		if (!Boolean.FALSE.equals(writes.get(id))) {
+			// Counted by its event
+			return;
+		}
+		if (!applied) {
+			writes.remove(id);
+			return;
+		}
+		writes.put(id, true);
+		if (known == null || known.contains(id)) {
+			count(relation, added ? 1 : -1);
+		} else {
+			// Not reached by the scan yet, which must not count it again
+			known.add(id);
+			unscanned.remove(id);
+			if (added) {
+				count(relation, 1);
+			}
+		}
+	}
+
+	private synchronized void onChange(GraphChange<K, ?> change) {
+		if (change.isNodeChange()) {
+			return;
+		}
+		boolean removal = change.getType() == GraphChange.Type.RELATION_REMOVED;
+		long id = (removal ? change.getPreviousRelation() : change.getRelation()).getId();
+		if (change.getType() != GraphChange.Type.RELATION_UPDATED
+				&& Boolean.TRUE.equals((removal ? removing : adding).remove(id))) {
+			// Counted by its write
+			return;
+		}
+		if (known != null && !known.contains(id)) {
+			unscanned.put(id, change);
+			return;
+		}
+		if (change.getPreviousRelation() != null) {
+			count(change.getPreviousRelation(), -1);
+		}
+		if (change.getRelation() != null) {
+			count(change.getRelation(), 1);
+		}
+	}
+
+	private void count(Relation<K, ?> relation, int delta) {
+		add(relation.getFrom(), relation.getType(), OUT, delta);
+		add(relation.getTo(), relation.getType(), IN, delta);
+		if (relation.isBiDirectional()) {
+			add(relation.getTo(), relation.getType(), OUT, delta);
+			add(relation.getFrom(), relation.getType(), IN, delta);
+		}
+		relations += delta;
+		long typeCount = relationCounts.getOrDefault(relation.getType(), 0L) + delta;
+		if (typeCount == 0) {
+			relationCounts.remove(relation.getType());
+		} else {
+			relationCounts.put(relation.getType(), typeCount);
+		}
+	}
+
+	private void add(K vertex, String type, int direction, int delta) {
+		Degrees vertexDegrees = degrees.computeIfAbsent(vertex, k -> new Degrees());
+		vertexDegrees.total[direction] += delta;
+		long[] typeDegrees = vertexDegrees.byType.computeIfAbsent(type, t -> new long[2]);
+		typeDegrees[direction] += delta;
+		if (typeDegrees[OUT] == 0 && typeDegrees[IN] == 0) {
+			vertexDegrees.byType.remove(type);
+			if (vertexDegrees.byType.isEmpty()) {
+				degrees.remove(vertex);
+			}
+		}
+	}
+}
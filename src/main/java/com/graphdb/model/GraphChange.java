@@ -0,0 +1,110 @@
+package com.graphdb.model;
+
+/*
+ * One change to the nodes or the relations of a graph, as delivered by its
+ * GraphChangeFeed. A change carries the value after the change and the value
+ * it replaced or removed, either is null when there is none.
+ */
+public class GraphChange<K, V> {
+
+	public enum Type {
+		NODE_ADDED, NODE_UPDATED, NODE_REMOVED, RELATION_ADDED, RELATION_UPDATED, RELATION_REMOVED
+	}
+
+	private final long offset;
+	private final Type type;
+	private final String partition;
+	private final long version;
+	private final K node;
+	private final V value;
+	private final V previousValue;
+	private final Relation<K, V> relation;
+	private final Relation<K, V> previousRelation;
+
+	GraphChange(long offset, Type type, String partition, long version, K node, V value, V previousValue,
+			Relation<K, V> relation, Relation<K, V> previousRelation) {
+		this.offset = offset;
+		this.type = type;
+		this.partition = partition;
+		this.version = version;
+		this.node = node;
+		this.value = value;
+		this.previousValue = previousValue;
+		this.relation = relation;
+		this.previousRelation = previousRelation;
+	}
+
+	/*
+	 * Position of the change in the feed that received it, consecutive from 1.
+	 * Offsets are those of one feed, see ChangeCursor for a position that
+	 * holds across feeds. 0 for an entry handed over by the scan of a
+	 * subscription catching up from a cursor.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/*
+	 * Map shard and Raft partition of the changed entry, under which its
+	 * version is kept in a ChangeCursor
+	 */
+	public String getPartition() {
+		return partition;
+	}
+
+	/*
+	 * Version of the written entry in its partition, or of the removed entry
+	 * for a removal, whose event does not carry the version of the removal
+	 * itself
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	boolean isRemoval() {
+		return type == Type.NODE_REMOVED || type == Type.RELATION_REMOVED;
+	}
+
+	/*
+	 * Key of the changed entry in its shard
+	 */
+	Object key() {
+		return node != null ? node : (relation != null ? relation : previousRelation).getId();
+	}
+
+	public boolean isNodeChange() {
+		return node != null;
+	}
+
+	/*
+	 * Key of the changed node, null for a relation change
+	 */
+	public K getNode() {
+		return node;
+	}
+
+	public V getValue() {
+		return value;
+	}
+
+	public V getPreviousValue() {
+		return previousValue;
+	}
+
+	public Relation<K, V> getRelation() {
+		return relation;
+	}
+
+	public Relation<K, V> getPreviousRelation() {
+		return previousRelation;
+	}
+
+	@Override
+	public String toString() {
+		return offset + ":" + type + " " + (node != null ? node : relation != null ? relation : previousRelation);
+	}
+}
@@ -0,0 +1,361 @@
+package com.graphdb.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.core.map.AtomicMapEvent;
+import io.atomix.core.map.AtomicMapEventListener;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Ordered stream of the changes to the nodes and the relations of a graph,
+ * built on the event listeners of all the shards of the nodes and relations
+ * maps, see GraphModelImpl.changes. Each change gets the next offset as it is
+ * received. The changes of one Raft partition of a map shard come in the
+ * order they were made, see GraphChange.getPartition, the others in the order
+ * their events are received. Events come
+ * shortly after their write completes, so a consumer reading right after a
+ * write may not see it yet, and a feed just started may still get changes
+ * made before.
+ *
+ * The feed keeps the last changes up to its retention. A consumer of this
+ * feed resumes from the offset after the last change it handled, with read or
+ * subscribe, as long as that change is still retained. The offsets are those
+ * of this feed, a consumer that resumes in another process, after a restart
+ * or after falling behind the retention keeps a ChangeCursor instead and
+ * catches up from it, see subscribe(ChangeCursor, Consumer).
+ */
+public class GraphChangeFeed<K, V> {
+
+	private final static Logger logger = Logger.getLogger(GraphChangeFeed.class);
+
+	public final static int DEFAULT_RETENTION = 100000;
+
+	private final List<AtomicMap<K, V>> nodesShards;
+	private final List<AtomicMap<Long, Relation>> relationsShards;
+	private final EntryPartitions partitions;
+	// One listener per shard, so that each change knows its shard
+	private final List<AtomicMapEventListener<K, V>> nodesListeners = new ArrayList<>();
+	private final List<AtomicMapEventListener<Long, Relation>> relationsListeners = new ArrayList<>();
+	private final int retention;
+
+	private final ArrayDeque<GraphChange<K, V>> retained = new ArrayDeque<>();
+	private long latestOffset;
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	GraphChangeFeed(List<AtomicMap<K, V>> nodesShards, List<AtomicMap<Long, Relation>> relationsShards,
+			EntryPartitions partitions, int retention) {
+		if (retention < 1) {
+			throw new IllegalArgumentException("Retention of a change feed must be at least 1, got " + retention);
+		}
+		this.nodesShards = nodesShards;
+		this.relationsShards = relationsShards;
+		this.partitions = partitions;
+		this.retention = retention;
+		for (AtomicMap<K, V> nodesMap : nodesShards) {
+			AtomicMapEventListener<K, V> listener = event -> onNodeEvent(nodesMap.name(), event);
+			nodesListeners.add(listener);
+			nodesMap.addListener(listener);
+		}
+		for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+			AtomicMapEventListener<Long, Relation> listener = event -> onRelationEvent(relationsMap.name(), event);
+			relationsListeners.add(listener);
+			relationsMap.addListener(listener);
+		}
+	}
+
+	/*
+	 * Offset of the last change, 0 before the first one
+	 */
+	public synchronized long latestOffset() {
+		return latestOffset;
+	}
+
+	/*
+	 * Offset of the oldest retained change, latestOffset() + 1 if none is
+	 */
+	public synchronized long earliestOffset() {
+		return latestOffset - retained.size() + 1;
+	}
+
+	/*
+	 * @return: The retained changes from the given offset on, at most max of
+	 * them, empty once the consumer is up to date
+	 *
+	 * @throws IllegalArgumentException: If changes from the offset on were
+	 * already dropped
+	 */
+	public synchronized List<GraphChange<K, V>> read(long fromOffset, int max) {
+		checkRetained(fromOffset);
+		List<GraphChange<K, V>> changes = new ArrayList<>();
+		Iterator<GraphChange<K, V>> iterator = retained.iterator();
+		for (long skip = fromOffset - earliestOffset(); skip > 0; skip--) {
+			iterator.next();
+		}
+		while (iterator.hasNext() && changes.size() < max) {
+			changes.add(iterator.next());
+		}
+		return changes;
+	}
+
+	/*
+	 * Hands the retained changes from the given offset on to the consumer, then
+	 * every new change as it is received, in order. The consumer runs on the
+	 * Atomix event threads, it must be quick and must not wait on the graph.
+	 *
+	 * @throws IllegalArgumentException: If changes from the offset on were
+	 * already dropped
+	 */
+	public synchronized Subscription subscribe(long fromOffset, Consumer<GraphChange<K, V>> consumer) {
+		checkRetained(fromOffset);
+		Subscription subscription = new Subscription(consumer, null);
+		for (GraphChange<K, V> change : retained) {
+			if (change.getOffset() >= fromOffset) {
+				subscription.offer(change);
+			}
+		}
+		subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/*
+	 * Hands every change from now on to the consumer, see subscribe
+	 */
+	public synchronized Subscription subscribe(Consumer<GraphChange<K, V>> consumer) {
+		return subscribe(latestOffset + 1, consumer);
+	}
+
+	/*
+	 * Hands the changes made after the cursor to the consumer, then every new
+	 * change as it is received, whether or not this feed retains them. Returns
+	 * once the consumer caught up, after a scan of all the shards, so it must
+	 * not be called on an Atomix event thread. The retained changes and those
+	 * received meanwhile are held back during the scan. Every entry the scan
+	 * finds newer than the cursor is handed over as an update with no previous
+	 * value and offset 0, then the held back changes that are newer than both
+	 * the cursor and what the scan found of their entry. The consumer then
+	 * takes Subscription.cursor() for the next time.
+	 *
+	 * A removal leaves nothing for the scan to find, and its event carries the
+	 * version of the removed entry rather than its own, which may be behind the
+	 * cursor. The removals this feed retains or receives are handed over unless
+	 * the scan found a newer entry, a consumer must accept the removal of a key
+	 * it does not hold. A removal made after the cursor that this feed no
+	 * longer retains, or that was made before it started, is not handed over,
+	 * a consumer that must see every removal compares the keys it holds with a
+	 * snapshot of the graph.
+	 */
+	public Subscription subscribe(ChangeCursor from, Consumer<GraphChange<K, V>> consumer) {
+		Subscription subscription = new Subscription(consumer, from);
+		synchronized (this) {
+			retained.forEach(subscription::offer);
+			subscriptions.add(subscription);
+		}
+		try {
+			for (AtomicMap<K, V> nodesMap : nodesShards) {
+				for (Entry<K, Versioned<V>> entry : nodesMap.entrySet()) {
+					subscription.scanned(new GraphChange<>(0, GraphChange.Type.NODE_UPDATED,
+							partitions.of(nodesMap.name(), entry.getKey()), entry.getValue().version(), entry.getKey(),
+							entry.getValue().value(), null, null, null));
+				}
+			}
+			for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+				for (Entry<Long, Versioned<Relation>> entry : relationsMap.entrySet()) {
+					subscription.scanned(scannedRelation(partitions.of(relationsMap.name(), entry.getKey()),
+							entry.getValue()));
+				}
+			}
+			subscription.caughtUp();
+		} catch (RuntimeException e) {
+			subscription.close();
+			throw e;
+		}
+		return subscription;
+	}
+
+	@SuppressWarnings("unchecked")
+	private GraphChange<K, V> scannedRelation(String partition, Versioned<Relation> relation) {
+		return new GraphChange<>(0, GraphChange.Type.RELATION_UPDATED, partition, relation.version(), null, null,
+				null, relation.value(), null);
+	}
+
+	/*
+	 * Stops listening to the maps, the retained changes stay readable
+	 */
+	public void close() {
+		for (int shard = 0; shard < nodesShards.size(); shard++) {
+			nodesShards.get(shard).removeListener(nodesListeners.get(shard));
+		}
+		for (int shard = 0; shard < relationsShards.size(); shard++) {
+			relationsShards.get(shard).removeListener(relationsListeners.get(shard));
+		}
+		subscriptions.clear();
+	}
+
+	private void checkRetained(long fromOffset) {
+		if (fromOffset < earliestOffset() || fromOffset > latestOffset + 1) {
+			throw new IllegalArgumentException(String.format("Offset %s is not between the earliest retained %s "
+					+ "and the next %s", fromOffset, earliestOffset(), latestOffset + 1));
+		}
+	}
+
+	private void onNodeEvent(String shard, AtomicMapEvent<K, V> event) {
+		GraphChange.Type type = event.type() == AtomicMapEvent.Type.INSERT ? GraphChange.Type.NODE_ADDED
+				: event.type() == AtomicMapEvent.Type.UPDATE ? GraphChange.Type.NODE_UPDATED
+						: GraphChange.Type.NODE_REMOVED;
+		String partition = partitions.of(shard, event.key());
+		append(offset -> new GraphChange<>(offset, type, partition, versionOf(event), event.key(),
+				valueOf(event.newValue()), valueOf(event.oldValue()), null, null));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void onRelationEvent(String shard, AtomicMapEvent<Long, Relation> event) {
+		GraphChange.Type type = event.type() == AtomicMapEvent.Type.INSERT ? GraphChange.Type.RELATION_ADDED
+				: event.type() == AtomicMapEvent.Type.UPDATE ? GraphChange.Type.RELATION_UPDATED
+						: GraphChange.Type.RELATION_REMOVED;
+		String partition = partitions.of(shard, event.key());
+		append(offset -> new GraphChange<>(offset, type, partition, versionOf(event), null, null, null,
+				valueOf(event.newValue()), valueOf(event.oldValue())));
+	}
+
+	private static long versionOf(AtomicMapEvent<?, ?> event) {
+		Versioned<?> versioned = event.newValue() != null ? event.newValue() : event.oldValue();
+		return versioned == null ? 0 : versioned.version();
+	}
+
+	private static <T> T valueOf(Versioned<T> versioned) {
+		return versioned == null ? null : versioned.value();
+	}
+
+	private interface ChangeFactory<K, V> {
+		GraphChange<K, V> create(long offset);
+	}
+
+	private synchronized void append(ChangeFactory<K, V> factory) {
+		GraphChange<K, V> change = factory.create(++latestOffset);
+		retained.addLast(change);
+		if (retained.size() > retention) {
+			retained.removeFirst();
+		}
+		for (Subscription subscription : subscriptions) {
+			try {
+				subscription.offer(change);
+			} catch (RuntimeException e) {
+				logger.error(String.format("Change feed consumer failed on change %s", change), e);
+			}
+		}
+	}
+
+	/*
+	 * A consumer of the feed, see subscribe
+	 */
+	public class Subscription {
+
+		private final Consumer<GraphChange<K, V>> consumer;
+		// Version of the last change handed over by partition, null for a
+		// subscription by offset
+		private final Map<String, Long> versions;
+		// Only while a subscription by cursor catches up, null after: the
+		// changes held back, the versions the scan found of their entries by
+		// partition, -1 until found, and the versions the catch up reached
+		private List<GraphChange<K, V>> held;
+		private Map<String, Map<Object, Long>> scannedVersions;
+		private Map<String, Long> reached;
+
+		private Subscription(Consumer<GraphChange<K, V>> consumer, ChangeCursor from) {
+			this.consumer = consumer;
+			if (from == null) {
+				versions = null;
+				return;
+			}
+			versions = new HashMap<>(from.getVersions());
+			held = new ArrayList<>();
+			scannedVersions = new HashMap<>();
+			reached = new HashMap<>();
+		}
+
+		/*
+		 * Position of a subscription by cursor: every change up to it was handed
+		 * over, but for the removals, see subscribe(ChangeCursor, Consumer). It
+		 * moves with each change handed over once the subscription caught up.
+		 *
+		 * @throws IllegalStateException: For a subscription by offset, which
+		 * does not know the changes made before it started
+		 */
+		public synchronized ChangeCursor cursor() {
+			if (versions == null) {
+				throw new IllegalStateException("A subscription by offset has no cursor, subscribe with a cursor");
+			}
+			return new ChangeCursor(versions);
+		}
+
+		public void close() {
+			subscriptions.remove(this);
+		}
+
+		private synchronized void offer(GraphChange<K, V> change) {
+			if (held == null) {
+				handOver(change);
+				return;
+			}
+			held.add(change);
+			scannedVersions.computeIfAbsent(change.getPartition(), partition -> new HashMap<>())
+					.putIfAbsent(change.key(), -1L);
+		}
+
+		/*
+		 * An entry found by the catch up scan. A change held back for the entry
+		 * before the scan reached it is older than the entry, one held back after
+		 * is newer, the events of a partition are received in order with its
+		 * responses.
+		 */
+		private synchronized void scanned(GraphChange<K, V> entry) {
+			reached.merge(entry.getPartition(), entry.getVersion(), Math::max);
+			Map<Object, Long> keys = scannedVersions.get(entry.getPartition());
+			if (keys != null && keys.containsKey(entry.key())) {
+				keys.put(entry.key(), entry.getVersion());
+			}
+			if (entry.getVersion() > from(entry.getPartition())) {
+				handOver(entry);
+			}
+		}
+
+		private synchronized void caughtUp() {
+			for (GraphChange<K, V> change : held) {
+				long scanned = scannedVersions.get(change.getPartition()).get(change.key());
+				if (change.isRemoval() ? change.getVersion() >= scanned
+						: change.getVersion() > Math.max(scanned, from(change.getPartition()))) {
+					handOver(change);
+				}
+			}
+			reached.forEach((partition, version) -> versions.merge(partition, version, Math::max));
+			held = null;
+			scannedVersions = null;
+			reached = null;
+		}
+
+		/*
+		 * Version of the cursor the subscription started from, for a partition
+		 */
+		private long from(String partition) {
+			return versions.getOrDefault(partition, 0L);
+		}
+
+		private void handOver(GraphChange<K, V> change) {
+			consumer.accept(change);
+			if (versions != null) {
+				(held == null ? versions : reached).merge(change.getPartition(), change.getVersion(), Math::max);
+			}
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.graphdb.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Streams the nodes, the relations and both adjacency indexes of a graph to a
+ * binary file that GraphImporter loads into another graph, see
+ * GraphModelImpl.exportTo.
+ *
+ * The file is a header, the MAGIC number, the FORMAT_VERSION and the number of
+ * shards of the graph, followed by chunks. A chunk is its type, its number of
+ * items, the length of its payload and the CRC32 of these fields and of the
+ * payload, then the payload: one
+ * ArrayList encoded with GraphSerializers.SERIALIZER. The items of a NODES
+ * chunk are key and value pairs, those of a RELATIONS chunk are relations, and
+ * those of an adjacency chunk are a vertex followed by all of its entries. The
+ * last chunk is END, its count is the number of chunks before it and its
+ * payload the highest relation id of the file.
+ */
+class GraphExporter<K, V> {
+
+	private final static Logger logger = Logger.getLogger(GraphExporter.class);
+
+	final static int MAGIC = 0x47444258;
+	final static int FORMAT_VERSION = 1;
+	final static int HEADER_BYTES = 12;
+	final static int CHUNK_HEADER_BYTES = 13;
+
+	final static byte END = 0;
+	final static byte NODES = 1;
+	final static byte RELATIONS = 2;
+	final static byte OUTGOING = 3;
+	final static byte INCOMING = 4;
+
+	// A chunk is closed once it holds this many nodes, relations or entries
+	private final static int CHUNK_ITEMS = 4096;
+	// Vertices read together from an adjacency index
+	private final static int SCAN_BATCH = 256;
+
+	private final List<AtomicMap<K, V>> nodesShards;
+	private final List<AtomicMap<Long, Relation>> relationsShards;
+	private final AdjacencyIndex<K> outgoing;
+	private final AdjacencyIndex<K> incoming;
+	private final VertexShards shards;
+
+	private DataOutputStream output;
+	private int chunks;
+	private long maxRelationId;
+
+	GraphExporter(List<AtomicMap<K, V>> nodesShards, List<AtomicMap<Long, Relation>> relationsShards,
+			AdjacencyIndex<K> outgoing, AdjacencyIndex<K> incoming, VertexShards shards) {
+		this.nodesShards = nodesShards;
+		this.relationsShards = relationsShards;
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.shards = shards;
+	}
+
+	/*
+	 * Writes the whole graph to the file, replacing it if it exists. The graph is
+	 * read as it goes, writes made during the export may or may not be in the
+	 * file.
+	 */
+	synchronized void export(java.nio.file.Path file) throws IOException {
+		long start = System.currentTimeMillis();
+		chunks = 0;
+		maxRelationId = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			output = out;
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(shards.count());
+
+			Chunk nodes = new Chunk(NODES);
+			for (AtomicMap<K, V> nodesMap : nodesShards) {
+				for (Entry<K, Versioned<V>> entry : nodesMap.entrySet()) {
+					nodes.add(1, entry.getKey(), entry.getValue().value());
+				}
+			}
+			nodes.flush();
+
+			Chunk relations = new Chunk(RELATIONS);
+			for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+				for (Entry<Long, Versioned<Relation>> entry : relationsMap.entrySet()) {
+					maxRelationId = Math.max(maxRelationId, entry.getKey());
+					relations.add(1, entry.getValue().value());
+				}
+			}
+			relations.flush();
+
+			writeIndex(outgoing, OUTGOING);
+			writeIndex(incoming, INCOMING);
+
+			output.writeByte(END);
+			output.writeInt(chunks);
+			output.writeInt(Long.BYTES);
+			byte[] payload = longBytes(maxRelationId);
+			output.writeInt(checksum(END, chunks, ByteBuffer.wrap(payload)));
+			output.write(payload);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			output = null;
+		}
+		logger.info(String.format("Exported %s chunks to %s in %s ms", chunks, file,
+				System.currentTimeMillis() - start));
+	}
+
+	/*
+	 * The entries of a vertex are never split across chunks, a vertex with more
+	 * than CHUNK_ITEMS entries gets a larger chunk of its own
+	 */
+	private void writeIndex(AdjacencyIndex<K> index, byte type) throws IOException {
+		Chunk chunk = new Chunk(type);
+		for (int shard = 0; shard < shards.count(); shard++) {
+			index.scan(shard, SCAN_BATCH, batch -> batch.forEach((vertex, entries) -> {
+				try {
+					chunk.add(entries.size(), vertex,
+							entries instanceof ArrayList ? entries : new ArrayList<>(entries));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}));
+		}
+		chunk.flush();
+	}
+
+	/*
+	 * CRC32 of the type, count and length of a chunk and of its payload
+	 */
+	static int checksum(byte type, int count, ByteBuffer payload) {
+		ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_BYTES - Integer.BYTES);
+		header.put(type).putInt(count).putInt(payload.remaining()).flip();
+		CRC32 crc = new CRC32();
+		crc.update(header);
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+
+	static byte[] longBytes(long value) {
+		byte[] bytes = new byte[Long.BYTES];
+		for (int i = Long.BYTES - 1; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	private class Chunk {
+
+		private final byte type;
+		private final ArrayList<Object> payload = new ArrayList<>();
+		private int count;
+		private int weight;
+
+		Chunk(byte type) {
+			this.type = type;
+		}
+
+		/*
+		 * Adds one item, made of the given objects and weighing the given number
+		 * of nodes, relations or entries
+		 */
+		void add(int itemWeight, Object... objects) throws IOException {
+			for (Object object : objects) {
+				payload.add(object);
+			}
+			count++;
+			weight += itemWeight;
+			if (weight >= CHUNK_ITEMS) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			if (count == 0) {
+				return;
+			}
+			byte[] bytes = GraphSerializers.SERIALIZER.encode(payload);
+			output.writeByte(type);
+			output.writeInt(count);
+			output.writeInt(bytes.length);
+			output.writeInt(checksum(type, count, ByteBuffer.wrap(bytes)));
+			output.write(bytes);
+			chunks++;
+			payload.clear();
+			count = 0;
+			weight = 0;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.graphdb.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.core.map.AsyncAtomicMap;
+
+/*
+ * Loads a file written by GraphExporter into the maps and indexes of a graph.
+ * The chunk headers are read first, then the payloads are memory-mapped, a
+ * region of up to MAX_REGION bytes at a time, and every chunk is checked
+ * against its CRC32 before anything is written. The chunks are then decoded
+ * and written in parallel on the given executor: nodes and relations with a
+ * put each, adjacency with AdjacencyIndex.load, all the writes of a chunk in
+ * flight together.
+ */
+class GraphImporter<K, V> {
+
+	private final static Logger logger = Logger.getLogger(GraphImporter.class);
+
+	private final static long MAX_REGION = 1L << 30;
+
+	private final List<AsyncAtomicMap<K, V>> nodesShards;
+	private final List<AsyncAtomicMap<Long, Relation>> relationsShards;
+	private final AdjacencyIndex<K> outgoing;
+	private final AdjacencyIndex<K> incoming;
+	private final VertexShards shards;
+	private final Executor executor;
+
+	GraphImporter(List<AsyncAtomicMap<K, V>> nodesShards, List<AsyncAtomicMap<Long, Relation>> relationsShards,
+			AdjacencyIndex<K> outgoing, AdjacencyIndex<K> incoming, VertexShards shards, Executor executor) {
+		this.nodesShards = nodesShards;
+		this.relationsShards = relationsShards;
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.shards = shards;
+		this.executor = executor;
+	}
+
+	/*
+	 * Position of one chunk in the file and in its mapped region
+	 */
+	private static class Chunk {
+
+		private final int index;
+		private final byte type;
+		private final int count;
+		private final long offset;
+		private final int length;
+		private final int crc;
+		private MappedByteBuffer region;
+		private int regionOffset;
+
+		Chunk(int index, byte type, int count, long offset, int length, int crc) {
+			this.index = index;
+			this.type = type;
+			this.count = count;
+			this.offset = offset;
+			this.length = length;
+			this.crc = crc;
+		}
+
+		ByteBuffer payload() {
+			ByteBuffer payload = region.duplicate();
+			payload.position(regionOffset).limit(regionOffset + length);
+			return payload;
+		}
+	}
+
+	/*
+	 * @return: The highest relation id of the file
+	 *
+	 * @throws IOException: If the file is not an export, is truncated or fails
+	 * a checksum. Nothing is written in that case.
+	 */
+	long load(java.nio.file.Path file) throws IOException {
+		long start = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			List<Chunk> chunks = new ArrayList<>();
+			long maxRelationId = readHeaders(channel, chunks);
+			map(channel, chunks);
+			inParallel(chunks, this::verify);
+			inParallel(chunks, this::write);
+
+			long[] counts = new long[GraphExporter.INCOMING + 1];
+			chunks.forEach(chunk -> counts[chunk.type] += chunk.count);
+			logger.info(String.format("Imported %s nodes, %s relations and %s adjacency lists from %s in %s ms",
+					counts[GraphExporter.NODES], counts[GraphExporter.RELATIONS],
+					counts[GraphExporter.OUTGOING] + counts[GraphExporter.INCOMING], file,
+					System.currentTimeMillis() - start));
+			return maxRelationId;
+		}
+	}
+
+	private long readHeaders(FileChannel channel, List<Chunk> chunks) throws IOException {
+		ByteBuffer header = read(channel, 0, GraphExporter.HEADER_BYTES);
+		if (header.getInt() != GraphExporter.MAGIC) {
+			throw new IOException("Not a graph export");
+		}
+		int version = header.getInt();
+		if (version != GraphExporter.FORMAT_VERSION) {
+			throw new IOException(String.format("Unsupported export format version %s", version));
+		}
+		int fileShards = header.getInt();
+		if (fileShards != shards.count()) {
+			throw new IllegalArgumentException(String.format(
+					"The export has %s shards, the graph %s, relation ids depend on the number of shards",
+					fileShards, shards.count()));
+		}
+
+		long position = GraphExporter.HEADER_BYTES;
+		while (true) {
+			ByteBuffer chunkHeader = read(channel, position, GraphExporter.CHUNK_HEADER_BYTES);
+			byte type = chunkHeader.get();
+			int count = chunkHeader.getInt();
+			int length = chunkHeader.getInt();
+			int crc = chunkHeader.getInt();
+			position += GraphExporter.CHUNK_HEADER_BYTES;
+			if (type < GraphExporter.END || type > GraphExporter.INCOMING || length < 0 || length > MAX_REGION) {
+				throw new IOException(String.format("Corrupted chunk header at offset %s",
+						position - GraphExporter.CHUNK_HEADER_BYTES));
+			}
+			if (type == GraphExporter.END) {
+				if (count != chunks.size() || length != Long.BYTES) {
+					throw new IOException("Corrupted end of export");
+				}
+				ByteBuffer end = read(channel, position, length);
+				if (GraphExporter.checksum(type, count, end.duplicate()) != crc) {
+					throw new IOException("Corrupted end of export");
+				}
+				return end.getLong();
+			}
+			chunks.add(new Chunk(chunks.size(), type, count, position, length, crc));
+			position += length;
+		}
+	}
+
+	private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Truncated export, the end of the file was reached at offset " + position);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/*
+	 * Maps the payloads into as few regions as possible, a chunk is never split
+	 * between regions
+	 */
+	private void map(FileChannel channel, List<Chunk> chunks) throws IOException {
+		int first = 0;
+		for (int i = 0; i <= chunks.size(); i++) {
+			if (i == chunks.size() || chunks.get(i).offset + chunks.get(i).length
+					- chunks.get(first).offset > MAX_REGION) {
+				if (i == first) {
+					continue;
+				}
+				long regionStart = chunks.get(first).offset;
+				Chunk last = chunks.get(i - 1);
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart,
+						last.offset + last.length - regionStart);
+				for (Chunk chunk : chunks.subList(first, i)) {
+					chunk.region = region;
+					chunk.regionOffset = (int) (chunk.offset - regionStart);
+				}
+				first = i;
+			}
+		}
+	}
+
+	private void verify(Chunk chunk) throws IOException {
+		if (GraphExporter.checksum(chunk.type, chunk.count, chunk.payload()) != chunk.crc) {
+			throw new IOException(
+					String.format("Checksum mismatch in chunk %s at offset %s", chunk.index, chunk.offset));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void write(Chunk chunk) throws IOException {
+		byte[] bytes = new byte[chunk.length];
+		chunk.payload().get(bytes);
+		List<Object> items = GraphSerializers.SERIALIZER.decode(bytes);
+		int itemSize = chunk.type == GraphExporter.RELATIONS ? 1 : 2;
+		if (items.size() != chunk.count * itemSize) {
+			throw new IOException(String.format("Chunk %s holds %s items, its header %s", chunk.index,
+					items.size() / itemSize, chunk.count));
+		}
+
+		List<CompletableFuture<?>> writes = new ArrayList<>();
+		if (chunk.type == GraphExporter.NODES) {
+			for (int i = 0; i < items.size(); i += 2) {
+				K key = (K) items.get(i);
+				writes.add(nodesShards.get(shards.ofVertex(key)).put(key, (V) items.get(i + 1)));
+			}
+		} else if (chunk.type == GraphExporter.RELATIONS) {
+			for (Object item : items) {
+				Relation relation = (Relation) item;
+				writes.add(relationsShards.get(shards.ofRelation(relation.getId())).put(relation.getId(), relation));
+			}
+		} else {
+			Map<K, Collection<AdjacencyEntry<K>>> entries = new HashMap<>();
+			for (int i = 0; i < items.size(); i += 2) {
+				entries.put((K) items.get(i), (Collection<AdjacencyEntry<K>>) items.get(i + 1));
+			}
+			writes.add((chunk.type == GraphExporter.OUTGOING ? outgoing : incoming).load(entries));
+		}
+		CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+	}
+
+	private interface ChunkTask {
+		void run(Chunk chunk) throws IOException;
+	}
+
+	private void inParallel(List<Chunk> chunks, ChunkTask task) throws IOException {
+		List<CompletableFuture<Void>> tasks = new ArrayList<>(chunks.size());
+		Consumer<Chunk> unchecked = chunk -> {
+			try {
+				task.run(chunk);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		for (Chunk chunk : chunks) {
+			tasks.add(CompletableFuture.runAsync(() -> unchecked.accept(chunk), executor));
+		}
+		try {
+			CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		}
+	}
+}
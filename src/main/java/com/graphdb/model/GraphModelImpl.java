@@ -1,282 +1,688 @@
 package com.graphdb.model;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.graphdb.metrics.GraphMetrics;
+import com.graphdb.metrics.Operation;
+import com.graphdb.metrics.OperationTimer;
 
+import io.atomix.cluster.MemberId;
 import io.atomix.core.Atomix;
-import io.atomix.core.idgenerator.AtomicIdGenerator;
+import io.atomix.core.map.AsyncAtomicMap;
 import io.atomix.core.map.AtomicMap;
 import io.atomix.core.map.AtomicMapBuilder;
+import io.atomix.core.transaction.AsyncTransactionalMap;
+import io.atomix.core.transaction.CommitStatus;
+import io.atomix.core.transaction.Isolation;
+import io.atomix.core.transaction.Transaction;
+import io.atomix.core.transaction.TransactionalMapBuilder;
+import io.atomix.primitive.partition.Partition;
+import io.atomix.primitive.partition.PartitionGroup;
 import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+import io.atomix.protocols.raft.session.CommunicationStrategy;
+import io.atomix.utils.serializer.Serializer;
 import io.atomix.utils.time.Versioned;
 
 public class GraphModelImpl<K, V> implements Graph<K, V> {
 
 	private final static Logger logger = Logger.getLogger(GraphModelImpl.class);
 
-	private AtomicMapBuilder<K, V> nodesMapBuilder;
-	private AtomicMapBuilder<Long, Relation> relationsMapBuilder;
-	private AtomicMapBuilder<K, Map<String, Collection<Long>>> from2TypeBuilder;
-	private AtomicMapBuilder<K, Map<K, Collection<Long>>> from2ToBuilder;
-	private AtomicMap<K, V> nodes;
+	private final static String NODES = "_nodes";
+	private final static String RELATIONS = "_relations";
+	private final static String FROM_2_TO = "_from2To";
+	private final static String FROM_2_TYPE = "_from2Type";
+	private final static String TO_2_FROM = "_to2From";
+	private final static String TO_2_TYPE = "_to2Type";
+	private final static String OUT_EDGES = "_outEdges";
+	private final static String IN_EDGES = "_inEdges";
+	private final static String EDGES = "_edges";
+
+	// Number of relations written per transaction by addRelations
+	private final static int BATCH_SIZE = 1000;
+	private final static int MAX_COMMIT_ATTEMPTS = 5;
+	// Chunks written together by importFrom
+	private final static int IMPORT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	// Runs the continuations of AsyncGraph operations, shared by all graphs
+	private final static Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-async-%d").build());
+	// Runs the weighted searches of shortestPath, which wait on the reads they
+	// send, apart from the threads completing those reads. Shared by all graphs.
+	private final static Executor DEFAULT_SEARCH_EXECUTOR = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(),
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-search-%d").build());
+
+	private final Atomix atomix;
+	private final String name;
+	private final AdjacencyLayout layout;
+	private ProxyProtocol protocol;
+	// GraphSerializers.SERIALIZER, metered by GraphMetrics
+	private final Serializer serializer;
+	private Executor executor = DEFAULT_EXECUTOR;
+	private Executor searchExecutor = DEFAULT_SEARCH_EXECUTOR;
+	private AsyncGraphModelImpl<K, V> asyncGraph;
+	private final GraphMetrics metrics;
+	private int cacheSize = NearCache.Settings.DEFAULT_SIZE;
+	private long cacheBytes;
+	private NearCache<K, V> nodesCache;
+	private NearCache<Long, Relation> relationsCache;
+	// Protocols and views of the reads at other consistencies, see reads
+	private final Map<ReadConsistency, ProxyProtocol> readProtocols = new EnumMap<>(ReadConsistency.class);
+	private final Map<ReadConsistency, GraphReadView<K, V>> readViews = new EnumMap<>(ReadConsistency.class);
+
+	// Every map of the graph is split into these shards, see VertexShards
+	private final VertexShards shards;
+	private List<AtomicMapBuilder<K, V>> nodesMapBuilders;
+	private List<AtomicMapBuilder<Long, Relation>> relationsMapBuilders;
+	private List<AtomicMap<K, V>> nodesShards;
+	private List<AtomicMap<Long, Relation>> relationsShards;
+	private EntryPartitions partitions;
+	// First shard of the relations, all the relations of a graph with one shard
 	public AtomicMap<Long, Relation> relationsMap;
-	public AtomicMap<K, Map<String, Collection<Long>>> from2TypeMap;
-	private AtomicMap<K, Map<K, Collection<Long>>> from2ToMap;
+	// Outgoing relations by source vertex and incoming relations by destination
+	private final AdjacencyIndex<K> outgoing;
+	private final AdjacencyIndex<K> incoming;
 
-	private static AtomicIdGenerator relationsIdGenerator;
+	private final RelationIdGenerator relationsIdGenerator;
+
+	private int changeRetention = GraphChangeFeed.DEFAULT_RETENTION;
+	private GraphChangeFeed<K, V> changes;
+	// Shared with the AsyncGraphModelImpls of the graph and its read views
+	private final AtomicReference<GraphAggregates<K>> aggregates = new AtomicReference<>();
 
 	public GraphModelImpl(Atomix atomix, String name) {
-		nodesMapBuilder = atomix.<K, V>atomicMapBuilder(name + "_nodes").withCacheEnabled();
-		relationsMapBuilder = atomix.<Long, Relation>atomicMapBuilder(name + "_relations").withCacheEnabled();
-		from2ToBuilder = atomix.<K, Map<K, Collection<Long>>>atomicMapBuilder(name + "_from2To").withCacheEnabled();
-		from2TypeBuilder = atomix.<K, Map<String, Collection<Long>>>atomicMapBuilder(name + "_from2Type")
-				.withCacheEnabled();
-		relationsIdGenerator = atomix.getAtomicIdGenerator(name + "relations_id_generator");
+		this(atomix, name, AdjacencyLayout.VERTEX_MAP);
+	}
+
+	public GraphModelImpl(Atomix atomix, String name, AdjacencyLayout layout) {
+		this(atomix, name, layout, 1);
 	}
 
+	/*
+	 * Graph with its maps split into the given number of shards, at most
+	 * VertexShards.MAX_SHARDS. A vertex, the relations it is the source of and
+	 * its index entries share a shard. With a protocol using
+	 * VertexAffinityPartitioner each shard is placed on its own partition, so
+	 * the number of shards is best set to the number of partitions of the group.
+	 * The number of shards of a graph must not change once it holds data.
+	 */
+	public GraphModelImpl(Atomix atomix, String name, AdjacencyLayout layout, int shards) {
+		this.atomix = atomix;
+		this.name = name;
+		this.layout = layout;
+		this.shards = new VertexShards(shards);
+		metrics = new GraphMetrics(name);
+		serializer = metrics.meter(GraphSerializers.SERIALIZER);
+		nodesMapBuilders = this.shards.create(
+				shard -> atomix.<K, V>atomicMapBuilder(shardName(NODES, shard)).withSerializer(serializer));
+		relationsMapBuilders = this.shards.create(shard -> atomix
+				.<Long, Relation>atomicMapBuilder(shardName(RELATIONS, shard)).withSerializer(serializer));
+		if (layout == AdjacencyLayout.EDGE_MULTIMAP) {
+			outgoing = new EdgeMultimapAdjacencyIndex<>(atomix, name + OUT_EDGES, serializer, this.shards);
+			incoming = new EdgeMultimapAdjacencyIndex<>(atomix, name + IN_EDGES, serializer, this.shards);
+		} else if (layout == AdjacencyLayout.PRIMITIVE) {
+			outgoing = new PrimitiveAdjacencyIndex<>(atomix, name + EDGES, true, this.shards);
+			incoming = new PrimitiveAdjacencyIndex<>(atomix, name + EDGES, false, this.shards);
+		} else {
+			outgoing = new VertexMapAdjacencyIndex<>(atomix, name + FROM_2_TO, name + FROM_2_TYPE, serializer,
+					this.shards);
+			incoming = new VertexMapAdjacencyIndex<>(atomix, name + TO_2_FROM, name + TO_2_TYPE, serializer,
+					this.shards);
+		}
+		relationsIdGenerator = new RelationIdGenerator(
+				atomix.getAtomicCounter(name + "relations_id_generator").async());
+	}
+
+	private String shardName(String suffix, int shard) {
+		return shards.name(name + suffix, shard);
+	}
+
+	/*
+	 * Protocol of all the maps of the graph, the nodes, the relations and the
+	 * indexes
+	 */
 	public void withProtocol(ProxyProtocol protocol) {
-		nodesMapBuilder.withProtocol(protocol);
-		relationsMapBuilder.withProtocol(protocol);
+		this.protocol = protocol;
+		nodesMapBuilders.forEach(builder -> builder.withProtocol(protocol));
+		relationsMapBuilders.forEach(builder -> builder.withProtocol(protocol));
+		outgoing.withProtocol(protocol);
+		incoming.withProtocol(protocol);
 	}
 
+	/*
+	 * Protocol of the reads of reads(consistency). It must place the maps on the
+	 * same partitions as the protocol of the graph, with the same group and
+	 * partitioner, and differ only by its read consistency and communication
+	 * strategy.
+	 */
+	public synchronized void withReadProtocol(ReadConsistency consistency, ProxyProtocol readProtocol) {
+		readProtocols.put(consistency, readProtocol);
+	}
+
+	/*
+	 * Protocol of the default partition group and partitioner reading at the
+	 * given consistency. SEQUENTIAL reads are sent to the followers, the other
+	 * reads to the leader.
+	 */
+	public static MultiRaftProtocol readProtocol(ReadConsistency consistency) {
+		return MultiRaftProtocol.builder().withReadConsistency(consistency)
+				.withCommunicationStrategy(consistency == ReadConsistency.SEQUENTIAL ? CommunicationStrategy.FOLLOWERS
+						: CommunicationStrategy.LEADER)
+				.build();
+	}
+
+	/*
+	 * Maximum number of entries of each near cache of the graph, the caches in
+	 * front of the nodes, the relations and each map of the indexes. 0 disables
+	 * the near caches. Must be set before buildAtomicMultiMap.
+	 */
 	public void withCacheSize(int size) {
-		nodesMapBuilder.withCacheSize(size);
-		relationsMapBuilder.withCacheSize(size);
+		cacheSize = size;
+	}
+
+	/*
+	 * Bounds each near cache by the serialized size of its entries rather than
+	 * by their number. Must be set before buildAtomicMultiMap.
+	 */
+	public void withCacheMemory(long bytes) {
+		cacheBytes = bytes;
+	}
+
+	/*
+	 * Executor for the work AsyncGraph does on the results of the maps, must be
+	 * set before buildAtomicMultiMap
+	 */
+	public void withExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/*
+	 * Executor of the shortestPath searches, bounding how many run at once. A
+	 * search blocks its thread on every read, so it must not be the executor of
+	 * withExecutor. Must be set before buildAtomicMultiMap.
+	 */
+	public void withSearchExecutor(Executor searchExecutor) {
+		this.searchExecutor = searchExecutor;
+	}
+
+	/*
+	 * Degree past which the adjacency of a vertex is split into buckets spread
+	 * over the shards, so that a supernode is neither read nor written as one
+	 * value. 0 never splits, the EDGE_MULTIMAP layout ignores it. Must be set
+	 * before buildAtomicMultiMap.
+	 */
+	public void withSupernodes(int threshold, int buckets) {
+		outgoing.withSupernodes(threshold, buckets);
+		incoming.withSupernodes(threshold, buckets);
 	}
 
 	public void setReadOnly() {
-		nodesMapBuilder.withReadOnly();
-		relationsMapBuilder.withReadOnly();
+		nodesMapBuilders.forEach(AtomicMapBuilder::withReadOnly);
+		relationsMapBuilders.forEach(AtomicMapBuilder::withReadOnly);
 	}
 
 	public void buildAtomicMultiMap() {
 		logger.info("Building AtomicMultiMap");
-		nodes = nodesMapBuilder.get();
+		nodesShards = shards.create(shard -> nodesMapBuilders.get(shard).get());
+
+		relationsShards = shards.create(shard -> relationsMapBuilders.get(shard).get());
+		relationsMap = relationsShards.get(0);
+		partitions = new EntryPartitions(atomix, protocol, GraphSerializers.SERIALIZER);
+
+		NearCache.Settings caches = new NearCache.Settings(cacheSize, cacheBytes, metrics);
+		nodesCache = caches.create(name + NODES);
+		relationsCache = caches.create(name + RELATIONS);
+		nodesShards.forEach(nodesCache::listenTo);
+		relationsShards.forEach(relationsCache::listenTo);
+		outgoing.build(caches);
+		incoming.build(caches);
+		asyncGraph = new AsyncGraphModelImpl<>(shards.create(shard -> nodesShards.get(shard).async()),
+				shards.create(shard -> relationsShards.get(shard).async()), shards, nodesCache, relationsCache,
+				outgoing, incoming, relationsIdGenerator, executor, searchExecutor, metrics, aggregates);
+	}
 
-		relationsMap = relationsMapBuilder.get();
-		from2ToMap = from2ToBuilder.get();
-		from2TypeMap = from2TypeBuilder.get();
+	/*
+	 * Latency and round trip metrics of the operations of this graph and the
+	 * statistics of its near caches, see GraphMetrics
+	 */
+	public GraphMetrics metrics() {
+		return metrics;
 	}
 
-	private long generateId() {
-		return relationsIdGenerator.nextId();
+	/*
+	 * Asynchronous view of this graph, available once the graph is built
+	 */
+	public AsyncGraph<K, V> async() {
+		return asyncGraph;
 	}
 
-	public boolean addNode(K key, V value) {
-		nodes.put(key, value);
-		return true;
+	/*
+	 * Read-only view of the graph reading at the given consistency, available
+	 * once the graph is built. The maps are opened again with the protocol of
+	 * withReadProtocol, or with readProtocol(consistency) if the graph has no
+	 * protocol of its own. A view is built once per consistency. It never fills
+	 * the near caches of the graph, a LINEARIZABLE view reads past them and the
+	 * others are served their hits, see NearCache.forReads.
+	 */
+	public synchronized GraphReadView<K, V> reads(ReadConsistency consistency) {
+		GraphReadView<K, V> view = readViews.get(consistency);
+		if (view == null) {
+			ProxyProtocol readProtocol = readProtocols.get(consistency);
+			if (readProtocol == null) {
+				if (protocol != null) {
+					throw new IllegalStateException(String.format(
+							"No read protocol for %s reads of graph %s, see withReadProtocol", consistency, name));
+				}
+				readProtocol = readProtocol(consistency);
+			}
+			view = buildReadView(readProtocol, consistency);
+			readViews.put(consistency, view);
+		}
+		return view;
 	}
 
-	public Long addRelation(K from, K to, String type, V value, boolean biDirectional) {
+	private GraphReadView<K, V> buildReadView(ProxyProtocol readProtocol, ReadConsistency consistency) {
+		logger.info("Building read view with protocol " + readProtocol);
+		// build rather than get, get would return the primitives of the graph
+		List<AsyncAtomicMap<K, V>> viewNodes = shards.create(shard -> atomix.<K, V>atomicMapBuilder(
+				shardName(NODES, shard)).withSerializer(serializer).withProtocol(readProtocol).build().async());
+		List<AsyncAtomicMap<Long, Relation>> viewRelations = shards
+				.create(shard -> atomix.<Long, Relation>atomicMapBuilder(shardName(RELATIONS, shard))
+						.withSerializer(serializer).withProtocol(readProtocol).build().async());
+		return new GraphReadView<>(new AsyncGraphModelImpl<>(viewNodes, viewRelations, shards,
+				nodesCache.forReads(consistency), relationsCache.forReads(consistency),
+				outgoing.readView(readProtocol, consistency), incoming.readView(readProtocol, consistency),
+				relationsIdGenerator, executor, searchExecutor, metrics, aggregates));
+	}
 
-		logger.info("Inside addRelation");
+	/*
+	 * Reads the whole graph into an immutable, in memory GraphSnapshot
+	 */
+	public GraphSnapshot<K, V> snapshot() {
+		logger.debug("Inside snapshot");
+		return GraphSnapshot.build(nodesShards, relationsShards, partitions);
+	}
 
-		if (!nodes.containsKey(from) || !nodes.containsKey(to)) {
-			return null;
-		}
+	/*
+	 * Snapshot that follows the changes to the graph, see SnapshotBuilder
+	 */
+	public SnapshotBuilder<K, V> snapshotBuilder() {
+		return new SnapshotBuilder<>(nodesShards, relationsShards, partitions);
+	}
 
-//		Create Relation Object
-		Relation<K, V> relation = new Relation<>(generateId(), from, to, value, type, biDirectional);
-		relationsMap.put(relation.getId(), relation);
+	/*
+	 * Number of changes kept by the change feed for consumers catching up, must
+	 * be set before the first call to changes
+	 */
+	public void withChangeRetention(int changes) {
+		changeRetention = changes;
+	}
 
-//		Add Index to the Relation Object
-		if (!from2ToMap.containsKey(from)) {
-			Map<K, Collection<Long>> mapHolder = new HashMap<>();
-			mapHolder.put(to, Arrays.asList(relation.getId()));
-			from2ToMap.put(from, mapHolder);
-		} else {
-			Map<K, Collection<Long>> mapHolder = from2ToMap.get(from).value();
-			Collection<Long> listHolder = mapHolder.get(to);
-			listHolder.add(relation.getId());
-			from2ToMap.put(from, mapHolder);
+	/*
+	 * Ordered feed of the changes to the nodes and relations of the graph,
+	 * started on the first call, available once the graph is built. See
+	 * GraphChangeFeed.
+	 */
+	public synchronized GraphChangeFeed<K, V> changes() {
+		if (changes == null) {
+			changes = new GraphChangeFeed<>(nodesShards, relationsShards, partitions, changeRetention);
 		}
+		return changes;
+	}
 
-		if (!from2TypeMap.containsKey(from)) {
-			Map<String, Collection<Long>> mapHolder = new HashMap<>();
-			mapHolder.put(type, Arrays.asList(relation.getId()));
-			from2TypeMap.put(from, mapHolder);
-		} else {
-			Map<String, Collection<Long>> mapHolder = from2TypeMap.get(from).value();
-			Collection<Long> listHolder = mapHolder.get(type);
-			listHolder.add(relation.getId());
-			from2TypeMap.put(from, mapHolder);
+	/*
+	 * Degrees and relation counts of the graph maintained from its change feed,
+	 * started on the first call with a scan of the relations. From then on
+	 * getNodeOutDegree of the graph and of its read views is answered from them,
+	 * see GraphAggregates for how current they are.
+	 */
+	public synchronized GraphAggregates<K> aggregates() {
+		if (aggregates.get() == null) {
+			aggregates.set(new GraphAggregates<>(changes(), relationsShards));
 		}
+		return aggregates.get();
+	}
 
-		if (biDirectional) {
-			if (!from2ToMap.containsKey(to)) {
-				Map<K, Collection<Long>> mapHolder = new HashMap<>();
-				mapHolder.put(from, Arrays.asList(relation.getId()));
-				from2ToMap.put(to, mapHolder);
-			} else {
-				Map<K, Collection<Long>> mapHolder = from2ToMap.get(to).value();
-				Collection<Long> listHolder = mapHolder.get(from);
-				listHolder.add(relation.getId());
-				from2ToMap.put(to, mapHolder);
-			}
+	/*
+	 * Streams the whole graph to a binary file for importFrom, see GraphExporter
+	 * for the format. Available once the graph is built.
+	 */
+	public void exportTo(java.nio.file.Path file) throws IOException {
+		new GraphExporter<>(nodesShards, relationsShards, outgoing, incoming, shards).export(file);
+	}
 
-			if (!from2TypeMap.containsKey(to)) {
-				Map<String, Collection<Long>> mapHolder = new HashMap<>();
-				mapHolder.put(type, Arrays.asList(relation.getId()));
-				from2TypeMap.put(to, mapHolder);
-			} else {
-				Map<String, Collection<Long>> mapHolder = from2TypeMap.get(to).value();
-				Collection<Long> listHolder = mapHolder.get(type);
-				listHolder.add(relation.getId());
-				from2TypeMap.put(to, mapHolder);
+	/*
+	 * Loads a file written by exportTo into this graph, which must be built,
+	 * empty and have as many shards as the exported graph. The chunks of the
+	 * file are checked, then written in parallel straight into the maps and the
+	 * indexes, one put per node, relation and index key, without the validation
+	 * and the transactions of addNodes and addRelations. The relation ids are
+	 * kept and the id generator is moved past them in one step.
+	 */
+	public void importFrom(java.nio.file.Path file) throws IOException {
+		for (int shard = 0; shard < shards.count(); shard++) {
+			if (!nodesShards.get(shard).isEmpty() || !relationsShards.get(shard).isEmpty()) {
+				throw new IllegalStateException(String.format("Graph %s is not empty, cannot import into it", name));
 			}
 		}
+		ExecutorService importExecutor = Executors.newFixedThreadPool(IMPORT_THREADS,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-import-%d").build());
+		try {
+			long maxRelationId = new GraphImporter<>(shards.create(shard -> nodesShards.get(shard).async()),
+					shards.create(shard -> relationsShards.get(shard).async()), outgoing, incoming, shards,
+					importExecutor).load(file);
+			nodesCache.clear();
+			relationsCache.clear();
+			relationsIdGenerator.advancePast(shards.sequence(maxRelationId)).join();
+		} finally {
+			importExecutor.shutdown();
+		}
+	}
 
-		return relation.getId();
+	public String name() {
+		return name;
 	}
 
-	public Optional<V> getNode(K key) {
-		logger.info("Inside getNode");
-		if (nodes.containsKey(key)) {
-			return Optional.fromNullable(nodes.get(key).value());
-		} else {
-			return Optional.absent();
-		}
+	public AdjacencyLayout layout() {
+		return layout;
 	}
 
-	@Override
-	public boolean removeNode(K key) {
-		logger.info("Inside removeNode");
+	public int shardCount() {
+		return shards.count();
+	}
 
-		boolean error = false;
+	public int shardOf(K vertex) {
+		return shards.ofVertex(vertex);
+	}
 
-		if (nodes.containsKey(key)) {
-			nodes.remove(key);
-		} else {
-			logger.error(String.format("Node with key % not found", key));
-			error = true;
+	/*
+	 * Member leading the Raft partition of the nodes of a shard as
+	 * VertexAffinityPartitioner places them, null if the partition has no leader
+	 * yet. Used by GraphCompute to run each shard where its maps are served.
+	 */
+	public MemberId shardLeader(int shard) {
+		PartitionGroup group = protocol != null ? atomix.getPartitionService().getPartitionGroup(protocol)
+				: atomix.getPartitionService().getPartitionGroup(MultiRaftProtocol.TYPE);
+		if (group == null) {
+			return null;
 		}
+		Partition partition = group.getPartition(
+				VertexAffinityPartitioner.INSTANCE.partition(shardName(NODES, shard), group.getPartitionIds()));
+		return partition == null ? null : partition.primary();
+	}
 
-		// Remove node from both fromMap and typeMap
-		if (from2ToMap.containsKey(key)) {
-			from2ToMap.remove(key);
-		} else {
-			logger.error(String.format("Graph node with key : % not found", key));
-			error = true;
+	/*
+	 * Reads the keys of the nodes of one shard. The shard is not locked, nodes
+	 * added during the scan may or may not be seen.
+	 */
+	public void scanVertices(int shard, Consumer<K> consumer) {
+		for (K vertex : nodesShards.get(shard).keySet()) {
+			consumer.accept(vertex);
 		}
+	}
 
-		if (from2TypeMap.containsKey(key)) {
-			from2TypeMap.remove(key);
-		} else {
-			logger.error(String.format("Graph type node with key : % not found", key));
-			error = true;
-		}
+	/*
+	 * Reads the outgoing or the incoming neighbours of every vertex of one shard,
+	 * the other end point of each of its relations, in batches of batchSize
+	 * vertices read together. A vertex related to another by several relations
+	 * has it as neighbour once per relation.
+	 */
+	public void scanNeighbours(int shard, boolean outgoing, int batchSize, BiConsumer<K, List<K>> consumer) {
+		(outgoing ? this.outgoing : incoming).scan(shard, batchSize, batch -> batch.forEach((vertex, entries) -> {
+			List<K> neighbours = new ArrayList<>(entries.size());
+			entries.forEach(entry -> neighbours.add(entry.getNeighbour()));
+			consumer.accept(vertex, neighbours);
+		}));
+	}
+
+	/*
+	 * Map split and placed like the maps of the graph, one AtomicMap per shard
+	 * built with the protocol and the serializer of the graph, a vertex being in
+	 * the map of its shard. Holds the per vertex results of GraphCompute.
+	 */
+	public <S> List<AtomicMap<K, S>> shardedMap(String mapName) {
+		return shards.create(shard -> {
+			AtomicMapBuilder<K, S> builder = atomix.<K, S>atomicMapBuilder(shards.name(mapName, shard))
+					.withSerializer(serializer);
+			if (protocol != null) {
+				builder.withProtocol(protocol);
+			}
+			return builder.get();
+		});
+	}
+
+	private long generateId(K from, OperationTimer timer) {
+		return shards.relationId(relationsIdGenerator.nextId(timer).join(), from);
+	}
+
+	public boolean addNode(K key, V value) {
+		return asyncGraph.addNode(key, value).join();
+	}
 
-		for (Entry<Long, Versioned<Relation>> e : relationsMap.entrySet()) {
-			Relation rel = e.getValue().value();
-			if (rel.getFrom().equals(key) || rel.getTo().equals(key)) {
-				relationsMap.remove(rel.getId());
+	@Override
+	public boolean addNodes(Map<K, V> nodesToAdd) {
+		logger.debug("Inside addNodes");
+		OperationTimer timer = metrics.start(Operation.ADD_NODES);
+
+		for (int attempt = 1; attempt <= MAX_COMMIT_ATTEMPTS; attempt++) {
+			Transaction transaction = atomix.transactionBuilder().withIsolation(Isolation.READ_COMMITTED).build();
+			transaction.begin();
+			// Only the shards written to take part in the transaction
+			Map<Integer, AsyncTransactionalMap<K, V>> txNodes = new HashMap<>();
+
+			List<CompletableFuture<V>> writes = new ArrayList<>();
+			nodesToAdd.forEach((key, value) -> writes.add(timer.sending(() -> txNodes.computeIfAbsent(
+					shards.ofVertex(key), shard -> this.<K, V>transactionalMap(transaction, NODES, shard))
+					.put(key, value))));
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+
+			timer.roundTrips(writes.size() + 1);
+			if (transaction.commit() == CommitStatus.SUCCESS) {
+				nodesCache.invalidateAll(nodesToAdd.keySet());
+				timer.stop(false);
+				return true;
 			}
+			logger.warn(String.format("addNodes commit conflict, attempt %s of %s", attempt, MAX_COMMIT_ATTEMPTS));
 		}
+		logger.error("addNodes failed to commit " + nodesToAdd.size() + " nodes");
+		timer.stop(true);
+		return false;
+	}
 
-		if (error) {
-			return false;
+	@Override
+	public List<Long> addRelations(Collection<Relation<K, V>> relations) {
+		logger.debug("Inside addRelations");
+		OperationTimer timer = metrics.start(Operation.ADD_RELATIONS);
+
+		// Validate all the end points with a single read per shard
+		Set<K> endPoints = new HashSet<>();
+		for (Relation<K, V> relation : relations) {
+			endPoints.add(relation.getFrom());
+			endPoints.add(relation.getTo());
+		}
+		Set<K> presentNodes = nodesCache.getAllPresent(endPoints, missing -> getAllNodes(missing, timer)).join()
+				.keySet();
+
+		List<Long> ids = new ArrayList<>(relations.size());
+		List<Relation<K, V>> batch = new ArrayList<>(BATCH_SIZE);
+		List<Integer> batchPositions = new ArrayList<>(BATCH_SIZE);
+		for (Relation<K, V> relation : relations) {
+			if (!presentNodes.contains(relation.getFrom()) || !presentNodes.contains(relation.getTo())) {
+				ids.add(null);
+				continue;
+			}
+			Relation<K, V> created = new Relation<>(generateId(relation.getFrom(), timer), relation.getFrom(),
+					relation.getTo(), relation.getValue(), relation.getType(), relation.isBiDirectional());
+			batchPositions.add(ids.size());
+			ids.add(created.getId());
+			batch.add(created);
+
+			if (batch.size() == BATCH_SIZE) {
+				writeBatch(batch, batchPositions, ids, timer);
+				batch.clear();
+				batchPositions.clear();
+			}
 		}
+		if (!batch.isEmpty()) {
+			writeBatch(batch, batchPositions, ids, timer);
+		}
+		timer.stop(false);
+		return ids;
+	}
 
-		return true;
+	private CompletableFuture<Map<K, Versioned<V>>> getAllNodes(Collection<K> keys, OperationTimer timer) {
+		List<CompletableFuture<Map<K, Versioned<V>>>> reads = new ArrayList<>();
+		shards.group(keys, shards::ofVertex)
+				.forEach((shard, shardKeys) -> reads
+						.add(timer.sending(() -> nodesShards.get(shard).async().getAllPresent(shardKeys))));
+		timer.roundTrips(reads.size());
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<K, Versioned<V>> present = new HashMap<>();
+			reads.forEach(read -> present.putAll(read.join()));
+			return present;
+		});
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	@Override
-	public boolean removeRelation(long id) {
-		logger.info("Inside removeRelation");
-		if (relationsMap.containsKey(id)) {
-			Relation relation = relationsMap.get(id).value();
-			if (from2ToMap.containsKey((K) relation.getFrom())) {
-				from2ToMap.remove((K) relation.getFrom());
+	/*
+	 * Writes the relations and their index entries in one transaction. Index
+	 * entries are grouped by vertex so each index key is read and written once per
+	 * batch. A non transactional index is written once the relations are
+	 * committed. If the transaction cannot be committed the ids of the batch are
+	 * replaced by null.
+	 */
+	private void writeBatch(List<Relation<K, V>> batch, List<Integer> batchPositions, List<Long> ids,
+			OperationTimer timer) {
+		Map<K, Collection<AdjacencyEntry<K>>> outgoingDelta = new HashMap<>();
+		Map<K, Collection<AdjacencyEntry<K>>> incomingDelta = new HashMap<>();
+
+		for (Relation<K, V> relation : batch) {
+			AsyncGraphModelImpl.stageRelation(relation, outgoingDelta, incomingDelta);
+		}
+
+		for (int attempt = 1; attempt <= MAX_COMMIT_ATTEMPTS; attempt++) {
+			Transaction transaction = atomix.transactionBuilder().withIsolation(Isolation.READ_COMMITTED).build();
+			transaction.begin();
+			Map<Integer, AsyncTransactionalMap<Long, Relation>> txRelations = new HashMap<>();
+
+			List<CompletableFuture<?>> writes = new ArrayList<>();
+			for (Relation<K, V> relation : batch) {
+				writes.add(timer.sending(() -> txRelations.computeIfAbsent(shards.ofRelation(relation.getId()),
+						shard -> this.<Long, Relation>transactionalMap(transaction, RELATIONS, shard))
+						.put(relation.getId(), relation)));
 			}
-			if (from2TypeMap.containsKey((K) relation.getFrom())) {
-				from2TypeMap.remove((K) relation.getFrom());
+			if (outgoing.isTransactional()) {
+				writes.add(timer.sending(() -> outgoing.addAll(outgoingDelta, transaction)));
+				writes.add(timer.sending(() -> incoming.addAll(incomingDelta, transaction)));
 			}
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
 
-			if (relation.isBiDirectional()) {
-				if (from2ToMap.containsKey((K) relation.getTo())) {
-					from2ToMap.remove((K) relation.getTo());
-				}
-				if (from2TypeMap.containsKey((K) relation.getTo())) {
-					from2TypeMap.remove((K) relation.getTo());
+			timer.roundTrips(batch.size() + outgoingDelta.size() * outgoing.updateRoundTrips()
+					+ incomingDelta.size() * incoming.updateRoundTrips() + 1);
+			GraphAggregates<K> degrees = aggregates.get();
+			if (degrees != null) {
+				batch.forEach(relation -> degrees.writing(relation.getId(), true));
+			}
+			boolean committed = transaction.commit() == CommitStatus.SUCCESS;
+			if (degrees != null) {
+				batch.forEach(relation -> degrees.written(relation, true, committed));
+			}
+			if (committed) {
+				batch.forEach(relation -> relationsCache.invalidate(relation.getId()));
+				if (outgoing.isTransactional()) {
+					outgoing.invalidateAll(outgoingDelta.keySet());
+					incoming.invalidateAll(incomingDelta.keySet());
+				} else {
+					timer.sending(() -> CompletableFuture.allOf(outgoing.addAll(outgoingDelta, null),
+							incoming.addAll(incomingDelta, null))).join();
 				}
+				return;
 			}
+			logger.warn(String.format("addRelations commit conflict, attempt %s of %s", attempt, MAX_COMMIT_ATTEMPTS));
+		}
 
-			relationsMap.remove(id);
-			return true;
+		logger.error("addRelations failed to commit a batch of " + batch.size() + " relations");
+		for (Integer position : batchPositions) {
+			ids.set(position, null);
 		}
-		logger.error(String.format("Relation id:% not found", id));
-		return false;
 	}
 
-	@Override
-	public boolean removeRelation(K from, K to, String type) {
-		logger.info("Inside remove relation by from,to,type");
-		boolean result = true;
-
-		List<Long> relsToDelete = new ArrayList<>();
-		if (from2ToMap.containsKey(from) & from2ToMap.get(from).value().containsKey(to)) {
-			for (Long relId : from2ToMap.get(from).value().get(to)) {
-				if (relationsMap.get(relId).value().getType().equals(type)) {
-					relsToDelete.add(relId);
-				}
-			}
+	private <MK, MV> AsyncTransactionalMap<MK, MV> transactionalMap(Transaction transaction, String suffix,
+			int shard) {
+		TransactionalMapBuilder<MK, MV> builder = transaction.<MK, MV>mapBuilder(shardName(suffix, shard))
+				.withSerializer(serializer);
+		if (protocol != null) {
+			builder.withProtocol(protocol);
 		}
+		return builder.build().async();
+	}
 
-		for (Long relID : relsToDelete) {
-//			Indicates if all the nodes were deleted or not.
-			result &= removeRelation(relID);
-		}
+	public Long addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		logger.debug("Inside addRelation");
+		return asyncGraph.addRelation(from, to, type, value, biDirectional).join();
+	}
 
-		return result;
+	public Optional<V> getNode(K key) {
+		logger.debug("Inside getNode");
+		return asyncGraph.getNode(key).join();
+	}
+
+	@Override
+	public boolean removeNode(K key) {
+		logger.debug("Inside removeNode");
+		return asyncGraph.removeNode(key).join();
+	}
+
+	@Override
+	public boolean removeRelation(long id) {
+		logger.debug("Inside removeRelation");
+		return asyncGraph.removeRelation(id).join();
+	}
+
+	@Override
+	public boolean removeRelation(K from, K to, String type) {
+		logger.debug("Inside remove relation by from,to,type");
+		return asyncGraph.removeRelation(from, to, type).join();
 	}
 
 	@Override
 	public Relation getRelations(long relationId) {
-		logger.info("Inside getRelations");
-		if (relationsMap.containsKey(relationId)) {
-			return relationsMap.get(relationId).value();
-		}
-		logger.error(String.format("Relation with id:% does not exist", relationId));
-		return null;
+		logger.debug("Inside getRelations");
+		return asyncGraph.getRelations(relationId).join();
 	}
 
 	@Override
 	public List<Relation> getRelations(K from, K to) {
-		logger.info("Inside getRelations(from,to)");
-		List<Relation> relations = Lists.newArrayList();
-		if (from2ToMap.containsKey(from) && from2ToMap.get(from).value().containsKey(to)) {
-			for (Long relId : from2ToMap.get(from).value().get(to)) {
-				relations.add(relationsMap.get(relId).value());
-			}
-		}
-		return relations;
+		logger.debug("Inside getRelations(from,to)");
+		return asyncGraph.getRelations(from, to).join();
 	}
 
 	@Override
 	public List<String> getRelationType(K from, K to) {
-		logger.info("Inside getRelationType");
-		List<String> relationTypes = Lists.newArrayList();
-		if (from2ToMap.containsKey(from) && from2ToMap.get(from).value().containsKey(to)) {
-			for (Long relId : from2ToMap.get(from).value().get(to)) {
-				relationTypes.add(relationsMap.get(relId).value().getType());
-			}
-		}
-		return relationTypes;
+		logger.debug("Inside getRelationType");
+		return asyncGraph.getRelationType(from, to).join();
 	}
 
 	/*
@@ -284,95 +690,71 @@ public class GraphModelImpl<K, V> implements Graph<K, V> {
 	 */
 	@Override
 	public long getNodeOutDegree(K key) {
-		logger.info("Inside getNodeOutDegree");
-		long outDegree = 0;
-		if (from2ToMap.containsKey(key)) {
-			for (Entry<K, Collection<Long>> entry : from2ToMap.get(key).value().entrySet()) {
-				outDegree += entry.getValue().size();
-			}
-			return outDegree;
-		}
-		return -1;
+		logger.debug("Inside getNodeOutDegree");
+		return asyncGraph.getNodeOutDegree(key).join();
 	}
 
 	@Override
 	public List<Relation> getOutgoingRelations(K from) {
-		logger.info("Inside getOutgoingRelations");
-		List<Relation> relations = Lists.newArrayList();
-		if (from2ToMap.containsKey(from)) {
-			Map<K, Collection<Long>> fromMap = from2ToMap.get(from).value();
-			for (Entry<K, Collection<Long>> entry : fromMap.entrySet()) {
-				for (Long relId : entry.getValue()) {
-					relations.add(relationsMap.get(relId).value());
-				}
-			}
-			return relations;
-		}
-		return null;
+		logger.debug("Inside getOutgoingRelations");
+		return asyncGraph.getOutgoingRelations(from).join();
 	}
 
 	@Override
 	public List<Relation> getOutgoingRelations(K from, String type) {
-		logger.info("Inside getOutgoingRelationNodes");
-		List<Relation> relationsList = Lists.newArrayList();
-		if (from2ToMap.containsKey(from)) {
-			Map<String, Collection<Long>> fromMap = from2TypeMap.get(from).value();
-			if (fromMap.containsKey(type)) {
-				for (Long relId : fromMap.get(type)) {
-					relationsList.add(relationsMap.get(relId).value());
-				}
-				return relationsList;
-			}
-		}
-		return null;
+		logger.debug("Inside getOutgoingRelationNodes");
+		return asyncGraph.getOutgoingRelations(from, type).join();
 	}
 
 	@Override
 	public List<Relation> getIncomingRelations(K to) {
-		logger.info("Inside getIncomingRelations");
-		List<Relation> relationsList = Lists.newArrayList();
-		for (Entry<K, Versioned<Map<K, Collection<Long>>>> entry : from2ToMap.entrySet()) {
-			Map<K, Collection<Long>> fromMap = entry.getValue().value();
-			if (fromMap.containsKey(to)) {
-				List<Long> toList = (List<Long>) fromMap.get(to);
-				toList.forEach(relId -> relationsList.add(relationsMap.get(relId).value()));
-			}
-		}
-		return relationsList;
+		logger.debug("Inside getIncomingRelations");
+		return asyncGraph.getIncomingRelations(to).join();
 	}
 
 	@Override
 	public List<Relation> getIncomingRelations(K to, String type) {
-		logger.info("Inside getIncomingRelations");
-
-		List<Relation> relationsList = Lists.newArrayList();
-		for (Entry<K, Versioned<Map<K, Collection<Long>>>> entry : from2ToMap.entrySet()) {
-			Map<K, Collection<Long>> toMap = entry.getValue().value();
-			if (toMap.containsKey(to)) {
-				for (Long relId : toMap.get(to)) {
-					if (relationsMap.get(relId).value().getType().equals(type)) {
-						relationsList.add(relationsMap.get(relId).value());
-					}
-				}
-			}
-		}
+		logger.debug("Inside getIncomingRelations");
+		return asyncGraph.getIncomingRelations(to, type).join();
+	}
 
-		return relationsList;
+	@Override
+	public RelationPage getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		logger.debug("Inside getOutgoingRelations page");
+		return asyncGraph.getOutgoingRelations(from, type, cursor, pageSize).join();
+	}
+
+	@Override
+	public RelationPage getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		logger.debug("Inside getIncomingRelations page");
+		return asyncGraph.getIncomingRelations(to, type, cursor, pageSize).join();
+	}
+
+	@Override
+	public RelationPage getRelations(K from, K to, String cursor, int pageSize) {
+		logger.debug("Inside getRelations page");
+		return asyncGraph.getRelations(from, to, cursor, pageSize).join();
+	}
+
+	@Override
+	public Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize) {
+		return asyncGraph.streamOutgoingRelations(from, type, pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamIncomingRelations(K to, String type, int pageSize) {
+		return asyncGraph.streamIncomingRelations(to, type, pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamRelations(K from, K to, int pageSize) {
+		return asyncGraph.streamRelations(from, to, pageSize);
 	}
 
 	@Override
 	public boolean areRelated(K from, K to) {
-		logger.info("Inside areRelated");
-		if (from2ToMap.containsKey(from)) {
-			Map<K, Collection<Long>> fromMap = from2ToMap.get(from).value();
-			if (fromMap.containsKey(to)) {
-				return true;
-			}
-		} else {
-			logger.error("Node " + from + " not present in the Graph");
-			return false;
-		}
-		return false;
+		logger.debug("Inside areRelated");
+		return asyncGraph.areRelated(from, to).join();
 	}
 
 	/*
@@ -382,32 +764,20 @@ public class GraphModelImpl<K, V> implements Graph<K, V> {
 	 */
 	@Override
 	public List<K> search(K from, K to) {
-		if (from2ToMap.containsKey(from)) {
-			List<K> path = new ArrayList<>();
-			Queue<K> nodes = new LinkedList<K>();
-			Set<K> visited = new HashSet<K>();
-			nodes.offer(from);
-			while (!nodes.isEmpty()) {
-				if (nodes.peek().equals(to)) {
-					return path;
-				}
-				K current = nodes.poll();
-				path.add(current);
-				Map<K, Collection<Long>> fromMap = from2ToMap.get(current).value();
-				if (fromMap.containsKey(to)) {
-					path.add(to);
-					return path;
-				} else {
-					Set<K> neighbours = fromMap.keySet();
-					for (K node : neighbours) {
-						if (!visited.contains(node)) {
-							visited.add(node);
-						}
-					}
-				}
-			}
-		}
-		return null;
+		Path<K> path = search(from, to, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return path == null ? null : path.getNodes();
+	}
+
+	@Override
+	public Path<K> search(K from, K to, int maxDepth, int maxVisited) {
+		logger.debug("Inside search");
+		return asyncGraph.search(from, to, maxDepth, maxVisited).join();
+	}
+
+	@Override
+	public WeightedPath<K> shortestPath(PathQuery<K> query) {
+		logger.debug("Inside shortestPath");
+		return asyncGraph.shortestPath(query).join();
 	}
 
 }
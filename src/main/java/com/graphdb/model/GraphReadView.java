@@ -0,0 +1,189 @@
+package com.graphdb.model;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.google.common.base.Optional;
+
+import io.atomix.primitive.protocol.ProxyProtocol;
+
+/*
+ * Read-only view of a GraphModelImpl that reads its maps at another read
+ * consistency, see GraphModelImpl.reads. Lease based or sequential reads
+ * suit queries that accept slightly stale results, sequential reads sent to
+ * the followers keep them off the Raft leaders. The view never fills the near
+ * caches of the graph, whose answers a lagging follower would otherwise leave
+ * stale there. A LINEARIZABLE view reads past them, the others serve their
+ * hits. All the mutating methods of Graph throw UnsupportedOperationException.
+ */
+public class GraphReadView<K, V> implements Graph<K, V> {
+
+	private final AsyncGraphModelImpl<K, V> asyncGraph;
+
+	GraphReadView(AsyncGraphModelImpl<K, V> asyncGraph) {
+		this.asyncGraph = asyncGraph;
+	}
+
+	/*
+	 * Asynchronous reads at the consistency of this view. Writes through it
+	 * reach the leader like any other, but belong on the graph itself.
+	 */
+	public AsyncGraph<K, V> async() {
+		return asyncGraph;
+	}
+
+	private UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("GraphReadView is read-only");
+	}
+
+	// Configured and built by the graph it reads
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+	}
+
+	@Override
+	public void withCacheSize(int size) {
+	}
+
+	@Override
+	public void setReadOnly() {
+	}
+
+	@Override
+	public void buildAtomicMultiMap() {
+	}
+
+	@Override
+	public boolean addNode(K key, V value) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean addNodes(Map<K, V> nodes) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeNode(K key) {
+		throw readOnly();
+	}
+
+	@Override
+	public Optional<V> getNode(K key) {
+		return asyncGraph.getNode(key).join();
+	}
+
+	@Override
+	public Long addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		throw readOnly();
+	}
+
+	@Override
+	public List<Long> addRelations(Collection<Relation<K, V>> relations) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeRelation(long id) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeRelation(K from, K to, String type) {
+		throw readOnly();
+	}
+
+	@Override
+	public Relation getRelations(long relationId) {
+		return asyncGraph.getRelations(relationId).join();
+	}
+
+	@Override
+	public List<Relation> getRelations(K from, K to) {
+		return asyncGraph.getRelations(from, to).join();
+	}
+
+	@Override
+	public List<String> getRelationType(K from, K to) {
+		return asyncGraph.getRelationType(from, to).join();
+	}
+
+	@Override
+	public long getNodeOutDegree(K key) {
+		return asyncGraph.getNodeOutDegree(key).join();
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from) {
+		return asyncGraph.getOutgoingRelations(from).join();
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from, String type) {
+		return asyncGraph.getOutgoingRelations(from, type).join();
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to) {
+		return asyncGraph.getIncomingRelations(to).join();
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to, String type) {
+		return asyncGraph.getIncomingRelations(to, type).join();
+	}
+
+	@Override
+	public RelationPage getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		return asyncGraph.getOutgoingRelations(from, type, cursor, pageSize).join();
+	}
+
+	@Override
+	public RelationPage getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		return asyncGraph.getIncomingRelations(to, type, cursor, pageSize).join();
+	}
+
+	@Override
+	public RelationPage getRelations(K from, K to, String cursor, int pageSize) {
+		return asyncGraph.getRelations(from, to, cursor, pageSize).join();
+	}
+
+	@Override
+	public Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize) {
+		return asyncGraph.streamOutgoingRelations(from, type, pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamIncomingRelations(K to, String type, int pageSize) {
+		return asyncGraph.streamIncomingRelations(to, type, pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamRelations(K from, K to, int pageSize) {
+		return asyncGraph.streamRelations(from, to, pageSize);
+	}
+
+	@Override
+	public boolean areRelated(K from, K to) {
+		return asyncGraph.areRelated(from, to).join();
+	}
+
+	@Override
+	public List<K> search(K from, K to) {
+		Path<K> path = search(from, to, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return path == null ? null : path.getNodes();
+	}
+
+	@Override
+	public Path<K> search(K from, K to, int maxDepth, int maxVisited) {
+		return asyncGraph.search(from, to, maxDepth, maxVisited).join();
+	}
+
+	@Override
+	public WeightedPath<K> shortestPath(PathQuery<K> query) {
+		return asyncGraph.shortestPath(query).join();
+	}
+}
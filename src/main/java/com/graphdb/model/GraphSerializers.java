@@ -0,0 +1,160 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import io.atomix.utils.serializer.Namespace;
+import io.atomix.utils.serializer.Namespaces;
+import io.atomix.utils.serializer.Serializer;
+
+/*
+ * Compact binary format of the values stored by a GraphModelImpl. Relation,
+ * AdjacencyEntry and VertexBucket are registered with their own serializers so
+ * that they are written without their class name, and lists of relation ids
+ * are written as varint deltas. Every map of a graph, and every transactional view of those
+ * maps, must use the same SERIALIZER.
+ */
+public final class GraphSerializers {
+
+	public final static Namespace NAMESPACE = Namespace.builder().register(Namespaces.BASIC)
+			.nextId(Namespaces.BEGIN_USER_CUSTOM_ID)
+			.register(new RelationSerializer(), Relation.class)
+			.register(new AdjacencyEntrySerializer(), AdjacencyEntry.class)
+			.register(new LongListSerializer(), ArrayList.class)
+			.register(new VertexBucketSerializer(), VertexBucket.class)
+			// Keys and node values can be of any type
+			.setRegistrationRequired(false)
+			.build("graphdb");
+
+	public final static Serializer SERIALIZER = Serializer.using(NAMESPACE);
+
+	private GraphSerializers() {
+	}
+
+	static class RelationSerializer extends com.esotericsoftware.kryo.Serializer<Relation> {
+
+		RelationSerializer() {
+			super(false, true);
+		}
+
+		@Override
+		public void write(Kryo kryo, Output output, Relation relation) {
+			output.writeVarLong(relation.getId(), true);
+			kryo.writeClassAndObject(output, relation.getFrom());
+			kryo.writeClassAndObject(output, relation.getTo());
+			kryo.writeClassAndObject(output, relation.getValue());
+			output.writeString(relation.getType());
+			output.writeBoolean(relation.isBiDirectional());
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Relation read(Kryo kryo, Input input, Class<Relation> type) {
+			long id = input.readVarLong(true);
+			Object from = kryo.readClassAndObject(input);
+			Object to = kryo.readClassAndObject(input);
+			Object value = kryo.readClassAndObject(input);
+			return new Relation<>(id, from, to, value, input.readString(), input.readBoolean());
+		}
+	}
+
+	static class AdjacencyEntrySerializer extends com.esotericsoftware.kryo.Serializer<AdjacencyEntry> {
+
+		AdjacencyEntrySerializer() {
+			super(false, true);
+		}
+
+		@Override
+		public void write(Kryo kryo, Output output, AdjacencyEntry entry) {
+			kryo.writeClassAndObject(output, entry.getNeighbour());
+			output.writeString(entry.getType());
+			output.writeVarLong(entry.getRelationId(), true);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public AdjacencyEntry read(Kryo kryo, Input input, Class<AdjacencyEntry> type) {
+			Object neighbour = kryo.readClassAndObject(input);
+			return new AdjacencyEntry<>(neighbour, input.readString(), input.readVarLong(true));
+		}
+	}
+
+	static class VertexBucketSerializer extends com.esotericsoftware.kryo.Serializer<VertexBucket> {
+
+		VertexBucketSerializer() {
+			super(false, true);
+		}
+
+		@Override
+		public void write(Kryo kryo, Output output, VertexBucket bucket) {
+			kryo.writeClassAndObject(output, bucket.getVertex());
+			output.writeVarInt(bucket.getBucket(), true);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public VertexBucket read(Kryo kryo, Input input, Class<VertexBucket> type) {
+			Object vertex = kryo.readClassAndObject(input);
+			return new VertexBucket<>(vertex, input.readVarInt(true));
+		}
+	}
+
+	/*
+	 * ArrayList, the list type of the relation ids in the adjacency indexes. A
+	 * list holding only Longs is written as the zigzag varint difference of each
+	 * id to the previous one, which takes one or two bytes per id since ids are
+	 * generated in increasing order. Any other list is written element by
+	 * element.
+	 */
+	static class LongListSerializer extends com.esotericsoftware.kryo.Serializer<ArrayList> {
+
+		LongListSerializer() {
+			super(false);
+		}
+
+		@Override
+		public void write(Kryo kryo, Output output, ArrayList list) {
+			boolean longs = true;
+			for (Object element : list) {
+				if (!(element instanceof Long)) {
+					longs = false;
+					break;
+				}
+			}
+			// The low bit of the size tells how the elements are written
+			output.writeVarInt(list.size() << 1 | (longs ? 1 : 0), true);
+			long previous = 0;
+			for (Object element : list) {
+				if (longs) {
+					long id = (Long) element;
+					output.writeVarLong(id - previous, false);
+					previous = id;
+				} else {
+					kryo.writeClassAndObject(output, element);
+				}
+			}
+		}
+
+		@Override
+		public ArrayList read(Kryo kryo, Input input, Class<ArrayList> type) {
+			int header = input.readVarInt(true);
+			int size = header >>> 1;
+			boolean longs = (header & 1) == 1;
+			List<Object> list = new ArrayList<>(size);
+			long previous = 0;
+			for (int i = 0; i < size; i++) {
+				if (longs) {
+					previous += input.readVarLong(false);
+					list.add(previous);
+				} else {
+					list.add(kryo.readClassAndObject(input));
+				}
+			}
+			return (ArrayList) list;
+		}
+	}
+}
@@ -0,0 +1,494 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Immutable, in memory view of a graph for read heavy analytics. Vertex keys are
+ * dictionary encoded to ints and the relations of every type are held in a
+ * CsrAdjacency for each direction, so traversals never leave the JVM. All the
+ * mutating methods of Graph throw UnsupportedOperationException.
+ *
+ * A snapshot is built by GraphModelImpl.snapshot() or kept up to date by a
+ * SnapshotBuilder.
+ */
+public class GraphSnapshot<K, V> implements Graph<K, V> {
+
+	private final Map<K, V> nodes;
+	private final Map<Long, Relation<K, V>> relations;
+	private final Map<String, Long> versions;
+
+	private final Map<K, Integer> vertexIds = new HashMap<>();
+	private final List<K> vertices = new ArrayList<>();
+	private final Map<String, CsrAdjacency> outgoing = new HashMap<>();
+	private final Map<String, CsrAdjacency> incoming = new HashMap<>();
+
+	GraphSnapshot(Map<K, V> nodes, Map<Long, Relation<K, V>> relations, Map<String, Long> versions) {
+		this.nodes = nodes;
+		this.relations = relations;
+		this.versions = Collections.unmodifiableMap(versions);
+
+		for (K key : nodes.keySet()) {
+			encode(key);
+		}
+
+		// A biDirectional relation is an edge in both directions, as in the
+		// indexes of GraphModelImpl
+		Map<String, CsrAdjacency.Builder> outgoingBuilders = new HashMap<>();
+		Map<String, CsrAdjacency.Builder> incomingBuilders = new HashMap<>();
+		for (Relation<K, V> relation : relations.values()) {
+			int from = encode(relation.getFrom());
+			int to = encode(relation.getTo());
+			CsrAdjacency.Builder out = outgoingBuilders.computeIfAbsent(relation.getType(),
+					type -> new CsrAdjacency.Builder());
+			CsrAdjacency.Builder in = incomingBuilders.computeIfAbsent(relation.getType(),
+					type -> new CsrAdjacency.Builder());
+			out.add(from, to, relation.getId());
+			in.add(to, from, relation.getId());
+			if (relation.isBiDirectional()) {
+				out.add(to, from, relation.getId());
+				in.add(from, to, relation.getId());
+			}
+		}
+		outgoingBuilders.forEach((type, builder) -> outgoing.put(type, builder.build(vertices.size())));
+		incomingBuilders.forEach((type, builder) -> incoming.put(type, builder.build(vertices.size())));
+	}
+
+	/*
+	 * Reads all the shards of the nodes and relations maps in full into a new
+	 * snapshot.
+	 */
+	static <K, V> GraphSnapshot<K, V> build(List<AtomicMap<K, V>> nodesShards,
+			List<AtomicMap<Long, Relation>> relationsShards, EntryPartitions partitions) {
+		return build(nodesShards, relationsShards, partitions, new HashMap<>(), new HashMap<>(), new HashMap<>());
+	}
+
+	/*
+	 * Same as build, the versions read are merged into versions, and the version
+	 * each node and relation was read at is put in nodeVersions and
+	 * relationVersions
+	 */
+	@SuppressWarnings("unchecked")
+	static <K, V> GraphSnapshot<K, V> build(List<AtomicMap<K, V>> nodesShards,
+			List<AtomicMap<Long, Relation>> relationsShards, EntryPartitions partitions, Map<String, Long> versions,
+			Map<K, Long> nodeVersions, Map<Long, Long> relationVersions) {
+		Map<K, V> nodes = new HashMap<>();
+		for (AtomicMap<K, V> nodesMap : nodesShards) {
+			for (Entry<K, Versioned<V>> entry : nodesMap.entrySet()) {
+				nodes.put(entry.getKey(), entry.getValue().value());
+				nodeVersions.put(entry.getKey(), entry.getValue().version());
+				versions.merge(partitions.of(nodesMap.name(), entry.getKey()), entry.getValue().version(),
+						Math::max);
+			}
+		}
+		Map<Long, Relation<K, V>> relations = new HashMap<>();
+		for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+			for (Entry<Long, Versioned<Relation>> entry : relationsMap.entrySet()) {
+				relations.put(entry.getKey(), entry.getValue().value());
+				relationVersions.put(entry.getKey(), entry.getValue().version());
+				versions.merge(partitions.of(relationsMap.name(), entry.getKey()), entry.getValue().version(),
+						Math::max);
+			}
+		}
+		return new GraphSnapshot<>(nodes, relations, versions);
+	}
+
+	private int encode(K key) {
+		Integer id = vertexIds.get(key);
+		if (id == null) {
+			id = vertices.size();
+			vertexIds.put(key, id);
+			vertices.add(key);
+		}
+		return id;
+	}
+
+	/*
+	 * Highest Raft index (Versioned version) among the entries and changes the
+	 * snapshot was built from, by map shard and partition as in ChangeCursor.
+	 * The entries of a map shard are spread over the partitions by key and the
+	 * indexes of different partitions are unrelated, but the versions under the
+	 * same key compare. The snapshots of a SnapshotBuilder never go back under a
+	 * key, a removal counts with the version of the entry it removed. A scan only
+	 * sees the entries left, so a later GraphModelImpl.snapshot() may have a
+	 * lower version after removals. A partition without entries has no version.
+	 */
+	public Map<String, Long> getVersions() {
+		return versions;
+	}
+
+	/*
+	 * @return: The int id of the vertex, -1 if it is not in the snapshot
+	 */
+	public int vertexId(K key) {
+		Integer id = vertexIds.get(key);
+		return id == null ? -1 : id;
+	}
+
+	public K vertex(int id) {
+		return vertices.get(id);
+	}
+
+	public int vertexCount() {
+		return vertices.size();
+	}
+
+	public Set<String> types() {
+		return Collections.unmodifiableSet(outgoing.keySet());
+	}
+
+	/*
+	 * @return: Outgoing edges of the given type, null if there are none
+	 */
+	public CsrAdjacency outgoing(String type) {
+		return outgoing.get(type);
+	}
+
+	/*
+	 * @return: Incoming edges of the given type, null if there are none
+	 */
+	public CsrAdjacency incoming(String type) {
+		return incoming.get(type);
+	}
+
+	Map<K, V> nodes() {
+		return nodes;
+	}
+
+	Map<Long, Relation<K, V>> relations() {
+		return relations;
+	}
+
+	private UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("GraphSnapshot is read-only");
+	}
+
+	// Nothing to configure or build on a snapshot
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+	}
+
+	@Override
+	public void withCacheSize(int size) {
+	}
+
+	@Override
+	public void setReadOnly() {
+	}
+
+	@Override
+	public void buildAtomicMultiMap() {
+	}
+
+	@Override
+	public boolean addNode(K key, V value) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean addNodes(Map<K, V> nodes) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeNode(K key) {
+		throw readOnly();
+	}
+
+	@Override
+	public Optional<V> getNode(K key) {
+		return Optional.fromNullable(nodes.get(key));
+	}
+
+	@Override
+	public Long addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		throw readOnly();
+	}
+
+	@Override
+	public List<Long> addRelations(Collection<Relation<K, V>> relations) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeRelation(long id) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeRelation(K from, K to, String type) {
+		throw readOnly();
+	}
+
+	@Override
+	public Relation getRelations(long relationId) {
+		return relations.get(relationId);
+	}
+
+	@Override
+	public List<Relation> getRelations(K from, K to) {
+		List<Relation> result = Lists.newArrayList();
+		int source = vertexId(from);
+		int target = vertexId(to);
+		if (source < 0 || target < 0) {
+			return result;
+		}
+		for (CsrAdjacency csr : outgoing.values()) {
+			for (int i = csr.start(source); i < csr.end(source); i++) {
+				if (csr.target(i) == target) {
+					result.add(relations.get(csr.relationId(i)));
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<String> getRelationType(K from, K to) {
+		List<String> result = Lists.newArrayList();
+		for (Relation relation : getRelations(from, to)) {
+			result.add(relation.getType());
+		}
+		return result;
+	}
+
+	@Override
+	public long getNodeOutDegree(K key) {
+		int vertex = vertexId(key);
+		long outDegree = 0;
+		if (vertex >= 0) {
+			for (CsrAdjacency csr : outgoing.values()) {
+				outDegree += csr.degree(vertex);
+			}
+		}
+		return outDegree == 0 ? -1 : outDegree;
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from) {
+		List<Relation> result = collect(outgoing.values(), vertexId(from));
+		return result.isEmpty() ? null : result;
+	}
+
+	@Override
+	public List<Relation> getOutgoingRelations(K from, String type) {
+		CsrAdjacency csr = outgoing.get(type);
+		if (csr == null) {
+			return null;
+		}
+		List<Relation> result = collect(Collections.singletonList(csr), vertexId(from));
+		return result.isEmpty() ? null : result;
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to) {
+		return collect(incoming.values(), vertexId(to));
+	}
+
+	@Override
+	public List<Relation> getIncomingRelations(K to, String type) {
+		CsrAdjacency csr = incoming.get(type);
+		if (csr == null) {
+			return Lists.newArrayList();
+		}
+		return collect(Collections.singletonList(csr), vertexId(to));
+	}
+
+	private List<Relation> collect(Collection<CsrAdjacency> csrs, int vertex) {
+		List<Relation> result = Lists.newArrayList();
+		if (vertex < 0) {
+			return result;
+		}
+		for (CsrAdjacency csr : csrs) {
+			for (int i = csr.start(vertex); i < csr.end(vertex); i++) {
+				result.add(relations.get(csr.relationId(i)));
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * The relations of a snapshot are in memory, the pages only bound what is
+	 * handed out at a time
+	 */
+	@Override
+	public RelationPage getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		return RelationPage.of(collect(byType(outgoing, type), vertexId(from)), cursor, pageSize);
+	}
+
+	@Override
+	public RelationPage getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		return RelationPage.of(collect(byType(incoming, type), vertexId(to)), cursor, pageSize);
+	}
+
+	@Override
+	public RelationPage getRelations(K from, K to, String cursor, int pageSize) {
+		return RelationPage.of(getRelations(from, to), cursor, pageSize);
+	}
+
+	@Override
+	public Stream<Relation> streamOutgoingRelations(K from, String type, int pageSize) {
+		return sorted(collect(byType(outgoing, type), vertexId(from)));
+	}
+
+	@Override
+	public Stream<Relation> streamIncomingRelations(K to, String type, int pageSize) {
+		return sorted(collect(byType(incoming, type), vertexId(to)));
+	}
+
+	@Override
+	public Stream<Relation> streamRelations(K from, K to, int pageSize) {
+		return sorted(getRelations(from, to));
+	}
+
+	/*
+	 * The relations are in memory already, a stream sorts them once
+	 */
+	private static Stream<Relation> sorted(List<Relation> relations) {
+		relations.sort(Comparator.comparingLong(Relation::getId));
+		return relations.stream();
+	}
+
+	private static Collection<CsrAdjacency> byType(Map<String, CsrAdjacency> csrs, String type) {
+		if (type == null) {
+			return csrs.values();
+		}
+		return csrs.containsKey(type) ? Collections.singletonList(csrs.get(type)) : Collections.emptyList();
+	}
+
+	@Override
+	public boolean areRelated(K from, K to) {
+		int source = vertexId(from);
+		int target = vertexId(to);
+		if (source < 0 || target < 0) {
+			return false;
+		}
+		for (CsrAdjacency csr : outgoing.values()) {
+			for (int i = csr.start(source); i < csr.end(source); i++) {
+				if (csr.target(i) == target) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public List<K> search(K from, K to) {
+		Path<K> path = search(from, to, Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return path == null ? null : path.getNodes();
+	}
+
+	/*
+	 * Breadth first search over the CSR arrays, with the parent of every visited
+	 * vertex kept in int and long arrays.
+	 */
+	@Override
+	public Path<K> search(K from, K to, int maxDepth, int maxVisited) {
+		int source = vertexId(from);
+		int target = vertexId(to);
+		if (source < 0 || target < 0) {
+			return null;
+		}
+
+		int[] parent = new int[vertices.size()];
+		long[] parentRelation = new long[vertices.size()];
+		Arrays.fill(parent, -1);
+		parent[source] = source;
+		int[] queue = new int[vertices.size()];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+
+		for (int depth = 0; depth < maxDepth && head < tail && parent[target] < 0; depth++) {
+			int levelEnd = tail;
+			while (head < levelEnd && parent[target] < 0) {
+				int vertex = queue[head++];
+				for (CsrAdjacency csr : outgoing.values()) {
+					for (int i = csr.start(vertex); i < csr.end(vertex); i++) {
+						int next = csr.target(i);
+						if (parent[next] < 0) {
+							parent[next] = vertex;
+							parentRelation[next] = csr.relationId(i);
+							queue[tail++] = next;
+						}
+					}
+				}
+			}
+			if (tail > maxVisited) {
+				return null;
+			}
+		}
+
+		if (parent[target] < 0) {
+			return null;
+		}
+		List<K> nodes = new ArrayList<>();
+		List<Long> relationIds = new ArrayList<>();
+		for (int vertex = target; vertex != source; vertex = parent[vertex]) {
+			nodes.add(vertices.get(vertex));
+			relationIds.add(parentRelation[vertex]);
+		}
+		nodes.add(from);
+		Collections.reverse(nodes);
+		Collections.reverse(relationIds);
+		return new Path<>(nodes, relationIds);
+	}
+
+	/*
+	 * DijkstraSearch over the CSR arrays of every type, relation costs computed
+	 * from the relations held by the snapshot
+	 */
+	@Override
+	public WeightedPath<K> shortestPath(PathQuery<K> query) {
+		return new DijkstraSearch<>(query, keys -> adjacency(outgoing, keys), keys -> adjacency(incoming, keys),
+				ids -> {
+					Map<Long, Relation> result = new HashMap<>();
+					for (Long id : ids) {
+						Relation relation = relations.get(id);
+						if (relation != null) {
+							result.put(id, relation);
+						}
+					}
+					return result;
+				}).search();
+	}
+
+	private Map<K, Map<K, Collection<Long>>> adjacency(Map<String, CsrAdjacency> csrs, Collection<K> keys) {
+		Map<K, Map<K, Collection<Long>>> result = new HashMap<>();
+		for (K key : keys) {
+			int vertex = vertexId(key);
+			if (vertex < 0) {
+				continue;
+			}
+			Map<K, Collection<Long>> neighbours = new HashMap<>();
+			for (CsrAdjacency csr : csrs.values()) {
+				for (int i = csr.start(vertex); i < csr.end(vertex); i++) {
+					neighbours.computeIfAbsent(vertices.get(csr.target(i)), k -> new ArrayList<>())
+							.add(csr.relationId(i));
+				}
+			}
+			if (!neighbours.isEmpty()) {
+				result.put(key, neighbours);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,101 @@
+package com.graphdb.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/*
+ * Append only log of the writes of an EmbeddedGraph, in a file mapped into
+ * memory one segment at a time. Every record is an Object[] encoded with the
+ * GraphSerializers, written as its length followed by its bytes, and a record
+ * never spans two segments: the rest of a segment too small for the next
+ * record is left zeroed and the record goes to the next segment. A zero length
+ * ends the log.
+ *
+ * Records are in the page cache once appended, so they survive the process,
+ * and on the disk once forced. Every segment but the current one is on the
+ * disk already.
+ */
+class MappedGraphLog implements AutoCloseable {
+
+	final static int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final int segmentSize;
+	private MappedByteBuffer segment;
+	private long segmentStart;
+
+	MappedGraphLog(java.nio.file.Path file, int segmentSize) throws IOException {
+		this.segmentSize = segmentSize;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+	}
+
+	/*
+	 * Hands every record to the consumer in the order they were appended, and
+	 * leaves the log positioned after the last one
+	 */
+	void replay(Consumer<Object[]> consumer) throws IOException {
+		while (true) {
+			int length = segment.remaining() < 4 ? 0 : segment.getInt(segment.position());
+			if (length > 0) {
+				byte[] bytes = new byte[length];
+				segment.position(segment.position() + 4);
+				segment.get(bytes);
+				consumer.accept(GraphSerializers.SERIALIZER.decode(bytes));
+			} else if (segment.position() > 0 && segmentStart + segmentSize < channel.size()) {
+				nextSegment();
+			} else {
+				return;
+			}
+		}
+	}
+
+	/*
+	 * The bytes of a record are written before its length, so that a record
+	 * cut short by a crash of the process is never read
+	 */
+	synchronized void append(Object... record) {
+		byte[] bytes = GraphSerializers.SERIALIZER.encode(record);
+		if (bytes.length + 4 > segmentSize) {
+			throw new IllegalArgumentException(String.format("Record of %s bytes does not fit a segment of %s",
+					bytes.length, segmentSize));
+		}
+		try {
+			if (segment.remaining() < bytes.length + 4) {
+				nextSegment();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int position = segment.position();
+		segment.position(position + 4);
+		segment.put(bytes);
+		segment.putInt(position, bytes.length);
+	}
+
+	/*
+	 * The segment left behind is forced before it is unmapped, so that force
+	 * only has the current segment to write
+	 */
+	private void nextSegment() throws IOException {
+		segment.force();
+		segmentStart += segmentSize;
+		segment = channel.map(MapMode.READ_WRITE, segmentStart, segmentSize);
+	}
+
+	synchronized void force() {
+		segment.force();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		segment.force();
+		channel.close();
+	}
+}
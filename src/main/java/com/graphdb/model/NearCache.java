@@ -0,0 +1,279 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.graphdb.metrics.GraphMetrics;
+import com.graphdb.metrics.NearCacheStats;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.core.map.AtomicMapEvent;
+import io.atomix.protocols.raft.ReadConsistency;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Client side cache of the Versioned values of one logical map of a graph, so
+ * that the vertices, relations and adjacency lists read again and again by
+ * traversals of a hot subgraph are served from local memory.
+ *
+ * The cache follows the map through its events: an update replaces a cached
+ * value only if it is newer, by Versioned version, and a removal drops it.
+ * Local writes drop the keys they wrote once they complete. A read started
+ * before a key was dropped does not fill the cache, each stripe of keys keeps
+ * an epoch that every drop increments. Absent keys are cached as a null value.
+ *
+ * Eviction is the LRU of the Guava cache, bounded either by a number of
+ * entries or by the serialized size of the entries.
+ *
+ * The read views of a graph see the cache through forReads, they never fill it.
+ */
+class NearCache<K, V> {
+
+	// Rough per entry overhead of the cache, added to the serialized size
+	private final static int ENTRY_OVERHEAD = 64;
+	private final static int STRIPES = 256;
+
+	private final Cache<K, Versioned<V>> cache;
+	private final NearCacheStats stats;
+	private final AtomicLongArray epochs;
+	// Whether gets are served from the cache and the values loaded are cached
+	private final boolean serves;
+	private final boolean fills;
+
+	private NearCache(String mapName, Settings settings) {
+		epochs = new AtomicLongArray(STRIPES);
+		serves = true;
+		fills = true;
+		if (settings.maxEntries <= 0) {
+			cache = null;
+			stats = null;
+			return;
+		}
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+		if (settings.maxBytes > 0) {
+			builder.maximumWeight(settings.maxBytes).weigher((key, value) -> weight(key) + weight(value));
+		} else {
+			builder.maximumSize(settings.maxEntries);
+		}
+		cache = builder.<K, Versioned<V>>removalListener(this::onRemoval).build();
+		stats = settings.metrics.cache(mapName, cache::size);
+	}
+
+	/*
+	 * The given cache as seen by a read view, see forReads
+	 */
+	private NearCache(NearCache<K, V> shared, boolean serves) {
+		cache = shared.cache;
+		stats = shared.stats;
+		epochs = shared.epochs;
+		this.serves = serves;
+		fills = false;
+	}
+
+	/*
+	 * This cache as seen by a read view of the graph at the given consistency.
+	 * A view never fills it: a follower may answer with a value older than the
+	 * events the cache already applied, or with none for a key added since, and
+	 * once cached that value would be served to the graph until the key is
+	 * written again. A linearizable view does not serve from it either, the
+	 * cache follows the events and may lag behind the leader. Writes through a
+	 * view still drop the keys they wrote.
+	 */
+	NearCache<K, V> forReads(ReadConsistency consistency) {
+		return new NearCache<>(this, consistency != ReadConsistency.LINEARIZABLE);
+	}
+
+	/*
+	 * Size of the near caches of a graph. A size of 0 entries disables the
+	 * caches, a positive number of bytes bounds them by memory instead of by
+	 * entries.
+	 */
+	static class Settings {
+
+		final static int DEFAULT_SIZE = 10000;
+
+		private final int maxEntries;
+		private final long maxBytes;
+		private final GraphMetrics metrics;
+
+		Settings(int maxEntries, long maxBytes, GraphMetrics metrics) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+			this.metrics = metrics;
+		}
+
+		<K, V> NearCache<K, V> create(String mapName) {
+			return new NearCache<>(mapName, this);
+		}
+
+		GraphMetrics metrics() {
+			return metrics;
+		}
+	}
+
+	private static int weight(Object object) {
+		if (object instanceof Versioned) {
+			object = ((Versioned<?>) object).value();
+		}
+		return ENTRY_OVERHEAD + (object == null ? 0 : GraphSerializers.SERIALIZER.encode(object).length);
+	}
+
+	private void onRemoval(RemovalNotification<K, Versioned<V>> notification) {
+		if (notification.wasEvicted()) {
+			stats.recordEviction();
+		} else if (notification.getCause() == RemovalCause.EXPLICIT) {
+			stats.recordInvalidation();
+		}
+	}
+
+	/*
+	 * Follows the events of one shard of the map
+	 */
+	void listenTo(AtomicMap<K, V> map) {
+		if (cache != null) {
+			map.addListener(this::onEvent);
+		}
+	}
+
+	private void onEvent(AtomicMapEvent<K, V> event) {
+		if (event.newValue() == null) {
+			invalidate(event.key());
+		} else {
+			bumpEpoch(event.key());
+			// Only refreshes a key already cached, events do not fill the cache
+			cache.asMap().computeIfPresent(event.key(),
+					(key, cached) -> cached.version() < event.newValue().version() ? event.newValue() : cached);
+		}
+	}
+
+	/*
+	 * Whether a get of the key would be served without a read of the map
+	 */
+	boolean contains(K key) {
+		return cache != null && serves && cache.getIfPresent(key) != null;
+	}
+
+	void invalidate(K key) {
+		if (cache != null) {
+			bumpEpoch(key);
+			cache.invalidate(key);
+		}
+	}
+
+	void invalidateAll(Collection<? extends K> keys) {
+		if (cache != null) {
+			keys.forEach(this::invalidate);
+		}
+	}
+
+	/*
+	 * Drops every cached value, once the maps were written without going
+	 * through the graph
+	 */
+	void clear() {
+		if (cache != null) {
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				epochs.incrementAndGet(stripe);
+			}
+			cache.invalidateAll();
+		}
+	}
+
+	/*
+	 * @return: The cached value, or the value loaded from the map, null if the
+	 * key is absent
+	 */
+	CompletableFuture<Versioned<V>> get(K key, Function<K, CompletableFuture<Versioned<V>>> loader) {
+		if (cache == null || !serves) {
+			return loader.apply(key);
+		}
+		Versioned<V> cached = cache.getIfPresent(key);
+		if (cached != null) {
+			stats.recordHits(1);
+			return CompletableFuture.completedFuture(cached.value() == null ? null : cached);
+		}
+		stats.recordMisses(1);
+		long epoch = epoch(key);
+		return loader.apply(key).thenApply(versioned -> {
+			fill(key, versioned, epoch);
+			return versioned;
+		});
+	}
+
+	/*
+	 * Cached values of the keys, the missing ones loaded together by the loader.
+	 * Absent keys are left out of the result as with getAllPresent.
+	 */
+	CompletableFuture<Map<K, Versioned<V>>> getAllPresent(Collection<K> keys,
+			Function<Collection<K>, CompletableFuture<Map<K, Versioned<V>>>> loader) {
+		if (cache == null || !serves) {
+			return loader.apply(keys);
+		}
+		Map<K, Versioned<V>> present = new HashMap<>();
+		List<K> missing = new ArrayList<>();
+		Map<K, Long> missingEpochs = new HashMap<>();
+		for (K key : keys) {
+			Versioned<V> cached = cache.getIfPresent(key);
+			if (cached == null) {
+				missing.add(key);
+				missingEpochs.put(key, epoch(key));
+			} else if (cached.value() != null) {
+				present.put(key, cached);
+			}
+		}
+		stats.recordHits(keys.size() - missing.size());
+		if (missing.isEmpty()) {
+			return CompletableFuture.completedFuture(present);
+		}
+		stats.recordMisses(missing.size());
+		return loader.apply(missing).thenApply(loaded -> {
+			for (K key : missing) {
+				Versioned<V> versioned = loaded.get(key);
+				fill(key, versioned, missingEpochs.get(key));
+				if (versioned != null) {
+					present.put(key, versioned);
+				}
+			}
+			return present;
+		});
+	}
+
+	/*
+	 * The epoch is checked under the lock of the entry, so a key dropped while
+	 * the value was loaded is not filled back with it
+	 */
+	private void fill(K key, Versioned<V> versioned, long epoch) {
+		if (!fills) {
+			return;
+		}
+		Versioned<V> loaded = versioned == null ? new Versioned<>(null, 0) : versioned;
+		cache.asMap().compute(key, (k, cached) -> {
+			if (epoch(key) != epoch) {
+				return cached;
+			}
+			return cached == null || cached.version() < loaded.version() ? loaded : cached;
+		});
+	}
+
+	private int stripe(K key) {
+		return Math.floorMod(key.hashCode(), STRIPES);
+	}
+
+	private long epoch(K key) {
+		return epochs.get(stripe(key));
+	}
+
+	private void bumpEpoch(K key) {
+		epochs.incrementAndGet(stripe(key));
+	}
+}
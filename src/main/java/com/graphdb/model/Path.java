@@ -0,0 +1,40 @@
+package com.graphdb.model;
+
+import java.util.List;
+
+/*
+ * Result of a path search: the vertices from source to destination and the id
+ * of the relation used for every hop, relationIds.get(i) connecting
+ * nodes.get(i) and nodes.get(i + 1).
+ */
+public class Path<K> {
+
+	private List<K> nodes;
+	private List<Long> relationIds;
+
+	public Path(List<K> nodes, List<Long> relationIds) {
+		this.nodes = nodes;
+		this.relationIds = relationIds;
+	}
+
+	public List<K> getNodes() {
+		return nodes;
+	}
+
+	public List<Long> getRelationIds() {
+		return relationIds;
+	}
+
+	public int getLength() {
+		return relationIds.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(nodes.get(0).toString());
+		for (int i = 0; i < relationIds.size(); i++) {
+			builder.append(" -- (ID:").append(relationIds.get(i)).append(") --> ").append(nodes.get(i + 1));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,164 @@
+package com.graphdb.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/*
+ * Weighted shortest path query of Graph.shortestPath. The cost of a relation
+ * is its value when that is a Number, or what the weight function gives, and
+ * must not be negative. Without a heuristic the search is Dijkstra's, from the
+ * source only or from both ends. With a heuristic it is A*, from the source
+ * only: the heuristic estimates the cost from a vertex to the destination, and
+ * must never overestimate it for the path to be the cheapest.
+ *
+ * The weight and heuristic functions stay in this JVM, a QueryClient only
+ * sends queries without them.
+ */
+public class PathQuery<K> {
+
+	private K from;
+	private K to;
+	private Set<String> types;
+	private transient ToDoubleFunction<Relation> weight;
+	private transient ToDoubleFunction<K> heuristic;
+	private boolean bidirectional;
+	private double maxCost = Double.POSITIVE_INFINITY;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int maxVisited = Integer.MAX_VALUE;
+
+	public PathQuery(K from, K to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/*
+	 * Only follows relations of the given types
+	 */
+	public PathQuery<K> withTypes(String... types) {
+		return withTypes(Arrays.asList(types));
+	}
+
+	public PathQuery<K> withTypes(Collection<String> types) {
+		this.types = new HashSet<>(types);
+		return this;
+	}
+
+	public PathQuery<K> withWeight(ToDoubleFunction<Relation> weight) {
+		this.weight = weight;
+		return this;
+	}
+
+	public PathQuery<K> withHeuristic(ToDoubleFunction<K> heuristic) {
+		this.heuristic = heuristic;
+		return this;
+	}
+
+	/*
+	 * Searches from both ends at once, over the outgoing relations of the source
+	 * side and the incoming relations of the destination side
+	 */
+	public PathQuery<K> bidirectional() {
+		this.bidirectional = true;
+		return this;
+	}
+
+	/*
+	 * Paths costing more are not followed
+	 */
+	public PathQuery<K> withMaxCost(double maxCost) {
+		this.maxCost = maxCost;
+		return this;
+	}
+
+	/*
+	 * Paths of more hops are not followed. A vertex is only reached by its
+	 * cheapest path, so a path within the limit may be missed when a cheaper
+	 * one of more hops goes through the same vertex.
+	 */
+	public PathQuery<K> withMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/*
+	 * The search gives up after settling that many vertices
+	 */
+	public PathQuery<K> withMaxVisited(int maxVisited) {
+		this.maxVisited = maxVisited;
+		return this;
+	}
+
+	public K getFrom() {
+		return from;
+	}
+
+	public K getTo() {
+		return to;
+	}
+
+	public Set<String> getTypes() {
+		return types;
+	}
+
+	public ToDoubleFunction<Relation> getWeight() {
+		return weight;
+	}
+
+	public ToDoubleFunction<K> getHeuristic() {
+		return heuristic;
+	}
+
+	public boolean isBidirectional() {
+		return bidirectional;
+	}
+
+	public double getMaxCost() {
+		return maxCost;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxVisited() {
+		return maxVisited;
+	}
+
+	/*
+	 * Cost of a relation, NaN if the query does not follow its type
+	 */
+	double cost(Relation relation) {
+		if (types != null && !types.contains(relation.getType())) {
+			return Double.NaN;
+		}
+		double cost;
+		if (weight != null) {
+			cost = weight.applyAsDouble(relation);
+		} else if (relation.getValue() instanceof Number) {
+			cost = ((Number) relation.getValue()).doubleValue();
+		} else {
+			throw new IllegalArgumentException(String.format(
+					"Relation %s has no numeric value, the query needs a weight function", relation.getId()));
+		}
+		if (!(cost >= 0)) {
+			throw new IllegalArgumentException(String.format("Relation %s has cost %s, costs must not be negative",
+					relation.getId(), cost));
+		}
+		return cost;
+	}
+
+	void check() {
+		if (heuristic != null && bidirectional) {
+			throw new IllegalArgumentException("A heuristic search only runs from the source");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s to %s, types %s, max cost %s, max depth %s", from, to,
+				types == null ? "all" : types, maxCost, maxDepth);
+	}
+}
@@ -0,0 +1,243 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.google.common.primitives.Longs;
+import com.graphdb.primitive.AsyncGraphPrimitive;
+import com.graphdb.primitive.EdgeScan;
+import com.graphdb.primitive.Edges;
+import com.graphdb.primitive.GraphPrimitiveBuilder;
+import com.graphdb.primitive.GraphPrimitiveType;
+
+import io.atomix.core.Atomix;
+import io.atomix.core.transaction.Transaction;
+import io.atomix.primitive.partition.PartitionId;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+
+/*
+ * AdjacencyLayout.PRIMITIVE index. The entries are edges of a GraphPrimitive
+ * shared by the outgoing and the incoming index of a graph, each index reading
+ * and writing its own direction. A write sends only the affected edges and is
+ * idempotent on the relation id, and the type filter and the degree are
+ * computed on the partition of the vertex. The primitive has no events, so
+ * the index has no near cache and every read goes to the partition.
+ */
+class PrimitiveAdjacencyIndex<K> implements AdjacencyIndex<K> {
+
+	private final Atomix atomix;
+	private final String graphName;
+	private final boolean outgoing;
+	private final VertexShards shards;
+	private final GraphPrimitiveBuilder<K> builder;
+	private AsyncGraphPrimitive<K> graph;
+
+	PrimitiveAdjacencyIndex(Atomix atomix, String graphName, boolean outgoing, VertexShards shards) {
+		this.atomix = atomix;
+		this.graphName = graphName;
+		this.outgoing = outgoing;
+		this.shards = shards;
+		builder = atomix.primitiveBuilder(graphName, GraphPrimitiveType.<K>instance());
+	}
+
+	/*
+	 * Read view of the given index, see readView
+	 */
+	private PrimitiveAdjacencyIndex(PrimitiveAdjacencyIndex<K> index, ProxyProtocol protocol) {
+		this(index.atomix, index.graphName, index.outgoing, index.shards);
+		withProtocol(protocol);
+		// build creates a new primitive where get would return that of the index
+		graph = builder.build().async();
+	}
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+		builder.withProtocol(protocol);
+	}
+
+	/*
+	 * The edges of a vertex are updated in place, nothing is rewritten as the
+	 * degree grows
+	 */
+	@Override
+	public void withSupernodes(int threshold, int buckets) {
+	}
+
+	@Override
+	public AdjacencyIndex<K> readView(ProxyProtocol protocol, ReadConsistency consistency) {
+		return new PrimitiveAdjacencyIndex<>(this, protocol);
+	}
+
+	/*
+	 * The outgoing and the incoming index get the same primitive by its name
+	 */
+	@Override
+	public void build(NearCache.Settings caches) {
+		graph = builder.get().async();
+	}
+
+	private static <K> Edges<K> toEdges(Collection<AdjacencyEntry<K>> entries) {
+		Edges<K> edges = new Edges<>(entries.size());
+		for (AdjacencyEntry<K> entry : entries) {
+			edges.add(entry.getNeighbour(), entry.getType(), entry.getRelationId());
+		}
+		return edges;
+	}
+
+	private static <K> Collection<AdjacencyEntry<K>> toEntries(Edges<K> edges) {
+		List<AdjacencyEntry<K>> entries = new ArrayList<>(edges.size());
+		for (int i = 0; i < edges.size(); i++) {
+			entries.add(new AdjacencyEntry<>(edges.neighbour(i), edges.type(i), edges.relationId(i)));
+		}
+		return entries;
+	}
+
+	private static <K> Map<K, Collection<Long>> byNeighbour(Edges<K> edges) {
+		if (edges == null || edges.isEmpty()) {
+			return null;
+		}
+		Map<K, Collection<Long>> grouped = new HashMap<>();
+		for (int i = 0; i < edges.size(); i++) {
+			grouped.computeIfAbsent(edges.neighbour(i), k -> new ArrayList<>()).add(edges.relationId(i));
+		}
+		return grouped;
+	}
+
+	@Override
+	public CompletableFuture<Void> add(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		return graph.addEdges(vertex, outgoing, toEdges(entries), false);
+	}
+
+	@Override
+	public CompletableFuture<Void> remove(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		long[] relationIds = entries.stream().mapToLong(AdjacencyEntry::getRelationId).toArray();
+		return graph.removeEdges(vertex, outgoing, relationIds).thenApply(removed -> null);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeVertex(K vertex) {
+		return graph.removeEdges(vertex, outgoing).thenApply(removed -> null);
+	}
+
+	@Override
+	public CompletableFuture<Map<K, Collection<Long>>> getByNeighbour(K vertex) {
+		return graph.edges(vertex, outgoing, null).thenApply(PrimitiveAdjacencyIndex::byNeighbour);
+	}
+
+	@Override
+	public CompletableFuture<Collection<Long>> getNeighbour(K vertex, K neighbour) {
+		return graph.relationsTo(vertex, outgoing, neighbour)
+				.thenApply(relationIds -> relationIds == null ? null : Longs.asList(relationIds));
+	}
+
+	@Override
+	public CompletableFuture<Long> getDegree(K vertex) {
+		return graph.degree(vertex, outgoing, null).thenApply(Integer::longValue);
+	}
+
+	/*
+	 * One request per partition holding some of the vertices
+	 */
+	@Override
+	public CompletableFuture<Map<K, Map<K, Collection<Long>>>> getAllByNeighbour(Collection<K> vertices) {
+		return graph.edges(vertices, outgoing, null).thenApply(edges -> {
+			Map<K, Map<K, Collection<Long>>> result = new HashMap<>();
+			edges.forEach((vertex, vertexEdges) -> {
+				Map<K, Collection<Long>> grouped = byNeighbour(vertexEdges);
+				if (grouped != null) {
+					result.put(vertex, grouped);
+				}
+			});
+			return result;
+		});
+	}
+
+	/*
+	 * Only the relation ids of the type come back from the partition
+	 */
+	@Override
+	public CompletableFuture<Collection<Long>> getByType(K vertex, String type) {
+		return graph.edges(vertex, outgoing, type).thenApply(
+				edges -> edges == null || edges.isEmpty() ? null : Longs.asList(edges.relationIds()));
+	}
+
+	@Override
+	public void invalidateAll(Collection<K> vertices) {
+	}
+
+	@Override
+	public boolean isTransactional() {
+		return false;
+	}
+
+	@Override
+	public int updateRoundTrips() {
+		return 1;
+	}
+
+	@Override
+	public int removeVertexRoundTrips() {
+		return 1;
+	}
+
+	/*
+	 * One request per partition at most, there is no cache
+	 */
+	@Override
+	public int readRoundTrips(Collection<K> vertices) {
+		return Math.min(vertices.size(), graph.partitions().size());
+	}
+
+	@Override
+	public int readByTypeRoundTrips(K vertex) {
+		return 1;
+	}
+
+	@Override
+	public CompletableFuture<Void> addAll(Map<K, Collection<AdjacencyEntry<K>>> entries, Transaction transaction) {
+		return write(entries, false);
+	}
+
+	private CompletableFuture<Void> write(Map<K, Collection<AdjacencyEntry<K>>> entries, boolean replace) {
+		List<CompletableFuture<Void>> writes = new ArrayList<>(entries.size());
+		entries.forEach((vertex, vertexEntries) -> writes
+				.add(graph.addEdges(vertex, outgoing, toEdges(vertexEntries), replace)));
+		return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+	}
+
+	/*
+	 * The primitive is partitioned by key rather than by shard, so every
+	 * partition is scanned and only the vertices of the shard are kept
+	 */
+	@Override
+	public void scan(int shard, int batchSize, Consumer<Map<K, Collection<AdjacencyEntry<K>>>> consumer) {
+		for (PartitionId partition : graph.partitions()) {
+			long position = 0;
+			EdgeScan<K> batch;
+			do {
+				batch = graph.scan(partition, outgoing, position, batchSize).join();
+				Map<K, Collection<AdjacencyEntry<K>>> entries = new HashMap<>();
+				batch.getEdges().forEach((vertex, edges) -> {
+					if (shards.ofVertex(vertex) == shard) {
+						entries.put(vertex, toEntries(edges));
+					}
+				});
+				if (!entries.isEmpty()) {
+					consumer.accept(entries);
+				}
+				position = batch.getPosition();
+			} while (!batch.isLast());
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> load(Map<K, Collection<AdjacencyEntry<K>>> entries) {
+		return write(entries, true);
+	}
+}
@@ -18,6 +18,14 @@ public class Relation<K, V> {
 		this.biDirectional = biDirectional;
 	}
 
+	/*
+	 * Relation without an id, for use with Graph.addRelations which generates the
+	 * ids.
+	 */
+	public Relation(K from, K to, V value, String type, boolean biDirectional) {
+		this(0, from, to, value, type, biDirectional);
+	}
+
 	@Override
 	public String toString() {
 		return from.toString() + (isBiDirectional() ? " <" : " ") + "-- (ID:" + id + " , Type:" + type
@@ -0,0 +1,68 @@
+package com.graphdb.model;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.graphdb.metrics.OperationTimer;
+
+import io.atomix.core.counter.AsyncAtomicCounter;
+
+/*
+ * Sequences of the relation ids of a graph. Like an AtomicIdGenerator it takes
+ * blocks of ids from an atomic counter, one round trip per block, and uses the
+ * counter an AtomicIdGenerator of the same name would use, so the ids of an
+ * existing graph carry on. Unlike an AtomicIdGenerator it can be moved past a
+ * given sequence in one step, see advancePast. Blocks already taken by other
+ * members are not moved.
+ */
+class RelationIdGenerator {
+
+	final static long BLOCK_SIZE = 1000;
+
+	private final AsyncAtomicCounter counter;
+	// Start of the current block, the ids of the block are above it
+	private CompletableFuture<Long> block;
+	private long used;
+
+	RelationIdGenerator(AsyncAtomicCounter counter) {
+		this.counter = counter;
+	}
+
+	CompletableFuture<Long> nextId() {
+		return nextId(OperationTimer.NOOP);
+	}
+
+	/*
+	 * Only the id that takes a new block is a round trip for the timer
+	 */
+	synchronized CompletableFuture<Long> nextId(OperationTimer timer) {
+		if (block == null || used == BLOCK_SIZE || block.isCompletedExceptionally()) {
+			timer.roundTrips(1);
+			block = counter.getAndAdd(BLOCK_SIZE);
+			used = 0;
+		}
+		long offset = ++used;
+		return block.thenApply(start -> start + offset);
+	}
+
+	/*
+	 * Moves the counter to the sequence if it is behind, with a compareAndSet
+	 * that is only retried when another block was taken in between, and drops
+	 * the current block. The next ids of this generator are above the sequence.
+	 */
+	synchronized CompletableFuture<Void> advancePast(long sequence) {
+		CompletableFuture<Void> advanced = advance(sequence);
+		block = advanced.thenCompose(v -> counter.getAndAdd(BLOCK_SIZE));
+		used = 0;
+		return advanced;
+	}
+
+	private CompletableFuture<Void> advance(long sequence) {
+		return counter.get().thenCompose(current -> {
+			if (current >= sequence) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return counter.compareAndSet(current, sequence)
+					.thenCompose(set -> set ? CompletableFuture.completedFuture(null) : advance(sequence));
+		});
+	}
+}
@@ -0,0 +1,147 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Longs;
+
+/*
+ * One page of a relation listing, the relations in increasing id order and the
+ * cursor of the next page, null on the last page. A cursor stays valid while
+ * the graph changes: the next page starts after the last relation id of this
+ * one, relations added since with a greater id are listed and removed ones are
+ * skipped. A page may hold fewer than pageSize relations when some were
+ * removed while it was read.
+ */
+public class RelationPage {
+
+	private List<Relation> relations;
+	private String cursor;
+
+	public RelationPage(List<Relation> relations, String cursor) {
+		this.relations = relations;
+		this.cursor = cursor;
+	}
+
+	public List<Relation> getRelations() {
+		return relations;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public boolean isLast() {
+		return cursor == null;
+	}
+
+	/*
+	 * Lazy stream of the relations of a listing in increasing id order. The ids
+	 * of the listing are read once, when the stream is first consumed, and
+	 * sorted, then the relations are read pageSize ids at a time with the given
+	 * function, which leaves out the relations removed since. Only the ids and
+	 * one page of relations are held at a time, and relations added once the ids
+	 * are read are not listed.
+	 */
+	public static Stream<Relation> stream(Supplier<Collection<Long>> relIds,
+			Function<List<Long>, List<Relation>> relations, int pageSize) {
+		checkPageSize(pageSize);
+		Iterator<Relation> iterator = new Iterator<Relation>() {
+
+			private List<Long> ids;
+			private int position;
+			private Iterator<Relation> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				if (ids == null) {
+					long[] sorted = Longs.toArray(relIds.get());
+					Arrays.sort(sorted);
+					ids = Longs.asList(sorted);
+				}
+				while (!current.hasNext() && position < ids.size()) {
+					int end = Math.min(position + pageSize, ids.size());
+					current = relations.apply(ids.subList(position, end)).iterator();
+					position = end;
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public Relation next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+		};
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/*
+	 * Smallest relation ids past the cursor, at most pageSize + 1 of them so
+	 * that the caller knows whether there is another page. Takes time linear in
+	 * the number of ids and memory linear in pageSize.
+	 */
+	static List<Long> nextIds(Iterator<Long> relIds, String cursor, int pageSize) {
+		long after = after(cursor);
+		checkPageSize(pageSize);
+		return Ordering.natural().leastOf(Iterators.filter(relIds, relId -> relId > after), pageSize + 1);
+	}
+
+	/*
+	 * Page of relations already in memory
+	 */
+	static RelationPage of(List<Relation> relations, String cursor, int pageSize) {
+		long after = after(cursor);
+		checkPageSize(pageSize);
+		Comparator<Relation> byId = Comparator.comparingLong(Relation::getId);
+		List<Relation> next = Ordering.from(byId).leastOf(
+				Iterators.filter(relations.iterator(), relation -> relation.getId() > after), pageSize + 1);
+		if (next.size() <= pageSize) {
+			return new RelationPage(new ArrayList<>(next), null);
+		}
+		return new RelationPage(new ArrayList<>(next.subList(0, pageSize)), cursorOf(next.get(pageSize - 1).getId()));
+	}
+
+	static String cursorOf(long relationId) {
+		return Long.toString(relationId, Character.MAX_RADIX);
+	}
+
+	private static long after(String cursor) {
+		if (cursor == null) {
+			return Long.MIN_VALUE;
+		}
+		try {
+			return Long.parseLong(cursor, Character.MAX_RADIX);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid relation cursor " + cursor);
+		}
+	}
+
+	private static void checkPageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive, got " + pageSize);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return relations + (cursor == null ? "" : " ... " + cursor);
+	}
+}
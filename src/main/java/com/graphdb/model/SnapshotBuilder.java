@@ -0,0 +1,208 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.core.map.AtomicMap;
+import io.atomix.core.map.AtomicMapEvent;
+import io.atomix.core.map.AtomicMapEventListener;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * Keeps a GraphSnapshot of a GraphModelImpl up to date. The builder listens to
+ * all the shards of the nodes and relations maps and buffers their changes,
+ * refresh() applies the buffered changes to the current snapshot without
+ * reading the maps again and rebuild() scans the maps for a fresh snapshot.
+ *
+ * The listeners never take a lock of the builder, so events are not held up
+ * by a refresh or a scan. Changes still in flight while rebuild() scans stay
+ * buffered unless the scan already read them, so a snapshot may briefly lag
+ * the maps but never misses a change.
+ */
+public class SnapshotBuilder<K, V> {
+
+	private final static Logger logger = Logger.getLogger(SnapshotBuilder.class);
+
+	private final List<AtomicMap<K, V>> nodesShards;
+	private final List<AtomicMap<Long, Relation>> relationsShards;
+	private final EntryPartitions partitions;
+	// One listener per shard, so that the versions of events go to their shard
+	private final List<AtomicMapEventListener<K, V>> nodesListeners = new ArrayList<>();
+	private final List<AtomicMapEventListener<Long, Relation>> relationsListeners = new ArrayList<>();
+
+	// Last change to each key since the current snapshot, filled by the listeners
+	private final Map<K, Change<V>> pendingNodes = new ConcurrentHashMap<>();
+	private final Map<Long, Change<Relation<K, V>>> pendingRelations = new ConcurrentHashMap<>();
+
+	// Serializes rebuilds, which scan without holding the monitor of the builder
+	private final Object rebuildLock = new Object();
+	// Set while a rebuild scans, refresh leaves the buffered changes to it
+	private boolean rebuilding;
+
+	private volatile GraphSnapshot<K, V> current;
+
+	SnapshotBuilder(List<AtomicMap<K, V>> nodesShards, List<AtomicMap<Long, Relation>> relationsShards,
+			EntryPartitions partitions) {
+		this.nodesShards = nodesShards;
+		this.relationsShards = relationsShards;
+		this.partitions = partitions;
+		for (AtomicMap<K, V> nodesMap : nodesShards) {
+			AtomicMapEventListener<K, V> listener = event -> onNodeEvent(nodesMap.name(), event);
+			nodesListeners.add(listener);
+			nodesMap.addListener(listener);
+		}
+		for (AtomicMap<Long, Relation> relationsMap : relationsShards) {
+			AtomicMapEventListener<Long, Relation> listener = event -> onRelationEvent(relationsMap.name(), event);
+			relationsListeners.add(listener);
+			relationsMap.addListener(listener);
+		}
+		rebuild();
+	}
+
+	public GraphSnapshot<K, V> current() {
+		return current;
+	}
+
+	/*
+	 * Applies the changes buffered since the last refresh or rebuild. No map is
+	 * read, but the new snapshot is built in full from a copy of the current
+	 * one, vertex ids and CsrAdjacency included: a refresh costs O(graph) in
+	 * memory whatever the number of changes. While a rebuild scans, returns the
+	 * current snapshot and leaves the changes to the rebuild.
+	 */
+	public synchronized GraphSnapshot<K, V> refresh() {
+		if (rebuilding || (pendingNodes.isEmpty() && pendingRelations.isEmpty())) {
+			return current;
+		}
+		Map<K, V> nodes = new HashMap<>(current.nodes());
+		Map<Long, Relation<K, V>> relations = new HashMap<>(current.relations());
+		Map<String, Long> versions = new HashMap<>(current.getVersions());
+		drain(pendingNodes, nodes, versions);
+		drain(pendingRelations, relations, versions);
+		current = new GraphSnapshot<>(nodes, relations, versions);
+		return current;
+	}
+
+	/*
+	 * Scans the maps for a fresh snapshot. The buffered changes the scan did not
+	 * read are kept for the next refresh, and the versions of the snapshot only
+	 * grow.
+	 */
+	public GraphSnapshot<K, V> rebuild() {
+		synchronized (rebuildLock) {
+			logger.info("Rebuilding graph snapshot");
+			synchronized (this) {
+				rebuilding = true;
+				pendingNodes.clear();
+				pendingRelations.clear();
+			}
+			// No refresh runs until the scanned snapshot is swapped in
+			Map<String, Long> versions = current == null ? new HashMap<>() : new HashMap<>(current.getVersions());
+			Map<K, Long> nodeVersions = new HashMap<>();
+			Map<Long, Long> relationVersions = new HashMap<>();
+			GraphSnapshot<K, V> scanned = null;
+			try {
+				scanned = GraphSnapshot.build(nodesShards, relationsShards, partitions, versions, nodeVersions,
+						relationVersions);
+			} finally {
+				synchronized (this) {
+					rebuilding = false;
+					if (scanned != null) {
+						dropScanned(pendingNodes, nodeVersions);
+						dropScanned(pendingRelations, relationVersions);
+						current = scanned;
+					}
+				}
+			}
+			return scanned;
+		}
+	}
+
+	/*
+	 * Stops listening to the maps, current() stays readable.
+	 */
+	public void close() {
+		for (int shard = 0; shard < nodesShards.size(); shard++) {
+			nodesShards.get(shard).removeListener(nodesListeners.get(shard));
+		}
+		for (int shard = 0; shard < relationsShards.size(); shard++) {
+			relationsShards.get(shard).removeListener(relationsListeners.get(shard));
+		}
+	}
+
+	/*
+	 * Moves the buffered changes to target. A change replaced by a listener in
+	 * the meantime stays buffered for the next refresh.
+	 */
+	private static <T, U> void drain(Map<T, Change<U>> pending, Map<T, U> target, Map<String, Long> versions) {
+		for (Entry<T, Change<U>> entry : pending.entrySet()) {
+			Change<U> change = entry.getValue();
+			if (change.value == null) {
+				target.remove(entry.getKey());
+			} else {
+				target.put(entry.getKey(), change.value);
+			}
+			versions.merge(change.partition, change.version, Math::max);
+			pending.remove(entry.getKey(), change);
+		}
+	}
+
+	/*
+	 * Drops the buffered changes the scan already read. A removal is newer than
+	 * the entry scanned only if it removed that entry, any other change if its
+	 * version is above the one scanned.
+	 */
+	private static <T, U> void dropScanned(Map<T, Change<U>> pending, Map<T, Long> scanned) {
+		pending.entrySet().removeIf(entry -> {
+			Long version = scanned.get(entry.getKey());
+			if (version == null) {
+				return false;
+			}
+			Change<U> change = entry.getValue();
+			return change.value == null ? change.version < version : change.version <= version;
+		});
+	}
+
+	private void onNodeEvent(String shard, AtomicMapEvent<K, V> event) {
+		pendingNodes.put(event.key(), changeOf(shard, event.key(), event.newValue(), event.oldValue()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void onRelationEvent(String shard, AtomicMapEvent<Long, Relation> event) {
+		Change<Relation> change = changeOf(shard, event.key(), event.newValue(), event.oldValue());
+		pendingRelations.put(event.key(), (Change<Relation<K, V>>) (Change<?>) change);
+	}
+
+	/*
+	 * A removal has no new value and takes the version of the entry removed
+	 */
+	private <T> Change<T> changeOf(String shard, Object key, Versioned<T> newValue, Versioned<T> oldValue) {
+		String partition = partitions.of(shard, key);
+		if (newValue == null) {
+			return new Change<>(null, oldValue.version(), partition);
+		}
+		return new Change<>(newValue.value(), newValue.version(), partition);
+	}
+
+	/*
+	 * Buffered change to a key, a null value is a removal
+	 */
+	private static class Change<T> {
+
+		private final T value;
+		private final long version;
+		private final String partition;
+
+		private Change(T value, long version, String partition) {
+			this.value = value;
+			this.version = version;
+			this.partition = partition;
+		}
+	}
+}
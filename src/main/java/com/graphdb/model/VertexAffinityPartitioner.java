@@ -0,0 +1,41 @@
+package com.graphdb.model;
+
+import java.util.List;
+
+import io.atomix.primitive.partition.PartitionId;
+import io.atomix.primitive.partition.Partitioner;
+
+/*
+ * Places the primitives of a graph with more than one shard by shard number
+ * instead of by the hash of their name, so that the nodes, relations and index
+ * shards of the same vertices share a Raft partition. Any other primitive is
+ * placed by Partitioner.MURMUR3 as usual. Use it in the protocol of the graph:
+ *
+ * MultiRaftProtocol.builder().withPartitioner(VertexAffinityPartitioner.INSTANCE)
+ *
+ * A graph has best locality with as many shards as the group has partitions.
+ */
+public class VertexAffinityPartitioner implements Partitioner<String> {
+
+	public final static VertexAffinityPartitioner INSTANCE = new VertexAffinityPartitioner();
+
+	private final static String SHARD_SEPARATOR = "#shard";
+
+	static String shardName(String mapName, int shard) {
+		return mapName + SHARD_SEPARATOR + shard;
+	}
+
+	@Override
+	public PartitionId partition(String name, List<PartitionId> partitions) {
+		int separator = name.lastIndexOf(SHARD_SEPARATOR);
+		if (separator >= 0) {
+			try {
+				int shard = Integer.parseInt(name.substring(separator + SHARD_SEPARATOR.length()));
+				return partitions.get(shard % partitions.size());
+			} catch (NumberFormatException e) {
+				// Not a shard name, placed by hash
+			}
+		}
+		return Partitioner.MURMUR3.partition(name, partitions);
+	}
+}
@@ -0,0 +1,49 @@
+package com.graphdb.model;
+
+import java.util.Objects;
+
+/*
+ * Key of one bucket of a split vertex in the bucket maps of a
+ * VertexMapAdjacencyIndex. Its hash mixes in the bucket so that the buckets of
+ * a vertex land in different shards.
+ */
+class VertexBucket<K> {
+
+	private final K vertex;
+	private final int bucket;
+
+	VertexBucket(K vertex, int bucket) {
+		this.vertex = vertex;
+		this.bucket = bucket;
+	}
+
+	K getVertex() {
+		return vertex;
+	}
+
+	int getBucket() {
+		return bucket;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof VertexBucket)) {
+			return false;
+		}
+		VertexBucket<?> other = (VertexBucket<?>) o;
+		return bucket == other.bucket && Objects.equals(vertex, other.vertex);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * vertex.hashCode() + bucket;
+	}
+
+	@Override
+	public String toString() {
+		return vertex + "#" + bucket;
+	}
+}
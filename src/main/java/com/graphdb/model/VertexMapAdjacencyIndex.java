@@ -0,0 +1,950 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.graphdb.metrics.ContentionStats;
+
+import io.atomix.core.Atomix;
+import io.atomix.core.map.AsyncAtomicMap;
+import io.atomix.core.map.AtomicMap;
+import io.atomix.core.map.AtomicMapBuilder;
+import io.atomix.core.transaction.AsyncTransactionalMap;
+import io.atomix.core.transaction.CommitStatus;
+import io.atomix.core.transaction.Isolation;
+import io.atomix.core.transaction.Transaction;
+import io.atomix.core.transaction.TransactionalMap;
+import io.atomix.core.transaction.TransactionalMapBuilder;
+import io.atomix.primitive.PrimitiveException;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+import io.atomix.utils.serializer.Serializer;
+import io.atomix.utils.time.Versioned;
+
+/*
+ * AdjacencyLayout.VERTEX_MAP index, a vertex to neighbour map and a vertex to
+ * type map, each holding one Map<?, Collection<Long>> value per vertex. Both
+ * maps are split into the shards of the graph, a vertex is in the shard of its
+ * node.
+ *
+ * A value is only written if it has not changed since it was read, with a
+ * replace or remove of its version or a putIfAbsent, so that writers on other
+ * members never overwrite each other. A rejected write reads the value again
+ * after a random, growing backoff, at most MAX_CAS_ATTEMPTS times. The changes
+ * of a vertex made by this client while a write of it is in flight are applied
+ * together by the next write, a hot vertex costs one write per round trip
+ * rather than one per change.
+ *
+ * A vertex whose degree passes the supernode threshold is split: its entries
+ * are moved to buckets by the hash of their neighbour, each bucket a value of
+ * the bucket maps under a VertexBucket key, which spreads the buckets of the
+ * vertex over the shards. Its values in the vertex maps are left empty, which
+ * never happens otherwise, and its number of buckets is kept in the supernode
+ * map. The reads of a split vertex fan out to its buckets in parallel, or go
+ * to the bucket of one neighbour, and its writes go to the buckets of their
+ * entries. A vertex stays split until it is removed.
+ */
+class VertexMapAdjacencyIndex<K> implements AdjacencyIndex<K> {
+
+	private final static Logger logger = Logger.getLogger(VertexMapAdjacencyIndex.class);
+
+	final static int MAX_CAS_ATTEMPTS = 16;
+	private final static long MIN_BACKOFF_MICROS = 500;
+	private final static long MAX_BACKOFF_MICROS = 50000;
+
+	final static int DEFAULT_SUPERNODE_THRESHOLD = 10000;
+	final static int DEFAULT_SUPERNODE_BUCKETS = 16;
+	private final static String BUCKETS = "_buckets";
+	private final static String SUPERNODES = "_supernodes";
+
+	private final static ScheduledExecutorService backoff = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-backoff-%d").build());
+	// Splits wait on their transaction, away from the threads of Atomix
+	private final static ExecutorService splitter = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphdb-split-%d").build());
+
+	private final Atomix atomix;
+	private final String neighbourMapName;
+	private final String typeMapName;
+	private final Serializer serializer;
+	private final VertexShards shards;
+	private ProxyProtocol protocol;
+	private final SubIndex<K> neighbours;
+	private final SubIndex<String> types;
+	private final AtomicMapBuilder<K, Integer> supernodeBuilder;
+	private AtomicMap<K, Integer> supernodeMap;
+	private NearCache<K, Integer> supernodeCache;
+	private int supernodeThreshold = DEFAULT_SUPERNODE_THRESHOLD;
+	private int supernodeBuckets = DEFAULT_SUPERNODE_BUCKETS;
+	private ContentionStats contention;
+	// The vertices this client is writing, with the changes waiting for the
+	// write in flight to complete
+	private final ConcurrentMap<K, List<Change<K>>> pendingChanges = new ConcurrentHashMap<>();
+	// Vertices addAll took past the threshold, split once its transaction commits
+	private final Set<K> dueForSplit = ConcurrentHashMap.newKeySet();
+	// Buckets written by addAll, dropped from the caches once it commits
+	private final Set<VertexBucket<K>> bucketsWritten = ConcurrentHashMap.newKeySet();
+
+	VertexMapAdjacencyIndex(Atomix atomix, String neighbourMapName, String typeMapName, Serializer serializer,
+			VertexShards shards) {
+		this.atomix = atomix;
+		this.neighbourMapName = neighbourMapName;
+		this.typeMapName = typeMapName;
+		this.serializer = serializer;
+		this.shards = shards;
+		neighbours = new SubIndex<>(neighbourMapName, AdjacencyEntry::getNeighbour);
+		types = new SubIndex<>(typeMapName, AdjacencyEntry::getType);
+		supernodeBuilder = atomix.<K, Integer>atomicMapBuilder(neighbourMapName + SUPERNODES)
+				.withSerializer(serializer);
+	}
+
+	/*
+	 * Read view of the given index, see readView
+	 */
+	private VertexMapAdjacencyIndex(VertexMapAdjacencyIndex<K> index, ProxyProtocol protocol,
+			ReadConsistency consistency) {
+		this(index.atomix, index.neighbourMapName, index.typeMapName, index.serializer, index.shards);
+		withProtocol(protocol);
+		withSupernodes(index.supernodeThreshold, index.supernodeBuckets);
+		neighbours.open(index.neighbours, consistency);
+		types.open(index.types, consistency);
+		supernodeMap = supernodeBuilder.build();
+		supernodeCache = index.supernodeCache.forReads(consistency);
+		contention = index.contention;
+	}
+
+	@Override
+	public void withProtocol(ProxyProtocol protocol) {
+		this.protocol = protocol;
+		neighbours.withProtocol(protocol);
+		types.withProtocol(protocol);
+		supernodeBuilder.withProtocol(protocol);
+	}
+
+	/*
+	 * A threshold of 0 never splits a vertex
+	 */
+	@Override
+	public void withSupernodes(int threshold, int buckets) {
+		if (threshold < 0 || buckets < 2) {
+			throw new IllegalArgumentException(String.format(
+					"Supernode threshold must be positive and buckets at least 2, got %s and %s", threshold, buckets));
+		}
+		supernodeThreshold = threshold;
+		supernodeBuckets = buckets;
+	}
+
+	@Override
+	public void build(NearCache.Settings caches) {
+		neighbours.build(caches);
+		types.build(caches);
+		supernodeMap = supernodeBuilder.get();
+		supernodeCache = caches.create(neighbourMapName + SUPERNODES);
+		supernodeCache.listenTo(supernodeMap);
+		contention = caches.metrics().contention(neighbourMapName);
+	}
+
+	@Override
+	public AdjacencyIndex<K> readView(ProxyProtocol protocol, ReadConsistency consistency) {
+		return new VertexMapAdjacencyIndex<>(this, protocol, consistency);
+	}
+
+	/*
+	 * Value left in both maps by a split, any other value has entries
+	 */
+	private static boolean isSplit(Map<?, ?> value) {
+		return value != null && value.isEmpty();
+	}
+
+	private static int bucketOf(Object neighbour, int buckets) {
+		return Math.floorMod(neighbour.hashCode(), buckets);
+	}
+
+	private static long degree(Map<?, Collection<Long>> value) {
+		long degree = 0;
+		for (Collection<Long> relIds : value.values()) {
+			degree += relIds.size();
+		}
+		return degree;
+	}
+
+	/*
+	 * Number of buckets of a split vertex, null if it was never split. The
+	 * cache may not have seen the split yet when the empty value was read from
+	 * the map, the supernode map is then read.
+	 */
+	private CompletableFuture<Integer> bucketCount(K vertex) {
+		return supernodeCache.get(vertex, key -> supernodeMap.async().get(key)).thenCompose(versioned -> {
+			if (versioned != null) {
+				return CompletableFuture.completedFuture(versioned.value());
+			}
+			return supernodeMap.async().get(vertex).thenApply(Versioned::valueOrNull);
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> add(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		return submit(vertex, new Change<>(entries, true, false));
+	}
+
+	@Override
+	public CompletableFuture<Void> remove(K vertex, Collection<AdjacencyEntry<K>> entries) {
+		return submit(vertex, new Change<>(entries, false, false));
+	}
+
+	@Override
+	public CompletableFuture<Void> removeVertex(K vertex) {
+		return submit(vertex, new Change<>(Collections.emptyList(), false, true));
+	}
+
+	/*
+	 * One add, remove, removeVertex or load of a vertex. The entries of a
+	 * replacing change are the whole content of the vertex.
+	 */
+	private static class Change<K> {
+
+		final Collection<AdjacencyEntry<K>> entries;
+		final boolean add;
+		final boolean replace;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Change(Collection<AdjacencyEntry<K>> entries, boolean add, boolean replace) {
+			this.entries = entries;
+			this.add = add;
+			this.replace = replace;
+		}
+	}
+
+	/*
+	 * Writes the change right away if this client is not writing the vertex,
+	 * else queues it for the next write of the vertex
+	 */
+	private CompletableFuture<Void> submit(K vertex, Change<K> change) {
+		boolean[] idle = new boolean[1];
+		pendingChanges.compute(vertex, (key, queued) -> {
+			if (queued == null) {
+				idle[0] = true;
+				return new ArrayList<>();
+			}
+			queued.add(change);
+			return queued;
+		});
+		if (idle[0]) {
+			write(vertex, Collections.singletonList(change));
+		}
+		return change.done;
+	}
+
+	/*
+	 * Applies the changes in order to the values read from the maps, rather than
+	 * from the caches, and drops the cached entries of the vertex once they are
+	 * written. A vertex the changes take past the threshold is split before the
+	 * changes queued meanwhile are written.
+	 */
+	private void write(K vertex, List<Change<K>> changes) {
+		contention.recordCombined(changes.size() - 1);
+		CompletableFuture<Map<K, Collection<Long>>> neighbourValue = neighbours.update(vertex, changes);
+		CompletableFuture.allOf(neighbourValue, types.update(vertex, changes)).thenCompose(v -> {
+			Map<K, Collection<Long>> value = neighbourValue.join();
+			if (supernodeThreshold > 0 && value != null && !isSplit(value) && degree(value) > supernodeThreshold) {
+				return CompletableFuture.runAsync(() -> split(vertex), splitter);
+			}
+			return CompletableFuture.completedFuture(null);
+		}).whenComplete((v, error) -> {
+			neighbours.cache.invalidate(vertex);
+			types.cache.invalidate(vertex);
+			for (Change<K> change : changes) {
+				if (error != null) {
+					change.done.completeExceptionally(error);
+				} else {
+					change.done.complete(null);
+				}
+			}
+			List<List<Change<K>>> next = new ArrayList<>(1);
+			pendingChanges.compute(vertex, (key, queued) -> {
+				if (queued.isEmpty()) {
+					return null;
+				}
+				next.add(queued);
+				return new ArrayList<>();
+			});
+			if (!next.isEmpty()) {
+				write(vertex, next.get(0));
+			}
+		});
+	}
+
+	/*
+	 * Writes the value the change gives, if the key was not written since it
+	 * was read. The value returned by the change is the one given when there is
+	 * nothing to write. A key locked by a transaction being committed is a
+	 * conflict like any other.
+	 *
+	 * @return: The value written, or the value read if there was nothing to write
+	 */
+	private <MK, V> CompletableFuture<V> compareAndSet(AsyncAtomicMap<MK, V> index, MK key, UnaryOperator<V> change,
+			int attempt) {
+		return index.get(key).thenCompose(versioned -> {
+			V current = Versioned.valueOrNull(versioned);
+			V updated = change.apply(current);
+			if (updated == current) {
+				return CompletableFuture.completedFuture(current);
+			}
+			CompletableFuture<Boolean> written;
+			if (versioned == null) {
+				written = index.putIfAbsent(key, updated)
+						.thenApply(previous -> Versioned.valueOrNull(previous) == null);
+			} else if (updated == null) {
+				written = index.remove(key, versioned.version());
+			} else {
+				written = index.replace(key, versioned.version(), updated);
+			}
+			contention.recordAttempt();
+			return written.handle((success, error) -> {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				if (cause != null && !(cause instanceof PrimitiveException.ConcurrentModification)) {
+					CompletableFuture<V> failed = new CompletableFuture<>();
+					failed.completeExceptionally(cause);
+					return failed;
+				}
+				if (cause == null && success) {
+					return CompletableFuture.completedFuture(updated);
+				}
+				contention.recordConflict(key);
+				if (attempt == MAX_CAS_ATTEMPTS) {
+					contention.recordExhausted();
+					logger.error(String.format("Vertex %s of %s still contended after %s attempts", key,
+							neighbourMapName, attempt));
+					CompletableFuture<V> failed = new CompletableFuture<>();
+					failed.completeExceptionally(new IllegalStateException(String.format(
+							"Could not update vertex %s of %s, written concurrently %s times", key,
+							neighbourMapName, attempt)));
+					return failed;
+				}
+				return backoff(attempt).thenCompose(v -> compareAndSet(index, key, change, attempt + 1));
+			}).thenCompose(Function.identity());
+		});
+	}
+
+	/*
+	 * Between half and all of an exponential bound, so that the writers that
+	 * conflicted do not read the vertex again at the same time
+	 */
+	private static long backoffMicros(int attempt) {
+		long bound = Math.min(MAX_BACKOFF_MICROS, MIN_BACKOFF_MICROS << Math.min(attempt - 1, 20));
+		return ThreadLocalRandom.current().nextLong(bound / 2, bound + 1);
+	}
+
+	private static CompletableFuture<Void> backoff(int attempt) {
+		CompletableFuture<Void> elapsed = new CompletableFuture<>();
+		backoff.schedule(() -> elapsed.complete(null), backoffMicros(attempt), TimeUnit.MICROSECONDS);
+		return elapsed;
+	}
+
+	/*
+	 * Moves the entries of a vertex past the threshold to its buckets, in one
+	 * transaction that also empties both values of the vertex and records its
+	 * number of buckets. The values are only replaced if they are still those
+	 * read, and committed if they were not written meanwhile, else the split is
+	 * tried again. Runs on the splitter, a failed split leaves the vertex whole.
+	 */
+	private void split(K vertex) {
+		int shard = shards.ofVertex(vertex);
+		int buckets = supernodeBuckets;
+		try {
+			for (int attempt = 1; attempt <= MAX_CAS_ATTEMPTS; attempt++) {
+				Transaction transaction = atomix.transactionBuilder().withIsolation(Isolation.READ_COMMITTED).build();
+				transaction.begin();
+				AsyncTransactionalMap<K, Map<K, Collection<Long>>> txNeighbours = transactionalMap(transaction,
+						shards.name(neighbourMapName, shard));
+				AsyncTransactionalMap<K, Map<String, Collection<Long>>> txTypes = transactionalMap(transaction,
+						shards.name(typeMapName, shard));
+				Map<K, Collection<Long>> neighbourValue = txNeighbours.get(vertex).join();
+				Map<String, Collection<Long>> typeValue = txTypes.get(vertex).join();
+				if (neighbourValue == null || isSplit(neighbourValue) || degree(neighbourValue) <= supernodeThreshold) {
+					transaction.abort();
+					return;
+				}
+
+				Map<Long, K> neighbourOf = new HashMap<>();
+				neighbourValue.forEach(
+						(neighbour, relIds) -> relIds.forEach(relId -> neighbourOf.put(relId, neighbour)));
+				// Both values hold the same relations unless an update is half done
+				boolean consistent = typeValue != null && degree(typeValue) == neighbourOf.size()
+						&& typeValue.values().stream().allMatch(neighbourOf.keySet()::containsAll);
+				boolean replaced = false;
+				if (consistent) {
+					List<CompletableFuture<?>> writes = new ArrayList<>();
+					neighbours.stageBuckets(transaction, vertex, neighbourValue, neighbourOf, buckets, writes);
+					types.stageBuckets(transaction, vertex, typeValue, neighbourOf, buckets, writes);
+					this.<K, Integer>transactionalMap(transaction, neighbourMapName + SUPERNODES).put(vertex, buckets)
+							.join();
+					CompletableFuture<Boolean> neighboursReplaced = txNeighbours.replace(vertex, neighbourValue,
+							new HashMap<>());
+					CompletableFuture<Boolean> typesReplaced = txTypes.replace(vertex, typeValue, new HashMap<>());
+					CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+					replaced = neighboursReplaced.join() && typesReplaced.join();
+				}
+				if (!replaced) {
+					transaction.abort();
+				} else if (transaction.commit() == CommitStatus.SUCCESS) {
+					neighbours.invalidate(vertex, buckets);
+					types.invalidate(vertex, buckets);
+					supernodeCache.invalidate(vertex);
+					logger.info(String.format("Split vertex %s of %s, %s entries into %s buckets", vertex,
+							neighbourMapName, neighbourOf.size(), buckets));
+					return;
+				}
+				contention.recordConflict(vertex);
+				TimeUnit.MICROSECONDS.sleep(backoffMicros(attempt));
+			}
+			logger.warn(String.format("Could not split vertex %s of %s, written concurrently %s times", vertex,
+					neighbourMapName, MAX_CAS_ATTEMPTS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			logger.warn(String.format("Could not split vertex %s of %s", vertex, neighbourMapName), e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Map<K, Collection<Long>>> getByNeighbour(K vertex) {
+		return neighbours.get(vertex);
+	}
+
+	/*
+	 * Only the bucket of the neighbour is read when the vertex is split
+	 */
+	@Override
+	public CompletableFuture<Collection<Long>> getNeighbour(K vertex, K neighbour) {
+		return neighbours.getValue(vertex).thenCompose(value -> {
+			if (!isSplit(value)) {
+				return CompletableFuture.completedFuture(
+						value == null ? null : value.getOrDefault(neighbour, Collections.emptyList()));
+			}
+			return bucketCount(vertex).thenCompose(count -> count == null ? CompletableFuture.completedFuture(null)
+					: neighbours.getBucket(vertex, bucketOf(neighbour, count)).thenApply(bucket -> bucket == null
+							? Collections.emptyList() : bucket.getOrDefault(neighbour, Collections.emptyList())));
+		});
+	}
+
+	/*
+	 * The buckets of a split vertex are counted in parallel, without merging them
+	 */
+	@Override
+	public CompletableFuture<Long> getDegree(K vertex) {
+		return neighbours.getValue(vertex).thenCompose(value -> {
+			if (!isSplit(value)) {
+				return CompletableFuture.completedFuture(value == null ? 0L : degree(value));
+			}
+			return bucketCount(vertex).thenCompose(count -> {
+				List<CompletableFuture<Map<K, Collection<Long>>>> reads = new ArrayList<>();
+				for (int bucket = 0; count != null && bucket < count; bucket++) {
+					reads.add(neighbours.getBucket(vertex, bucket));
+				}
+				return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+					long degree = 0;
+					for (CompletableFuture<Map<K, Collection<Long>>> read : reads) {
+						degree += read.join() == null ? 0 : degree(read.join());
+					}
+					return degree;
+				});
+			});
+		});
+	}
+
+	/*
+	 * One getAllPresent per shard of the vertices missing from the cache, then
+	 * the buckets of the split vertices
+	 */
+	@Override
+	public CompletableFuture<Map<K, Map<K, Collection<Long>>>> getAllByNeighbour(Collection<K> vertices) {
+		return neighbours.cache.getAllPresent(vertices, this::getAllPresent).thenCompose(present -> {
+			Map<K, Map<K, Collection<Long>>> result = new HashMap<>();
+			Map<K, CompletableFuture<Map<K, Collection<Long>>>> split = new HashMap<>();
+			present.forEach((vertex, versioned) -> {
+				if (isSplit(versioned.value())) {
+					split.put(vertex, neighbours.getBuckets(vertex));
+				} else {
+					result.put(vertex, versioned.value());
+				}
+			});
+			return CompletableFuture.allOf(split.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+				split.forEach((vertex, read) -> {
+					if (read.join() != null) {
+						result.put(vertex, read.join());
+					}
+				});
+				return result;
+			});
+		});
+	}
+
+	private CompletableFuture<Map<K, Versioned<Map<K, Collection<Long>>>>> getAllPresent(Collection<K> vertices) {
+		List<CompletableFuture<Map<K, Versioned<Map<K, Collection<Long>>>>>> reads = new ArrayList<>();
+		shards.group(vertices, shards::ofVertex).forEach(
+				(shard, shardVertices) -> reads.add(neighbours.maps.get(shard).async().getAllPresent(shardVertices)));
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<K, Versioned<Map<K, Collection<Long>>>> present = new HashMap<>();
+			reads.forEach(read -> present.putAll(read.join()));
+			return present;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Long>> getByType(K vertex, String type) {
+		return types.get(vertex).thenApply(typeMap -> typeMap == null ? null : typeMap.get(type));
+	}
+
+	/*
+	 * Also splits the vertices addAll took past the threshold
+	 */
+	@Override
+	public void invalidateAll(Collection<K> vertices) {
+		neighbours.cache.invalidateAll(vertices);
+		types.cache.invalidateAll(vertices);
+		for (VertexBucket<K> bucket : bucketsWritten) {
+			bucketsWritten.remove(bucket);
+			neighbours.bucketCache.invalidate(bucket);
+			types.bucketCache.invalidate(bucket);
+		}
+		for (K vertex : vertices) {
+			if (dueForSplit.remove(vertex)) {
+				submit(vertex, new Change<>(Collections.emptyList(), true, false));
+			}
+		}
+	}
+
+	@Override
+	public boolean isTransactional() {
+		return true;
+	}
+
+	/*
+	 * A get and a conditional write of both maps, more when the vertex is
+	 * contended or split
+	 */
+	@Override
+	public int updateRoundTrips() {
+		return 4;
+	}
+
+	/*
+	 * A get and a conditional remove of both maps
+	 */
+	@Override
+	public int removeVertexRoundTrips() {
+		return 4;
+	}
+
+	/*
+	 * One getAllPresent per shard of the vertices missing from the cache, the
+	 * buckets of a split vertex are not counted
+	 */
+	@Override
+	public int readRoundTrips(Collection<K> vertices) {
+		Set<Integer> missing = new HashSet<>();
+		for (K vertex : vertices) {
+			if (!neighbours.cache.contains(vertex)) {
+				missing.add(shards.ofVertex(vertex));
+			}
+		}
+		return missing.size();
+	}
+
+	@Override
+	public int readByTypeRoundTrips(K vertex) {
+		return types.cache.contains(vertex) ? 0 : 1;
+	}
+
+	@Override
+	public CompletableFuture<Void> addAll(Map<K, Collection<AdjacencyEntry<K>>> entries, Transaction transaction) {
+		// Bucket maps of the transaction by name, built as the split vertices are met
+		Map<String, CompletableFuture<AsyncTransactionalMap<?, ?>>> txBuckets = new ConcurrentHashMap<>();
+		List<CompletableFuture<?>> writes = new ArrayList<>();
+		shards.group(entries.keySet(), shards::ofVertex).forEach((shard, vertices) -> {
+			AsyncTransactionalMap<K, Map<K, Collection<Long>>> txNeighbours = transactionalMap(transaction,
+					shards.name(neighbourMapName, shard));
+			AsyncTransactionalMap<K, Map<String, Collection<Long>>> txTypes = transactionalMap(transaction,
+					shards.name(typeMapName, shard));
+			for (K vertex : vertices) {
+				writes.add(neighbours.merge(transaction, txNeighbours, txBuckets, vertex, entries.get(vertex)));
+				writes.add(types.merge(transaction, txTypes, txBuckets, vertex, entries.get(vertex)));
+			}
+		});
+		return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+	}
+
+	/*
+	 * The neighbour map is iterated, and the type values of each batch are read
+	 * with one getAllPresent to give every relation id its type back. The split
+	 * vertices are read from their buckets.
+	 */
+	@Override
+	public void scan(int shard, int batchSize, Consumer<Map<K, Collection<AdjacencyEntry<K>>>> consumer) {
+		Map<K, Map<K, Collection<Long>>> batch = new HashMap<>();
+		for (Entry<K, Versioned<Map<K, Collection<Long>>>> entry : neighbours.maps.get(shard).entrySet()) {
+			Map<K, Collection<Long>> value = entry.getValue().value();
+			if (isSplit(value)) {
+				value = neighbours.getBuckets(entry.getKey()).join();
+			}
+			if (value != null) {
+				batch.put(entry.getKey(), value);
+			}
+			if (batch.size() == batchSize) {
+				consumer.accept(toEntries(batch, types.maps.get(shard)));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			consumer.accept(toEntries(batch, types.maps.get(shard)));
+		}
+	}
+
+	private Map<K, Collection<AdjacencyEntry<K>>> toEntries(Map<K, Map<K, Collection<Long>>> byNeighbour,
+			AtomicMap<K, Map<String, Collection<Long>>> typeMap) {
+		Map<K, Versioned<Map<String, Collection<Long>>>> byType = typeMap.getAllPresent(byNeighbour.keySet());
+		Map<K, Collection<AdjacencyEntry<K>>> entries = new HashMap<>();
+		byNeighbour.forEach((vertex, neighbourValue) -> {
+			Map<Long, String> relationTypes = new HashMap<>();
+			Map<String, Collection<Long>> typeValue = Versioned.valueOrNull(byType.get(vertex));
+			if (isSplit(typeValue)) {
+				typeValue = types.getBuckets(vertex).join();
+			}
+			if (typeValue != null) {
+				typeValue.forEach((type, relIds) -> relIds.forEach(relId -> relationTypes.put(relId, type)));
+			}
+			Collection<AdjacencyEntry<K>> vertexEntries = new ArrayList<>();
+			neighbourValue.forEach((neighbour, relIds) -> relIds.forEach(
+					relId -> vertexEntries.add(new AdjacencyEntry<>(neighbour, relationTypes.get(relId), relId))));
+			entries.put(vertex, vertexEntries);
+		});
+		return entries;
+	}
+
+	/*
+	 * A write of both maps per vertex, the values built from the entries alone
+	 */
+	@Override
+	public CompletableFuture<Void> load(Map<K, Collection<AdjacencyEntry<K>>> entries) {
+		List<CompletableFuture<Void>> writes = new ArrayList<>(entries.size());
+		entries.forEach(
+				(vertex, vertexEntries) -> writes.add(submit(vertex, new Change<>(vertexEntries, false, true))));
+		return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+	}
+
+	private <MK, MV> AsyncTransactionalMap<MK, MV> transactionalMap(Transaction transaction, String name) {
+		return this.<MK, MV>transactionalMapBuilder(transaction, name).build().async();
+	}
+
+	private <MK, MV> TransactionalMapBuilder<MK, MV> transactionalMapBuilder(Transaction transaction, String name) {
+		TransactionalMapBuilder<MK, MV> builder = transaction.<MK, MV>mapBuilder(name).withSerializer(serializer);
+		if (protocol != null) {
+			builder.withProtocol(protocol);
+		}
+		return builder;
+	}
+
+	/*
+	 * Value of one vertex, or of one bucket, with the changes applied in order.
+	 * A bucket only takes the entries whose neighbour is in it.
+	 *
+	 * @return: The value itself when nothing changes, null once it has no ids left
+	 */
+	private <S> Map<S, Collection<Long>> apply(Map<S, Collection<Long>> current, List<Change<K>> changes,
+			Function<AdjacencyEntry<K>, S> subKeyOf, Predicate<AdjacencyEntry<K>> inBucket) {
+		Map<S, Collection<Long>> value = current;
+		for (Change<K> change : changes) {
+			Collection<AdjacencyEntry<K>> entries = inBucket == null ? change.entries
+					: change.entries.stream().filter(inBucket).collect(Collectors.toList());
+			if (change.replace) {
+				value = entries.isEmpty() ? null : edit(null, entries, subKeyOf, true);
+			} else {
+				value = edit(value, entries, subKeyOf, change.add);
+			}
+		}
+		return value;
+	}
+
+	/*
+	 * Copy of the value of one vertex with the relation ids of the entries added
+	 * or removed, null once it has no ids left. The value itself is returned when
+	 * nothing changes.
+	 */
+	private <S> Map<S, Collection<Long>> edit(Map<S, Collection<Long>> current,
+			Collection<AdjacencyEntry<K>> entries, Function<AdjacencyEntry<K>, S> subKeyOf, boolean add) {
+		Map<S, Collection<Long>> mapHolder = current == null ? new HashMap<>() : new HashMap<>(current);
+		boolean changed = false;
+		for (AdjacencyEntry<K> entry : entries) {
+			S subKey = subKeyOf.apply(entry);
+			Collection<Long> listHolder = new ArrayList<>(mapHolder.getOrDefault(subKey, Collections.emptyList()));
+			if (add) {
+				changed |= listHolder.add(entry.getRelationId());
+			} else {
+				changed |= listHolder.remove(entry.getRelationId());
+			}
+			if (listHolder.isEmpty()) {
+				mapHolder.remove(subKey);
+			} else {
+				mapHolder.put(subKey, listHolder);
+			}
+		}
+
+		if (!changed) {
+			return current;
+		}
+		return mapHolder.isEmpty() ? null : mapHolder;
+	}
+
+	/*
+	 * One of the two maps of the index, the values of the vertices keyed by S,
+	 * the neighbour or the type, with the bucket map of the split vertices
+	 */
+	private class SubIndex<S> {
+
+		final String mapName;
+		final Function<AdjacencyEntry<K>, S> subKeyOf;
+		final List<AtomicMapBuilder<K, Map<S, Collection<Long>>>> builders;
+		final List<AtomicMapBuilder<VertexBucket<K>, Map<S, Collection<Long>>>> bucketBuilders;
+		List<AtomicMap<K, Map<S, Collection<Long>>>> maps;
+		List<AtomicMap<VertexBucket<K>, Map<S, Collection<Long>>>> bucketMaps;
+		NearCache<K, Map<S, Collection<Long>>> cache;
+		NearCache<VertexBucket<K>, Map<S, Collection<Long>>> bucketCache;
+
+		SubIndex(String mapName, Function<AdjacencyEntry<K>, S> subKeyOf) {
+			this.mapName = mapName;
+			this.subKeyOf = subKeyOf;
+			builders = shards.create(shard -> atomix
+					.<K, Map<S, Collection<Long>>>atomicMapBuilder(shards.name(mapName, shard))
+					.withSerializer(serializer));
+			bucketBuilders = shards.create(shard -> atomix
+					.<VertexBucket<K>, Map<S, Collection<Long>>>atomicMapBuilder(shards.name(mapName + BUCKETS, shard))
+					.withSerializer(serializer));
+		}
+
+		void withProtocol(ProxyProtocol protocol) {
+			builders.forEach(builder -> builder.withProtocol(protocol));
+			bucketBuilders.forEach(builder -> builder.withProtocol(protocol));
+		}
+
+		void build(NearCache.Settings caches) {
+			maps = shards.create(shard -> builders.get(shard).get());
+			bucketMaps = shards.create(shard -> bucketBuilders.get(shard).get());
+			cache = caches.create(mapName);
+			bucketCache = caches.create(mapName + BUCKETS);
+			maps.forEach(cache::listenTo);
+			bucketMaps.forEach(bucketCache::listenTo);
+		}
+
+		/*
+		 * Opens new primitives of the maps, reading through the caches of the
+		 * given index at the consistency, see NearCache.forReads
+		 */
+		void open(SubIndex<S> index, ReadConsistency consistency) {
+			// build creates new primitives where get would return those of the index
+			maps = shards.create(shard -> builders.get(shard).build());
+			bucketMaps = shards.create(shard -> bucketBuilders.get(shard).build());
+			cache = index.cache.forReads(consistency);
+			bucketCache = index.bucketCache.forReads(consistency);
+		}
+
+		AsyncAtomicMap<K, Map<S, Collection<Long>>> map(K vertex) {
+			return maps.get(shards.ofVertex(vertex)).async();
+		}
+
+		AsyncAtomicMap<VertexBucket<K>, Map<S, Collection<Long>>> bucketMap(VertexBucket<K> bucket) {
+			return bucketMaps.get(shards.ofVertex(bucket)).async();
+		}
+
+		void invalidate(K vertex, int buckets) {
+			cache.invalidate(vertex);
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				bucketCache.invalidate(new VertexBucket<>(vertex, bucket));
+			}
+		}
+
+		/*
+		 * Value of the vertex in the map, empty if it is split
+		 */
+		CompletableFuture<Map<S, Collection<Long>>> getValue(K vertex) {
+			return cache.get(vertex, key -> map(key).get(key)).thenApply(Versioned::valueOrNull);
+		}
+
+		CompletableFuture<Map<S, Collection<Long>>> get(K vertex) {
+			return getValue(vertex).thenCompose(
+					value -> isSplit(value) ? getBuckets(vertex) : CompletableFuture.completedFuture(value));
+		}
+
+		CompletableFuture<Map<S, Collection<Long>>> getBucket(K vertex, int bucket) {
+			return bucketCache.get(new VertexBucket<>(vertex, bucket), key -> bucketMap(key).get(key))
+					.thenApply(Versioned::valueOrNull);
+		}
+
+		/*
+		 * All the buckets of a split vertex read in parallel and merged, null if
+		 * they have no entries
+		 */
+		CompletableFuture<Map<S, Collection<Long>>> getBuckets(K vertex) {
+			return bucketCount(vertex).thenCompose(count -> {
+				List<CompletableFuture<Map<S, Collection<Long>>>> reads = new ArrayList<>();
+				for (int bucket = 0; count != null && bucket < count; bucket++) {
+					reads.add(getBucket(vertex, bucket));
+				}
+				return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+					Map<S, Collection<Long>> merged = new HashMap<>();
+					for (CompletableFuture<Map<S, Collection<Long>>> read : reads) {
+						if (read.join() != null) {
+							read.join().forEach((subKey, relIds) -> merged.merge(subKey, relIds, (a, b) -> {
+								List<Long> relIdsOfBoth = new ArrayList<>(a);
+								relIdsOfBoth.addAll(b);
+								return relIdsOfBoth;
+							}));
+						}
+					}
+					return merged.isEmpty() ? null : merged;
+				});
+			});
+		}
+
+		/*
+		 * Compare-and-set of the value of the vertex, or of the buckets of its
+		 * entries once it is split. A split vertex left without entries by a
+		 * removeVertex is removed from the map.
+		 *
+		 * @return: The value written, empty if the vertex is split
+		 */
+		CompletableFuture<Map<S, Collection<Long>>> update(K vertex, List<Change<K>> changes) {
+			return compareAndSet(map(vertex), vertex,
+					current -> isSplit(current) ? current : apply(current, changes, subKeyOf, null), 1)
+							.thenCompose(value -> isSplit(value) ? updateBuckets(vertex, changes)
+									: CompletableFuture.completedFuture(value));
+		}
+
+		private CompletableFuture<Map<S, Collection<Long>>> updateBuckets(K vertex, List<Change<K>> changes) {
+			return bucketCount(vertex).thenCompose(count -> {
+				if (count == null) {
+					throw new IllegalStateException(String.format("Vertex %s of %s is split without buckets",
+							vertex, mapName));
+				}
+				boolean replace = changes.stream().anyMatch(change -> change.replace);
+				Set<Integer> buckets = new TreeSet<>();
+				for (int bucket = 0; replace && bucket < count; bucket++) {
+					buckets.add(bucket);
+				}
+				changes.forEach(change -> change.entries
+						.forEach(entry -> buckets.add(bucketOf(entry.getNeighbour(), count))));
+				List<CompletableFuture<Map<S, Collection<Long>>>> writes = new ArrayList<>();
+				for (int bucket : buckets) {
+					VertexBucket<K> key = new VertexBucket<>(vertex, bucket);
+					writes.add(compareAndSet(bucketMap(key), key,
+							current -> apply(current, changes, subKeyOf,
+									entry -> bucketOf(entry.getNeighbour(), count) == bucket),
+							1).whenComplete((value, error) -> bucketCache.invalidate(key)));
+				}
+				return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).thenCompose(v -> {
+					boolean empty = replace && writes.stream().allMatch(write -> write.join() == null);
+					if (!empty) {
+						return CompletableFuture.completedFuture(Collections.emptyMap());
+					}
+					return compareAndSet(map(vertex), vertex, current -> isSplit(current) ? null : current, 1);
+				});
+			});
+		}
+
+		/*
+		 * Stages the entries of one vertex in the transaction of addAll, into the
+		 * buckets of their neighbours if the vertex is split
+		 */
+		CompletableFuture<Void> merge(Transaction transaction, AsyncTransactionalMap<K, Map<S, Collection<Long>>> txMap,
+				Map<String, CompletableFuture<AsyncTransactionalMap<?, ?>>> txBuckets, K vertex,
+				Collection<AdjacencyEntry<K>> entries) {
+			return txMap.get(vertex).thenCompose(current -> {
+				if (isSplit(current)) {
+					return mergeBuckets(transaction, txBuckets, vertex, entries);
+				}
+				Map<S, Collection<Long>> merged = edit(current, entries, subKeyOf, true);
+				if (supernodeThreshold > 0 && degree(merged) > supernodeThreshold) {
+					dueForSplit.add(vertex);
+				}
+				return txMap.put(vertex, merged).thenApply(previous -> null);
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		private CompletableFuture<Void> mergeBuckets(Transaction transaction,
+				Map<String, CompletableFuture<AsyncTransactionalMap<?, ?>>> txBuckets, K vertex,
+				Collection<AdjacencyEntry<K>> entries) {
+			return bucketCount(vertex).thenCompose(count -> {
+				Map<Integer, List<AdjacencyEntry<K>>> byBucket = entries.stream()
+						.collect(Collectors.groupingBy(entry -> bucketOf(entry.getNeighbour(), count)));
+				List<CompletableFuture<?>> writes = new ArrayList<>();
+				byBucket.forEach((bucket, bucketEntries) -> {
+					VertexBucket<K> key = new VertexBucket<>(vertex, bucket);
+					bucketsWritten.add(key);
+					// Built asynchronously, this runs on a thread of Atomix
+					String name = shards.name(mapName + BUCKETS, shards.ofVertex(key));
+					writes.add(txBuckets
+							.computeIfAbsent(name, n -> VertexMapAdjacencyIndex.this
+									.<VertexBucket<K>, Map<S, Collection<Long>>>transactionalMapBuilder(transaction, n)
+									.buildAsync().thenApply(TransactionalMap::async))
+							.thenCompose(txBucket -> {
+								AsyncTransactionalMap<VertexBucket<K>, Map<S, Collection<Long>>> txMap =
+										(AsyncTransactionalMap<VertexBucket<K>, Map<S, Collection<Long>>>) txBucket;
+								return txMap.get(key).thenCompose(
+										current -> txMap.put(key, edit(current, bucketEntries, subKeyOf, true)));
+							}));
+				});
+				return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+			});
+		}
+
+		/*
+		 * Stages the buckets of a vertex being split, every bucket written so
+		 * that none is left from an earlier split
+		 */
+		void stageBuckets(Transaction transaction, K vertex, Map<S, Collection<Long>> value, Map<Long, K> neighbourOf,
+				int buckets, List<CompletableFuture<?>> writes) {
+			List<Map<S, Collection<Long>>> contents = new ArrayList<>(buckets);
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				contents.add(new HashMap<>());
+			}
+			value.forEach((subKey, relIds) -> relIds.forEach(relId -> contents
+					.get(bucketOf(neighbourOf.get(relId), buckets)).computeIfAbsent(subKey, k -> new ArrayList<>())
+					.add(relId)));
+			Map<Integer, AsyncTransactionalMap<VertexBucket<K>, Map<S, Collection<Long>>>> txBuckets = new HashMap<>();
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				VertexBucket<K> key = new VertexBucket<>(vertex, bucket);
+				AsyncTransactionalMap<VertexBucket<K>, Map<S, Collection<Long>>> txBucket = txBuckets.computeIfAbsent(
+						shards.ofVertex(key),
+						shard -> transactionalMap(transaction, shards.name(mapName + BUCKETS, shard)));
+				Map<S, Collection<Long>> content = contents.get(bucket);
+				writes.add(content.isEmpty() ? txBucket.remove(key) : txBucket.put(key, content));
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.graphdb.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/*
+ * Vertex affinity of the maps of a graph. Every map of a graph is split into
+ * the same number of shards, one Atomix primitive per shard, and a vertex
+ * belongs to the shard of its hash: its node, its outgoing index entries and
+ * the relations it is the source of all live in that shard. The shard of a
+ * relation is kept in the low bits of its id, so a relation can be found from
+ * its id alone. With VertexAffinityPartitioner the primitives of a shard share
+ * a Raft partition, and most single vertex operations stay in one Raft group.
+ *
+ * Keys must have a hashCode that is the same on every member, like String and
+ * the boxed primitives.
+ */
+class VertexShards {
+
+	final static int SHARD_BITS = 8;
+	final static int MAX_SHARDS = 1 << SHARD_BITS;
+
+	private final int count;
+
+	VertexShards(int count) {
+		if (count < 1 || count > MAX_SHARDS) {
+			throw new IllegalArgumentException(
+					String.format("Number of shards must be between 1 and %s, got %s", MAX_SHARDS, count));
+		}
+		this.count = count;
+	}
+
+	int count() {
+		return count;
+	}
+
+	/*
+	 * Name of the primitive of a shard. A graph with a single shard keeps the
+	 * plain map names.
+	 */
+	String name(String mapName, int shard) {
+		return count == 1 ? mapName : VertexAffinityPartitioner.shardName(mapName, shard);
+	}
+
+	/*
+	 * One primitive per shard, built by the given function from the shard number
+	 */
+	<M> List<M> create(IntFunction<M> builder) {
+		List<M> shards = new ArrayList<>(count);
+		for (int shard = 0; shard < count; shard++) {
+			shards.add(builder.apply(shard));
+		}
+		return shards;
+	}
+
+	int ofVertex(Object vertex) {
+		return count == 1 ? 0 : Math.floorMod(vertex.hashCode(), count);
+	}
+
+	int ofRelation(long relationId) {
+		return count == 1 ? 0 : (int) (relationId & (MAX_SHARDS - 1));
+	}
+
+	/*
+	 * Id of a relation from the next value of the id generator and the shard of
+	 * its source vertex
+	 */
+	long relationId(long sequence, Object from) {
+		return count == 1 ? sequence : sequence << SHARD_BITS | ofVertex(from);
+	}
+
+	/*
+	 * Value of the id generator a relation id was made from
+	 */
+	long sequence(long relationId) {
+		return count == 1 ? relationId : relationId >>> SHARD_BITS;
+	}
+
+	/*
+	 * Splits the items by shard so that each shard can be read or written with
+	 * one request
+	 */
+	<T> Map<Integer, List<T>> group(Collection<T> items, ToIntFunction<T> shardOf) {
+		Map<Integer, List<T>> groups = new HashMap<>();
+		for (T item : items) {
+			groups.computeIfAbsent(shardOf.applyAsInt(item), k -> new ArrayList<>()).add(item);
+		}
+		return groups;
+	}
+}
@@ -0,0 +1,26 @@
+package com.graphdb.model;
+
+import java.util.List;
+
+/*
+ * Result of a weighted path search: the path and the sum of the costs of its
+ * relations
+ */
+public class WeightedPath<K> extends Path<K> {
+
+	private double cost;
+
+	public WeightedPath(List<K> nodes, List<Long> relationIds, double cost) {
+		super(nodes, relationIds);
+		this.cost = cost;
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + " (cost " + cost + ")";
+	}
+}
@@ -0,0 +1,122 @@
+package com.graphdb.primitive;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.atomix.primitive.AsyncPrimitive;
+import io.atomix.primitive.DistributedPrimitive;
+import io.atomix.primitive.partition.PartitionId;
+
+/*
+ * Asynchronous GraphPrimitive. The vertices are the keys of the graph and each
+ * relation is given its id by the caller. Every read runs on the partitions
+ * holding the vertices and only the results come back. A null type matches
+ * every type.
+ */
+public interface AsyncGraphPrimitive<K> extends AsyncPrimitive {
+
+	/*
+	 * Adds the edge to the partitions of both end points. Adding a relation id
+	 * the end points already have does nothing, so a failed add can be retried,
+	 * and a failure of one of the two writes undoes the other before the future
+	 * fails.
+	 */
+	CompletableFuture<Void> addRelation(K from, K to, String type, long relationId);
+
+	/*
+	 * @return: true if an edge with the relation id was removed from either
+	 * end point
+	 */
+	CompletableFuture<Boolean> removeRelation(K from, K to, long relationId);
+
+	/*
+	 * Removes the vertex and the edges of its neighbours to it
+	 */
+	CompletableFuture<Void> removeVertex(K vertex);
+
+	/*
+	 * @return: The distinct targets of the outgoing relations of the vertex
+	 */
+	CompletableFuture<Collection<K>> neighbors(K from, String type);
+
+	/*
+	 * @return: The distinct sources of the incoming relations of the vertex
+	 */
+	CompletableFuture<Collection<K>> incomingNeighbors(K to, String type);
+
+	/*
+	 * @return: The ids of the outgoing relations of the vertex
+	 */
+	CompletableFuture<long[]> relations(K from, String type);
+
+	/*
+	 * @return: The number of outgoing relations of the vertex
+	 */
+	CompletableFuture<Integer> degree(K vertex, String type);
+
+	CompletableFuture<Boolean> areRelated(K from, K to);
+
+	/*
+	 * Vertices reachable from the vertex in at most the given number of hops
+	 * along outgoing relations, in the order they were reached, the vertex
+	 * itself excluded. Each hop is one request per partition holding vertices
+	 * of the frontier, all of them in flight together.
+	 */
+	CompletableFuture<List<K>> kHop(K from, int hops, String type);
+
+	/*
+	 * Edges of one direction of a vertex, written and read on the partition of
+	 * the vertex only. These are the operations behind AdjacencyLayout.PRIMITIVE,
+	 * which writes both end points of a relation itself.
+	 */
+	CompletableFuture<Void> addEdges(K vertex, boolean outgoing, Edges<K> edges, boolean replace);
+
+	CompletableFuture<Integer> removeEdges(K vertex, boolean outgoing, long[] relationIds);
+
+	/*
+	 * @return: The removed edges, null if the vertex had none
+	 */
+	CompletableFuture<Edges<K>> removeEdges(K vertex, boolean outgoing);
+
+	/*
+	 * @return: The edges of the type, null if the vertex has no edges in that
+	 * direction
+	 */
+	CompletableFuture<Edges<K>> edges(K vertex, boolean outgoing, String type);
+
+	/*
+	 * Edges of many vertices, one request per partition holding some of them,
+	 * vertices without edges are left out
+	 */
+	CompletableFuture<Map<K, Edges<K>>> edges(Collection<K> vertices, boolean outgoing, String type);
+
+	/*
+	 * @return: The ids of the relations to the neighbour, null if the vertex has
+	 * no edges in that direction
+	 */
+	CompletableFuture<long[]> relationsTo(K vertex, boolean outgoing, K neighbour);
+
+	CompletableFuture<Integer> degree(K vertex, boolean outgoing, String type);
+
+	/*
+	 * Partitions of the primitive, in order
+	 */
+	List<PartitionId> partitions();
+
+	/*
+	 * Next batch of at most limit vertices of the partition with edges in that
+	 * direction, from the position of the previous batch or 0
+	 */
+	CompletableFuture<EdgeScan<K>> scan(PartitionId partition, boolean outgoing, long position, int limit);
+
+	@Override
+	default GraphPrimitive<K> sync() {
+		return sync(Duration.ofMillis(DistributedPrimitive.DEFAULT_OPERATION_TIMEOUT_MILLIS));
+	}
+
+	@Override
+	GraphPrimitive<K> sync(Duration operationTimeout);
+}
@@ -0,0 +1,96 @@
+package com.graphdb.primitive;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.base.Throwables;
+
+import io.atomix.primitive.PrimitiveException;
+import io.atomix.primitive.Synchronous;
+
+/*
+ * GraphPrimitive waiting on AsyncGraphPrimitive for at most the operation
+ * timeout
+ */
+class BlockingGraphPrimitive<K> extends Synchronous<AsyncGraphPrimitive<K>> implements GraphPrimitive<K> {
+
+	private final AsyncGraphPrimitive<K> asyncGraph;
+	private final long operationTimeoutMillis;
+
+	BlockingGraphPrimitive(AsyncGraphPrimitive<K> asyncGraph, long operationTimeoutMillis) {
+		super(asyncGraph);
+		this.asyncGraph = asyncGraph;
+		this.operationTimeoutMillis = operationTimeoutMillis;
+	}
+
+	@Override
+	public void addRelation(K from, K to, String type, long relationId) {
+		complete(asyncGraph.addRelation(from, to, type, relationId));
+	}
+
+	@Override
+	public boolean removeRelation(K from, K to, long relationId) {
+		return complete(asyncGraph.removeRelation(from, to, relationId));
+	}
+
+	@Override
+	public void removeVertex(K vertex) {
+		complete(asyncGraph.removeVertex(vertex));
+	}
+
+	@Override
+	public Collection<K> neighbors(K from, String type) {
+		return complete(asyncGraph.neighbors(from, type));
+	}
+
+	@Override
+	public Collection<K> incomingNeighbors(K to, String type) {
+		return complete(asyncGraph.incomingNeighbors(to, type));
+	}
+
+	@Override
+	public long[] relations(K from, String type) {
+		return complete(asyncGraph.relations(from, type));
+	}
+
+	@Override
+	public int degree(K vertex, String type) {
+		return complete(asyncGraph.degree(vertex, type));
+	}
+
+	@Override
+	public boolean areRelated(K from, K to) {
+		return complete(asyncGraph.areRelated(from, to));
+	}
+
+	@Override
+	public List<K> kHop(K from, int hops, String type) {
+		return complete(asyncGraph.kHop(from, hops, type));
+	}
+
+	@Override
+	public AsyncGraphPrimitive<K> async() {
+		return asyncGraph;
+	}
+
+	private <T> T complete(CompletableFuture<T> future) {
+		try {
+			return future.get(operationTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PrimitiveException.Interrupted();
+		} catch (TimeoutException e) {
+			throw new PrimitiveException.Timeout();
+		} catch (ExecutionException e) {
+			Throwable cause = Throwables.getRootCause(e);
+			if (cause instanceof PrimitiveException) {
+				throw (PrimitiveException) cause;
+			}
+			throw new PrimitiveException(cause);
+		}
+	}
+}
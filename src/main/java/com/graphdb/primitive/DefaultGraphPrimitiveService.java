@@ -0,0 +1,347 @@
+package com.graphdb.primitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.atomix.primitive.service.AbstractPrimitiveService;
+import io.atomix.primitive.service.BackupInput;
+import io.atomix.primitive.service.BackupOutput;
+
+/*
+ * GraphPrimitive state machine of one partition. Vertex keys are dictionary
+ * encoded to long ids local to the partition, and the edges are kept by id in
+ * a LongHashMap of EdgeLists holding the ids of the neighbours. Types are
+ * interned to ints. A query walks primitive arrays, filters by type where the
+ * edges are and decodes only the matching neighbours.
+ *
+ * A key stays in the dictionary while it has edges or is the neighbour of an
+ * edge of the partition, its reference count.
+ */
+public class DefaultGraphPrimitiveService extends AbstractPrimitiveService implements GraphPrimitiveService {
+
+	private static class Vertex {
+		private final Object key;
+		private final long id;
+		private int references;
+		private final EdgeList outgoing = new EdgeList();
+		private final EdgeList incoming = new EdgeList();
+
+		Vertex(Object key, long id) {
+			this.key = key;
+			this.id = id;
+		}
+
+		EdgeList edges(boolean out) {
+			return out ? outgoing : incoming;
+		}
+	}
+
+	private final Map<Object, Vertex> vertexByKey = new HashMap<>();
+	private final LongHashMap<Vertex> vertexById = new LongHashMap<>();
+	private long nextId;
+	private final List<String> typeNames = new ArrayList<>();
+	private final Map<String, Integer> typeIds = new HashMap<>();
+
+	public DefaultGraphPrimitiveService() {
+		super(GraphPrimitiveType.instance());
+	}
+
+	@Override
+	public void backup(BackupOutput output) {
+		output.writeLong(nextId);
+		output.writeInt(typeNames.size());
+		typeNames.forEach(output::writeString);
+		output.writeInt(vertexById.size());
+		vertexById.forEach((id, vertex) -> {
+			output.writeLong(id);
+			output.writeObject(vertex.key);
+			writeEdges(output, vertex.outgoing);
+			writeEdges(output, vertex.incoming);
+		});
+	}
+
+	private void writeEdges(BackupOutput output, EdgeList edges) {
+		output.writeInt(edges.size());
+		for (int edge = 0; edge < edges.size(); edge++) {
+			output.writeLong(edges.neighbour(edge));
+			output.writeInt(edges.type(edge));
+			output.writeLong(edges.relationId(edge));
+		}
+	}
+
+	@Override
+	public void restore(BackupInput input) {
+		typeNames.clear();
+		typeIds.clear();
+		vertexByKey.clear();
+		vertexById.clear();
+		nextId = input.readLong();
+		int types = input.readInt();
+		for (int i = 0; i < types; i++) {
+			typeId(input.readString());
+		}
+		int count = input.readInt();
+		for (int i = 0; i < count; i++) {
+			long id = input.readLong();
+			Vertex vertex = new Vertex(input.readObject(), id);
+			vertexById.put(id, vertex);
+			vertexByKey.put(vertex.key, vertex);
+			readEdges(input, vertex.outgoing);
+			readEdges(input, vertex.incoming);
+		}
+		// References are counted again from the edges
+		vertexById.forEach((id, vertex) -> {
+			for (EdgeList edges : new EdgeList[] { vertex.outgoing, vertex.incoming }) {
+				for (int edge = 0; edge < edges.size(); edge++) {
+					vertex.references++;
+					vertexById.get(edges.neighbour(edge)).references++;
+				}
+			}
+		});
+	}
+
+	private void readEdges(BackupInput input, EdgeList edges) {
+		int size = input.readInt();
+		for (int edge = 0; edge < size; edge++) {
+			edges.add(input.readLong(), input.readInt(), input.readLong());
+		}
+	}
+
+	private int typeId(String type) {
+		return typeIds.computeIfAbsent(type, name -> {
+			typeNames.add(name);
+			return typeNames.size() - 1;
+		});
+	}
+
+	/*
+	 * Id of the type for a filter, -1 for every type and -2 for a type no edge
+	 * of this partition has
+	 */
+	private int filter(String type) {
+		if (type == null) {
+			return -1;
+		}
+		return typeIds.getOrDefault(type, -2);
+	}
+
+	private static boolean matches(EdgeList edges, int edge, int filter) {
+		return filter == -1 || edges.type(edge) == filter;
+	}
+
+	/*
+	 * The vertex of the key, with one more reference
+	 */
+	private Vertex acquire(Object key) {
+		Vertex vertex = vertexByKey.get(key);
+		if (vertex == null) {
+			vertex = new Vertex(key, nextId++);
+			vertexByKey.put(key, vertex);
+			vertexById.put(vertex.id, vertex);
+		}
+		vertex.references++;
+		return vertex;
+	}
+
+	private void release(Vertex vertex) {
+		if (--vertex.references == 0) {
+			vertexByKey.remove(vertex.key);
+			vertexById.remove(vertex.id);
+		}
+	}
+
+	@Override
+	public void addEdges(Object key, boolean outgoing, Edges<Object> edges, boolean replace) {
+		// Held for the whole update, so that a replace does not drop the vertex
+		Vertex vertex = acquire(key);
+		if (replace) {
+			clear(vertex, outgoing);
+		}
+		EdgeList list = vertex.edges(outgoing);
+		for (int edge = 0; edge < edges.size(); edge++) {
+			Vertex neighbour = acquire(edges.neighbour(edge));
+			if (list.add(neighbour.id, typeId(edges.type(edge)), edges.relationId(edge))) {
+				vertex.references++;
+			} else {
+				release(neighbour);
+			}
+		}
+		release(vertex);
+	}
+
+	@Override
+	public int removeEdges(Object key, boolean outgoing, long[] relationIds) {
+		Vertex vertex = vertexByKey.get(key);
+		if (vertex == null) {
+			return 0;
+		}
+		vertex.references++;
+		int removed = 0;
+		for (long relationId : relationIds) {
+			long neighbour = vertex.edges(outgoing).remove(relationId);
+			if (neighbour >= 0) {
+				release(vertexById.get(neighbour));
+				vertex.references--;
+				removed++;
+			}
+		}
+		release(vertex);
+		return removed;
+	}
+
+	@Override
+	public Edges<Object> removeVertex(Object key, boolean outgoing) {
+		Vertex vertex = vertexByKey.get(key);
+		if (vertex == null || vertex.edges(outgoing).isEmpty()) {
+			return null;
+		}
+		vertex.references++;
+		Edges<Object> removed = clear(vertex, outgoing);
+		release(vertex);
+		return removed;
+	}
+
+	private Edges<Object> clear(Vertex vertex, boolean outgoing) {
+		EdgeList list = vertex.edges(outgoing);
+		Edges<Object> removed = decode(list, -1);
+		while (!list.isEmpty()) {
+			long neighbour = list.remove(list.relationId(list.size() - 1));
+			release(vertexById.get(neighbour));
+			vertex.references--;
+		}
+		return removed;
+	}
+
+	private Edges<Object> decode(EdgeList list, int filter) {
+		Edges<Object> edges = new Edges<>(filter == -1 ? list.size() : 4);
+		for (int edge = 0; edge < list.size(); edge++) {
+			if (matches(list, edge, filter)) {
+				edges.add(vertexById.get(list.neighbour(edge)).key, typeNames.get(list.type(edge)),
+						list.relationId(edge));
+			}
+		}
+		return edges;
+	}
+
+	private EdgeList list(Object key, boolean outgoing) {
+		Vertex vertex = vertexByKey.get(key);
+		return vertex == null || vertex.edges(outgoing).isEmpty() ? null : vertex.edges(outgoing);
+	}
+
+	@Override
+	public Edges<Object> edges(Object key, boolean outgoing, String type) {
+		EdgeList list = list(key, outgoing);
+		if (list == null) {
+			return null;
+		}
+		int filter = filter(type);
+		return filter == -2 ? new Edges<>(0) : decode(list, filter);
+	}
+
+	@Override
+	public Map<Object, Edges<Object>> allEdges(List<Object> keys, boolean outgoing, String type) {
+		Map<Object, Edges<Object>> result = new HashMap<>();
+		for (Object key : keys) {
+			Edges<Object> edges = edges(key, outgoing, type);
+			if (edges != null) {
+				result.put(key, edges);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public long[] relationsTo(Object key, boolean outgoing, Object neighbourKey) {
+		EdgeList list = list(key, outgoing);
+		if (list == null) {
+			return null;
+		}
+		Vertex neighbour = vertexByKey.get(neighbourKey);
+		if (neighbour == null) {
+			return new long[0];
+		}
+		long[] ids = new long[4];
+		int size = 0;
+		for (int edge = 0; edge < list.size(); edge++) {
+			if (list.neighbour(edge) == neighbour.id) {
+				if (size == ids.length) {
+					ids = Arrays.copyOf(ids, size * 2);
+				}
+				ids[size++] = list.relationId(edge);
+			}
+		}
+		return Arrays.copyOf(ids, size);
+	}
+
+	@Override
+	public int degree(Object key, boolean outgoing, String type) {
+		EdgeList list = list(key, outgoing);
+		int filter = filter(type);
+		if (list == null || filter == -2) {
+			return 0;
+		}
+		if (filter == -1) {
+			return list.size();
+		}
+		int degree = 0;
+		for (int edge = 0; edge < list.size(); edge++) {
+			if (matches(list, edge, filter)) {
+				degree++;
+			}
+		}
+		return degree;
+	}
+
+	@Override
+	public List<Object> expand(List<Object> frontier, boolean outgoing, String type) {
+		int filter = filter(type);
+		if (filter == -2) {
+			return new ArrayList<>();
+		}
+		long[] neighbours = new long[16];
+		int size = 0;
+		for (Object key : frontier) {
+			EdgeList list = list(key, outgoing);
+			if (list == null) {
+				continue;
+			}
+			for (int edge = 0; edge < list.size(); edge++) {
+				if (matches(list, edge, filter)) {
+					if (size == neighbours.length) {
+						neighbours = Arrays.copyOf(neighbours, size * 2);
+					}
+					neighbours[size++] = list.neighbour(edge);
+				}
+			}
+		}
+		// Neighbours are deduplicated by id and decoded once
+		Arrays.sort(neighbours, 0, size);
+		List<Object> keys = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || neighbours[i] != neighbours[i - 1]) {
+				keys.add(vertexById.get(neighbours[i]).key);
+			}
+		}
+		return keys;
+	}
+
+	/*
+	 * The position is the next local id to look at, ids are never reused so a
+	 * scan sees every vertex that kept its edges while it ran
+	 */
+	@Override
+	public EdgeScan<Object> scan(boolean outgoing, long position, int limit) {
+		Map<Object, Edges<Object>> edges = new HashMap<>();
+		long id = position;
+		for (; id < nextId && edges.size() < limit; id++) {
+			Vertex vertex = vertexById.get(id);
+			if (vertex != null && !vertex.edges(outgoing).isEmpty()) {
+				edges.put(vertex.key, decode(vertex.edges(outgoing), -1));
+			}
+		}
+		return new EdgeScan<>(edges, id, id >= nextId);
+	}
+}
@@ -0,0 +1,109 @@
+package com.graphdb.primitive;
+
+import java.util.Arrays;
+
+/*
+ * Edges of one vertex in one direction as parallel primitive arrays: the
+ * neighbour, the interned type and the relation id of each edge. A relation id
+ * is in a list at most once, so that a write applied twice leaves one edge.
+ * Edges are unordered, a removal moves the last edge into the freed position.
+ * Past INDEXED_SIZE edges, the position of every relation id is kept in a
+ * LongHashMap so that adds and removes do not scan the list.
+ */
+class EdgeList {
+
+	final static int INDEXED_SIZE = 32;
+
+	private long[] neighbours = new long[4];
+	private int[] types = new int[4];
+	private long[] relationIds = new long[4];
+	private int size;
+	private LongHashMap<Integer> positions;
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	long neighbour(int edge) {
+		return neighbours[edge];
+	}
+
+	int type(int edge) {
+		return types[edge];
+	}
+
+	long relationId(int edge) {
+		return relationIds[edge];
+	}
+
+	/*
+	 * @return: The position of the edge of the relation id, -1 if there is none
+	 */
+	int indexOf(long relationId) {
+		if (positions != null) {
+			Integer position = positions.get(relationId);
+			return position == null ? -1 : position;
+		}
+		for (int edge = 0; edge < size; edge++) {
+			if (relationIds[edge] == relationId) {
+				return edge;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * @return: false if the list already has an edge with the relation id
+	 */
+	boolean add(long neighbour, int type, long relationId) {
+		if (indexOf(relationId) >= 0) {
+			return false;
+		}
+		if (size == neighbours.length) {
+			neighbours = Arrays.copyOf(neighbours, size * 2);
+			types = Arrays.copyOf(types, size * 2);
+			relationIds = Arrays.copyOf(relationIds, size * 2);
+		}
+		neighbours[size] = neighbour;
+		types[size] = type;
+		relationIds[size] = relationId;
+		if (positions != null) {
+			positions.put(relationId, size);
+		}
+		size++;
+		if (positions == null && size > INDEXED_SIZE) {
+			positions = new LongHashMap<>(size * 2);
+			for (int edge = 0; edge < size; edge++) {
+				positions.put(relationIds[edge], edge);
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @return: The neighbour of the removed edge, -1 if no edge has the
+	 * relation id
+	 */
+	long remove(long relationId) {
+		int edge = indexOf(relationId);
+		if (edge < 0) {
+			return -1;
+		}
+		long neighbour = neighbours[edge];
+		size--;
+		neighbours[edge] = neighbours[size];
+		types[edge] = types[size];
+		relationIds[edge] = relationIds[size];
+		if (positions != null) {
+			positions.remove(relationId);
+			if (edge < size) {
+				positions.put(relationIds[edge], edge);
+			}
+		}
+		return neighbour;
+	}
+}
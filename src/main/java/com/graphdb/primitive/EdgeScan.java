@@ -0,0 +1,32 @@
+package com.graphdb.primitive;
+
+import java.util.Map;
+
+/*
+ * Batch of a scan of the vertices of one partition, see
+ * AsyncGraphPrimitive.scan. The position resumes the scan after the batch.
+ */
+public class EdgeScan<K> {
+
+	private final Map<K, Edges<K>> edges;
+	private final long position;
+	private final boolean last;
+
+	public EdgeScan(Map<K, Edges<K>> edges, long position, boolean last) {
+		this.edges = edges;
+		this.position = position;
+		this.last = last;
+	}
+
+	public Map<K, Edges<K>> getEdges() {
+		return edges;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public boolean isLast() {
+		return last;
+	}
+}
@@ -0,0 +1,73 @@
+package com.graphdb.primitive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.primitives.Longs;
+
+/*
+ * Edges of one vertex in one direction as sent to and from the partitions:
+ * the neighbour, the type and the relation id of each edge, in parallel lists
+ * with the relation ids as a long array.
+ */
+public class Edges<K> {
+
+	private final List<K> neighbours;
+	private final List<String> types;
+	private long[] relationIds;
+
+	public Edges() {
+		this(4);
+	}
+
+	public Edges(int capacity) {
+		neighbours = new ArrayList<>(capacity);
+		types = new ArrayList<>(capacity);
+		relationIds = new long[capacity];
+	}
+
+	public Edges<K> add(K neighbour, String type, long relationId) {
+		if (neighbours.size() == relationIds.length) {
+			relationIds = Longs.ensureCapacity(relationIds, relationIds.length + 1, relationIds.length);
+		}
+		relationIds[neighbours.size()] = relationId;
+		neighbours.add(neighbour);
+		types.add(type);
+		return this;
+	}
+
+	public int size() {
+		return neighbours.size();
+	}
+
+	public boolean isEmpty() {
+		return neighbours.isEmpty();
+	}
+
+	public K neighbour(int edge) {
+		return neighbours.get(edge);
+	}
+
+	public String type(int edge) {
+		return types.get(edge);
+	}
+
+	public long relationId(int edge) {
+		return relationIds[edge];
+	}
+
+	public long[] relationIds() {
+		return Arrays.copyOf(relationIds, size());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int edge = 0; edge < size(); edge++) {
+			builder.append(edge == 0 ? "" : ", ").append(neighbours.get(edge)).append('/').append(types.get(edge))
+					.append('/').append(relationIds[edge]);
+		}
+		return builder.append(']').toString();
+	}
+}
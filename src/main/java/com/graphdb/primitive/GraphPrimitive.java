@@ -0,0 +1,37 @@
+package com.graphdb.primitive;
+
+import java.util.Collection;
+import java.util.List;
+
+import io.atomix.primitive.SyncPrimitive;
+
+/*
+ * Graph adjacency as its own Atomix primitive, see AsyncGraphPrimitive. Each
+ * partition runs a DefaultGraphPrimitiveService holding the edges of its
+ * vertices in primitive arrays, so hops, degrees and type filters are answered
+ * where the edges are instead of moving adjacency values to the client. A
+ * GraphModelImpl with AdjacencyLayout.PRIMITIVE keeps its indexes in one.
+ */
+public interface GraphPrimitive<K> extends SyncPrimitive {
+
+	void addRelation(K from, K to, String type, long relationId);
+
+	boolean removeRelation(K from, K to, long relationId);
+
+	void removeVertex(K vertex);
+
+	Collection<K> neighbors(K from, String type);
+
+	Collection<K> incomingNeighbors(K to, String type);
+
+	long[] relations(K from, String type);
+
+	int degree(K vertex, String type);
+
+	boolean areRelated(K from, K to);
+
+	List<K> kHop(K from, int hops, String type);
+
+	@Override
+	AsyncGraphPrimitive<K> async();
+}
@@ -0,0 +1,33 @@
+package com.graphdb.primitive;
+
+import java.util.concurrent.CompletableFuture;
+
+import io.atomix.primitive.PrimitiveBuilder;
+import io.atomix.primitive.PrimitiveManagementService;
+import io.atomix.primitive.protocol.ProxyCompatibleBuilder;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.primitive.service.ServiceConfig;
+
+/*
+ * Builder of GraphPrimitive, with a ProxyProtocol such as MultiRaftProtocol
+ */
+public class GraphPrimitiveBuilder<K>
+		extends PrimitiveBuilder<GraphPrimitiveBuilder<K>, GraphPrimitiveConfig, GraphPrimitive<K>>
+		implements ProxyCompatibleBuilder<GraphPrimitiveBuilder<K>> {
+
+	GraphPrimitiveBuilder(String name, GraphPrimitiveConfig config, PrimitiveManagementService managementService) {
+		super(GraphPrimitiveType.<K>instance(), name, config, managementService);
+	}
+
+	@Override
+	public GraphPrimitiveBuilder<K> withProtocol(ProxyProtocol protocol) {
+		return super.withProtocol(protocol);
+	}
+
+	@Override
+	public CompletableFuture<GraphPrimitive<K>> buildAsync() {
+		return newProxy(GraphPrimitiveService.class, new ServiceConfig()).thenCompose(
+				proxy -> new GraphPrimitiveProxy<K>(proxy, managementService.getPrimitiveRegistry()).connect())
+				.thenApply(AsyncGraphPrimitive::sync);
+	}
+}
@@ -0,0 +1,12 @@
+package com.graphdb.primitive;
+
+import io.atomix.primitive.PrimitiveType;
+import io.atomix.primitive.config.PrimitiveConfig;
+
+public class GraphPrimitiveConfig extends PrimitiveConfig<GraphPrimitiveConfig> {
+
+	@Override
+	public PrimitiveType getType() {
+		return GraphPrimitiveType.instance();
+	}
+}
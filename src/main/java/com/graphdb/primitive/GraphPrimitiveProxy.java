@@ -0,0 +1,245 @@
+package com.graphdb.primitive;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import com.google.common.primitives.Longs;
+
+import io.atomix.primitive.AbstractAsyncPrimitive;
+import io.atomix.primitive.PrimitiveRegistry;
+import io.atomix.primitive.partition.PartitionId;
+import io.atomix.primitive.proxy.ProxyClient;
+import io.atomix.primitive.proxy.ProxySession;
+
+/*
+ * Client of the GraphPrimitiveService partitions. A vertex belongs to the
+ * partition of its key encoded with the namespace of GraphPrimitiveType, under
+ * the partitioner of the protocol.
+ */
+@SuppressWarnings("unchecked")
+class GraphPrimitiveProxy<K> extends AbstractAsyncPrimitive<AsyncGraphPrimitive<K>, GraphPrimitiveService>
+		implements AsyncGraphPrimitive<K> {
+
+	GraphPrimitiveProxy(ProxyClient<GraphPrimitiveService> client, PrimitiveRegistry registry) {
+		super(client, registry);
+	}
+
+	private ProxySession<GraphPrimitiveService> partition(K vertex) {
+		return getProxyClient().getPartition((Object) vertex);
+	}
+
+	private <R> CompletableFuture<R> applyBy(K vertex, Function<GraphPrimitiveService, R> function) {
+		return getProxyClient().applyBy((Object) vertex, function);
+	}
+
+	@Override
+	public CompletableFuture<Void> addRelation(K from, K to, String type, long relationId) {
+		CompletableFuture<Void> outgoing = addEdges(from, true, new Edges<K>(1).add(to, type, relationId), false);
+		CompletableFuture<Void> incoming = addEdges(to, false, new Edges<K>(1).add(from, type, relationId), false);
+		return CompletableFuture.allOf(outgoing, incoming).handle((v, error) -> error)
+				.thenCompose(error -> {
+					if (error == null) {
+						return CompletableFuture.completedFuture(null);
+					}
+					// A half written relation is removed from both sides, ignoring
+					// the outcome, before failing with the original error
+					long[] relationIds = { relationId };
+					return CompletableFuture.allOf(removeEdges(from, true, relationIds),
+							removeEdges(to, false, relationIds)).handle((v, undo) -> {
+								throw error instanceof CompletionException ? (CompletionException) error
+										: new CompletionException(error);
+							});
+				});
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeRelation(K from, K to, long relationId) {
+		long[] relationIds = { relationId };
+		return removeEdges(from, true, relationIds).thenCombine(removeEdges(to, false, relationIds),
+				(out, in) -> out > 0 || in > 0);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeVertex(K vertex) {
+		CompletableFuture<Edges<K>> outgoing = removeEdges(vertex, true);
+		CompletableFuture<Edges<K>> incoming = removeEdges(vertex, false);
+		return outgoing.thenCombine(incoming, (out, in) -> {
+			List<CompletableFuture<Integer>> mirrors = new ArrayList<>();
+			// The outgoing edges of the vertex are incoming edges of its neighbours
+			removeMirrors(out, false, mirrors);
+			removeMirrors(in, true, mirrors);
+			return mirrors;
+		}).thenCompose(mirrors -> CompletableFuture.allOf(mirrors.toArray(new CompletableFuture[0])));
+	}
+
+	private void removeMirrors(Edges<K> removed, boolean outgoing, List<CompletableFuture<Integer>> mirrors) {
+		if (removed == null) {
+			return;
+		}
+		Map<K, List<Long>> byNeighbour = new HashMap<>();
+		for (int i = 0; i < removed.size(); i++) {
+			byNeighbour.computeIfAbsent(removed.neighbour(i), k -> new ArrayList<>()).add(removed.relationId(i));
+		}
+		byNeighbour.forEach((neighbour, relationIds) -> mirrors
+				.add(removeEdges(neighbour, outgoing, Longs.toArray(relationIds))));
+	}
+
+	@Override
+	public CompletableFuture<Collection<K>> neighbors(K from, String type) {
+		return edges(from, true, type).thenApply(this::distinctNeighbours);
+	}
+
+	@Override
+	public CompletableFuture<Collection<K>> incomingNeighbors(K to, String type) {
+		return edges(to, false, type).thenApply(this::distinctNeighbours);
+	}
+
+	private Collection<K> distinctNeighbours(Edges<K> edges) {
+		Set<K> neighbours = new LinkedHashSet<>();
+		if (edges != null) {
+			for (int i = 0; i < edges.size(); i++) {
+				neighbours.add(edges.neighbour(i));
+			}
+		}
+		return neighbours;
+	}
+
+	@Override
+	public CompletableFuture<long[]> relations(K from, String type) {
+		return edges(from, true, type).thenApply(edges -> edges == null ? new long[0] : edges.relationIds());
+	}
+
+	@Override
+	public CompletableFuture<Integer> degree(K vertex, String type) {
+		return degree(vertex, true, type);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> areRelated(K from, K to) {
+		return relationsTo(from, true, to).thenApply(relationIds -> relationIds != null && relationIds.length > 0);
+	}
+
+	@Override
+	public CompletableFuture<List<K>> kHop(K from, int hops, String type) {
+		Set<K> reached = new LinkedHashSet<>();
+		reached.add(from);
+		return hop(new ArrayList<>(reached), hops, type, reached).thenApply(v -> {
+			List<K> vertices = new ArrayList<>(reached);
+			vertices.remove(0);
+			return vertices;
+		});
+	}
+
+	/*
+	 * Expands the frontier on every partition holding some of it, then goes on
+	 * with the vertices not reached before
+	 */
+	private CompletableFuture<Void> hop(List<K> frontier, int hopsLeft, String type, Set<K> reached) {
+		if (hopsLeft == 0 || frontier.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		List<CompletableFuture<List<Object>>> expansions = new ArrayList<>();
+		byPartition(frontier).forEach((partitionId, vertices) -> expansions
+				.add(getProxyClient().applyOn(partitionId, service -> service.expand(vertices, true, type))));
+		return CompletableFuture.allOf(expansions.toArray(new CompletableFuture[0])).thenCompose(v -> {
+			List<K> next = new ArrayList<>();
+			for (CompletableFuture<List<Object>> expansion : expansions) {
+				for (Object vertex : expansion.join()) {
+					if (reached.add((K) vertex)) {
+						next.add((K) vertex);
+					}
+				}
+			}
+			return hop(next, hopsLeft - 1, type, reached);
+		});
+	}
+
+	private Map<PartitionId, List<Object>> byPartition(Collection<K> vertices) {
+		Map<PartitionId, List<Object>> byPartition = new HashMap<>();
+		for (K vertex : vertices) {
+			byPartition.computeIfAbsent(getProxyClient().getPartitionId((Object) vertex), id -> new ArrayList<>())
+					.add(vertex);
+		}
+		return byPartition;
+	}
+
+	@Override
+	public CompletableFuture<Void> addEdges(K vertex, boolean outgoing, Edges<K> edges, boolean replace) {
+		return partition(vertex).accept(service -> service.addEdges(vertex, outgoing, (Edges<Object>) edges, replace));
+	}
+
+	@Override
+	public CompletableFuture<Integer> removeEdges(K vertex, boolean outgoing, long[] relationIds) {
+		return applyBy(vertex, service -> service.removeEdges(vertex, outgoing, relationIds));
+	}
+
+	@Override
+	public CompletableFuture<Edges<K>> removeEdges(K vertex, boolean outgoing) {
+		return applyBy(vertex, service -> (Edges<K>) service.removeVertex(vertex, outgoing));
+	}
+
+	@Override
+	public CompletableFuture<Edges<K>> edges(K vertex, boolean outgoing, String type) {
+		return applyBy(vertex, service -> (Edges<K>) service.edges(vertex, outgoing, type));
+	}
+
+	@Override
+	public CompletableFuture<Map<K, Edges<K>>> edges(Collection<K> vertices, boolean outgoing, String type) {
+		List<CompletableFuture<Map<Object, Edges<Object>>>> reads = new ArrayList<>();
+		byPartition(vertices).forEach((partitionId, keys) -> reads
+				.add(getProxyClient().applyOn(partitionId, service -> service.allEdges(keys, outgoing, type))));
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenApply(v -> {
+			Map<K, Edges<K>> edges = new HashMap<>();
+			for (CompletableFuture<Map<Object, Edges<Object>>> read : reads) {
+				read.join().forEach((vertex, vertexEdges) -> edges.put((K) vertex, (Edges<K>) (Edges<?>) vertexEdges));
+			}
+			return edges;
+		});
+	}
+
+	@Override
+	public CompletableFuture<long[]> relationsTo(K vertex, boolean outgoing, K neighbour) {
+		return applyBy(vertex, service -> service.relationsTo(vertex, outgoing, neighbour));
+	}
+
+	@Override
+	public CompletableFuture<Integer> degree(K vertex, boolean outgoing, String type) {
+		return applyBy(vertex, service -> service.degree(vertex, outgoing, type));
+	}
+
+	@Override
+	public List<PartitionId> partitions() {
+		List<PartitionId> partitions = new ArrayList<>(getProxyClient().getPartitionIds());
+		Collections.sort(partitions);
+		return partitions;
+	}
+
+	@Override
+	public CompletableFuture<EdgeScan<K>> scan(PartitionId partition, boolean outgoing, long position, int limit) {
+		return getProxyClient().applyOn(partition,
+				service -> (EdgeScan<K>) (EdgeScan<?>) service.scan(outgoing, position, limit));
+	}
+
+	@Override
+	public CompletableFuture<AsyncGraphPrimitive<K>> connect() {
+		return super.connect()
+				.thenCompose(v -> CompletableFuture.allOf(getProxyClient().getPartitions().stream()
+						.map(ProxySession::connect).toArray(CompletableFuture[]::new)))
+				.thenApply(v -> this);
+	}
+
+	@Override
+	public GraphPrimitive<K> sync(Duration operationTimeout) {
+		return new BlockingGraphPrimitive<>(this, operationTimeout.toMillis());
+	}
+}
@@ -0,0 +1,76 @@
+package com.graphdb.primitive;
+
+import java.util.List;
+import java.util.Map;
+
+import io.atomix.primitive.operation.Command;
+import io.atomix.primitive.operation.Query;
+
+/*
+ * Operations of the GraphPrimitive state machine of one partition. A partition
+ * holds the outgoing and incoming edges of the vertices it owns, an edge is
+ * written to the partition of each of its end points. Vertices are the keys
+ * of the graph, encoded with the GraphSerializers. A null type matches every
+ * type.
+ */
+public interface GraphPrimitiveService {
+
+	/*
+	 * Adds the edges, those whose relation id the vertex already has in that
+	 * direction are left as they are. With replace, the edges the vertex had in
+	 * that direction are removed first.
+	 */
+	@Command
+	void addEdges(Object vertex, boolean outgoing, Edges<Object> edges, boolean replace);
+
+	/*
+	 * @return: The number of edges removed
+	 */
+	@Command
+	int removeEdges(Object vertex, boolean outgoing, long[] relationIds);
+
+	/*
+	 * @return: All the edges the vertex had in that direction, null if none, so
+	 * that the other end points can be cleaned up
+	 */
+	@Command
+	Edges<Object> removeVertex(Object vertex, boolean outgoing);
+
+	/*
+	 * @return: The edges of the vertex of the type, null if the vertex has no
+	 * edges in that direction
+	 */
+	@Query
+	Edges<Object> edges(Object vertex, boolean outgoing, String type);
+
+	/*
+	 * Batched edges of the vertices of this partition, vertices without edges
+	 * in that direction are left out
+	 */
+	@Query
+	Map<Object, Edges<Object>> allEdges(List<Object> vertices, boolean outgoing, String type);
+
+	/*
+	 * @return: The ids of the relations between the vertex and the neighbour,
+	 * null if the vertex has no edges in that direction
+	 */
+	@Query
+	long[] relationsTo(Object vertex, boolean outgoing, Object neighbour);
+
+	@Query
+	int degree(Object vertex, boolean outgoing, String type);
+
+	/*
+	 * @return: The distinct neighbours of all the given vertices of this
+	 * partition, one hop of a k-hop expansion
+	 */
+	@Query
+	List<Object> expand(List<Object> vertices, boolean outgoing, String type);
+
+	/*
+	 * Edges of the vertices of this partition in that direction, at most limit
+	 * vertices from the given position, 0 for the first batch
+	 */
+	@Query
+	EdgeScan<Object> scan(boolean outgoing, long position, int limit);
+}
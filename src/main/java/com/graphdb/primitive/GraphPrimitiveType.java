@@ -0,0 +1,60 @@
+package com.graphdb.primitive;
+
+import com.graphdb.model.GraphSerializers;
+
+import io.atomix.primitive.PrimitiveManagementService;
+import io.atomix.primitive.PrimitiveType;
+import io.atomix.primitive.service.PrimitiveService;
+import io.atomix.primitive.service.ServiceConfig;
+import io.atomix.utils.serializer.Namespace;
+
+/*
+ * Atomix type of GraphPrimitive. Atomix finds it on the classpath of every
+ * member, the members of the partition group must all have it to run the
+ * state machine. A GraphPrimitive is built with
+ * atomix.primitiveBuilder(name, GraphPrimitiveType.instance()). Vertex keys
+ * and operations are encoded with GraphSerializers.NAMESPACE, so keys can be of
+ * any type a GraphModelImpl accepts.
+ */
+public class GraphPrimitiveType<K>
+		implements PrimitiveType<GraphPrimitiveBuilder<K>, GraphPrimitiveConfig, GraphPrimitive<K>> {
+
+	private final static String NAME = "graphdb-graph";
+	private final static GraphPrimitiveType<?> INSTANCE = new GraphPrimitiveType<>();
+
+	@SuppressWarnings("unchecked")
+	public static <K> GraphPrimitiveType<K> instance() {
+		return (GraphPrimitiveType<K>) INSTANCE;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public Namespace namespace() {
+		return GraphSerializers.NAMESPACE;
+	}
+
+	@Override
+	public PrimitiveService newService(ServiceConfig config) {
+		return new DefaultGraphPrimitiveService();
+	}
+
+	@Override
+	public GraphPrimitiveConfig newConfig() {
+		return new GraphPrimitiveConfig();
+	}
+
+	@Override
+	public GraphPrimitiveBuilder<K> newBuilder(String name, GraphPrimitiveConfig config,
+			PrimitiveManagementService managementService) {
+		return new GraphPrimitiveBuilder<>(name, config, managementService);
+	}
+
+	@Override
+	public String toString() {
+		return NAME;
+	}
+}
@@ -0,0 +1,130 @@
+package com.graphdb.primitive;
+
+import java.util.Arrays;
+
+/*
+ * Open addressing hash map from long keys to objects, without boxing the keys.
+ * Linear probing, the table is doubled at a load factor of one half and a
+ * removal shifts the following keys of the cluster back into the free slot.
+ * Not thread safe, it lives inside a state machine.
+ */
+class LongHashMap<T> {
+
+	interface Visitor<T> {
+		void visit(long key, T value);
+	}
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	LongHashMap() {
+		this(16);
+	}
+
+	LongHashMap(int capacity) {
+		int tableSize = Integer.highestOneBit(Math.max(capacity * 2 - 1, 16)) * 2;
+		keys = new long[tableSize];
+		values = new Object[tableSize];
+		mask = tableSize - 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	T get(long key) {
+		for (int i = slot(key); values[i] != null; i = i + 1 & mask) {
+			if (keys[i] == key) {
+				return (T) values[i];
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * @return: The previous value of the key, null if it had none
+	 */
+	@SuppressWarnings("unchecked")
+	T put(long key, T value) {
+		int i = slot(key);
+		for (; values[i] != null; i = i + 1 & mask) {
+			if (keys[i] == key) {
+				T previous = (T) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			resize();
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	T remove(long key) {
+		int i = slot(key);
+		while (values[i] != null && keys[i] != key) {
+			i = i + 1 & mask;
+		}
+		if (values[i] == null) {
+			return null;
+		}
+		T removed = (T) values[i];
+		values[i] = null;
+		size--;
+
+		// Moves back the keys that probed past the freed slot
+		for (int j = i + 1 & mask; values[j] != null; j = j + 1 & mask) {
+			int home = slot(keys[j]);
+			if ((j - home & mask) >= (j - i & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return removed;
+	}
+
+	@SuppressWarnings("unchecked")
+	void forEach(Visitor<T> visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) {
+				visitor.visit(keys[i], (T) values[i]);
+			}
+		}
+	}
+
+	void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int j = slot(oldKeys[i]);
+				while (values[j] != null) {
+					j = j + 1 & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
@@ -1,9 +1,20 @@
 package com.graphdb.properties;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Properties;
 
+/*
+ * Defaults of a member, overridden by the properties file named by the
+ * graphdb.config system property when it is set. See StorageProfile for the
+ * storage and partitioning settings.
+ */
 public class GraphDBProperties {
 
+	public final static String CONFIG_FILE = "graphdb.config";
+
 	private static Properties props;
 
 	public static Properties getGraphDBProperties() {
@@ -11,6 +22,21 @@ public class GraphDBProperties {
 		props.setProperty("memberNames", "member1,member2,member3,member4");
 		props.setProperty("managementData", System.getProperty("user.dir") + "/clusterDir/clusterMeta/");
 		props.setProperty("propertyData", System.getProperty("user.dir") + "/clusterDir/data/");
+		// Graph served by the QueryServer of a member, on the member port plus the offset
+		props.setProperty("graphName", "multimap");
+		props.setProperty("queryPortOffset", "1000");
+		String configFile = System.getProperty(CONFIG_FILE);
+		if (configFile != null) {
+			try (InputStream in = new FileInputStream(configFile)) {
+				props.load(in);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot read the configuration " + configFile, e);
+			}
+		}
 		return props;
 	}
+
+	public static StorageProfile getStorageProfile() {
+		return StorageProfile.load(getGraphDBProperties());
+	}
 }
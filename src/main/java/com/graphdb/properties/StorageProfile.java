@@ -0,0 +1,229 @@
+package com.graphdb.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import io.atomix.storage.StorageLevel;
+
+/*
+ * Storage and performance settings of the Raft partition groups of a member,
+ * read from the GraphDBProperties and validated as a whole so that a member
+ * with a bad configuration fails at startup with every problem listed. The
+ * defaults are those of Atomix, disk storage without a flush on commit.
+ *
+ * Sizes are in bytes, with an optional KB, MB or GB suffix. flushOnCommit
+ * trades write throughput for durability: every committed entry is flushed to
+ * the segment before the write completes. The free buffers are the fractions
+ * of disk and memory under which the Raft logs are compacted, dynamic
+ * compaction lets a busy member postpone it.
+ */
+public class StorageProfile {
+
+	private final static Logger logger = Logger.getLogger(StorageProfile.class);
+
+	public final static String HOST = "host";
+	public final static String BASE_PORT = "basePort";
+	public final static String NUM_PARTITIONS = "numPartitions";
+	public final static String PARTITION_SIZE = "partitionSize";
+	public final static String STORAGE_LEVEL = "storageLevel";
+	public final static String SEGMENT_SIZE = "segmentSize";
+	public final static String MAX_ENTRY_SIZE = "maxEntrySize";
+	public final static String FLUSH_ON_COMMIT = "flushOnCommit";
+	public final static String DYNAMIC_COMPACTION = "dynamicCompaction";
+	public final static String FREE_DISK_BUFFER = "freeDiskBuffer";
+	public final static String FREE_MEMORY_BUFFER = "freeMemoryBuffer";
+
+	private final static long KB = 1024;
+
+	private final String host;
+	private final int basePort;
+	private final int numPartitions;
+	private final int partitionSize;
+	private final StorageLevel storageLevel;
+	private final long segmentSize;
+	private final long maxEntrySize;
+	private final boolean flushOnCommit;
+	private final boolean dynamicCompaction;
+	private final double freeDiskBuffer;
+	private final double freeMemoryBuffer;
+
+	private StorageProfile(Parser parser, int members) {
+		host = parser.string(HOST, "localhost");
+		basePort = (int) parser.number(BASE_PORT, "8800", 1, 65536 - Math.max(members, 1));
+		numPartitions = (int) parser.number(NUM_PARTITIONS, "10", 1, 1024);
+		partitionSize = (int) parser.number(PARTITION_SIZE, "2", 1, Math.max(members, 1));
+		storageLevel = parser.level(STORAGE_LEVEL, "disk");
+		// A segment is addressed with int positions
+		segmentSize = parser.size(SEGMENT_SIZE, "32MB", KB, Integer.MAX_VALUE);
+		maxEntrySize = parser.size(MAX_ENTRY_SIZE, "1MB", KB, Integer.MAX_VALUE);
+		flushOnCommit = parser.bool(FLUSH_ON_COMMIT, "false");
+		dynamicCompaction = parser.bool(DYNAMIC_COMPACTION, "true");
+		freeDiskBuffer = parser.fraction(FREE_DISK_BUFFER, "0.2");
+		freeMemoryBuffer = parser.fraction(FREE_MEMORY_BUFFER, "0.2");
+		if (maxEntrySize > segmentSize) {
+			parser.errors.add(String.format("%s %s is larger than %s %s", MAX_ENTRY_SIZE, maxEntrySize,
+					SEGMENT_SIZE, segmentSize));
+		}
+	}
+
+	/*
+	 * @throws IllegalArgumentException: Listing every invalid setting
+	 */
+	public static StorageProfile load(Properties props) {
+		String memberNames = props.getProperty("memberNames", "");
+		int members = memberNames.isEmpty() ? 0 : memberNames.split(",").length;
+		Parser parser = new Parser(props);
+		StorageProfile profile = new StorageProfile(parser, members);
+		if (!parser.errors.isEmpty()) {
+			throw new IllegalArgumentException("Invalid storage profile: " + String.join("; ", parser.errors));
+		}
+		// By name, StorageLevel.MEMORY is deprecated but still a level one can configure
+		if (profile.storageLevel.name().equals("MEMORY")) {
+			logger.warn("Raft logs are kept in memory, a member restarting recovers them from the other members only");
+		}
+		logger.info("Storage profile " + profile);
+		return profile;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	/*
+	 * Port of the first member, the members listen on consecutive ports
+	 */
+	public int getBasePort() {
+		return basePort;
+	}
+
+	public int getNumPartitions() {
+		return numPartitions;
+	}
+
+	public int getPartitionSize() {
+		return partitionSize;
+	}
+
+	public StorageLevel getStorageLevel() {
+		return storageLevel;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	public boolean isFlushOnCommit() {
+		return flushOnCommit;
+	}
+
+	public boolean isDynamicCompaction() {
+		return dynamicCompaction;
+	}
+
+	public double getFreeDiskBuffer() {
+		return freeDiskBuffer;
+	}
+
+	public double getFreeMemoryBuffer() {
+		return freeMemoryBuffer;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s:%s, %s partitions of %s, %s storage, segments of %s bytes, entries up to %s bytes, "
+				+ "flushOnCommit %s, dynamicCompaction %s, freeDiskBuffer %s, freeMemoryBuffer %s", host, basePort,
+				numPartitions, partitionSize, storageLevel, segmentSize, maxEntrySize, flushOnCommit,
+				dynamicCompaction, freeDiskBuffer, freeMemoryBuffer);
+	}
+
+	/*
+	 * Reads the settings, collecting the problems instead of failing on the first
+	 * one
+	 */
+	private static class Parser {
+
+		private final Properties props;
+		private final List<String> errors = new ArrayList<>();
+
+		Parser(Properties props) {
+			this.props = props;
+		}
+
+		String string(String key, String defaultValue) {
+			return props.getProperty(key, defaultValue).trim();
+		}
+
+		long number(String key, String defaultValue, long min, long max) {
+			String value = string(key, defaultValue);
+			try {
+				return checkRange(key, Long.parseLong(value), min, max);
+			} catch (NumberFormatException e) {
+				errors.add(String.format("%s '%s' is not a number", key, value));
+				return min;
+			}
+		}
+
+		long size(String key, String defaultValue, long min, long max) {
+			String raw = string(key, defaultValue);
+			String value = raw.toUpperCase(Locale.ROOT);
+			long unit = 1;
+			if (value.endsWith("KB") || value.endsWith("MB") || value.endsWith("GB")) {
+				unit = value.endsWith("KB") ? KB : value.endsWith("MB") ? KB * KB : KB * KB * KB;
+				value = value.substring(0, value.length() - 2).trim();
+			}
+			try {
+				return checkRange(key, Long.parseLong(value) * unit, min, max);
+			} catch (NumberFormatException e) {
+				errors.add(String.format("%s '%s' is not a size", key, raw));
+				return min;
+			}
+		}
+
+		double fraction(String key, String defaultValue) {
+			String value = string(key, defaultValue);
+			try {
+				double fraction = Double.parseDouble(value);
+				if (!(fraction > 0 && fraction < 1)) {
+					errors.add(String.format("%s %s is not between 0 and 1", key, value));
+				}
+				return fraction;
+			} catch (NumberFormatException e) {
+				errors.add(String.format("%s '%s' is not a number", key, value));
+				return 0;
+			}
+		}
+
+		boolean bool(String key, String defaultValue) {
+			String value = string(key, defaultValue);
+			if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+				errors.add(String.format("%s '%s' is neither true nor false", key, value));
+			}
+			return Boolean.parseBoolean(value);
+		}
+
+		StorageLevel level(String key, String defaultValue) {
+			String value = string(key, defaultValue);
+			try {
+				return StorageLevel.valueOf(value.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				errors.add(String.format("%s '%s' is not one of disk, mapped or memory", key, value));
+				return StorageLevel.DISK;
+			}
+		}
+
+		private long checkRange(String key, long value, long min, long max) {
+			if (value < min || value > max) {
+				errors.add(String.format("%s %s is not between %s and %s", key, value, min, max));
+			}
+			return value;
+		}
+	}
+}
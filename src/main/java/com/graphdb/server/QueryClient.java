@@ -0,0 +1,253 @@
+package com.graphdb.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Optional;
+import com.graphdb.model.AsyncGraph;
+import com.graphdb.model.Path;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+import com.graphdb.model.RelationPage;
+import com.graphdb.model.WeightedPath;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/*
+ * Thin client of a QueryServer, an AsyncGraph over one connection that does
+ * not join the cluster. Requests are pipelined, any number of them can be in
+ * flight from any number of threads. The futures complete on the network
+ * thread of the client, callbacks must not block. A failed query completes
+ * with a QueryException, and so do the pending ones once the connection is
+ * lost.
+ */
+public class QueryClient<K, V> implements AsyncGraph<K, V>, AutoCloseable {
+
+	private final EventLoopGroup group;
+	private final Channel channel;
+	private final AtomicLong requestIds = new AtomicLong();
+	private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+
+	private QueryClient(String host, int port) {
+		group = new NioEventLoopGroup(1);
+		Bootstrap bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true).handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel channel) {
+						QueryProtocol.framing(channel.pipeline());
+						channel.pipeline().addLast(new ResponseHandler());
+					}
+				});
+		try {
+			channel = bootstrap.connect(host, port).syncUninterruptibly().channel();
+		} catch (RuntimeException e) {
+			group.shutdownGracefully();
+			throw e;
+		}
+	}
+
+	public static <K, V> QueryClient<K, V> connect(String host, int port) {
+		return new QueryClient<>(host, port);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> send(QueryOp op, Object... args) {
+		long requestId = requestIds.incrementAndGet();
+		CompletableFuture<Object> response = new CompletableFuture<>();
+		pending.put(requestId, response);
+		if (!channel.isActive()) {
+			failPending();
+		} else {
+			channel.writeAndFlush(QueryProtocol.request(channel.alloc(), requestId, op, args))
+					.addListener(write -> {
+						if (!write.isSuccess() && pending.remove(requestId) != null) {
+							response.completeExceptionally(
+									new QueryException("Cannot send " + op + ": " + write.cause()));
+						}
+					});
+		}
+		return (CompletableFuture<T>) response;
+	}
+
+	private void failPending() {
+		for (Long requestId : new ArrayList<>(pending.keySet())) {
+			CompletableFuture<Object> response = pending.remove(requestId);
+			if (response != null) {
+				response.completeExceptionally(new QueryException("Connection to the query server is closed"));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		channel.close().syncUninterruptibly();
+		group.shutdownGracefully();
+		failPending();
+	}
+
+	@Override
+	public CompletableFuture<Boolean> addNode(K key, V value) {
+		return send(QueryOp.ADD_NODE, key, value);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeNode(K key) {
+		return send(QueryOp.REMOVE_NODE, key);
+	}
+
+	@Override
+	public CompletableFuture<Optional<V>> getNode(K key) {
+		return this.<V>send(QueryOp.GET_NODE, key).thenApply(Optional::fromNullable);
+	}
+
+	@Override
+	public CompletableFuture<Map<K, V>> getNodes(Collection<K> keys) {
+		return send(QueryOp.GET_NODES, new ArrayList<>(keys));
+	}
+
+	@Override
+	public CompletableFuture<Long> addRelation(K from, K to, String type, V value, boolean biDirectional) {
+		return send(QueryOp.ADD_RELATION, from, to, type, value, biDirectional);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeRelation(long id) {
+		return send(QueryOp.REMOVE_RELATION, id);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> removeRelation(K from, K to, String type) {
+		return send(QueryOp.REMOVE_RELATION_BY_TYPE, from, to, type);
+	}
+
+	@Override
+	public CompletableFuture<Relation> getRelations(long relationId) {
+		return send(QueryOp.GET_RELATION, relationId);
+	}
+
+	@Override
+	public CompletableFuture<Map<Long, Relation>> getRelations(Collection<Long> relationIds) {
+		return send(QueryOp.GET_RELATIONS_BY_ID, new ArrayList<>(relationIds));
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getRelations(K from, K to) {
+		return send(QueryOp.GET_RELATIONS, from, to);
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getRelationType(K from, K to) {
+		return send(QueryOp.GET_RELATION_TYPE, from, to);
+	}
+
+	@Override
+	public CompletableFuture<Long> getNodeOutDegree(K from) {
+		return send(QueryOp.GET_NODE_OUT_DEGREE, from);
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from) {
+		return send(QueryOp.GET_OUTGOING_RELATIONS, from, null);
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getOutgoingRelations(K from, String type) {
+		return send(QueryOp.GET_OUTGOING_RELATIONS, from, type);
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getIncomingRelations(K from) {
+		return send(QueryOp.GET_INCOMING_RELATIONS, from, null);
+	}
+
+	@Override
+	public CompletableFuture<List<Relation>> getIncomingRelations(K from, String type) {
+		return send(QueryOp.GET_INCOMING_RELATIONS, from, type);
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getOutgoingRelations(K from, String type, String cursor, int pageSize) {
+		return send(QueryOp.GET_OUTGOING_RELATIONS_PAGE, from, type, cursor, pageSize);
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getIncomingRelations(K to, String type, String cursor, int pageSize) {
+		return send(QueryOp.GET_INCOMING_RELATIONS_PAGE, to, type, cursor, pageSize);
+	}
+
+	@Override
+	public CompletableFuture<RelationPage> getRelations(K from, K to, String cursor, int pageSize) {
+		return send(QueryOp.GET_RELATIONS_PAGE, from, to, cursor, pageSize);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> areRelated(K from, K to) {
+		return send(QueryOp.ARE_RELATED, from, to);
+	}
+
+	@Override
+	public CompletableFuture<Path<K>> search(K from, K to, int maxDepth, int maxVisited) {
+		return send(QueryOp.SEARCH, from, to, maxDepth, maxVisited);
+	}
+
+	/*
+	 * Weight and heuristic functions cannot be sent, a query with either fails
+	 */
+	@Override
+	public CompletableFuture<WeightedPath<K>> shortestPath(PathQuery<K> query) {
+		if (query.getWeight() != null || query.getHeuristic() != null) {
+			CompletableFuture<WeightedPath<K>> failed = new CompletableFuture<>();
+			failed.completeExceptionally(
+					new QueryException("Weight and heuristic functions cannot be sent to a query server"));
+			return failed;
+		}
+		return send(QueryOp.SHORTEST_PATH, query);
+	}
+
+	private class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+			long requestId = frame.readLong();
+			byte status = frame.readByte();
+			CompletableFuture<Object> response = pending.remove(requestId);
+			if (response == null) {
+				return;
+			}
+			if (status == QueryProtocol.OK) {
+				try {
+					response.complete(QueryProtocol.SERIALIZER.decode(QueryProtocol.payload(frame)));
+				} catch (RuntimeException e) {
+					response.completeExceptionally(e);
+				}
+			} else {
+				response.completeExceptionally(new QueryException(QueryProtocol.message(frame)));
+			}
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) {
+			failPending();
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			ctx.close();
+		}
+	}
+}
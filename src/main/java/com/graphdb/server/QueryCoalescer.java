@@ -0,0 +1,227 @@
+package com.graphdb.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.graphdb.model.AsyncGraph;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+
+/*
+ * Runs the queries of all the connections of a QueryServer against one
+ * AsyncGraph. A read identical to one still in flight, from any connection,
+ * shares its result instead of being sent again, as long as no write completed
+ * since that read was sent: a read only joins a read that started after every
+ * write acknowledged before it arrived, so that a client always reads its own
+ * writes. Writes made through other members are not seen by the server, a
+ * read arriving after one of them can still join a read issued before it.
+ * Reads of single nodes and of
+ * single relations by id are held for the coalescing window, then sent
+ * together with getNodes or getRelations, one map read per shard touched, or
+ * as soon as maxBatch of them are waiting.
+ */
+class QueryCoalescer<K, V> {
+
+	private final AsyncGraph<K, V> graph;
+	private final ScheduledExecutorService scheduler;
+	private final long windowMicros;
+	private final int maxBatch;
+
+	private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	// Writes completed so far, part of the key of the reads in flight
+	private final AtomicLong writes = new AtomicLong();
+	private final Batch<K, V> nodes;
+	private final Batch<Long, Relation> relations;
+
+	final AtomicLong requests = new AtomicLong();
+	final AtomicLong coalesced = new AtomicLong();
+	final AtomicLong batches = new AtomicLong();
+	final AtomicLong batchedReads = new AtomicLong();
+
+	QueryCoalescer(AsyncGraph<K, V> graph, ScheduledExecutorService scheduler, long windowMicros, int maxBatch) {
+		this.graph = graph;
+		this.scheduler = scheduler;
+		this.windowMicros = windowMicros;
+		this.maxBatch = maxBatch;
+		nodes = new Batch<>(graph::getNodes);
+		relations = new Batch<>(graph::getRelations);
+	}
+
+	CompletableFuture<Object> execute(QueryOp op, Object[] args) {
+		requests.incrementAndGet();
+		if (!op.isRead()) {
+			// Counted before the result is handed back to the connection
+			return write(op, args).whenComplete((value, error) -> writes.incrementAndGet());
+		}
+		List<Object> key = new ArrayList<>(args.length + 2);
+		key.add(writes.get());
+		key.add(op);
+		key.addAll(Arrays.asList(args));
+		CompletableFuture<Object> result = new CompletableFuture<>();
+		CompletableFuture<Object> shared = inFlight.putIfAbsent(key, result);
+		if (shared != null) {
+			coalesced.incrementAndGet();
+			return shared;
+		}
+		CompletableFuture<Object> read;
+		try {
+			read = read(op, args);
+		} catch (RuntimeException e) {
+			read = new CompletableFuture<>();
+			read.completeExceptionally(e);
+		}
+		read.whenComplete((value, error) -> {
+			inFlight.remove(key, result);
+			if (error != null) {
+				result.completeExceptionally(error);
+			} else {
+				result.complete(value);
+			}
+		});
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Object> read(QueryOp op, Object[] args) {
+		switch (op) {
+		case GET_NODE:
+			return nodes.get((K) args[0]).thenApply(value -> value);
+		case GET_NODES:
+			return graph.getNodes((Collection<K>) args[0]).thenApply(QueryCoalescer::map);
+		case GET_RELATION:
+			return relations.get((Long) args[0]).thenApply(relation -> relation);
+		case GET_RELATIONS_BY_ID:
+			return graph.getRelations((Collection<Long>) args[0]).thenApply(QueryCoalescer::map);
+		case GET_RELATIONS:
+			return graph.getRelations((K) args[0], (K) args[1]).thenApply(QueryCoalescer::list);
+		case GET_RELATION_TYPE:
+			return graph.getRelationType((K) args[0], (K) args[1]).thenApply(QueryCoalescer::list);
+		case GET_NODE_OUT_DEGREE:
+			return graph.getNodeOutDegree((K) args[0]).thenApply(degree -> degree);
+		case GET_OUTGOING_RELATIONS:
+			return (args[1] == null ? graph.getOutgoingRelations((K) args[0])
+					: graph.getOutgoingRelations((K) args[0], (String) args[1])).thenApply(QueryCoalescer::list);
+		case GET_INCOMING_RELATIONS:
+			return (args[1] == null ? graph.getIncomingRelations((K) args[0])
+					: graph.getIncomingRelations((K) args[0], (String) args[1])).thenApply(QueryCoalescer::list);
+		case ARE_RELATED:
+			return graph.areRelated((K) args[0], (K) args[1]).thenApply(related -> related);
+		case SEARCH:
+			return graph.search((K) args[0], (K) args[1], (Integer) args[2], (Integer) args[3])
+					.thenApply(path -> path);
+		case GET_OUTGOING_RELATIONS_PAGE:
+			return graph.getOutgoingRelations((K) args[0], (String) args[1], (String) args[2], (Integer) args[3])
+					.thenApply(page -> page);
+		case GET_INCOMING_RELATIONS_PAGE:
+			return graph.getIncomingRelations((K) args[0], (String) args[1], (String) args[2], (Integer) args[3])
+					.thenApply(page -> page);
+		case GET_RELATIONS_PAGE:
+			return graph.getRelations((K) args[0], (K) args[1], (String) args[2], (Integer) args[3])
+					.thenApply(page -> page);
+		case SHORTEST_PATH:
+			return graph.shortestPath((PathQuery<K>) args[0]).thenApply(path -> path);
+		default:
+			throw new IllegalArgumentException(op + " is not a read");
+		}
+	}
+
+	/*
+	 * Copies of the results into the collections GraphSerializers writes
+	 * compactly, null stays null
+	 */
+	private static Object list(List<?> list) {
+		return list == null ? null : new ArrayList<>(list);
+	}
+
+	private static Object map(Map<?, ?> map) {
+		return map == null ? null : new HashMap<>(map);
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompletableFuture<Object> write(QueryOp op, Object[] args) {
+		switch (op) {
+		case ADD_NODE:
+			return graph.addNode((K) args[0], (V) args[1]).thenApply(added -> added);
+		case REMOVE_NODE:
+			return graph.removeNode((K) args[0]).thenApply(removed -> removed);
+		case ADD_RELATION:
+			return graph.addRelation((K) args[0], (K) args[1], (String) args[2], (V) args[3], (Boolean) args[4])
+					.thenApply(id -> id);
+		case REMOVE_RELATION:
+			return graph.removeRelation((Long) args[0]).thenApply(removed -> removed);
+		case REMOVE_RELATION_BY_TYPE:
+			return graph.removeRelation((K) args[0], (K) args[1], (String) args[2]).thenApply(removed -> removed);
+		default:
+			throw new IllegalArgumentException(op + " is not a write");
+		}
+	}
+
+	/*
+	 * Single reads waiting to be sent together
+	 */
+	private class Batch<I, O> {
+
+		private final Function<Collection<I>, CompletableFuture<Map<I, O>>> readAll;
+		private Map<I, List<CompletableFuture<O>>> pending = new HashMap<>();
+
+		Batch(Function<Collection<I>, CompletableFuture<Map<I, O>>> readAll) {
+			this.readAll = readAll;
+		}
+
+		CompletableFuture<O> get(I id) {
+			CompletableFuture<O> result = new CompletableFuture<>();
+			boolean first;
+			boolean full;
+			synchronized (this) {
+				first = pending.isEmpty();
+				pending.computeIfAbsent(id, k -> new ArrayList<>(1)).add(result);
+				full = pending.size() >= maxBatch;
+			}
+			if (full) {
+				flush();
+			} else if (first) {
+				scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+			}
+			return result;
+		}
+
+		void flush() {
+			Map<I, List<CompletableFuture<O>>> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = new HashMap<>();
+			}
+			batches.incrementAndGet();
+			batchedReads.addAndGet(batch.size());
+			CompletableFuture<Map<I, O>> read;
+			try {
+				read = readAll.apply(batch.keySet());
+			} catch (RuntimeException e) {
+				read = new CompletableFuture<>();
+				read.completeExceptionally(e);
+			}
+			read.whenComplete((values, error) -> batch.forEach((id, results) -> {
+				for (CompletableFuture<O> result : results) {
+					if (error != null) {
+						result.completeExceptionally(error);
+					} else {
+						result.complete(values.get(id));
+					}
+				}
+			}));
+		}
+	}
+}
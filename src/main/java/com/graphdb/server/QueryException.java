@@ -0,0 +1,14 @@
+package com.graphdb.server;
+
+/*
+ * Failure of a query reported by the QueryServer, or the loss of the
+ * connection it was sent on
+ */
+public class QueryException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public QueryException(String message) {
+		super(message);
+	}
+}
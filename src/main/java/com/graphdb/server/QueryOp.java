@@ -0,0 +1,49 @@
+package com.graphdb.server;
+
+/*
+ * Operations of the query protocol, sent as their ordinal. The arguments of
+ * each are those of the AsyncGraph method of the same name, a null type of
+ * GET_OUTGOING_RELATIONS and GET_INCOMING_RELATIONS matches every type. Reads
+ * are coalesced by the server, writes are passed on as they come.
+ */
+public enum QueryOp {
+	GET_NODE(true),
+	GET_NODES(true),
+	GET_RELATION(true),
+	GET_RELATIONS_BY_ID(true),
+	GET_RELATIONS(true),
+	GET_RELATION_TYPE(true),
+	GET_NODE_OUT_DEGREE(true),
+	GET_OUTGOING_RELATIONS(true),
+	GET_INCOMING_RELATIONS(true),
+	ARE_RELATED(true),
+	SEARCH(true),
+	GET_OUTGOING_RELATIONS_PAGE(true),
+	GET_INCOMING_RELATIONS_PAGE(true),
+	GET_RELATIONS_PAGE(true),
+	SHORTEST_PATH(true),
+	ADD_NODE(false),
+	REMOVE_NODE(false),
+	ADD_RELATION(false),
+	REMOVE_RELATION(false),
+	REMOVE_RELATION_BY_TYPE(false);
+
+	private final static QueryOp[] OPS = values();
+
+	private final boolean read;
+
+	QueryOp(boolean read) {
+		this.read = read;
+	}
+
+	public boolean isRead() {
+		return read;
+	}
+
+	static QueryOp of(int code) {
+		if (code < 0 || code >= OPS.length) {
+			throw new IllegalArgumentException("Unknown query operation " + code);
+		}
+		return OPS[code];
+	}
+}
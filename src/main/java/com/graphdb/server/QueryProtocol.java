@@ -0,0 +1,76 @@
+package com.graphdb.server;
+
+import java.nio.charset.StandardCharsets;
+
+import com.graphdb.model.GraphSerializers;
+
+import io.atomix.utils.serializer.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+/*
+ * Binary framing shared by QueryServer and QueryClient. Every message is a
+ * frame of its length as an int followed by:
+ *
+ * request: request id (long), QueryOp ordinal (byte), arguments
+ *
+ * response: request id (long), status (byte), result or error message
+ *
+ * The arguments, an Object[], and the results are encoded with the
+ * GraphSerializers of the stored values. A client pipelines its requests on
+ * one connection and the server answers each as soon as it completes, in any
+ * order, the request id pairs them up.
+ */
+final class QueryProtocol {
+
+	final static int MAX_FRAME = 64 * 1024 * 1024;
+
+	final static byte OK = 0;
+	final static byte ERROR = 1;
+
+	// Writes are flushed together, at most this many are held back
+	private final static int FLUSH_LIMIT = 256;
+
+	final static Serializer SERIALIZER = GraphSerializers.SERIALIZER;
+
+	private QueryProtocol() {
+	}
+
+	static void framing(ChannelPipeline pipeline) {
+		pipeline.addLast(new FlushConsolidationHandler(FLUSH_LIMIT, true));
+		pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME, 0, 4, 0, 4));
+		pipeline.addLast(new LengthFieldPrepender(4));
+	}
+
+	static ByteBuf request(ByteBufAllocator allocator, long requestId, QueryOp op, Object[] args) {
+		byte[] payload = SERIALIZER.encode(args);
+		ByteBuf buffer = allocator.buffer(9 + payload.length);
+		return buffer.writeLong(requestId).writeByte(op.ordinal()).writeBytes(payload);
+	}
+
+	static ByteBuf response(ByteBufAllocator allocator, long requestId, Object result) {
+		byte[] payload = SERIALIZER.encode(result);
+		ByteBuf buffer = allocator.buffer(9 + payload.length);
+		return buffer.writeLong(requestId).writeByte(OK).writeBytes(payload);
+	}
+
+	static ByteBuf error(ByteBufAllocator allocator, long requestId, String message) {
+		byte[] payload = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+		ByteBuf buffer = allocator.buffer(9 + payload.length);
+		return buffer.writeLong(requestId).writeByte(ERROR).writeBytes(payload);
+	}
+
+	static byte[] payload(ByteBuf frame) {
+		byte[] payload = new byte[frame.readableBytes()];
+		frame.readBytes(payload);
+		return payload;
+	}
+
+	static String message(ByteBuf frame) {
+		return new String(payload(frame), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,198 @@
+package com.graphdb.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.graphdb.model.AsyncGraph;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/*
+ * Binary query server of a member, so that light clients query the graph with
+ * a QueryClient instead of joining the cluster. See QueryProtocol for the
+ * framing. The queries of all the connections go through one QueryCoalescer:
+ * identical reads in flight are answered once, single node and relation reads
+ * are batched per shard. Responses are written as they complete, flushes are
+ * consolidated, and a connection with maxInFlight requests pending is not read
+ * until half of them are answered.
+ */
+public class QueryServer<K, V> {
+
+	private final static Logger logger = Logger.getLogger(QueryServer.class);
+
+	public final static long DEFAULT_COALESCE_WINDOW_MICROS = 200;
+	public final static int DEFAULT_MAX_BATCH = 256;
+	public final static int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+	private final AsyncGraph<K, V> graph;
+	private final int port;
+	private long windowMicros = DEFAULT_COALESCE_WINDOW_MICROS;
+	private int maxBatch = DEFAULT_MAX_BATCH;
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private QueryCoalescer<K, V> coalescer;
+	private ScheduledExecutorService scheduler;
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
+	private Channel serverChannel;
+
+	public QueryServer(AsyncGraph<K, V> graph, int port) {
+		this.graph = graph;
+		this.port = port;
+	}
+
+	/*
+	 * How long single reads wait for others to be batched with, 0 sends them as
+	 * soon as the scheduler runs
+	 */
+	public QueryServer<K, V> withCoalesceWindow(long micros) {
+		this.windowMicros = micros;
+		return this;
+	}
+
+	public QueryServer<K, V> withMaxBatch(int maxBatch) {
+		this.maxBatch = maxBatch;
+		return this;
+	}
+
+	public QueryServer<K, V> withMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	public QueryServer<K, V> withThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	public void start() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "graphdb-query-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		coalescer = new QueryCoalescer<>(graph, scheduler, windowMicros, maxBatch);
+		bossGroup = new NioEventLoopGroup(1);
+		workerGroup = new NioEventLoopGroup(threads);
+		ServerBootstrap bootstrap = new ServerBootstrap().group(bossGroup, workerGroup)
+				.channel(NioServerSocketChannel.class).childOption(ChannelOption.TCP_NODELAY, true)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel channel) {
+						QueryProtocol.framing(channel.pipeline());
+						channel.pipeline().addLast(new QueryHandler());
+					}
+				});
+		serverChannel = bootstrap.bind(port).syncUninterruptibly().channel();
+		logger.info("Query server listening on port " + port);
+	}
+
+	public void stop() {
+		if (serverChannel != null) {
+			serverChannel.close().syncUninterruptibly();
+			workerGroup.shutdownGracefully();
+			bossGroup.shutdownGracefully();
+			scheduler.shutdown();
+			serverChannel = null;
+		}
+	}
+
+	public int port() {
+		return port;
+	}
+
+	/*
+	 * Queries received since the start
+	 */
+	public long requests() {
+		return coalescer.requests.get();
+	}
+
+	/*
+	 * Reads answered with the result of an identical read in flight
+	 */
+	public long coalesced() {
+		return coalescer.coalesced.get();
+	}
+
+	/*
+	 * Batches of single node and relation reads sent, and the reads in them
+	 */
+	public long batches() {
+		return coalescer.batches.get();
+	}
+
+	public long batchedReads() {
+		return coalescer.batchedReads.get();
+	}
+
+	private class QueryHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+			long requestId = frame.readLong();
+			CompletableFuture<Object> result;
+			try {
+				QueryOp op = QueryOp.of(frame.readByte());
+				Object[] args = QueryProtocol.SERIALIZER.decode(QueryProtocol.payload(frame));
+				result = coalescer.execute(op, args);
+			} catch (RuntimeException e) {
+				logger.error("Cannot run query " + requestId, e);
+				ctx.writeAndFlush(QueryProtocol.error(ctx.alloc(), requestId, e.toString()));
+				return;
+			}
+			if (inFlight.incrementAndGet() >= maxInFlight) {
+				ctx.channel().config().setAutoRead(false);
+			}
+			result.whenComplete((value, error) -> {
+				Channel channel = ctx.channel();
+				if (error != null) {
+					Throwable cause = error instanceof CompletionException && error.getCause() != null
+							? error.getCause()
+							: error;
+					channel.writeAndFlush(QueryProtocol.error(ctx.alloc(), requestId, cause.toString()));
+				} else {
+					channel.writeAndFlush(QueryProtocol.response(ctx.alloc(), requestId, value));
+				}
+				if (inFlight.decrementAndGet() <= maxInFlight / 2) {
+					channel.eventLoop().execute(() -> resumeReading(channel));
+				}
+			});
+		}
+
+		/*
+		 * Runs on the event loop of the channel, as channelRead0 which stops the
+		 * reads, and checks the count again there so that a decrement racing with
+		 * the stop is not missed
+		 */
+		private void resumeReading(Channel channel) {
+			if (inFlight.get() <= maxInFlight / 2 && !channel.config().isAutoRead()) {
+				channel.config().setAutoRead(true);
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+			logger.warn("Closing query connection " + ctx.channel().remoteAddress(), cause);
+			ctx.close();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.graphdb.model.EmbeddedGraph;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+import com.graphdb.model.RelationPage;
+import com.graphdb.model.WeightedPath;
+
+public class EmbeddedGraphTest {
+
+	private static EmbeddedGraph<String, String> newGraph() {
+		EmbeddedGraph<String, String> graph = new EmbeddedGraph<>();
+		graph.addNode("a", "A");
+		graph.addNode("b", "B");
+		graph.addNode("c", "C");
+		return graph;
+	}
+
+	@Test
+	public void testNodesAndRelations() {
+		EmbeddedGraph<String, String> graph = newGraph();
+		assertEquals("A", graph.getNode("a").get());
+		assertFalse(graph.getNode("z").isPresent());
+		assertNull(graph.addRelation("a", "z", "knows", "az", false));
+
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		long cb = graph.addRelation("c", "b", "likes", "cb", true);
+		assertEquals("ab", graph.getRelations(ab).getValue());
+		assertTrue(graph.areRelated("a", "b"));
+		assertFalse(graph.areRelated("b", "a"));
+		// A biDirectional relation is listed in both directions
+		assertTrue(graph.areRelated("b", "c"));
+		assertEquals(Arrays.asList("likes"), graph.getRelationType("b", "c"));
+		assertEquals(1, graph.getNodeOutDegree("a"));
+		assertEquals(-1, graph.getNodeOutDegree("z"));
+		assertEquals(2, graph.getIncomingRelations("b").size());
+		assertEquals(1, graph.getIncomingRelations("b", "likes").size());
+		assertNull(graph.getOutgoingRelations("a", "likes"));
+		assertTrue(graph.getIncomingRelations("a").isEmpty());
+
+		List<Long> ids = graph.addRelations(Arrays.asList(new Relation<>("a", "c", "ac", "knows", false),
+				new Relation<>("a", "z", "az", "knows", false)));
+		assertTrue(ids.get(0) > cb);
+		assertNull(ids.get(1));
+		assertEquals(Arrays.asList("a", "c"), graph.search("a", "c"));
+		assertEquals(Arrays.asList(ids.get(0)), graph.search("a", "c", 2, 10).getRelationIds());
+
+		assertTrue(graph.removeRelation("a", "c", "knows"));
+		assertFalse(graph.areRelated("a", "c"));
+		assertEquals(Arrays.asList(ab, cb), graph.search("a", "c", 2, 10).getRelationIds());
+		assertNull(graph.search("a", "c", 1, 10));
+
+		// Removing a node removes its relations at both end points
+		assertTrue(graph.removeNode("b"));
+		assertFalse(graph.removeNode("b"));
+		assertFalse(graph.getNode("b").isPresent());
+		assertNull(graph.getRelations(ab));
+		assertNull(graph.getOutgoingRelations("a"));
+		assertNull(graph.getOutgoingRelations("c"));
+		assertFalse(graph.removeRelation(cb));
+		assertNull(graph.addRelation("a", "b", "knows", "ab", false));
+		assertTrue(graph.addNode("b", "B2"));
+		assertEquals("B2", graph.getNode("b").get());
+		assertTrue(graph.getIncomingRelations("b").isEmpty());
+
+		graph.setReadOnly();
+		try {
+			graph.addNode("d", "D");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Reads still work
+			assertEquals("A", graph.getNode("a").get());
+		}
+	}
+
+	@Test
+	public void testPages() {
+		EmbeddedGraph<String, String> graph = newGraph();
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			ids.add(graph.addRelation("a", i % 2 == 0 ? "b" : "c", i % 5 == 0 ? "likes" : "knows", "r" + i, false));
+		}
+		RelationPage page = graph.getOutgoingRelations("a", null, null, 10);
+		assertEquals(ids.subList(0, 10),
+				page.getRelations().stream().map(Relation::getId).collect(Collectors.toList()));
+		page = graph.getOutgoingRelations("a", null, page.getCursor(), 10);
+		page = graph.getOutgoingRelations("a", null, page.getCursor(), 10);
+		assertEquals(5, page.getRelations().size());
+		assertTrue(page.isLast());
+
+		assertEquals(ids,
+				graph.streamOutgoingRelations("a", null, 4).map(Relation::getId).collect(Collectors.toList()));
+		assertEquals(5, graph.streamOutgoingRelations("a", "likes", 2).count());
+		assertEquals(13, graph.streamRelations("a", "b", 3).count());
+		assertEquals(10, graph.streamIncomingRelations("c", "knows", 5).count());
+		assertTrue(graph.getIncomingRelations("z", null, null, 5).isLast());
+	}
+
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		EmbeddedGraph<Integer, String> graph = new EmbeddedGraph<>(8);
+		int nodes = 200;
+		for (int i = 0; i < nodes; i++) {
+			graph.addNode(i, "n" + i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			futures.add(executor.submit(() -> {
+				// Every thread writes to the same hub, and both ways between the others
+				for (int i = 0; i < 1000; i++) {
+					int from = (thread * 1000 + i) % nodes;
+					graph.addRelation(from, 0, "hub", null, false);
+					long id = graph.addRelation(from, (from * 7 + 1) % nodes, "ring", null, true);
+					if (i % 2 == 0) {
+						assertTrue(graph.removeRelation(id));
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertEquals(8000, graph.getIncomingRelations(0, "hub").size());
+		long rings = 0;
+		for (int i = 0; i < nodes; i++) {
+			List<Relation> ring = graph.getOutgoingRelations(i, "ring");
+			rings += ring == null ? 0 : ring.size();
+		}
+		// Every ring relation is listed by both its end points
+		assertEquals(2 * 4000, rings);
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		java.nio.file.Path file = Files.createTempFile("graphdb-embedded", ".log");
+		long ab;
+		long cb;
+		// Segments small enough for the records to span several of them
+		try (EmbeddedGraph<String, String> graph = new EmbeddedGraph<>(file, 256, 4)) {
+			graph.addNode("a", "A");
+			graph.addNode("b", "B");
+			graph.addNode("c", "C");
+			graph.addNode("d", "D");
+			ab = graph.addRelation("a", "b", "knows", "ab", false);
+			cb = graph.addRelation("c", "b", "likes", "cb", true);
+			long ad = graph.addRelation("a", "d", "knows", "ad", false);
+			for (int i = 0; i < 20; i++) {
+				graph.addRelation("c", "a", "knows", "ca" + i, false);
+			}
+			graph.removeRelation(ad);
+			graph.removeNode("d");
+			graph.addNode("a", "A2");
+			graph.flush();
+			try {
+				graph.addNode("x", new String(new char[300]));
+				fail("A record larger than a segment must be rejected");
+			} catch (IllegalArgumentException e) {
+				assertFalse(graph.getNode("x").isPresent());
+			}
+		}
+		try (EmbeddedGraph<String, String> graph = new EmbeddedGraph<>(file, 256, 4)) {
+			assertEquals("A2", graph.getNode("a").get());
+			assertFalse(graph.getNode("d").isPresent());
+			assertEquals("ab", graph.getRelations(ab).getValue());
+			assertTrue(graph.areRelated("b", "c"));
+			assertEquals(Arrays.asList(ab), Arrays.asList(graph.getOutgoingRelations("a").get(0).getId()));
+			assertEquals(21, graph.getOutgoingRelations("c").size());
+			assertEquals(cb, graph.getIncomingRelations("b", "likes").get(0).getId());
+			// New relations get ids past the logged ones, and are logged after them
+			long cd = graph.addRelation("c", "a", "knows", "last", false);
+			assertTrue(cd > cb + 20);
+			graph.removeNode("b");
+		}
+		try (EmbeddedGraph<String, String> graph = new EmbeddedGraph<>(file, 256, 4)) {
+			assertFalse(graph.areRelated("a", "b"));
+			assertEquals(21, graph.getIncomingRelations("a").size());
+			assertEquals("last", graph.getIncomingRelations("a").get(20).getValue());
+		}
+		Files.delete(file);
+	}
+
+	@Test
+	public void testShortestPath() {
+		EmbeddedGraph<String, String> graph = newGraph();
+		graph.addNode("d", "D");
+		long ab = graph.addRelation("a", "b", "road", "1", false);
+		long bc = graph.addRelation("b", "c", "road", "1", false);
+		graph.addRelation("a", "c", "road", "5", false);
+		long cd = graph.addRelation("c", "d", "road", "1", false);
+		long ad = graph.addRelation("a", "d", "ferry", "1", false);
+		ToDoubleFunction<Relation> cost = relation -> Double.parseDouble((String) relation.getValue());
+
+		WeightedPath<String> ferry = graph.shortestPath(new PathQuery<>("a", "d").withWeight(cost));
+		assertEquals(Arrays.asList(ad), ferry.getRelationIds());
+		Map<String, Double> remaining = new HashMap<>();
+		remaining.put("a", 3.0);
+		remaining.put("b", 2.0);
+		remaining.put("c", 1.0);
+		remaining.put("d", 0.0);
+		List<PathQuery<String>> queries = Arrays.asList(new PathQuery<>("a", "d"),
+				new PathQuery<>("a", "d").bidirectional(), new PathQuery<>("a", "d").withHeuristic(remaining::get));
+		for (PathQuery<String> query : queries) {
+			WeightedPath<String> road = graph.shortestPath(query.withTypes("road").withWeight(cost));
+			assertEquals(Arrays.asList(ab, bc, cd), road.getRelationIds());
+			assertEquals(3.0, road.getCost(), 0.0);
+		}
+		assertNull(graph.shortestPath(new PathQuery<>("d", "a").withWeight(cost)));
+	}
+}
@@ -0,0 +1,139 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.graphdb.compute.ComputeResult;
+import com.graphdb.compute.ComputeWorker;
+import com.graphdb.compute.ConnectedComponents;
+import com.graphdb.compute.DegreeDistribution;
+import com.graphdb.compute.GraphCompute;
+import com.graphdb.compute.PageRank;
+import com.graphdb.model.AdjacencyLayout;
+import com.graphdb.model.GraphModelImpl;
+import com.graphdb.model.VertexAffinityPartitioner;
+
+import io.atomix.core.Atomix;
+import io.atomix.primitive.protocol.ProxyProtocol;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.storage.StorageLevel;
+
+/*
+ * Runs the built-in VertexPrograms on a ComputeWorker of a single member
+ * in-memory Raft cluster of three partitions, over graphs of three shards.
+ */
+public class GraphComputeTest {
+
+	private static Atomix atomix;
+	private static ComputeWorker worker;
+	private static int graphCount;
+
+	private final static ProxyProtocol PROTOCOL = MultiRaftProtocol.builder()
+			.withPartitioner(VertexAffinityPartitioner.INSTANCE).build();
+
+	@BeforeClass
+	public static void startCluster() throws Exception {
+		File dataDir = Files.createTempDirectory("graphdb-test").toFile();
+		atomix = Atomix.builder().withMemberId("test1").withAddress("localhost", 8893)
+				.withManagementGroup(RaftPartitionGroup.builder("system").withNumPartitions(1).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "system")).build())
+				.withPartitionGroups(RaftPartitionGroup.builder("raft").withNumPartitions(3).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "raft")).build())
+				.build();
+		atomix.start().join();
+		worker = new ComputeWorker(atomix).withProtocol(PROTOCOL);
+		worker.start();
+	}
+
+	@AfterClass
+	public static void stopCluster() {
+		worker.stop();
+		atomix.stop().join();
+	}
+
+	/*
+	 * A cycle a -> b -> c -> a, a chain d -> e and a lone vertex f
+	 */
+	private GraphModelImpl<String, String> newGraph(AdjacencyLayout layout) {
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, "compute" + graphCount++, layout, 3);
+		graph.withProtocol(PROTOCOL);
+		graph.buildAtomicMultiMap();
+		Map<String, String> nodes = new HashMap<>();
+		for (String node : new String[] { "a", "b", "c", "d", "e", "f" }) {
+			nodes.put(node, node.toUpperCase());
+		}
+		graph.addNodes(nodes);
+		graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelation("b", "c", "knows", "bc", false);
+		graph.addRelation("c", "a", "knows", "ca", false);
+		graph.addRelation("d", "e", "knows", "de", false);
+		return graph;
+	}
+
+	@Test
+	public void testPageRank() {
+		GraphModelImpl<String, String> graph = newGraph(AdjacencyLayout.VERTEX_MAP);
+		ComputeResult<String, Double> result = new GraphCompute(atomix).run(graph, new PageRank<>(30, 0.85));
+
+		assertEquals(31, result.supersteps());
+		assertEquals(6, result.vertexCount());
+		double[] sum = new double[1];
+		result.forEachState((vertex, rank) -> sum[0] += rank);
+		assertEquals(1.0, sum[0], 1e-6);
+		assertEquals(result.state("a"), result.state("b"), 1e-9);
+		assertEquals(result.state("b"), result.state("c"), 1e-9);
+		assertTrue(result.state("e") > result.state("d"));
+		assertEquals(result.state("d"), result.state("f"), 1e-9);
+	}
+
+	@Test
+	public void testConnectedComponents() {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> graph = newGraph(layout);
+			ComputeResult<String, String> result = new GraphCompute(atomix).run(graph,
+					new ConnectedComponents<>());
+
+			assertEquals("a", result.state("a"));
+			assertEquals("a", result.state("b"));
+			assertEquals("a", result.state("c"));
+			assertEquals("d", result.state("d"));
+			assertEquals("d", result.state("e"));
+			assertEquals("f", result.state("f"));
+			assertNull(result.state("g"));
+
+			// A new relation joins the components on the next run
+			graph.addRelation("e", "c", "knows", "ec", false);
+			result = new GraphCompute(atomix).run(graph, new ConnectedComponents<>());
+			assertEquals("a", result.state("d"));
+			assertEquals("a", result.state("e"));
+			assertEquals("f", result.state("f"));
+		}
+	}
+
+	@Test
+	public void testDegreeDistribution() {
+		GraphModelImpl<String, String> graph = newGraph(AdjacencyLayout.VERTEX_MAP);
+		graph.addRelation("a", "c", "likes", "ac", true);
+
+		ComputeResult<String, Integer> result = new GraphCompute(atomix).run(graph, new DegreeDistribution<>(),
+				null);
+		SortedMap<Integer, Long> distribution = DegreeDistribution.distribution(result);
+		assertEquals(1, result.supersteps());
+		assertEquals(Long.valueOf(2), distribution.get(0));
+		assertEquals(Long.valueOf(2), distribution.get(1));
+		assertEquals(Long.valueOf(2), distribution.get(2));
+		assertNull(result.state("a"));
+	}
+}
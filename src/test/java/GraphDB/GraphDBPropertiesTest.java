@@ -1,12 +1,22 @@
 package GraphDB;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import org.junit.Test;
 
 import com.graphdb.properties.GraphDBProperties;
+import com.graphdb.properties.StorageProfile;
+
+import io.atomix.storage.StorageLevel;
 
 public class GraphDBPropertiesTest {
 
@@ -19,4 +29,55 @@ public class GraphDBPropertiesTest {
 		assertTrue(
 				props.getProperty("propertyData").contentEquals(System.getProperty("user.dir") + "/clusterDir/data/"));
 	}
+
+	@Test
+	public void testStorageProfile() throws IOException {
+		// The defaults are those of Atomix
+		StorageProfile defaults = GraphDBProperties.getStorageProfile();
+		assertEquals(StorageLevel.DISK, defaults.getStorageLevel());
+		assertEquals(32 * 1024 * 1024, defaults.getSegmentSize());
+		assertFalse(defaults.isFlushOnCommit());
+		assertEquals(10, defaults.getNumPartitions());
+		assertEquals(8800, defaults.getBasePort());
+
+		File config = File.createTempFile("graphdb", ".properties");
+		config.deleteOnExit();
+		Properties overrides = new Properties();
+		overrides.setProperty(StorageProfile.STORAGE_LEVEL, "mapped");
+		overrides.setProperty(StorageProfile.SEGMENT_SIZE, "64MB");
+		overrides.setProperty(StorageProfile.FLUSH_ON_COMMIT, "true");
+		overrides.setProperty(StorageProfile.NUM_PARTITIONS, "16");
+		overrides.setProperty(StorageProfile.PARTITION_SIZE, "3");
+		try (OutputStream out = new FileOutputStream(config)) {
+			overrides.store(out, null);
+		}
+		System.setProperty(GraphDBProperties.CONFIG_FILE, config.getPath());
+		try {
+			StorageProfile profile = GraphDBProperties.getStorageProfile();
+			assertEquals(StorageLevel.MAPPED, profile.getStorageLevel());
+			assertEquals(64 * 1024 * 1024, profile.getSegmentSize());
+			assertTrue(profile.isFlushOnCommit());
+			assertEquals(16, profile.getNumPartitions());
+			assertEquals(3, profile.getPartitionSize());
+			assertEquals(1024 * 1024, profile.getMaxEntrySize());
+		} finally {
+			System.clearProperty(GraphDBProperties.CONFIG_FILE);
+		}
+
+		// Every invalid setting is reported at once
+		Properties props = GraphDBProperties.getGraphDBProperties();
+		props.setProperty(StorageProfile.STORAGE_LEVEL, "tape");
+		props.setProperty(StorageProfile.PARTITION_SIZE, "5");
+		props.setProperty(StorageProfile.MAX_ENTRY_SIZE, "64MB");
+		props.setProperty(StorageProfile.FREE_DISK_BUFFER, "1.5");
+		try {
+			StorageProfile.load(props);
+			fail("An invalid profile is rejected");
+		} catch (IllegalArgumentException e) {
+			for (String key : new String[] { StorageProfile.STORAGE_LEVEL, StorageProfile.PARTITION_SIZE,
+					StorageProfile.MAX_ENTRY_SIZE, StorageProfile.FREE_DISK_BUFFER }) {
+				assertTrue(e.getMessage(), e.getMessage().contains(key));
+			}
+		}
+	}
 }
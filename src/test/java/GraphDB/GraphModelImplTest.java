@@ -0,0 +1,985 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.graphdb.metrics.ContentionStats;
+import com.graphdb.metrics.GraphMetrics;
+import com.graphdb.metrics.NearCacheStats;
+import com.graphdb.metrics.Operation;
+import com.graphdb.metrics.OperationStats;
+import com.graphdb.model.AdjacencyLayout;
+import com.graphdb.model.AsyncGraph;
+import com.graphdb.model.ChangeCursor;
+import com.graphdb.model.Graph;
+import com.graphdb.model.CsrAdjacency;
+import com.graphdb.model.GraphAggregates;
+import com.graphdb.model.GraphChange;
+import com.graphdb.model.GraphChangeFeed;
+import com.graphdb.model.GraphModelImpl;
+import com.graphdb.model.GraphSnapshot;
+import com.graphdb.model.Path;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+import com.graphdb.model.RelationPage;
+import com.graphdb.model.SnapshotBuilder;
+import com.graphdb.model.VertexAffinityPartitioner;
+import com.graphdb.model.WeightedPath;
+
+import io.atomix.core.Atomix;
+import io.atomix.primitive.partition.PartitionId;
+import io.atomix.primitive.partition.Partitioner;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.ReadConsistency;
+import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.protocols.raft.session.CommunicationStrategy;
+import io.atomix.storage.StorageLevel;
+
+/**
+ * Runs GraphModelImpl against a single member in-memory Raft cluster.
+ */
+public class GraphModelImplTest {
+
+	private static Atomix atomix;
+	private static int graphCount;
+
+	@BeforeClass
+	public static void startCluster() throws Exception {
+		File dataDir = Files.createTempDirectory("graphdb-test").toFile();
+		atomix = Atomix.builder().withMemberId("test1").withAddress("localhost", 8890)
+				.withManagementGroup(RaftPartitionGroup.builder("system").withNumPartitions(1).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "system")).build())
+				.withPartitionGroups(RaftPartitionGroup.builder("raft").withNumPartitions(3).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "raft")).build())
+				.build();
+		atomix.start().join();
+	}
+
+	@AfterClass
+	public static void stopCluster() {
+		atomix.stop().join();
+	}
+
+	private Graph<String, String> newGraph() {
+		return newGraph(AdjacencyLayout.VERTEX_MAP);
+	}
+
+	private Graph<String, String> newGraph(AdjacencyLayout layout) {
+		Graph<String, String> graph = new GraphModelImpl<>(atomix, "test" + graphCount++, layout);
+		graph.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		graph.buildAtomicMultiMap();
+		graph.addNode("a", "A");
+		graph.addNode("b", "B");
+		graph.addNode("c", "C");
+		return graph;
+	}
+
+	@Test
+	public void testIncomingRelations() {
+		Graph<String, String> graph = newGraph();
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelation("c", "b", "likes", "cb", false);
+		graph.addRelation("a", "c", "knows", "ac", true);
+
+		assertEquals(2, graph.getIncomingRelations("b").size());
+		List<Relation> knows = graph.getIncomingRelations("b", "knows");
+		assertEquals(1, knows.size());
+		assertEquals(ab, knows.get(0).getId());
+		assertTrue(graph.getIncomingRelations("a").size() == 1);
+		assertTrue(graph.getIncomingRelations("b", "hates").isEmpty());
+	}
+
+	@Test
+	public void testRemoveKeepsIndexesInSync() {
+		Graph<String, String> graph = newGraph();
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelation("a", "b", "likes", "ab2", false);
+		graph.addRelation("c", "b", "knows", "cb", true);
+
+		assertTrue(graph.removeRelation(ab));
+		assertEquals(1, graph.getRelations("a", "b").size());
+		assertEquals(2, graph.getIncomingRelations("b").size());
+		assertEquals(1, graph.getIncomingRelations("b", "knows").size());
+
+		assertTrue(graph.removeNode("c"));
+		assertEquals(1, graph.getIncomingRelations("b").size());
+		assertTrue(graph.getIncomingRelations("b", "knows").isEmpty());
+		assertFalse(graph.areRelated("b", "c"));
+	}
+
+	@Test
+	public void testCascadingRemove() {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			Graph<String, String> graph = newGraph(layout);
+			long ab = graph.addRelation("a", "b", "knows", "ab", false);
+			long ca = graph.addRelation("c", "a", "likes", "ca", false);
+			long ba = graph.addRelation("b", "a", "knows", "ba", true);
+			long aa = graph.addRelation("a", "a", "knows", "aa", false);
+			long bc = graph.addRelation("b", "c", "knows", "bc", false);
+
+			assertTrue(graph.removeNode("a"));
+			for (long id : Arrays.asList(ab, ca, ba, aa)) {
+				assertNull(graph.getRelations(id));
+			}
+			assertEquals(1, graph.getOutgoingRelations("b").size());
+			assertEquals(bc, graph.getOutgoingRelations("b").get(0).getId());
+			assertTrue(graph.getIncomingRelations("b").isEmpty());
+			assertEquals(-1, graph.getNodeOutDegree("c"));
+			assertEquals(1, graph.getIncomingRelations("c").size());
+			assertFalse(graph.areRelated("b", "a"));
+			assertTrue(graph.getIncomingRelations("a").isEmpty());
+			assertFalse(graph.removeNode("a"));
+		}
+	}
+
+	@Test
+	public void testBatchIngestion() {
+		Graph<String, String> graph = newGraph();
+		Map<String, String> batchNodes = new HashMap<>();
+		batchNodes.put("d", "D");
+		batchNodes.put("e", "E");
+		assertTrue(graph.addNodes(batchNodes));
+		assertEquals("D", graph.getNode("d").get());
+
+		long ad = graph.addRelation("a", "d", "knows", "ad", false);
+		List<Long> ids = graph.addRelations(Arrays.asList(new Relation<>("a", "d", "ad2", "likes", false),
+				new Relation<>("d", "e", "de", "knows", true), new Relation<>("a", "x", "ax", "knows", false)));
+
+		assertEquals(3, ids.size());
+		assertNull(ids.get(2));
+		assertEquals(2, graph.getRelations("a", "d").size());
+		assertEquals(ad, graph.getOutgoingRelations("a", "knows").get(0).getId());
+		assertEquals(3, graph.getIncomingRelations("d").size());
+		assertEquals(ids.get(1).longValue(), graph.getIncomingRelations("e", "knows").get(0).getId());
+		assertTrue(graph.areRelated("e", "d"));
+	}
+
+	@Test
+	public void testBatchedNeighbourListing() {
+		Graph<String, String> graph = newGraph();
+		List<Relation<String, String>> relations = new ArrayList<>();
+		for (int i = 0; i < 1200; i++) {
+			relations.add(new Relation<>("a", i % 2 == 0 ? "b" : "c", "r" + i, i % 3 == 0 ? "likes" : "knows", false));
+		}
+		List<Long> ids = graph.addRelations(relations);
+
+		List<Relation> outgoing = graph.getOutgoingRelations("a");
+		assertEquals(1200, outgoing.size());
+		assertEquals(new HashSet<>(ids), outgoing.stream().map(Relation::getId).collect(Collectors.toSet()));
+		assertEquals(600, graph.getRelations("a", "b").size());
+		assertEquals(400, graph.getOutgoingRelations("a", "likes").size());
+		assertEquals(600, graph.getIncomingRelations("c").size());
+	}
+
+	@Test
+	public void testShardedGraph() {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			Graph<String, String> graph = new GraphModelImpl<>(atomix, "test" + graphCount++, layout, 3);
+			graph.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE)
+					.withPartitioner(VertexAffinityPartitioner.INSTANCE).build());
+			graph.buildAtomicMultiMap();
+			Map<String, String> nodes = new HashMap<>();
+			for (String key : Arrays.asList("a", "b", "c", "d", "e", "f")) {
+				nodes.put(key, key.toUpperCase());
+			}
+			assertTrue(graph.addNodes(nodes));
+			assertEquals("E", graph.getNode("e").get());
+
+			long ab = graph.addRelation("a", "b", "knows", "ab", false);
+			List<Long> ids = graph.addRelations(Arrays.asList(new Relation<>("c", "b", "cb", "knows", true),
+					new Relation<>("d", "e", "de", "likes", false), new Relation<>("f", "a", "fa", "knows", false)));
+			// The low byte of a relation id is the shard of its source vertex
+			assertEquals(Math.floorMod("a".hashCode(), 3), ab & 0xFF);
+			assertEquals(Math.floorMod("d".hashCode(), 3), ids.get(1) & 0xFF);
+
+			assertEquals("cb", graph.getRelations(ids.get(0)).getValue());
+			assertEquals(2, graph.getIncomingRelations("b").size());
+			assertEquals(ab, graph.getRelations("a", "b").get(0).getId());
+			assertEquals(ids.get(0).longValue(), graph.getOutgoingRelations("b", "knows").get(0).getId());
+			assertEquals(Arrays.asList("f", "a", "b"), graph.search("f", "b"));
+
+			assertTrue(graph.removeNode("b"));
+			assertNull(graph.getRelations(ab));
+			assertNull(graph.getOutgoingRelations("c"));
+			assertFalse(graph.areRelated("a", "b"));
+			assertEquals(1, graph.getNodeOutDegree("d"));
+			assertEquals(5, ((GraphModelImpl<String, String>) graph).snapshot().vertexCount());
+		}
+	}
+
+	@Test
+	public void testVertexAffinityPartitioner() {
+		List<PartitionId> partitions = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			partitions.add(PartitionId.from("raft", i));
+		}
+		assertEquals(partitions.get(2), VertexAffinityPartitioner.INSTANCE.partition("g_nodes#shard2", partitions));
+		assertEquals(partitions.get(1), VertexAffinityPartitioner.INSTANCE.partition("g_inEdges#shard4", partitions));
+		assertEquals(Partitioner.MURMUR3.partition("g_nodes", partitions),
+				VertexAffinityPartitioner.INSTANCE.partition("g_nodes", partitions));
+	}
+
+	@Test
+	public void testNearCache() throws Exception {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph(layout);
+			GraphMetrics metrics = graph.metrics();
+			String graphName = "test" + (graphCount - 1);
+			long ab = graph.addRelation("a", "b", "knows", "ab", false);
+			graph.addRelation("a", "c", "likes", "ac", false);
+			assertEquals(2, graph.getOutgoingRelations("a").size());
+			// The events of the writes above keep a read they overlap out of the
+			// cache, the cache is filled again once they are delivered
+			Thread.sleep(200);
+			assertEquals(2, graph.getOutgoingRelations("a").size());
+
+			metrics.reset();
+			for (int i = 0; i < 10; i++) {
+				assertEquals(2, graph.getOutgoingRelations("a").size());
+				assertEquals("ab", graph.getRelations(ab).getValue());
+			}
+			NearCacheStats relations = metrics.getCacheStats(graphName + "_relations");
+			assertEquals(0, relations.getMisses());
+			assertEquals(30, relations.getHits());
+
+			// A write through another client of the same maps reaches the cache
+			// through the map events
+			GraphModelImpl<String, String> other = new GraphModelImpl<>(atomix, graphName, layout);
+			other.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+			other.buildAtomicMultiMap();
+			other.addNode("d", "D");
+			other.addRelation("a", "d", "knows", "ad", false);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (graph.getOutgoingRelations("a").size() != 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(3, graph.getOutgoingRelations("a").size());
+			assertEquals("D", graph.getNode("d").get());
+
+			// Local writes are seen right away
+			assertTrue(graph.removeRelation(ab));
+			assertNull(graph.getRelations(ab));
+			assertEquals(2, graph.getOutgoingRelations("a").size());
+			assertTrue(relations.getInvalidations() > 0);
+		}
+	}
+
+	@Test
+	public void testNearCacheSize() {
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		graph.withCacheMemory(1024);
+		graph.buildAtomicMultiMap();
+		Map<String, String> nodes = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			nodes.put("v" + i, "value" + i);
+		}
+		graph.addNodes(nodes);
+		nodes.keySet().forEach(graph::getNode);
+		NearCacheStats nodesCache = graph.metrics().getCacheStats("test" + (graphCount - 1) + "_nodes");
+		assertTrue(nodesCache.getEvictions() > 0);
+		assertTrue(nodesCache.getSize() < 100);
+
+		GraphModelImpl<String, String> uncached = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		uncached.withCacheSize(0);
+		uncached.buildAtomicMultiMap();
+		uncached.addNode("a", "A");
+		assertEquals("A", uncached.getNode("a").get());
+		assertNull(uncached.metrics().getCacheStats("test" + (graphCount - 1) + "_nodes"));
+	}
+
+	@Test
+	public void testReadConsistency() {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph(layout);
+			graph.withReadProtocol(ReadConsistency.SEQUENTIAL, MultiRaftProtocol.builder()
+					.withReadConsistency(ReadConsistency.SEQUENTIAL)
+					.withCommunicationStrategy(CommunicationStrategy.FOLLOWERS).build());
+			long ab = graph.addRelation("a", "b", "knows", "ab", false);
+			graph.addRelation("b", "c", "likes", "bc", true);
+
+			Graph<String, String> reads = graph.reads(ReadConsistency.SEQUENTIAL);
+			assertTrue(reads == graph.reads(ReadConsistency.SEQUENTIAL));
+			assertEquals("A", reads.getNode("a").get());
+			assertEquals(ab, reads.getRelations("a", "b").get(0).getId());
+			assertEquals(2, reads.getIncomingRelations("b").size());
+			assertEquals(Arrays.asList("a", "b", "c"), reads.search("a", "c"));
+			try {
+				reads.addNode("d", "D");
+				assertTrue(false);
+			} catch (UnsupportedOperationException e) {
+				// Read-only
+			}
+			try {
+				graph.reads(ReadConsistency.LINEARIZABLE_LEASE);
+				assertTrue(false);
+			} catch (IllegalStateException e) {
+				// The graph has a protocol of its own and no lease read protocol
+			}
+		}
+
+		// Without a protocol of its own, a graph derives its read protocols
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		graph.buildAtomicMultiMap();
+		graph.addNode("a", "A");
+		assertEquals("A", graph.reads(ReadConsistency.LINEARIZABLE_LEASE).getNode("a").get());
+		assertEquals("A", graph.reads(ReadConsistency.SEQUENTIAL).getNode("a").get());
+
+		// The views never fill the near cache of the graph, and a linearizable
+		// view reads past it
+		NearCacheStats nodesCache = graph.metrics().getCacheStats("test" + (graphCount - 1) + "_nodes");
+		assertEquals(0, nodesCache.getSize());
+		assertEquals("A", graph.getNode("a").get());
+		assertEquals(1, nodesCache.getSize());
+		long hits = nodesCache.getHits();
+		assertEquals("A", graph.reads(ReadConsistency.LINEARIZABLE).getNode("a").get());
+		assertEquals(hits, nodesCache.getHits());
+		assertEquals("A", graph.reads(ReadConsistency.SEQUENTIAL).getNode("a").get());
+		assertEquals(hits + 1, nodesCache.getHits());
+	}
+
+	@Test
+	public void testEdgeMultimapLayout() {
+		Graph<String, String> graph = newGraph(AdjacencyLayout.EDGE_MULTIMAP);
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		long ab2 = graph.addRelation("a", "b", "likes", "ab2", false);
+		List<Long> ids = graph.addRelations(Arrays.asList(new Relation<>("c", "b", "cb", "knows", true)));
+
+		assertEquals(2, graph.getRelations("a", "b").size());
+		assertEquals(2, graph.getNodeOutDegree("a"));
+		assertEquals(3, graph.getIncomingRelations("b").size());
+		assertEquals(ids.get(0).longValue(), graph.getOutgoingRelations("b", "knows").get(0).getId());
+
+		assertTrue(graph.removeRelation(ab));
+		assertEquals(ab2, graph.getRelations("a", "b").get(0).getId());
+		assertTrue(graph.removeNode("c"));
+		assertEquals(1, graph.getIncomingRelations("b").size());
+		assertFalse(graph.areRelated("b", "c"));
+	}
+
+	@Test
+	public void testSearch() {
+		Graph<String, String> graph = newGraph();
+		graph.addNode("d", "D");
+		graph.addNode("e", "E");
+		graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelation("b", "c", "knows", "bc", false);
+		graph.addRelation("c", "d", "knows", "cd", false);
+		long ae = graph.addRelation("a", "e", "knows", "ae", false);
+		long de = graph.addRelation("d", "e", "knows", "de", true);
+
+		Path<String> path = graph.search("a", "d", 6, 100);
+		assertEquals(Arrays.asList("a", "e", "d"), path.getNodes());
+		assertEquals(Arrays.asList(ae, de), path.getRelationIds());
+		assertEquals(Arrays.asList("b", "c", "d", "e"), graph.search("b", "e"));
+
+		assertNull(graph.search("a", "d", 1, 100));
+		assertNull(graph.search("d", "a"));
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph();
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelation("b", "c", "likes", "bc", true);
+
+		GraphSnapshot<String, String> snapshot = graph.snapshot();
+		assertFalse(snapshot.getVersions().isEmpty());
+		assertTrue(snapshot.getVersions().values().stream().allMatch(version -> version > 0));
+		assertEquals("A", snapshot.getNode("a").get());
+		assertEquals(ab, snapshot.getRelations("a", "b").get(0).getId());
+		assertEquals(2, snapshot.getIncomingRelations("b").size());
+		assertEquals(Arrays.asList("a", "b", "c"), snapshot.search("a", "c"));
+		assertNull(snapshot.search("c", "a"));
+
+		CsrAdjacency likes = snapshot.outgoing("likes");
+		int c = snapshot.vertexId("c");
+		assertEquals(1, likes.degree(c));
+		assertEquals("b", snapshot.vertex(likes.target(likes.start(c))));
+
+		SnapshotBuilder<String, String> builder = graph.snapshotBuilder();
+		graph.addRelation("c", "a", "knows", "ca", false);
+		graph.removeRelation(ab);
+		for (int i = 0; i < 50
+				&& (builder.current().search("c", "a") == null || builder.current().areRelated("a", "b")); i++) {
+			Thread.sleep(100);
+			builder.refresh();
+		}
+		assertEquals(Arrays.asList("c", "a"), builder.current().search("c", "a"));
+		assertFalse(builder.current().areRelated("a", "b"));
+		// Versions only advance, shard by shard
+		snapshot.getVersions().forEach(
+				(shard, version) -> assertTrue(builder.current().getVersions().get(shard) >= version));
+		builder.close();
+	}
+
+	@Test
+	public void testExportImport() throws Exception {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> source = (GraphModelImpl<String, String>) newGraph(layout);
+			long ab = source.addRelation("a", "b", "knows", "ab", false);
+			List<Long> ids = source.addRelations(Arrays.asList(new Relation<>("c", "b", "cb", "likes", true),
+					new Relation<>("a", "c", "ac", "knows", false)));
+			java.nio.file.Path file = Files.createTempFile("graphdb-export", ".bin");
+			source.exportTo(file);
+
+			GraphModelImpl<String, String> target = new GraphModelImpl<>(atomix, "test" + graphCount++, layout);
+			target.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+			target.buildAtomicMultiMap();
+			assertFalse(target.getNode("a").isPresent());
+			target.importFrom(file);
+
+			assertEquals("B", target.getNode("b").get());
+			assertEquals("cb", target.getRelations(ids.get(0)).getValue());
+			assertEquals(ab, target.getRelations("a", "b").get(0).getId());
+			assertEquals(2, target.getIncomingRelations("b").size());
+			assertEquals(1, target.getOutgoingRelations("b", "likes").size());
+			assertEquals(Arrays.asList("knows"), target.getRelationType("a", "c"));
+			assertEquals(Arrays.asList("b", "c"), target.search("b", "c"));
+			// New relations get ids past the imported ones
+			assertTrue(target.addRelation("b", "a", "knows", "ba", false) > ids.get(1));
+			assertEquals(3, target.snapshot().vertexCount());
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testImportChecksFile() throws Exception {
+		GraphModelImpl<String, String> source = (GraphModelImpl<String, String>) newGraph();
+		source.addRelation("a", "b", "knows", "ab", false);
+		java.nio.file.Path file = Files.createTempFile("graphdb-export", ".bin");
+		source.exportTo(file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 0x5A;
+		Files.write(file, bytes);
+
+		GraphModelImpl<String, String> target = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		target.buildAtomicMultiMap();
+		try {
+			target.importFrom(file);
+			fail("A corrupted export must not be imported");
+		} catch (IOException e) {
+			// Nothing is written from a file that fails its checksums
+			assertFalse(target.getNode("a").isPresent());
+		}
+		try {
+			source.importFrom(file);
+			fail("Only an empty graph can be imported into");
+		} catch (IllegalStateException e) {
+		}
+		Files.delete(file);
+	}
+
+	@Test
+	public void testAsyncGraph() {
+		GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph();
+		AsyncGraph<String, String> async = graph.async();
+
+		CompletableFuture<Long> ab = async.addRelation("a", "b", "knows", "ab", false);
+		CompletableFuture<Long> bc = async.addRelation("b", "c", "knows", "bc", false);
+		CompletableFuture<Long> ca = async.addRelation("c", "a", "likes", "ca", true);
+		CompletableFuture.allOf(ab, bc, ca).join();
+
+		assertEquals(2, async.getOutgoingRelations("a").join().size());
+		assertEquals(1, async.getNodeOutDegree("c").join().longValue());
+		assertEquals(1, async.getIncomingRelations("a", "likes").join().size());
+		assertEquals(Arrays.asList("knows"), async.getRelationType("b", "c").join());
+		assertTrue(async.areRelated("a", "c").join());
+		assertEquals(1, async.search("a", "c", 4, 100).join().getLength());
+		assertTrue(async.removeRelation(bc.join()).join());
+		assertFalse(async.areRelated("b", "c").join());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		Graph<String, String> graph = newGraph();
+		GraphMetrics metrics = ((GraphModelImpl<String, String>) graph).metrics();
+		metrics.reset();
+		graph.addRelation("a", "b", "knows", "ab", false);
+		graph.getOutgoingRelations("a");
+		OperationStats outgoing = metrics.getStats(Operation.GET_OUTGOING_RELATIONS);
+		assertEquals(2.0, outgoing.getRoundTripsPerCall(), 0.0);
+		// Served from the near caches, which is no round trip
+		for (int i = 1; i < 10; i++) {
+			graph.getOutgoingRelations("a");
+		}
+		assertTrue(graph.getNode("a").isPresent());
+
+		assertEquals(10, outgoing.getCount());
+		assertEquals(0.2, outgoing.getRoundTripsPerCall(), 1e-9);
+		assertTrue(outgoing.getP50Micros() > 0 && outgoing.getP50Micros() <= outgoing.getP99Micros());
+		assertEquals(1, metrics.getStats(Operation.ADD_RELATION).getCount());
+		assertTrue(metrics.getGraphBytesWritten() > 0);
+		// The relation written is encoded on behalf of the call, a part of the bytes of the graph
+		double relationBytes = metrics.getStats(Operation.ADD_RELATION).getBytesWrittenPerCall();
+		assertTrue(relationBytes > 0 && relationBytes <= metrics.getGraphBytesWritten());
+		assertTrue(metrics.dump().contains("GET_OUTGOING_RELATIONS"));
+
+		metrics.register();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Set<ObjectName> names = server.queryNames(new ObjectName("com.graphdb:type=Operation,name=GET_NODE,*"), null);
+		assertEquals(1, names.size());
+		assertEquals(1L, server.getAttribute(names.iterator().next(), "Count"));
+		metrics.unregister();
+
+		metrics.setEnabled(false);
+		graph.getOutgoingRelations("a");
+		assertEquals(10, outgoing.getCount());
+	}
+
+	private static List<GraphChange.Type> types(List<GraphChange<String, String>> changes) {
+		return changes.stream().map(GraphChange::getType).collect(Collectors.toList());
+	}
+
+	/*
+	 * Events come shortly after their writes complete
+	 */
+	private static void awaitOffset(GraphChangeFeed<String, String> feed, long offset) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (feed.latestOffset() < offset && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(offset, feed.latestOffset());
+	}
+
+	@Test
+	public void testChangeFeed() throws InterruptedException {
+		// Started before the graph is written, events of earlier writes may still come
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		graph.buildAtomicMultiMap();
+		GraphChangeFeed<String, String> feed = graph.changes();
+		graph.addNode("a", "A");
+		graph.addNode("b", "B");
+		graph.addNode("c", "C");
+		awaitOffset(feed, 3);
+		long start = feed.latestOffset() + 1;
+
+		graph.addNode("d", "D");
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		graph.addRelations(Arrays.asList(new Relation<>("b", "c", "bc", "knows", false)));
+		assertTrue(graph.removeRelation(ab));
+		graph.addNode("d", "D2");
+		assertTrue(graph.removeNode("b"));
+		awaitOffset(feed, start + 6);
+
+		// Changes of different shards may come in any order, those of one entry come in order
+		List<GraphChange<String, String>> changes = feed.read(start, 100);
+		assertEquals(start, changes.get(0).getOffset());
+		List<GraphChange<String, String>> d = changes.stream().filter(change -> "d".equals(change.getNode()))
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList(GraphChange.Type.NODE_ADDED, GraphChange.Type.NODE_UPDATED), types(d));
+		assertEquals("D", d.get(1).getPreviousValue());
+		assertEquals("D2", d.get(1).getValue());
+		List<GraphChange<String, String>> relations = changes.stream().filter(change -> !change.isNodeChange())
+				.collect(Collectors.toList());
+		assertEquals(4, relations.size());
+		List<GraphChange<String, String>> abChanges = relations.stream()
+				.filter(change -> (change.getRelation() != null ? change.getRelation() : change.getPreviousRelation())
+						.getId() == ab)
+				.collect(Collectors.toList());
+		assertEquals(Arrays.asList(GraphChange.Type.RELATION_ADDED, GraphChange.Type.RELATION_REMOVED),
+				types(abChanges));
+		assertTrue(changes.stream().anyMatch(change -> change.getType() == GraphChange.Type.NODE_REMOVED
+				&& "b".equals(change.getNode())));
+		assertTrue(relations.stream().anyMatch(change -> change.getType() == GraphChange.Type.RELATION_REMOVED
+				&& "bc".equals(change.getPreviousRelation().getValue())));
+
+		// A consumer resumes after the last change it handled, then follows the new ones
+		List<GraphChange<String, String>> resumed = new ArrayList<>();
+		GraphChangeFeed<String, String>.Subscription subscription = feed.subscribe(start + 5, resumed::add);
+		graph.addNode("e", "E");
+		awaitOffset(feed, start + 7);
+		subscription.close();
+		graph.addNode("f", "F");
+		awaitOffset(feed, start + 8);
+		assertEquals(changes.subList(5, 7), resumed.subList(0, 2));
+		assertEquals(3, resumed.size());
+		assertEquals("e", resumed.get(2).getNode());
+		assertTrue(feed.read(feed.latestOffset() + 1, 100).isEmpty());
+
+		GraphModelImpl<String, String> small = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		small.withChangeRetention(2);
+		small.buildAtomicMultiMap();
+		GraphChangeFeed<String, String> smallFeed = small.changes();
+		small.addNode("a", "A");
+		small.addNode("b", "B");
+		small.addNode("c", "C");
+		awaitOffset(smallFeed, 3);
+		assertEquals(2, smallFeed.earliestOffset());
+		assertEquals(2, smallFeed.read(2, 100).size());
+		try {
+			smallFeed.read(1, 100);
+			fail("Dropped changes cannot be read");
+		} catch (IllegalArgumentException e) {
+			// Expected, the consumer starts again from a snapshot
+		}
+		smallFeed.close();
+		feed.close();
+	}
+
+	/*
+	 * State a consumer builds from the changes it is handed
+	 */
+	@SuppressWarnings("unchecked")
+	private static void apply(List<GraphChange<String, String>> changes, Map<String, String> nodes,
+			Map<Long, String> relations) {
+		for (GraphChange<String, String> change : changes) {
+			if (change.isNodeChange()) {
+				if (change.getValue() == null) {
+					nodes.remove(change.getNode());
+				} else {
+					nodes.put(change.getNode(), change.getValue());
+				}
+			} else if (change.getRelation() == null) {
+				relations.remove(change.getPreviousRelation().getId());
+			} else {
+				relations.put(change.getRelation().getId(), (String) change.getRelation().getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testChangeCursor() throws InterruptedException {
+		String graphName = "test" + graphCount++;
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, graphName);
+		graph.buildAtomicMultiMap();
+		GraphChangeFeed<String, String> feed = graph.changes();
+		graph.addNode("a", "A");
+		graph.addNode("b", "B");
+		graph.addNode("c", "C");
+		long ab = graph.addRelation("a", "b", "knows", "ab", false);
+		assertTrue(graph.removeNode("c"));
+		awaitOffset(feed, 5);
+
+		// From the start, a consumer gets the whole graph
+		Map<String, String> nodes = new HashMap<>();
+		Map<Long, String> relations = new HashMap<>();
+		List<GraphChange<String, String>> first = new ArrayList<>();
+		GraphChangeFeed<String, String>.Subscription subscription = feed.subscribe(ChangeCursor.START, first::add);
+		ChangeCursor cursor = subscription.cursor();
+		subscription.close();
+		apply(first, nodes, relations);
+		assertEquals(ImmutableMap.of("a", "A", "b", "B"), nodes);
+		assertEquals(ImmutableMap.of(ab, "ab"), relations);
+		assertFalse(cursor.getVersions().isEmpty());
+
+		graph.addNode("a", "A2");
+		graph.addNode("d", "D");
+		assertTrue(graph.removeRelation(ab));
+		awaitOffset(feed, 8);
+
+		// In another process, the feed of another instance hands over what changed
+		// after the cursor, but for the removals made before it started
+		GraphModelImpl<String, String> other = new GraphModelImpl<>(atomix, graphName);
+		other.buildAtomicMultiMap();
+		List<GraphChange<String, String>> elsewhere = new ArrayList<>();
+		other.changes().subscribe(cursor, elsewhere::add).close();
+		assertEquals(new HashSet<>(Arrays.asList("a", "d")),
+				elsewhere.stream().map(GraphChange::getNode).collect(Collectors.toSet()));
+
+		// The removals the feed retains are handed over too
+		List<GraphChange<String, String>> resumed = new ArrayList<>();
+		subscription = feed.subscribe(cursor, resumed::add);
+		apply(resumed, nodes, relations);
+		assertEquals(ImmutableMap.of("a", "A2", "b", "B", "d", "D"), nodes);
+		assertTrue(relations.isEmpty());
+		assertFalse(resumed.stream().anyMatch(change -> "b".equals(change.getNode())));
+		ChangeCursor next = subscription.cursor();
+		cursor.getVersions().forEach((shard, version) -> assertTrue(next.version(shard) >= version));
+
+		// Then the new changes, which move the cursor
+		graph.addNode("e", "E");
+		awaitOffset(feed, 9);
+		assertEquals("e", resumed.get(resumed.size() - 1).getNode());
+		assertTrue(subscription.cursor().version(resumed.get(resumed.size() - 1).getPartition()) > 0);
+		assertFalse(next.equals(subscription.cursor()));
+		subscription.close();
+		feed.close();
+	}
+
+	@Test
+	public void testAggregates() throws InterruptedException {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph(layout);
+			long ab = graph.addRelation("a", "b", "knows", "ab", false);
+			graph.addRelation("a", "c", "likes", "ac", true);
+
+			// Starts from the relations already in the graph, then follows the changes
+			GraphAggregates<String> aggregates = graph.aggregates();
+			assertEquals(2, aggregates.outDegree("a"));
+			assertEquals(1, aggregates.inDegree("a"));
+			assertEquals(1, aggregates.outDegree("c", "likes"));
+			assertEquals(0, aggregates.outDegree("c", "knows"));
+
+			graph.addRelation("c", "b", "knows", "cb", false);
+			graph.addRelations(Arrays.asList(new Relation<>("b", "a", "ba", "knows", false),
+					new Relation<>("b", "c", "bc", "likes", false)));
+			assertEquals(2, aggregates.outDegree("b"));
+			assertEquals(2, aggregates.inDegree("b"));
+			assertEquals(3, aggregates.relationCount("knows"));
+			assertEquals(2, aggregates.relationCount("likes"));
+			assertEquals(5, aggregates.relationCount());
+
+			// getNodeOutDegree is answered from the aggregates, without reading the index
+			graph.metrics().reset();
+			assertEquals(2, graph.getNodeOutDegree("c"));
+			assertEquals(0.0, graph.metrics().getStats(Operation.GET_NODE_OUT_DEGREE).getRoundTripsPerCall(), 0.0);
+
+			assertTrue(graph.removeRelation(ab));
+			assertEquals(1, graph.getNodeOutDegree("a"));
+			assertTrue(graph.removeNode("c"));
+			assertEquals(-1, graph.getNodeOutDegree("c"));
+			assertEquals(1, aggregates.inDegree("a"));
+			assertEquals(1, aggregates.relationCount());
+			assertEquals(0, aggregates.relationCount("likes"));
+
+			// Counted once whether the write or its event comes first, and still once after the events
+			List<CompletableFuture<Long>> adds = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				adds.add(graph.async().addRelation("b", "a", "knows", "ba" + i, false));
+			}
+			adds.forEach(CompletableFuture::join);
+			assertTrue(graph.async().removeRelation(adds.get(0).join()).join());
+			assertEquals(20, aggregates.relationCount());
+			Thread.sleep(200);
+			assertEquals(20, aggregates.relationCount());
+			assertEquals(20, aggregates.inDegree("a"));
+			aggregates.close();
+		}
+	}
+
+	@Test
+	public void testHotVertex() throws Exception {
+		GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph();
+		String graphName = "test" + (graphCount - 1);
+		GraphModelImpl<String, String> other = new GraphModelImpl<>(atomix, graphName);
+		other.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		other.buildAtomicMultiMap();
+		Map<String, String> nodes = new HashMap<>();
+		for (int i = 0; i < 200; i++) {
+			nodes.put("v" + i, "V" + i);
+		}
+		graph.addNodes(nodes);
+
+		// Both clients write the relations of a at the same time, none is lost
+		List<CompletableFuture<Long>> writes = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			writes.add(graph.async().addRelation("a", "v" + i, "knows", "a" + i, false));
+			writes.add(other.async().addRelation("a", "v" + (100 + i), "likes", "a" + (100 + i), false));
+		}
+		CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+		assertEquals(200, graph.getOutgoingRelations("a").size());
+		assertEquals(100, other.getOutgoingRelations("a", "likes").size());
+		assertEquals(1, graph.getIncomingRelations("v150").size());
+
+		// The changes queued behind a write of a are written together
+		ContentionStats contention = graph.metrics().getContentionStats(graphName + "_from2To");
+		assertTrue(contention.getCombined() > 0);
+		assertTrue(contention.getAttempts() < 100);
+		assertEquals(0, contention.getExhausted());
+		assertTrue(graph.metrics().dump().contains("adjacency index"));
+
+		graph.metrics().register();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(String.format("com.graphdb:type=Contention,graph=%s,name=%s",
+				ObjectName.quote(graphName), ObjectName.quote(graphName + "_from2To")));
+		assertEquals(contention.getAttempts(), server.getAttribute(name, "Attempts"));
+		graph.metrics().unregister();
+
+		// Removals go through the same conditional writes
+		for (int i = 0; i < 100; i++) {
+			writes.set(i, graph.async().removeRelation("a", "v" + i, "knows").thenApply(removed -> 0L));
+		}
+		CompletableFuture.allOf(writes.subList(0, 100).toArray(new CompletableFuture[0])).join();
+		assertEquals(100, other.getOutgoingRelations("a").size());
+		assertFalse(graph.areRelated("a", "v0"));
+	}
+
+	@Test
+	public void testSupernodes() throws Exception {
+		String graphName = "test" + graphCount++;
+		GraphModelImpl<String, String> graph = new GraphModelImpl<>(atomix, graphName);
+		graph.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		graph.withSupernodes(10, 4);
+		graph.buildAtomicMultiMap();
+		Map<String, String> nodes = new HashMap<>();
+		for (int i = 0; i < 30; i++) {
+			nodes.put("v" + i, "V" + i);
+		}
+		nodes.put("a", "A");
+		graph.addNodes(nodes);
+
+		// The eleventh relation splits a into buckets
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			ids.add(graph.addRelation("a", "v" + i, i % 2 == 0 ? "knows" : "likes", "a" + i, false));
+		}
+		assertEquals(20, graph.getOutgoingRelations("a").size());
+		assertEquals(10, graph.getOutgoingRelations("a", "knows").size());
+		assertEquals(20, graph.getNodeOutDegree("a"));
+		assertTrue(graph.metrics().getCacheStats(graphName + "_from2To_buckets").getMisses() > 0);
+
+		// A neighbour is read from its bucket alone
+		assertTrue(graph.areRelated("a", "v3"));
+		assertFalse(graph.areRelated("a", "v25"));
+		assertEquals(ids.get(3).longValue(), graph.getRelations("a", "v3").get(0).getId());
+		assertEquals(Arrays.asList("a", "v7"), graph.search("a", "v7"));
+
+		// Transactions write the buckets of a split vertex too
+		graph.addRelations(Arrays.asList(new Relation<>("a", "v20", "a20", "knows", false),
+				new Relation<>("a", "v21", "a21", "likes", false)));
+		assertEquals(22, graph.getNodeOutDegree("a"));
+		assertTrue(graph.areRelated("a", "v21"));
+		assertEquals(11, graph.getOutgoingRelations("a", "knows").size());
+
+		GraphModelImpl<String, String> other = new GraphModelImpl<>(atomix, graphName);
+		other.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		other.buildAtomicMultiMap();
+		assertEquals(22, other.getOutgoingRelations("a").size());
+		assertTrue(graph.removeRelation("a", "v0", "knows"));
+		assertFalse(graph.areRelated("a", "v0"));
+		assertEquals(21, graph.getNodeOutDegree("a"));
+		assertEquals(21, graph.snapshot().getOutgoingRelations("a").size());
+
+		java.nio.file.Path file = Files.createTempFile("graphdb-export", ".bin");
+		graph.exportTo(file);
+		GraphModelImpl<String, String> target = new GraphModelImpl<>(atomix, "test" + graphCount++);
+		target.withProtocol(MultiRaftProtocol.builder().withReadConsistency(ReadConsistency.LINEARIZABLE).build());
+		target.buildAtomicMultiMap();
+		target.importFrom(file);
+		assertEquals(21, target.getOutgoingRelations("a").size());
+		Files.delete(file);
+
+		assertTrue(graph.removeNode("a"));
+		assertEquals(-1, graph.getNodeOutDegree("a"));
+		assertNull(graph.getOutgoingRelations("a"));
+		assertTrue(graph.getIncomingRelations("v5").isEmpty());
+	}
+
+	@Test
+	public void testRelationPages() {
+		for (AdjacencyLayout layout : AdjacencyLayout.values()) {
+			GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph(layout);
+			List<Long> ids = new ArrayList<>();
+			for (int i = 0; i < 25; i++) {
+				ids.add(graph.addRelation("a", i % 5 == 0 ? "c" : "b", i % 2 == 0 ? "knows" : "likes", "a" + i, false));
+			}
+
+			// Pages in id order, the last one without a cursor
+			List<Long> paged = new ArrayList<>();
+			String cursor = null;
+			int pages = 0;
+			do {
+				RelationPage page = graph.getOutgoingRelations("a", null, cursor, 10);
+				assertTrue(page.getRelations().size() <= 10);
+				page.getRelations().forEach(relation -> paged.add(relation.getId()));
+				cursor = page.getCursor();
+				pages++;
+			} while (cursor != null);
+			assertEquals(ids, paged);
+			assertEquals(3, pages);
+
+			// A cursor resumes after its page even if the graph changed meanwhile
+			RelationPage first = graph.getOutgoingRelations("a", "knows", null, 5);
+			assertEquals(5, first.getRelations().size());
+			assertTrue(graph.removeRelation(ids.get(10)));
+			RelationPage second = graph.getOutgoingRelations("a", "knows", first.getCursor(), 5);
+			assertEquals(Arrays.asList(ids.get(12), ids.get(14), ids.get(16), ids.get(18), ids.get(20)),
+					second.getRelations().stream().map(Relation::getId).collect(Collectors.toList()));
+
+			assertEquals(24, graph.streamOutgoingRelations("a", null, 7).count());
+			List<Long> streamed = new ArrayList<>(ids);
+			streamed.remove(10);
+			assertEquals(streamed, graph.streamOutgoingRelations("a", null, 7).map(Relation::getId)
+					.collect(Collectors.toList()));
+			assertEquals(4, graph.streamRelations("a", "c", 2).count());
+			assertEquals(10, graph.streamIncomingRelations("b", "likes", 3).count());
+			assertTrue(graph.getRelations("b", "a", null, 10).isLast());
+			assertTrue(graph.getRelations("b", "a", null, 10).getRelations().isEmpty());
+			assertEquals(24, graph.snapshot().streamOutgoingRelations("a", null, 4).count());
+			RelationPage last = graph.snapshot().getOutgoingRelations("a", "knows", second.getCursor(), 5);
+			assertEquals(Arrays.asList(ids.get(22), ids.get(24)),
+					last.getRelations().stream().map(Relation::getId).collect(Collectors.toList()));
+			assertTrue(last.isLast());
+			try {
+				graph.getOutgoingRelations("a", null, null, 0);
+				assertTrue(false);
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+		}
+	}
+
+	@Test
+	public void testShortestPath() {
+		GraphModelImpl<String, String> graph = (GraphModelImpl<String, String>) newGraph();
+		graph.addNode("d", "D");
+		long ab = graph.addRelation("a", "b", "road", "1", false);
+		long bc = graph.addRelation("b", "c", "road", "1", false);
+		graph.addRelation("a", "c", "road", "5", false);
+		long cd = graph.addRelation("c", "d", "road", "1", false);
+		long ad = graph.addRelation("a", "d", "ferry", "1", false);
+		graph.addRelation("b", "d", "road", "10", false);
+		ToDoubleFunction<Relation> cost = relation -> Double.parseDouble((String) relation.getValue());
+
+		WeightedPath<String> ferry = graph.shortestPath(new PathQuery<>("a", "d").withWeight(cost));
+		assertEquals(Arrays.asList(ad), ferry.getRelationIds());
+		assertEquals(1.0, ferry.getCost(), 0.0);
+
+		// Dijkstra, bidirectional Dijkstra and A* agree on the cheapest road
+		Map<String, Double> remaining = new HashMap<>();
+		remaining.put("a", 3.0);
+		remaining.put("b", 2.0);
+		remaining.put("c", 1.0);
+		remaining.put("d", 0.0);
+		List<PathQuery<String>> queries = Arrays.asList(new PathQuery<>("a", "d"),
+				new PathQuery<>("a", "d").bidirectional(), new PathQuery<>("a", "d").withHeuristic(remaining::get));
+		for (PathQuery<String> query : queries) {
+			WeightedPath<String> road = graph.shortestPath(query.withTypes("road").withWeight(cost));
+			assertEquals(Arrays.asList("a", "b", "c", "d"), road.getNodes());
+			assertEquals(Arrays.asList(ab, bc, cd), road.getRelationIds());
+			assertEquals(3.0, road.getCost(), 0.0);
+			assertEquals(road.getRelationIds(), graph.snapshot().shortestPath(query).getRelationIds());
+		}
+
+		assertNull(graph.shortestPath(new PathQuery<>("a", "d").withTypes("road").withWeight(cost).withMaxCost(2)));
+		assertNull(graph.shortestPath(new PathQuery<>("a", "d").withTypes("road").withWeight(cost).withMaxDepth(1)));
+		assertNull(graph.shortestPath(new PathQuery<>("d", "a").withWeight(cost).bidirectional()));
+		assertEquals(1, graph.shortestPath(new PathQuery<>("a", "d").withWeight(cost).withMaxDepth(1)).getLength());
+		assertEquals(0, graph.shortestPath(new PathQuery<>("b", "b")).getLength());
+		assertTrue(graph.metrics().getStats(Operation.SHORTEST_PATH).getCount() > 0);
+		try {
+			graph.shortestPath(new PathQuery<>("a", "d"));
+			fail();
+		} catch (CompletionException e) {
+			// The values are not numbers
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package GraphDB;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.graphdb.primitive.GraphPrimitive;
+import com.graphdb.primitive.GraphPrimitiveType;
+
+import io.atomix.core.Atomix;
+import io.atomix.protocols.raft.MultiRaftProtocol;
+import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.storage.StorageLevel;
+
+/*
+ * Runs GraphPrimitive against a single member in-memory Raft cluster of three
+ * partitions, so that the edges of a relation are usually in two partitions.
+ */
+public class GraphPrimitiveTest {
+
+	private static Atomix atomix;
+	private static int graphCount;
+
+	@BeforeClass
+	public static void startCluster() throws Exception {
+		File dataDir = Files.createTempDirectory("graphdb-test").toFile();
+		atomix = Atomix.builder().withMemberId("test1").withAddress("localhost", 8892)
+				.withManagementGroup(RaftPartitionGroup.builder("system").withNumPartitions(1).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "system")).build())
+				.withPartitionGroups(RaftPartitionGroup.builder("raft").withNumPartitions(3).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "raft")).build())
+				.build();
+		atomix.start().join();
+	}
+
+	@AfterClass
+	public static void stopCluster() {
+		atomix.stop().join();
+	}
+
+	private <K> GraphPrimitive<K> newGraph() {
+		return atomix.primitiveBuilder("graph" + graphCount++, GraphPrimitiveType.<K>instance())
+				.withProtocol(MultiRaftProtocol.builder().build()).build();
+	}
+
+	private static long[] sorted(long[] ids) {
+		long[] copy = ids.clone();
+		Arrays.sort(copy);
+		return copy;
+	}
+
+	private static <K extends Comparable<K>> List<K> sorted(Collection<K> vertices) {
+		List<K> copy = new ArrayList<>(vertices);
+		Collections.sort(copy);
+		return copy;
+	}
+
+	@Test
+	public void testNeighbourhood() {
+		GraphPrimitive<String> graph = newGraph();
+		graph.addRelation("a", "b", "knows", 100);
+		graph.addRelation("a", "c", "likes", 101);
+		graph.addRelation("a", "c", "knows", 102);
+		graph.addRelation("d", "a", "knows", 103);
+		// A retried add of the same relation id changes nothing
+		graph.addRelation("a", "c", "knows", 102);
+
+		assertEquals(Arrays.asList("b", "c"), sorted(graph.neighbors("a", null)));
+		assertEquals(Arrays.asList("b", "c"), sorted(graph.neighbors("a", "knows")));
+		assertEquals(Arrays.asList("c"), sorted(graph.neighbors("a", "likes")));
+		assertTrue(graph.neighbors("a", "hates").isEmpty());
+		assertEquals(Arrays.asList("d"), sorted(graph.incomingNeighbors("a", null)));
+		assertArrayEquals(new long[] { 100, 102 }, sorted(graph.relations("a", "knows")));
+
+		assertEquals(3, graph.degree("a", null));
+		assertEquals(2, graph.degree("a", "knows"));
+		assertEquals(0, graph.degree("b", null));
+		assertTrue(graph.areRelated("a", "c"));
+		assertFalse(graph.areRelated("c", "a"));
+
+		assertTrue(graph.removeRelation("a", "c", 102));
+		assertFalse(graph.removeRelation("a", "c", 102));
+		assertEquals(Arrays.asList("b"), sorted(graph.neighbors("a", "knows")));
+
+		graph.removeVertex("a");
+		assertTrue(graph.neighbors("a", null).isEmpty());
+		assertTrue(graph.incomingNeighbors("c", null).isEmpty());
+		assertEquals(0, graph.degree("d", null));
+	}
+
+	@Test
+	public void testKHop() {
+		GraphPrimitive<Long> graph = newGraph();
+		// A chain 0 -> 1 -> ... -> 99 and a shortcut 0 -> 50
+		for (long i = 0; i < 99; i++) {
+			graph.addRelation(i, i + 1, "next", i);
+		}
+		graph.addRelation(0L, 50L, "jump", 1000);
+
+		assertEquals(Arrays.asList(1L, 2L, 3L), graph.kHop(0L, 3, "next"));
+		assertEquals(Arrays.asList(1L, 50L, 2L, 51L), sortedHops(graph.kHop(0L, 2, null)));
+		assertEquals(99, graph.kHop(0L, 100, "next").size());
+		assertTrue(graph.kHop(99L, 5, null).isEmpty());
+	}
+
+	/*
+	 * Sorts the vertices within each hop, the order inside a hop is not defined
+	 */
+	private static List<Long> sortedHops(List<Long> reached) {
+		List<Long> hops = new ArrayList<>(reached);
+		Collections.sort(hops.subList(0, 2));
+		Collections.sort(hops.subList(2, 4));
+		return hops;
+	}
+}
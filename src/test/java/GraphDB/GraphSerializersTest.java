@@ -0,0 +1,91 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.graphdb.agent.BinaryAgent;
+import com.graphdb.agent.JsonAgent;
+import com.graphdb.model.AdjacencyEntry;
+import com.graphdb.model.GraphSerializers;
+import com.graphdb.model.Relation;
+
+import io.atomix.utils.serializer.Namespace;
+import io.atomix.utils.serializer.Namespaces;
+import io.atomix.utils.serializer.Serializer;
+
+public class GraphSerializersTest {
+
+	// What an Atomix map uses when no serializer is given
+	private static final Serializer DEFAULT = Serializer.using(Namespace.builder().register(Namespaces.BASIC)
+			.nextId(Namespaces.BEGIN_USER_CUSTOM_ID).setRegistrationRequired(false).build());
+
+	private static final Serializer COMPACT = GraphSerializers.SERIALIZER;
+
+	@Test
+	public void testRoundTrip() {
+		Relation<String, String> relation = COMPACT
+				.decode(COMPACT.encode(new Relation<>(123456L, "alice", "bob", "since 2010", "knows", true)));
+		assertEquals(123456L, relation.getId());
+		assertEquals("alice", relation.getFrom());
+		assertEquals("bob", relation.getTo());
+		assertEquals("since 2010", relation.getValue());
+		assertEquals("knows", relation.getType());
+		assertTrue(relation.isBiDirectional());
+
+		AdjacencyEntry<String> entry = new AdjacencyEntry<>("bob", "knows", 42L);
+		assertEquals(entry, COMPACT.decode(COMPACT.encode(entry)));
+
+		Map<String, Collection<Long>> index = new HashMap<>();
+		index.put("bob", new ArrayList<>(Arrays.asList(1001L, 1002L, 7L, Long.MAX_VALUE, Long.MIN_VALUE)));
+		index.put("carol", new ArrayList<>(Arrays.asList(-5L)));
+		assertEquals(index, COMPACT.decode(COMPACT.encode(index)));
+
+		List<Object> mixed = new ArrayList<>(Arrays.asList("a", 1L, null, 2));
+		assertEquals(mixed, COMPACT.decode(COMPACT.encode(mixed)));
+	}
+
+	/*
+	 * Size of the values written to the Raft log, and kept in the map snapshots,
+	 * for a fixed graph of 1000 vertices with 10 relations each.
+	 */
+	@Test
+	public void testCompactSize() {
+		long defaultBytes = 0;
+		long compactBytes = 0;
+		long relId = 1;
+		for (int vertex = 0; vertex < 1000; vertex++) {
+			Map<String, Collection<Long>> neighbours = new HashMap<>();
+			for (int i = 0; i < 10; i++, relId++) {
+				String to = "vertex" + ((vertex + i + 1) % 1000);
+				Relation<String, String> relation = new Relation<>(relId, "vertex" + vertex, to, null, "knows", false);
+				defaultBytes += DEFAULT.encode(relation).length;
+				compactBytes += COMPACT.encode(relation).length;
+				neighbours.computeIfAbsent(to, k -> new ArrayList<>()).add(relId);
+			}
+			defaultBytes += DEFAULT.encode(neighbours).length;
+			compactBytes += COMPACT.encode(neighbours).length;
+		}
+		assertTrue(String.format("compact %s, default %s", compactBytes, defaultBytes),
+				compactBytes * 3 < defaultBytes * 2);
+	}
+
+	@Test
+	public void testBinaryAgent() {
+		Map<String, Collection<String>> nodeData = new HashMap<>();
+		nodeData.put("1", new ArrayList<>(Arrays.asList("abc", "fool", "def")));
+
+		BinaryAgent<Map> binaryAgent = new BinaryAgent<>();
+		byte[] binary = binaryAgent.toBinary(nodeData);
+		assertEquals(nodeData, binaryAgent.fromBinary(binary, Map.class));
+		assertTrue(binary.length < new JsonAgent<Map>().toJson(nodeData).length());
+	}
+}
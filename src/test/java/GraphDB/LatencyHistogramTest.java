@@ -0,0 +1,32 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.graphdb.metrics.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+
+		for (long value = 1; value <= 100000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(100000, histogram.getCount());
+		// Within the 1/32 precision of the buckets
+		assertEquals(50000000, histogram.getPercentile(50), 50000000 / 32);
+		assertEquals(99000000, histogram.getPercentile(99), 99000000 / 32);
+		assertEquals(99900000, histogram.getPercentile(99.9), 99900000 / 32);
+		assertEquals(100000000, histogram.getMax(), 100000000 / 32);
+
+		histogram.record(7);
+		assertEquals(7, histogram.getPercentile(0));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+}
@@ -0,0 +1,206 @@
+package GraphDB;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.graphdb.model.AsyncGraph;
+import com.graphdb.model.GraphModelImpl;
+import com.graphdb.model.Path;
+import com.graphdb.model.PathQuery;
+import com.graphdb.model.Relation;
+import com.graphdb.model.RelationPage;
+import com.graphdb.server.QueryClient;
+import com.graphdb.server.QueryException;
+import com.graphdb.server.QueryServer;
+
+import io.atomix.core.Atomix;
+import io.atomix.protocols.raft.partition.RaftPartitionGroup;
+import io.atomix.storage.StorageLevel;
+
+/*
+ * Queries a graph of a single member in-memory Raft cluster through a
+ * QueryServer and a QueryClient
+ */
+public class QueryServerTest {
+
+	private final static int QUERY_PORT = 8895;
+
+	private static Atomix atomix;
+	private static QueryServer<String, String> server;
+	private static GraphModelImpl<String, String> graph;
+
+	@BeforeClass
+	public static void startCluster() throws Exception {
+		File dataDir = Files.createTempDirectory("graphdb-test").toFile();
+		atomix = Atomix.builder().withMemberId("test1").withAddress("localhost", 8894)
+				.withManagementGroup(RaftPartitionGroup.builder("system").withNumPartitions(1).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "system")).build())
+				.withPartitionGroups(RaftPartitionGroup.builder("raft").withNumPartitions(3).withMembers("test1")
+						.withStorageLevel(StorageLevel.MEMORY).withDataDirectory(new File(dataDir, "raft")).build())
+				.build();
+		atomix.start().join();
+		graph = new GraphModelImpl<>(atomix, "served");
+		graph.buildAtomicMultiMap();
+		// A window long enough for the reads sent together by a test to meet
+		server = new QueryServer<>(graph.async(), QUERY_PORT).withCoalesceWindow(5000);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopCluster() {
+		server.stop();
+		atomix.stop().join();
+	}
+
+	@Test
+	public void testQueries() {
+		try (QueryClient<String, String> client = QueryClient.connect("localhost", QUERY_PORT)) {
+			assertTrue(client.addNode("a", "A").join());
+			assertTrue(client.addNode("b", "B").join());
+			assertTrue(client.addNode("c", "C").join());
+			long ab = client.addRelation("a", "b", "knows", "ab", false).join();
+			long bc = client.addRelation("b", "c", "likes", "bc", false).join();
+
+			assertEquals(Optional.of("A"), client.getNode("a").join());
+			assertFalse(client.getNode("z").join().isPresent());
+			Map<String, String> nodes = client.getNodes(Arrays.asList("a", "c", "z")).join();
+			assertEquals(2, nodes.size());
+			assertEquals("C", nodes.get("c"));
+
+			assertEquals("ab", client.getRelations(ab).join().getValue());
+			assertEquals(2, client.getRelations(Arrays.asList(ab, bc)).join().size());
+			assertEquals(1, client.getRelations("a", "b").join().size());
+			assertEquals(Arrays.asList("likes"), client.getRelationType("b", "c").join());
+			assertEquals(1, client.getNodeOutDegree("a").join().longValue());
+			assertEquals(1, client.getOutgoingRelations("b").join().size());
+			assertNull(client.getOutgoingRelations("b", "knows").join());
+			assertEquals(1, client.getIncomingRelations("b", "knows").join().size());
+			assertTrue(client.areRelated("a", "b").join());
+			RelationPage page = client.getIncomingRelations("b", null, null, 1).join();
+			assertEquals(ab, page.getRelations().get(0).getId());
+			assertTrue(client.getIncomingRelations("b", null, page.getCursor(), 1).join().isLast());
+
+			Path<String> path = client.search("a", "c", 3, 100).join();
+			assertNull(client.shortestPath(new PathQuery<>("c", "a").withMaxCost(10)).join());
+			try {
+				client.shortestPath(new PathQuery<>("a", "c").withWeight(relation -> 1)).join();
+				fail();
+			} catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof QueryException);
+			}
+			assertNotNull(path);
+			assertEquals(Arrays.asList("a", "b", "c"), path.getNodes());
+
+			assertTrue(client.removeRelation("b", "c", "likes").join());
+			assertTrue(client.removeRelation(ab).join());
+			assertFalse(client.areRelated("a", "b").join());
+			assertTrue(client.removeNode("c").join());
+			assertFalse(graph.getNode("c").isPresent());
+		}
+	}
+
+	@Test
+	public void testCoalescing() {
+		Map<String, String> values = new HashMap<>();
+		for (int i = 0; i < 20; i++) {
+			values.put("n" + i, "N" + i);
+		}
+		graph.addNodes(values);
+
+		try (QueryClient<String, String> client = QueryClient.connect("localhost", QUERY_PORT)) {
+			long requests = server.requests();
+			long batches = server.batches();
+			List<CompletableFuture<Optional<String>>> reads = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				reads.add(client.getNode("n" + i % 20));
+			}
+			for (int i = 0; i < 200; i++) {
+				assertEquals("N" + i % 20, reads.get(i).join().get());
+			}
+			assertEquals(200, server.requests() - requests);
+			// The identical reads share one read, the others are batched per shard
+			assertTrue(server.coalesced() > 0);
+			assertTrue("batches " + (server.batches() - batches), server.batches() - batches < 20);
+		}
+	}
+
+	/*
+	 * Reads of outgoing relations answer with what was read when they were
+	 * sent, but only after a delay far longer than a write
+	 */
+	@SuppressWarnings("unchecked")
+	private static AsyncGraph<String, String> slowReads(AsyncGraph<String, String> async) {
+		ScheduledExecutorService delays = Executors.newSingleThreadScheduledExecutor();
+		return (AsyncGraph<String, String>) Proxy.newProxyInstance(AsyncGraph.class.getClassLoader(),
+				new Class<?>[] { AsyncGraph.class }, (proxy, method, args) -> {
+					CompletableFuture<Object> result;
+					try {
+						result = (CompletableFuture<Object>) method.invoke(async, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+					if (!method.getName().equals("getOutgoingRelations")) {
+						return result;
+					}
+					return result.thenCompose(value -> {
+						CompletableFuture<Object> delayed = new CompletableFuture<>();
+						delays.schedule(() -> delayed.complete(value), 200, TimeUnit.MILLISECONDS);
+						return delayed;
+					});
+				});
+	}
+
+	@Test
+	public void testReadAfterWrite() {
+		graph.addNode("w", "W");
+		graph.addNode("x", "X");
+		QueryServer<String, String> slow = new QueryServer<>(slowReads(graph.async()), QUERY_PORT + 2);
+		slow.start();
+		try (QueryClient<String, String> client = QueryClient.connect("localhost", QUERY_PORT + 2)) {
+			CompletableFuture<List<Relation>> before = client.getOutgoingRelations("w");
+			long id = client.addRelation("w", "x", "knows", "wx", false).join();
+			// Sent before the write completed, the first read cannot answer the second
+			assertEquals(id, client.getOutgoingRelations("w").join().get(0).getId());
+			assertNull(before.join());
+		} finally {
+			slow.stop();
+		}
+	}
+
+	@Test
+	public void testClosedClient() {
+		QueryClient<String, String> client = QueryClient.connect("localhost", QUERY_PORT);
+		assertFalse(client.getNode("none").join().isPresent());
+		client.close();
+		try {
+			client.getNode("a").join();
+			fail("A closed client cannot query");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof QueryException);
+		}
+	}
+}